@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.FileDataSource;
+import com.google.android.exoplayer.upstream.MappedFileDataSource;
+
+import android.net.Uri;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the local file {@link DataSource} implementations over a file small enough to stay in
+ * the page cache, so that the cost of copying dominates. Each benchmark opens the file and reads it
+ * whole into an array in reads of {@code readLength} bytes, which for the default allocator is the
+ * size of an allocation, as when an extractor fills an allocation through
+ * {@link DataSource#read(byte[], int, int)}:
+ * <ul>
+ * <li>{@link #fileDataSource} reads with {@link java.io.RandomAccessFile#read(byte[], int, int)},
+ *     a system call per read.
+ * <li>{@link #mappedFileDataSource} copies from a mapping that is kept between opens.
+ * </ul>
+ * Both copy each byte into the array once. The relative cost of the paths differs between the JVM
+ * and Android's runtime, so results on the JVM are only indicative.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh -PjmhArgs="FileReadBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileReadBenchmark {
+
+  private static final int FILE_LENGTH = 8 * 1024 * 1024;
+
+  @Param({"4096", "65536"})
+  public int readLength;
+
+  private File file;
+  private DataSpec dataSpec;
+  private FileDataSource fileDataSource;
+  private MappedFileDataSource mappedFileDataSource;
+  private byte[] array;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] data = new byte[FILE_LENGTH];
+    new Random(0).nextBytes(data);
+    file = File.createTempFile("FileReadBenchmark", null);
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(data);
+    } finally {
+      output.close();
+    }
+    dataSpec = new DataSpec(Uri.fromFile(file));
+    fileDataSource = new FileDataSource();
+    mappedFileDataSource = new MappedFileDataSource(null, FILE_LENGTH, FILE_LENGTH);
+    array = new byte[readLength];
+  }
+
+  @TearDown
+  public void tearDown() {
+    mappedFileDataSource.clearMappings();
+    file.delete();
+  }
+
+  @Benchmark
+  public int fileDataSource() throws IOException {
+    return readAll(fileDataSource);
+  }
+
+  @Benchmark
+  public int mappedFileDataSource() throws IOException {
+    return readAll(mappedFileDataSource);
+  }
+
+  private int readAll(DataSource dataSource) throws IOException {
+    dataSource.open(dataSpec);
+    int checksum = 0;
+    int bytesRead;
+    while ((bytesRead = dataSource.read(array, 0, readLength)) != C.RESULT_END_OF_INPUT) {
+      checksum += array[bytesRead - 1];
+    }
+    dataSource.close();
+    return checksum;
+  }
+
+}
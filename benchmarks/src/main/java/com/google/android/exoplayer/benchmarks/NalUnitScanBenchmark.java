@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.util.NalUnitUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NalUnitUtil#findNalUnit(byte[], int, int, boolean[])} with
+ * {@link LegacyNalUnitUtil#findNalUnit(byte[], int, int, boolean[])} on one second of a synthetic
+ * H.264 elementary stream. The stream is searched in TS packet sized pieces, carrying the prefix
+ * flags across them, as {@link com.google.android.exoplayer.extractor.ts.H264Reader} does.
+ * <p>
+ * Slice data is random, with emulation prevention applied so that start code prefixes only occur
+ * at the start of NAL units, as in a real stream. Each profile is given by its bitrate and the
+ * number of slices per frame.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NalUnitScanBenchmark {
+
+  private static final int FRAME_RATE = 30;
+  private static final int PAYLOAD_SIZE = 184;
+
+  @Param({"1080p", "2160p"})
+  public String resolution;
+
+  private byte[] data;
+  private boolean[] prefixFlags;
+
+  @Setup
+  public void setUp() {
+    if ("1080p".equals(resolution)) {
+      data = buildStream(8000000, 4);
+    } else if ("2160p".equals(resolution)) {
+      data = buildStream(25000000, 8);
+    } else {
+      throw new IllegalArgumentException(resolution);
+    }
+    prefixFlags = new boolean[3];
+  }
+
+  @Benchmark
+  public int findNalUnit() {
+    int nalUnitCount = 0;
+    for (int offset = 0; offset < data.length; offset += PAYLOAD_SIZE) {
+      int limit = Math.min(offset + PAYLOAD_SIZE, data.length);
+      int position = offset;
+      while (position < limit) {
+        int nalUnitOffset = NalUnitUtil.findNalUnit(data, position, limit, prefixFlags);
+        if (nalUnitOffset == limit) {
+          break;
+        }
+        nalUnitCount++;
+        position = Math.max(position, nalUnitOffset + 3);
+      }
+    }
+    return nalUnitCount;
+  }
+
+  @Benchmark
+  public int legacyFindNalUnit() {
+    int nalUnitCount = 0;
+    for (int offset = 0; offset < data.length; offset += PAYLOAD_SIZE) {
+      int limit = Math.min(offset + PAYLOAD_SIZE, data.length);
+      int position = offset;
+      while (position < limit) {
+        int nalUnitOffset = LegacyNalUnitUtil.findNalUnit(data, position, limit, prefixFlags);
+        if (nalUnitOffset == limit) {
+          break;
+        }
+        nalUnitCount++;
+        position = Math.max(position, nalUnitOffset + 3);
+      }
+    }
+    return nalUnitCount;
+  }
+
+  /**
+   * Builds one second of stream, with an access unit delimiter at the start of each frame followed
+   * by the frame's slices.
+   */
+  private static byte[] buildStream(int bitrate, int slicesPerFrame) {
+    Random random = new Random(0);
+    int sliceSize = bitrate / 8 / FRAME_RATE / slicesPerFrame;
+    byte[] data = new byte[FRAME_RATE * (5 + slicesPerFrame * (4 + sliceSize))];
+    int position = 0;
+    for (int frame = 0; frame < FRAME_RATE; frame++) {
+      position = writeStartCode(data, position);
+      data[position++] = 0x09;
+      data[position++] = (byte) 0xF0;
+      for (int slice = 0; slice < slicesPerFrame; slice++) {
+        position = writeStartCode(data, position);
+        data[position++] = (byte) (frame == 0 ? 0x65 : 0x41);
+        int sliceEnd = position + sliceSize;
+        int zeroCount = 0;
+        while (position < sliceEnd) {
+          int value = random.nextInt(256);
+          if (zeroCount >= 2 && value <= 3) {
+            // Apply emulation prevention.
+            value = 3;
+            zeroCount = 0;
+          } else {
+            zeroCount = value == 0 ? zeroCount + 1 : 0;
+          }
+          data[position++] = (byte) value;
+        }
+        // Slice data can't end with a zero byte.
+        data[position - 1] = (byte) 0x80;
+      }
+    }
+    return data;
+  }
+
+  private static int writeStartCode(byte[] data, int position) {
+    data[position++] = 0;
+    data[position++] = 0;
+    data[position++] = 1;
+    return position;
+  }
+
+}
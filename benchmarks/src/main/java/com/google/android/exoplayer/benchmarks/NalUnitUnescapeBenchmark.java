@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.util.NalUnitUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NalUnitUtil#unescapeStream(byte[], int)} with
+ * {@link LegacyNalUnitUtil#unescapeStream(byte[], int)} when called concurrently by independent
+ * extractors, each of which unescapes its own SEI sized NAL units. Throughput should scale with the
+ * number of threads for the former, whereas calls to the latter are serialized.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}, adding {@code -PjmhArgs="-t <threads>"} to vary the
+ * number of threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class NalUnitUnescapeBenchmark {
+
+  @Param({"64", "1024"})
+  public int nalUnitLength;
+
+  private byte[] escapedData;
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    escapedData = new byte[nalUnitLength];
+    random.nextBytes(escapedData);
+    // Insert an escape code roughly every 32 bytes.
+    for (int i = 0; i + 3 <= nalUnitLength; i += 32) {
+      escapedData[i] = 0;
+      escapedData[i + 1] = 0;
+      escapedData[i + 2] = 3;
+    }
+    data = new byte[nalUnitLength];
+  }
+
+  @Benchmark
+  public int unescapeStream() {
+    System.arraycopy(escapedData, 0, data, 0, nalUnitLength);
+    return NalUnitUtil.unescapeStream(data, nalUnitLength);
+  }
+
+  @Benchmark
+  public int legacyUnescapeStream() {
+    System.arraycopy(escapedData, 0, data, 0, nalUnitLength);
+    return LegacyNalUnitUtil.unescapeStream(data, nalUnitLength);
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of {@link SimpleCache} with {@link LegacySimpleCache} when many loaders
+ * use the cache at once. Each benchmark thread acts as a loader with a key of its own, and checks
+ * which of its data is cached before locking and releasing a hole, as
+ * {@link com.google.android.exoplayer.upstream.cache.CacheDataSource} does when it opens a
+ * region that is not cached.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh -PjmhArgs="SimpleCacheBenchmark -t <loaders>"}, for
+ * increasing numbers of loaders.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleCacheBenchmark {
+
+  private static final int MAX_LOADERS = 64;
+  private static final int SPANS_PER_KEY = 32;
+  private static final int SPAN_LENGTH = 1024;
+
+  /**
+   * The caches, populated with {@link #SPANS_PER_KEY} spans for each of {@link #MAX_LOADERS} keys.
+   */
+  @State(Scope.Benchmark)
+  public static class Caches {
+
+    private File cacheDir;
+    private File legacyCacheDir;
+
+    public SimpleCache simpleCache;
+    public LegacySimpleCache legacySimpleCache;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+      cacheDir = createTempDir("SimpleCacheBenchmark");
+      legacyCacheDir = createTempDir("LegacySimpleCacheBenchmark");
+      simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+      legacySimpleCache = new LegacySimpleCache(legacyCacheDir, new NoOpCacheEvictor());
+      for (int i = 0; i < MAX_LOADERS; i++) {
+        populate(simpleCache, getKey(i));
+        populate(legacySimpleCache, getKey(i));
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      deleteDir(cacheDir);
+      deleteDir(legacyCacheDir);
+    }
+
+  }
+
+  /**
+   * The key of a benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Loader {
+
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
+    public String key;
+
+    @Setup
+    public void setUp() {
+      key = getKey(nextIndex.getAndIncrement() % MAX_LOADERS);
+    }
+
+  }
+
+  @Benchmark
+  public boolean simpleCache(Caches caches, Loader loader) {
+    return load(caches.simpleCache, loader.key);
+  }
+
+  @Benchmark
+  public boolean legacySimpleCache(Caches caches, Loader loader) {
+    return load(caches.legacySimpleCache, loader.key);
+  }
+
+  private static boolean load(Cache cache, String key) {
+    boolean cached = cache.isCached(key, 0, SPANS_PER_KEY * SPAN_LENGTH);
+    cached &= cache.getCachedSpans(key).size() == SPANS_PER_KEY;
+    CacheSpan hole = cache.startReadWriteNonBlocking(key, SPANS_PER_KEY * SPAN_LENGTH);
+    cache.releaseHoleSpan(hole);
+    return cached;
+  }
+
+  private static String getKey(int index) {
+    return "loader" + index;
+  }
+
+  private static void populate(Cache cache, String key) throws IOException, InterruptedException {
+    for (int i = 0; i < SPANS_PER_KEY; i++) {
+      CacheSpan hole = cache.startReadWrite(key, i * SPAN_LENGTH);
+      File file = cache.startFile(key, i * SPAN_LENGTH, SPAN_LENGTH);
+      FileOutputStream output = new FileOutputStream(file);
+      try {
+        output.write(new byte[SPAN_LENGTH]);
+      } finally {
+        output.close();
+      }
+      cache.commitFile(file);
+      cache.releaseHoleSpan(hole);
+    }
+  }
+
+  private static File createTempDir(String prefix) throws IOException {
+    File dir = File.createTempFile(prefix, null);
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static void deleteDir(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SlidingPercentile} with {@link LegacySlidingPercentile} on the access pattern of
+ * {@link com.google.android.exoplayer.upstream.DefaultBandwidthMeter}, which adds a sample weighted
+ * by the square root of the transfer size and then reads the median at the end of every transfer.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingPercentileBenchmark {
+
+  private static final int SAMPLE_COUNT = 4096;
+
+  @Param({"2000", "20000"})
+  public int maxWeight;
+
+  private int[] weights;
+  private float[] values;
+  private int nextSample;
+
+  private SlidingPercentile slidingPercentile;
+  private LegacySlidingPercentile legacySlidingPercentile;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    weights = new int[SAMPLE_COUNT];
+    values = new float[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      // Transfers of between 1KB and 1MB, at between 100kbps and 20Mbps.
+      int bytes = 1024 + random.nextInt(1024 * 1024);
+      weights[i] = (int) Math.sqrt(bytes);
+      values[i] = 100000 + random.nextInt(20000000);
+    }
+    slidingPercentile = new SlidingPercentile(maxWeight);
+    legacySlidingPercentile = new LegacySlidingPercentile(maxWeight);
+    // Fill the windows, so that the benchmarks measure the steady state.
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      slidingPercentile.addSample(weights[i], values[i]);
+      legacySlidingPercentile.addSample(weights[i], values[i]);
+    }
+  }
+
+  @Benchmark
+  public float slidingPercentile() {
+    int i = nextSample();
+    slidingPercentile.addSample(weights[i], values[i]);
+    return slidingPercentile.getPercentile(0.5f);
+  }
+
+  @Benchmark
+  public float legacySlidingPercentile() {
+    int i = nextSample();
+    legacySlidingPercentile.addSample(weights[i], values[i]);
+    return legacySlidingPercentile.getPercentile(0.5f);
+  }
+
+  private int nextSample() {
+    int i = nextSample;
+    nextSample = (i + 1) & (SAMPLE_COUNT - 1);
+    return i;
+  }
+
+}
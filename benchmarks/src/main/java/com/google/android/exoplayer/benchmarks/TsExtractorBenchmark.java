@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the demuxing throughput of {@link TsExtractor}, driven in the same way as by
+ * {@link com.google.android.exoplayer.hls.TsChunk}: through a {@link DefaultExtractorInput}, with
+ * one call to {@link Extractor#read} per iteration of the loading loop.
+ * <p>
+ * {@code readLength} caps the number of bytes returned by each read of the upstream source. With
+ * {@code 188}, each call demuxes a single packet, which reproduces the per packet loop of the
+ * extractor before it read in batches. With {@code 65536}, each call demuxes up to a full buffer.
+ * <p>
+ * By default a synthetic stream of H.264 and AAC is demuxed. Pass a recorded segment, such as an
+ * HLS {@code .ts} file, with {@code -p tsFile=<path>}.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh -PjmhArgs="TsExtractorBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TsExtractorBenchmark {
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PMT_PID = 0x1000;
+  private static final int VIDEO_PID = 0x100;
+  private static final int AUDIO_PID = 0x101;
+  private static final int VIDEO_FRAME_COUNT = 750;
+  private static final int VIDEO_FRAME_SIZE = 5000;
+  private static final int KEYFRAME_INTERVAL = 50;
+  private static final int AUDIO_FRAMES_PER_VIDEO_FRAME = 2;
+  private static final int AUDIO_FRAME_SIZE = 400;
+  private static final long VIDEO_FRAME_DURATION_PTS = 3000;
+
+  @Param({"188", "65536"})
+  public int readLength;
+
+  @Param({""})
+  public String tsFile;
+
+  private byte[] data;
+  private CountingOutput output;
+
+  @Setup
+  public void setUp() throws IOException {
+    if (tsFile.isEmpty()) {
+      data = buildStream();
+    } else {
+      RandomAccessFile file = new RandomAccessFile(tsFile, "r");
+      try {
+        data = new byte[(int) file.length()];
+        file.readFully(data);
+      } finally {
+        file.close();
+      }
+    }
+    output = new CountingOutput();
+  }
+
+  @Benchmark
+  public int demux() throws IOException, InterruptedException {
+    DataSource dataSource = new ChunkedByteArrayDataSource(data, readLength);
+    dataSource.open(new DataSpec(null, 0, data.length, null));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, 0, data.length);
+    TsExtractor extractor = new TsExtractor();
+    output.sampleCount = 0;
+    extractor.init(output);
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+    return output.sampleCount;
+  }
+
+  /**
+   * Builds a stream with a PAT, a PMT, and interleaved PES packets of H.264 access units and ADTS
+   * frames. Payload bytes are never zero, so that they do not contain start codes.
+   */
+  private static byte[] buildStream() {
+    Random random = new Random(0);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    int[] continuityCounters = new int[0x2000];
+    writeSection(stream, 0, continuityCounters, new byte[] {
+        0x00, (byte) 0xB0, 0x0D, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00, 0x00, 0x01,
+        (byte) (0xE0 | (PMT_PID >> 8)), (byte) PMT_PID, 0x00, 0x00, 0x00, 0x00});
+    writeSection(stream, PMT_PID, continuityCounters, new byte[] {
+        0x02, (byte) 0xB0, 0x17, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+        (byte) (0xE0 | (VIDEO_PID >> 8)), (byte) VIDEO_PID, (byte) 0xF0, 0x00,
+        0x1B, (byte) (0xE0 | (VIDEO_PID >> 8)), (byte) VIDEO_PID, (byte) 0xF0, 0x00,
+        0x0F, (byte) (0xE0 | (AUDIO_PID >> 8)), (byte) AUDIO_PID, (byte) 0xF0, 0x00,
+        0x00, 0x00, 0x00, 0x00});
+
+    byte[] sps = buildSps();
+    byte[] pps = new byte[] {0x00, 0x00, 0x00, 0x01, 0x68, (byte) 0xCE, 0x38, (byte) 0x80};
+    byte[] accessUnitDelimiter = new byte[] {0x00, 0x00, 0x00, 0x01, 0x09, (byte) 0xF0};
+    for (int i = 0; i < VIDEO_FRAME_COUNT; i++) {
+      long pts = 90000 + i * VIDEO_FRAME_DURATION_PTS;
+      ByteArrayOutputStream accessUnit = new ByteArrayOutputStream();
+      accessUnit.write(accessUnitDelimiter, 0, accessUnitDelimiter.length);
+      boolean keyframe = i % KEYFRAME_INTERVAL == 0;
+      if (keyframe) {
+        accessUnit.write(sps, 0, sps.length);
+        accessUnit.write(pps, 0, pps.length);
+      }
+      byte[] slice = randomNonZeroBytes(random, VIDEO_FRAME_SIZE);
+      slice[0] = 0x00;
+      slice[1] = 0x00;
+      slice[2] = 0x00;
+      slice[3] = 0x01;
+      slice[4] = (byte) (keyframe ? 0x65 : 0x41);
+      // first_mb_in_slice = 0, slice_type = 0 (P) or 2 (I).
+      slice[5] = (byte) (keyframe ? 0xB8 : 0xC0);
+      accessUnit.write(slice, 0, slice.length);
+      writePes(stream, VIDEO_PID, 0xE0, pts, accessUnit.toByteArray(), false, continuityCounters);
+
+      for (int j = 0; j < AUDIO_FRAMES_PER_VIDEO_FRAME; j++) {
+        byte[] frame = randomNonZeroBytes(random, AUDIO_FRAME_SIZE);
+        // ADTS header: AAC LC, 44.1kHz, stereo, no CRC.
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xF1;
+        frame[2] = 0x50;
+        frame[3] = (byte) (0x80 | (AUDIO_FRAME_SIZE >> 11));
+        frame[4] = (byte) (AUDIO_FRAME_SIZE >> 3);
+        frame[5] = (byte) (((AUDIO_FRAME_SIZE & 0x07) << 5) | 0x1F);
+        frame[6] = (byte) 0xFC;
+        writePes(stream, AUDIO_PID, 0xC0, pts + j * VIDEO_FRAME_DURATION_PTS / 2, frame, true,
+            continuityCounters);
+      }
+    }
+    return stream.toByteArray();
+  }
+
+  /**
+   * Returns a baseline profile SPS for 320x240 video, with its start code.
+   */
+  private static byte[] buildSps() {
+    BitWriter writer = new BitWriter();
+    writer.writeBits(66, 8); // profile_idc
+    writer.writeBits(0xC0, 8); // constraint_set0_flag, constraint_set1_flag
+    writer.writeBits(30, 8); // level_idc
+    writer.writeUnsignedExpGolomb(0); // seq_parameter_set_id
+    writer.writeUnsignedExpGolomb(0); // log2_max_frame_num_minus4
+    writer.writeUnsignedExpGolomb(2); // pic_order_cnt_type
+    writer.writeUnsignedExpGolomb(1); // max_num_ref_frames
+    writer.writeBits(0, 1); // gaps_in_frame_num_value_allowed_flag
+    writer.writeUnsignedExpGolomb(19); // pic_width_in_mbs_minus1
+    writer.writeUnsignedExpGolomb(14); // pic_height_in_map_units_minus1
+    writer.writeBits(1, 1); // frame_mbs_only_flag
+    writer.writeBits(1, 1); // direct_8x8_inference_flag
+    writer.writeBits(0, 1); // frame_cropping_flag
+    writer.writeBits(0, 1); // vui_parameters_present_flag
+    writer.writeBits(1, 1); // rbsp_stop_one_bit
+    byte[] rbsp = writer.toByteArray();
+    byte[] sps = new byte[5 + rbsp.length];
+    sps[3] = 0x01;
+    sps[4] = 0x67;
+    System.arraycopy(rbsp, 0, sps, 5, rbsp.length);
+    return sps;
+  }
+
+  private static void writeSection(ByteArrayOutputStream stream, int pid, int[] continuityCounters,
+      byte[] section) {
+    byte[] payload = new byte[TS_PACKET_SIZE - 4];
+    Arrays.fill(payload, (byte) 0xFF);
+    payload[0] = 0x00; // pointer_field
+    System.arraycopy(section, 0, payload, 1, section.length);
+    writePacket(stream, pid, true, continuityCounters, payload, 0, payload.length);
+  }
+
+  private static void writePes(ByteArrayOutputStream stream, int pid, int streamId, long pts,
+      byte[] data, boolean setLength, int[] continuityCounters) {
+    byte[] pes = new byte[14 + data.length];
+    pes[2] = 0x01;
+    pes[3] = (byte) streamId;
+    int packetLength = setLength ? 8 + data.length : 0;
+    pes[4] = (byte) (packetLength >> 8);
+    pes[5] = (byte) packetLength;
+    pes[6] = (byte) 0x80;
+    pes[7] = (byte) 0x80; // PTS only.
+    pes[8] = 0x05;
+    pes[9] = (byte) (0x21 | ((pts >> 29) & 0x0E));
+    pes[10] = (byte) (pts >> 22);
+    pes[11] = (byte) (((pts >> 14) & 0xFE) | 0x01);
+    pes[12] = (byte) (pts >> 7);
+    pes[13] = (byte) (((pts << 1) & 0xFE) | 0x01);
+    System.arraycopy(data, 0, pes, 14, data.length);
+    for (int offset = 0; offset < pes.length; offset += TS_PACKET_SIZE - 4) {
+      int length = Math.min(TS_PACKET_SIZE - 4, pes.length - offset);
+      writePacket(stream, pid, offset == 0, continuityCounters, pes, offset, length);
+    }
+  }
+
+  /**
+   * Writes a packet, padding a short payload with an adaptation field.
+   */
+  private static void writePacket(ByteArrayOutputStream stream, int pid,
+      boolean payloadUnitStart, int[] continuityCounters, byte[] payload, int offset, int length) {
+    byte[] packet = new byte[TS_PACKET_SIZE];
+    Arrays.fill(packet, (byte) 0xFF);
+    packet[0] = 0x47;
+    packet[1] = (byte) ((payloadUnitStart ? 0x40 : 0x00) | (pid >> 8));
+    packet[2] = (byte) pid;
+    int continuityCounter = continuityCounters[pid]++ & 0x0F;
+    if (length == TS_PACKET_SIZE - 4) {
+      packet[3] = (byte) (0x10 | continuityCounter);
+    } else {
+      packet[3] = (byte) (0x30 | continuityCounter);
+      int adaptationFieldLength = TS_PACKET_SIZE - 5 - length;
+      packet[4] = (byte) adaptationFieldLength;
+      if (adaptationFieldLength > 0) {
+        packet[5] = 0x00;
+      }
+    }
+    System.arraycopy(payload, offset, packet, TS_PACKET_SIZE - length, length);
+    stream.write(packet, 0, packet.length);
+  }
+
+  private static byte[] randomNonZeroBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (1 + random.nextInt(255));
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes bit fields, most significant bit first.
+   */
+  private static final class BitWriter {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private int currentByte;
+    private int bitCount;
+
+    public void writeBits(int value, int length) {
+      for (int i = length - 1; i >= 0; i--) {
+        currentByte = (currentByte << 1) | ((value >> i) & 1);
+        if (++bitCount == 8) {
+          output.write(currentByte);
+          currentByte = 0;
+          bitCount = 0;
+        }
+      }
+    }
+
+    public void writeUnsignedExpGolomb(int value) {
+      int codeNum = value + 1;
+      int length = 32 - Integer.numberOfLeadingZeros(codeNum);
+      writeBits(0, length - 1);
+      writeBits(codeNum, length);
+    }
+
+    public byte[] toByteArray() {
+      if (bitCount > 0) {
+        writeBits(0, 8 - bitCount);
+      }
+      return output.toByteArray();
+    }
+
+  }
+
+  /**
+   * A {@link DataSource} that returns at most a fixed number of bytes from each read.
+   */
+  private static final class ChunkedByteArrayDataSource implements DataSource {
+
+    private final byte[] data;
+    private final int maxReadLength;
+    private int position;
+
+    public ChunkedByteArrayDataSource(byte[] data, int maxReadLength) {
+      this.data = data;
+      this.maxReadLength = maxReadLength;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      position = (int) dataSpec.position;
+      return data.length - position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (position == data.length) {
+        return -1;
+      }
+      int bytesToRead = Math.min(Math.min(readLength, maxReadLength), data.length - position);
+      System.arraycopy(data, position, buffer, offset, bytesToRead);
+      position += bytesToRead;
+      return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * Discards sample data, counting samples.
+   */
+  private static final class CountingOutput implements ExtractorOutput, TrackOutput {
+
+    public int sampleCount;
+
+    @Override
+    public TrackOutput track(int trackId) {
+      return this;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+    @Override
+    public void format(MediaFormat format) {
+      // Do nothing.
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      int bytesSkipped = input.skip(length);
+      if (bytesSkipped == C.RESULT_END_OF_INPUT && !allowEndOfInput) {
+        throw new EOFException();
+      }
+      return bytesSkipped;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      data.skipBytes(length);
+    }
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset,
+        byte[] encryptionKey) {
+      sampleCount++;
+    }
+
+  }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.upstream.FileDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Plays a DASH stream from local files with {@link HeadlessPlayback}, through the same
+ * {@link com.google.android.exoplayer.dash.DashChunkSource},
+ * {@link com.google.android.exoplayer.chunk.ChunkSampleSource}, {@link DefaultLoadControl} and
+ * {@link AdaptiveEvaluator} as are used on a device. Robolectric provides the platform classes on
+ * which parsing and loading depend. Load callbacks are delivered on a {@link CallbackQueue}, so the
+ * test thread does not need a looper.
+ * <p>
+ * The stream is written by the test. It has two WebM video representations, each with an
+ * initialization segment and one media segment per second.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class DashHeadlessPlaybackTest {
+
+  private static final int SEGMENT_COUNT = 5;
+  private static final int SEGMENT_DURATION_MS = 1000;
+  private static final int FRAME_DURATION_MS = 40;
+  private static final int FRAMES_PER_SEGMENT = SEGMENT_DURATION_MS / FRAME_DURATION_MS;
+  private static final String[] REPRESENTATION_IDS = new String[] {"low", "high"};
+  private static final int[] FRAME_SIZES = new int[] {1000, 2000};
+
+  private static final String MANIFEST =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<MPD xmlns=\"urn:mpeg:DASH:schema:MPD:2011\" type=\"static\"\n"
+      + "    mediaPresentationDuration=\"PT" + SEGMENT_COUNT + "S\" minBufferTime=\"PT1S\"\n"
+      + "    profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n"
+      + "  <Period>\n"
+      + "    <AdaptationSet mimeType=\"video/webm\" codecs=\"vp9\">\n"
+      + "      <SegmentTemplate timescale=\"1000\" duration=\"" + SEGMENT_DURATION_MS + "\"\n"
+      + "          startNumber=\"1\" initialization=\"init-$RepresentationID$.webm\"\n"
+      + "          media=\"$RepresentationID$-$Number$.webm\"/>\n"
+      + "      <Representation id=\"low\" bandwidth=\"200000\" width=\"320\" height=\"180\"/>\n"
+      + "      <Representation id=\"high\" bandwidth=\"400000\" width=\"640\" height=\"360\"/>\n"
+      + "    </AdaptationSet>\n"
+      + "  </Period>\n"
+      + "</MPD>\n";
+
+  private static final int ID_EBML = 0x1A45DFA3;
+  private static final int ID_DOC_TYPE = 0x4282;
+  private static final int ID_SEGMENT = 0x18538067;
+  private static final int ID_INFO = 0x1549A966;
+  private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+  private static final int ID_DURATION = 0x4489;
+  private static final int ID_TRACKS = 0x1654AE6B;
+  private static final int ID_TRACK_ENTRY = 0xAE;
+  private static final int ID_TRACK_NUMBER = 0xD7;
+  private static final int ID_TRACK_TYPE = 0x83;
+  private static final int ID_CODEC_ID = 0x86;
+  private static final int ID_VIDEO = 0xE0;
+  private static final int ID_PIXEL_WIDTH = 0xB0;
+  private static final int ID_PIXEL_HEIGHT = 0xBA;
+  private static final int ID_CLUSTER = 0x1F43B675;
+  private static final int ID_TIME_CODE = 0xE7;
+  private static final int ID_SIMPLE_BLOCK = 0xA3;
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("DashHeadlessPlaybackTest", null);
+    assertTrue(directory.delete() && directory.mkdir());
+    writeFile("manifest.mpd", MANIFEST.getBytes(Charset.forName("UTF-8")));
+    for (int i = 0; i < REPRESENTATION_IDS.length; i++) {
+      String id = REPRESENTATION_IDS[i];
+      writeFile("init-" + id + ".webm", buildInitializationSegment(i));
+      for (int j = 0; j < SEGMENT_COUNT; j++) {
+        writeFile(id + "-" + (j + 1) + ".webm", buildMediaSegment(j, FRAME_SIZES[i]));
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void testPlaysLocalStreamToEnd() throws Exception {
+    File manifestFile = new File(directory, "manifest.mpd");
+    MediaPresentationDescription manifest;
+    InputStream inputStream = new FileInputStream(manifestFile);
+    try {
+      manifest = new MediaPresentationDescriptionParser().parse(
+          manifestFile.toURI().toString(), inputStream);
+    } finally {
+      inputStream.close();
+    }
+
+    CallbackQueue callbackQueue = new CallbackQueue();
+    SampleSource source = HeadlessPlayback.newDashSampleSource(manifest, AdaptationSet.TYPE_VIDEO,
+        new FileDataSource(), new AdaptiveEvaluator(new DefaultBandwidthMeter()),
+        new DefaultLoadControl(new DefaultAllocator(64 * 1024)), 16 * 64 * 1024, callbackQueue);
+    HeadlessPlayback playback = new HeadlessPlayback(new SampleSource[] {source}, callbackQueue,
+        10, 60000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertEquals(SEGMENT_COUNT * FRAMES_PER_SEGMENT, result.sampleCount);
+    assertTrue(result.playedDurationMs >= SEGMENT_COUNT * SEGMENT_DURATION_MS - FRAME_DURATION_MS);
+    // Each segment is loaded from one of the two representations.
+    assertTrue(result.sampleBytes >= SEGMENT_COUNT * FRAMES_PER_SEGMENT * FRAME_SIZES[0]);
+    assertTrue(result.sampleBytes <= SEGMENT_COUNT * FRAMES_PER_SEGMENT * FRAME_SIZES[1]);
+  }
+
+  private void writeFile(String name, byte[] data) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(new File(directory, name));
+    try {
+      outputStream.write(data);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private static byte[] buildInitializationSegment(int representationIndex) throws IOException {
+    int width = 320 << representationIndex;
+    int height = 180 << representationIndex;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(element(ID_EBML, element(ID_DOC_TYPE, "webm".getBytes("UTF-8"))));
+    // The Segment has an unknown size, so that it continues into the media segments.
+    writeId(output, ID_SEGMENT);
+    output.write(new byte[] {0x01, -1, -1, -1, -1, -1, -1, -1});
+    output.write(element(ID_INFO,
+        element(ID_TIMECODE_SCALE, uint(1000000)),
+        element(ID_DURATION, float64(SEGMENT_COUNT * SEGMENT_DURATION_MS))));
+    output.write(element(ID_TRACKS,
+        element(ID_TRACK_ENTRY,
+            element(ID_TRACK_NUMBER, uint(1)),
+            element(ID_TRACK_TYPE, uint(1)),
+            element(ID_CODEC_ID, "V_VP9".getBytes("UTF-8")),
+            element(ID_VIDEO,
+                element(ID_PIXEL_WIDTH, uint(width)),
+                element(ID_PIXEL_HEIGHT, uint(height))))));
+    return output.toByteArray();
+  }
+
+  private static byte[] buildMediaSegment(int segmentIndex, int frameSize) throws IOException {
+    byte[][] children = new byte[FRAMES_PER_SEGMENT + 1][];
+    children[0] = element(ID_TIME_CODE, uint(segmentIndex * SEGMENT_DURATION_MS));
+    for (int i = 0; i < FRAMES_PER_SEGMENT; i++) {
+      int timecode = i * FRAME_DURATION_MS;
+      byte[] block = new byte[4 + frameSize];
+      block[0] = (byte) 0x81; // Track number 1.
+      block[1] = (byte) (timecode >> 8);
+      block[2] = (byte) timecode;
+      block[3] = (byte) 0x80; // Keyframe.
+      children[i + 1] = element(ID_SIMPLE_BLOCK, block);
+    }
+    return element(ID_CLUSTER, children);
+  }
+
+  private static byte[] element(int id, byte[]... children) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (byte[] child : children) {
+      content.write(child);
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    writeId(output, id);
+    // Sizes are always written as 8 byte varints.
+    long size = content.size();
+    output.write(0x01);
+    for (int shift = 48; shift >= 0; shift -= 8) {
+      output.write((int) (size >> shift));
+    }
+    content.writeTo(output);
+    return output.toByteArray();
+  }
+
+  private static void writeId(ByteArrayOutputStream output, int id) {
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      if ((id >>> shift) != 0) {
+        output.write(id >> shift);
+      }
+    }
+  }
+
+  private static byte[] float64(double value) {
+    return uint(Double.doubleToLongBits(value));
+  }
+
+  private static byte[] uint(long value) {
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (value >> (56 - 8 * i));
+    }
+    return bytes;
+  }
+
+}
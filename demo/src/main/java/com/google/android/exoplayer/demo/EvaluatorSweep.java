@@ -0,0 +1,206 @@
+package com.google.android.exoplayer.demo;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.demo.Log.VideoSize;
+import com.google.android.exoplayer.simulation.AbrSimulator;
+import com.google.android.exoplayer.simulation.BandwidthTrace;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sweeps the tuning constants of {@link LLEEJFormatEvaluator} over a corpus of recorded byte
+ * traces, using {@link ParameterSweep}. Run from a development machine with
+ * <pre>
+ * EvaluatorSweep &lt;adaptive|bba&gt; &lt;seed&gt; &lt;segmentDurationMs&gt; &lt;ladderKbps,...&gt;
+ *     &lt;trace&gt;...
+ * </pre>
+ * where each trace is either a binary {@code .trace} file or a {@code _Byte.csv} export, all of
+ * whose sessions are used.
+ */
+public class EvaluatorSweep {
+
+    public static final String AXIS_BANDWIDTH_FRACTION = "bandwidthFraction";
+    public static final String AXIS_BT_COMPENSATION = "btCompensation";
+    public static final String AXIS_RESERVOIR_DURATION_MS = "reservoirDurationMs";
+    public static final String AXIS_BUFFER_DURATION_MS = "bufferDurationMs";
+
+    private static final int RESULTS_TO_PRINT = 20;
+    // The default session duration of SampleChooserActivity. Not referenced directly, so that the
+    // sweep does not load the activity class.
+    private static final long SESSION_DURATION_MS = 300000;
+
+    /**
+     * Creates {@link LLEEJFormatEvaluator.AdaptiveEvaluator}s from a combination of
+     * {@link #adaptiveGrid(int)}.
+     */
+    public static final ParameterSweep.EvaluatorFactory ADAPTIVE_FACTORY =
+            new ParameterSweep.EvaluatorFactory() {
+                @Override
+                public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter,
+                                                       double[] parameters) {
+                    return new LLEEJFormatEvaluator.AdaptiveEvaluator(bandwidthMeter,
+                            LLEEJFormatEvaluator.AdaptiveEvaluator.DEFAULT_MAX_INITIAL_BITRATE,
+                            LLEEJFormatEvaluator.AdaptiveEvaluator.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+                            LLEEJFormatEvaluator.AdaptiveEvaluator.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                            LLEEJFormatEvaluator.AdaptiveEvaluator.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                            (float) parameters[0], parameters[1]);
+                }
+            };
+
+    /**
+     * Creates {@link LLEEJFormatEvaluator.BufferBasedAdaptiveEvaluator}s from a combination of
+     * {@link #bufferBasedGrid(int)}. Their logging is disabled, since it calls into the platform
+     * on every evaluation.
+     */
+    public static ParameterSweep.EvaluatorFactory bufferBasedFactory(final long videoDurationMs) {
+        return new ParameterSweep.EvaluatorFactory() {
+            @Override
+            public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter,
+                                                   double[] parameters) {
+                LLEEJFormatEvaluator.BufferBasedAdaptiveEvaluator evaluator =
+                        new LLEEJFormatEvaluator.BufferBasedAdaptiveEvaluator(bandwidthMeter,
+                                videoDurationMs, null, null, (int) parameters[0],
+                                (int) parameters[1]);
+                evaluator.setLoggingEnabled(false);
+                return evaluator;
+            }
+        };
+    }
+
+    /**
+     * A grid over the bandwidth fraction and the bandwidth compensation of
+     * {@link LLEEJFormatEvaluator.AdaptiveEvaluator}, with {@code steps * steps} combinations.
+     */
+    public static ParameterGrid adaptiveGrid(int steps) {
+        return new ParameterGrid.Builder()
+                .addLinearAxis(AXIS_BANDWIDTH_FRACTION, 0.5, 1.0, steps)
+                .addLinearAxis(AXIS_BT_COMPENSATION, 0.5, 1.5, steps)
+                .build();
+    }
+
+    /**
+     * A grid over the reservoir and buffer durations of
+     * {@link LLEEJFormatEvaluator.BufferBasedAdaptiveEvaluator}, with {@code steps * steps}
+     * combinations. The ranges do not overlap, so every combination is a valid rate map.
+     */
+    public static ParameterGrid bufferBasedGrid(int steps) {
+        return new ParameterGrid.Builder()
+                .addLinearAxis(AXIS_RESERVOIR_DURATION_MS, 2000, 14000, steps)
+                .addLinearAxis(AXIS_BUFFER_DURATION_MS, 20000, 60000, steps)
+                .build();
+    }
+
+    /**
+     * The evaluators register the available formats with {@link EventLogger} on their first
+     * evaluation, which is not thread safe. Registers them up front so that sessions can be
+     * simulated concurrently.
+     */
+    public static void registerFormats(Format[] formats) {
+        if (!EventLogger.isInitiatedVideoSize()) {
+            for (Format format : formats) {
+                EventLogger.addNewVideoSize(new VideoSize(format.width, format.height,
+                        format.bitrate));
+            }
+        }
+    }
+
+    /**
+     * Loads a corpus of traces.
+     *
+     * @param files Binary {@code .trace} files or {@code _Byte.csv} exports.
+     * @return One trace per recorded session.
+     */
+    public static List<BandwidthTrace> loadTraces(List<File> files) throws IOException {
+        ArrayList<BandwidthTrace> traces = new ArrayList<BandwidthTrace>();
+        for (File file : files) {
+            if (file.getName().endsWith(".trace")) {
+                traces.add(BandwidthTrace.fromTelemetryTrace(file,
+                        BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS));
+                continue;
+            }
+            for (int sessionIndex = 0; ; sessionIndex++) {
+                FileReader reader = new FileReader(file);
+                try {
+                    traces.add(BandwidthTrace.fromByteCsv(reader, sessionIndex,
+                            BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS));
+                } catch (ParserException e) {
+                    if (sessionIndex == 0) {
+                        throw e;
+                    }
+                    // There are no more sessions in this file.
+                    break;
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+        return traces;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: EvaluatorSweep <adaptive|bba> <seed> <segmentDurationMs> "
+                    + "<ladderKbps,...> <trace>...");
+            System.exit(1);
+        }
+        boolean bufferBased = "bba".equals(args[0]);
+        long seed = Long.parseLong(args[1]);
+        long segmentDurationMs = Long.parseLong(args[2]);
+        String[] ladder = args[3].split(",");
+        Format[] formats = new Format[ladder.length];
+        for (int i = 0; i < ladder.length; i++) {
+            formats[i] = new Format(Integer.toString(i), MimeTypes.VIDEO_MP4, -1, -1, -1, -1, -1,
+                    Integer.parseInt(ladder[i].trim()) * 1000);
+        }
+        ArrayList<File> files = new ArrayList<File>();
+        for (int i = 4; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+
+        AbrSimulator simulator = new AbrSimulator(formats, segmentDurationMs, SESSION_DURATION_MS);
+        ParameterSweep sweep = new ParameterSweep(simulator, loadTraces(files),
+                ParameterSweep.DEFAULT_SESSIONS_PER_TRACE, seed);
+        ParameterGrid grid = bufferBased ? bufferBasedGrid(100) : adaptiveGrid(100);
+        ParameterSweep.EvaluatorFactory factory = bufferBased
+                ? bufferBasedFactory(SESSION_DURATION_MS) : ADAPTIVE_FACTORY;
+
+        registerFormats(formats);
+        long startTimeMs = System.currentTimeMillis();
+        SweepResult[] results = sweep.run(grid, factory, new ParameterSweep.QoeObjective());
+        System.out.println(grid.getSize() + " combinations x " + sweep.getSessionCount()
+                + " sessions in " + (System.currentTimeMillis() - startTimeMs) + " ms");
+
+        StringBuilder header = new StringBuilder("rank");
+        for (int axis = 0; axis < grid.getAxisCount(); axis++) {
+            header.append(',').append(grid.getAxisName(axis));
+        }
+        header.append(",score,avgBitrate,varBitrate,numSwitching,magSwitching,numRebuffering,"
+                + "durationRebuffering,startupDelay");
+        System.out.println(header);
+        for (int i = 0; i < Math.min(RESULTS_TO_PRINT, results.length); i++) {
+            SweepResult result = results[i];
+            StringBuilder line = new StringBuilder(Integer.toString(i + 1));
+            for (double parameter : result.parameters) {
+                line.append(',').append(parameter);
+            }
+            line.append(',').append(result.score)
+                    .append(',').append(result.avgBitrate)
+                    .append(',').append(result.varBitrate)
+                    .append(',').append(result.numSwitching)
+                    .append(',').append(result.magSwitching)
+                    .append(',').append(result.numRebuffering)
+                    .append(',').append(result.durationRebufferingMs)
+                    .append(',').append(result.startupDelayMs);
+            System.out.println(line);
+        }
+    }
+
+}
@@ -15,11 +15,9 @@
  */
 package com.google.android.exoplayer.demo;
 
-import com.google.android.exoplayer.ByteLog;
 import com.google.android.exoplayer.ExoPlayer;
 import com.google.android.exoplayer.MediaCodecTrackRenderer.DecoderInitializationException;
 import com.google.android.exoplayer.NewLogger;
-import com.google.android.exoplayer.SegmentLog;
 import com.google.android.exoplayer.TimeRange;
 import com.google.android.exoplayer.audio.AudioTrack;
 import com.google.android.exoplayer.chunk.Format;
@@ -35,6 +33,7 @@ import android.media.MediaCodec.CryptoException;
 import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -57,8 +56,7 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
   private static ArrayList<Score> scoreList = new ArrayList<Score>();
   private static ArrayList<ArrayList<Bytes>> bytesDataList = new ArrayList<ArrayList<Bytes>>();
   private static ArrayList<VideoSize> availableVideoSize = null;
-  private static ArrayList<ArrayList<SegmentLog>> segmentLogList = new ArrayList<ArrayList<SegmentLog>>();
-  private static ArrayList<ArrayList<ByteLog>> bytesLogList = new ArrayList<ArrayList<ByteLog>>();
+  private static ArrayList<File> traceFileList = new ArrayList<File>();
 
   private long sessionStartTimeMs;
   private long[] loadStartTimeMs;
@@ -88,8 +86,7 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
 
   public static void init(){
     //logDataList = new ArrayList<ArrayList<LogData>>();
-    segmentLogList = new ArrayList<ArrayList<SegmentLog>>();
-    bytesLogList = new ArrayList<ArrayList<ByteLog>>();
+    traceFileList = new ArrayList<File>();
     scoreList = new ArrayList<Score>();
     if(Configure.LOGGING_BYTES_DATA)
       bytesDataList = new ArrayList<ArrayList<Bytes>>();
@@ -132,16 +129,13 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
 //    logDataList.add(newLogData);
 //    Log.d("LLEEJ1", "EventLogger,updateNewLogData() : " + logDataList.get(logDataList.size()-1).size());
 //  }
-  public void updateNewSegmentLogList(ArrayList<SegmentLog> newLogData){
-    segmentLogList.add(newLogData);
-  }
-  public void updateNewByteLogList(ArrayList<ByteLog> newByteLogData){
-    bytesLogList.add(newByteLogData);
+  public void updateNewTraceFile(File traceFile){
+    traceFileList.add(traceFile);
   }
 
   public void startSession() {
     sessionStartTimeMs = SystemClock.elapsedRealtime();
-    NewLogger.sessionStartTimeMs = sessionStartTimeMs;
+    NewLogger.setSessionStartTimeMs(sessionStartTimeMs);
     Log.d(TAG, "start [0]");
   }
 
@@ -357,15 +351,17 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
 
 
   @Override
-  public void onBytesTransferred(int elapsedMs, long bytes) {
+  public void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs,
+      long lastReadTimeMs) {
     if(Configure.LOGGING_BYTES_DATA) {
-      double time = Double.parseDouble(getSessionTimeString());
+      // Events are batched, so bucket by the time of the reads rather than of delivery.
+      double time = Double.parseDouble(getTimeString(lastReadTimeMs - sessionStartTimeMs));
       if (preDataTime == time) {
         bytesAccumulates += bytes;
       } else {
         bytesArrayList.add(new Bytes(preDataTime + "", bytesAccumulates + ""));
         preDataTime = time;
-        bytesAccumulates = 0;
+        bytesAccumulates = bytes;
       }
     }
   }
@@ -398,10 +394,7 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
   public static ArrayList<Score> getScoreList() {
     return scoreList;
   }
-  public static ArrayList<ArrayList<SegmentLog>> getSegmentLogList(){
-    return segmentLogList;
-  }
-  public static ArrayList<ArrayList<ByteLog>> getBytesLogList(){
-    return bytesLogList;
+  public static ArrayList<File> getTraceFileList(){
+    return traceFileList;
   }
 }
@@ -37,6 +37,7 @@ public class LLEEJFormatEvaluator {
         private final long maxDurationForQualityDecreaseUs;
         private final long minDurationToRetainAfterDiscardUs;
         private final float bandwidthFraction;
+        private final double bandwidthCompensation;
 
         private boolean isInit = true;
 
@@ -72,12 +73,34 @@ public class LLEEJFormatEvaluator {
                                  int maxDurationForQualityDecreaseMs,
                                  int minDurationToRetainAfterDiscardMs,
                                  float bandwidthFraction) {
+            this(bandwidthMeter, maxInitialBitrate, minDurationForQualityIncreaseMs,
+                    maxDurationForQualityDecreaseMs, minDurationToRetainAfterDiscardMs,
+                    bandwidthFraction,
+                    Configure.BT_ON ? Configure.BT_COMPENSATION_PARAMETER : 1.0);
+        }
+
+        /**
+         * As above, but with an explicit bandwidth compensation rather than the one configured in
+         * {@link Configure}, so that several instances with different compensations can be
+         * evaluated side by side.
+         *
+         * @param bandwidthCompensation A factor applied to the effective bitrate after
+         *     {@code bandwidthFraction}. 1.0 disables compensation.
+         */
+        public AdaptiveEvaluator(BandwidthMeter bandwidthMeter,
+                                 int maxInitialBitrate,
+                                 int minDurationForQualityIncreaseMs,
+                                 int maxDurationForQualityDecreaseMs,
+                                 int minDurationToRetainAfterDiscardMs,
+                                 float bandwidthFraction,
+                                 double bandwidthCompensation) {
             this.bandwidthMeter = bandwidthMeter;
             this.maxInitialBitrate = maxInitialBitrate;
             this.minDurationForQualityIncreaseUs = minDurationForQualityIncreaseMs * 1000L;
             this.maxDurationForQualityDecreaseUs = maxDurationForQualityDecreaseMs * 1000L;
             this.minDurationToRetainAfterDiscardUs = minDurationToRetainAfterDiscardMs * 1000L;
             this.bandwidthFraction = bandwidthFraction;
+            this.bandwidthCompensation = bandwidthCompensation;
         }
 
         @Override
@@ -156,8 +179,8 @@ public class LLEEJFormatEvaluator {
             long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
                     ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
 
-            if(Configure.BT_ON)
-                effectiveBitrate = (long)(effectiveBitrate * Configure.BT_COMPENSATION_PARAMETER);
+            if(bandwidthCompensation != 1.0)
+                effectiveBitrate = (long)(effectiveBitrate * bandwidthCompensation);
 
             for (int i = 0; i < formats.length; i++) {
                 Format format = formats[i];
@@ -486,6 +509,7 @@ public class LLEEJFormatEvaluator {
         private HashMap<Long, Long> chunksByte;
         private boolean allChunksLoaded;
         private boolean isInit = true;
+        private boolean loggingEnabled = true;
 
 
         public interface EventListener {
@@ -516,6 +540,14 @@ public class LLEEJFormatEvaluator {
             this.bufferDurationMs = DEFAULT_BUFFER_DURATION_MS;
         }
 
+        /**
+         * Sets whether evaluations are logged. Logging is enabled by default, and must be disabled
+         * when evaluating off-device, where {@link Log} is not available.
+         */
+        public void setLoggingEnabled(boolean loggingEnabled) {
+            this.loggingEnabled = loggingEnabled;
+        }
+
         @Override
         public void enable() {
 
@@ -554,7 +586,7 @@ public class LLEEJFormatEvaluator {
                     : queue.get(queue.size() - 1).endTimeUs;
 
             Format current = evaluation.format;
-            if(current!=null){
+            if(current!=null && loggingEnabled){
                 Log.e("ashkan_video", "buffer duration: "+bufferedDurationUs/1000+" current bitrate: "+current.bitrate);
             }
             Format ideal;
@@ -563,12 +595,16 @@ public class LLEEJFormatEvaluator {
             if(bufferState==BufferState.STARTUP_STATE){
                 if(prevBufferDurationUs!=-1 && prevBufferDurationUs>bufferedDurationUs){
                     bufferState=BufferState.STEADY_STATE;
-                    Log.e("ashkan_video", "switch to STEADY_STATE, prev: "+prevBufferDurationUs/1000);
+                    if(loggingEnabled){
+                        Log.e("ashkan_video", "switch to STEADY_STATE, prev: "+prevBufferDurationUs/1000);
+                    }
                     notifyStateChanged(System.currentTimeMillis()-startTime);
                 }
                 else if(determineBufferBasedIdealFormat(formats, current, bufferedDurationUs).bitrate>determineCapacityBasedIdealFormat(formats, current, bufferedDurationUs).bitrate){
                     bufferState=BufferState.STEADY_STATE;
-                    Log.e("ashkan_video", "switch to STEADY_STATE");
+                    if(loggingEnabled){
+                        Log.e("ashkan_video", "switch to STEADY_STATE");
+                    }
                     notifyStateChanged(System.currentTimeMillis()-startTime);
                 }
             }
@@ -635,23 +671,25 @@ public class LLEEJFormatEvaluator {
 
         //this is the f function, it converts the buffer occupancy to formats indexes (linear function). formats array is sorted from high bitrate to low bitrate
         protected int bufferOccupancyToFormatIndex(int formatsLen, long bufferedDurationUs){
-            if(bufferedDurationUs < DEFAULT_RESERVOIR_DURATION_MS * 1000){
+            if(bufferedDurationUs < reservoirDurationMs * 1000L){
                 return formatsLen - 1;
-            }else if(bufferedDurationUs > (DEFAULT_BUFFER_DURATION_MS*0.9*1000) ){
+            }else if(bufferedDurationUs > (bufferDurationMs*0.9*1000) ){
                 return 0;
             }else{
-                float bufferDurationIntervalUs=((DEFAULT_BUFFER_DURATION_MS-DEFAULT_RESERVOIR_DURATION_MS)/(formatsLen-1))*1000;
-                Log.e("ashkan_video", "index: "+(formatsLen-2-((int)((bufferedDurationUs-(DEFAULT_RESERVOIR_DURATION_MS*1000))/bufferDurationIntervalUs))));
+                float bufferDurationIntervalUs=((bufferDurationMs-reservoirDurationMs)/(formatsLen-1))*1000;
+                if(loggingEnabled){
+                    Log.e("ashkan_video", "index: "+(formatsLen-2-((int)((bufferedDurationUs-(reservoirDurationMs*1000L))/bufferDurationIntervalUs))));
+                }
 
-                return formatsLen-2-(int)((bufferedDurationUs-(DEFAULT_RESERVOIR_DURATION_MS*1000))/bufferDurationIntervalUs);
+                return formatsLen-2-(int)((bufferedDurationUs-(reservoirDurationMs*1000L))/bufferDurationIntervalUs);
             }
         }
 
         //this is described in section 6 and it is for start-up phase
         private int bufferToStartupCoeff(long bufferedDurationUs){
-            if(bufferedDurationUs>DEFAULT_BUFFER_DURATION_MS*0.9*1000){
+            if(bufferedDurationUs>bufferDurationMs*0.9*1000){
                 return 2;
-            }else if(bufferedDurationUs>DEFAULT_RESERVOIR_DURATION_MS*1000){
+            }else if(bufferedDurationUs>reservoirDurationMs*1000L){
                 return 4;
             }else{
                 return 8;
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.demo;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.ArrayList;
+
+/**
+ * The cartesian product of a number of named parameter axes. Each combination of values is
+ * identified by an index in the range {@code [0, getSize())}, with the last axis varying fastest.
+ */
+public final class ParameterGrid {
+
+  /**
+   * Builds a {@link ParameterGrid}.
+   */
+  public static final class Builder {
+
+    private final ArrayList<String> names;
+    private final ArrayList<double[]> values;
+
+    public Builder() {
+      names = new ArrayList<>();
+      values = new ArrayList<>();
+    }
+
+    /**
+     * Adds an axis taking the specified values.
+     *
+     * @param name The name of the parameter.
+     * @param axisValues The values of the parameter. Must not be empty.
+     * @return This builder.
+     */
+    public Builder addAxis(String name, double... axisValues) {
+      Assertions.checkArgument(axisValues.length > 0);
+      names.add(name);
+      values.add(axisValues.clone());
+      return this;
+    }
+
+    /**
+     * Adds an axis taking {@code count} evenly spaced values from {@code min} to {@code max}
+     * inclusive.
+     *
+     * @param name The name of the parameter.
+     * @param min The first value.
+     * @param max The last value.
+     * @param count The number of values.
+     * @return This builder.
+     */
+    public Builder addLinearAxis(String name, double min, double max, int count) {
+      Assertions.checkArgument(count > 0);
+      double[] axisValues = new double[count];
+      for (int i = 0; i < count; i++) {
+        axisValues[i] = count == 1 ? min : min + (max - min) * i / (count - 1);
+      }
+      return addAxis(name, axisValues);
+    }
+
+    public ParameterGrid build() {
+      return new ParameterGrid(names.toArray(new String[names.size()]),
+          values.toArray(new double[values.size()][]));
+    }
+
+  }
+
+  private final String[] names;
+  private final double[][] values;
+  private final int size;
+
+  private ParameterGrid(String[] names, double[][] values) {
+    this.names = names;
+    this.values = values;
+    long size = 1;
+    for (double[] axisValues : values) {
+      size *= axisValues.length;
+      Assertions.checkArgument(size <= Integer.MAX_VALUE);
+    }
+    this.size = (int) size;
+  }
+
+  /**
+   * Returns the number of axes.
+   */
+  public int getAxisCount() {
+    return names.length;
+  }
+
+  /**
+   * Returns the name of the specified axis.
+   */
+  public String getAxisName(int axis) {
+    return names[axis];
+  }
+
+  /**
+   * Returns the number of parameter combinations.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the parameter values of a combination.
+   *
+   * @param index The index of the combination.
+   * @return The value of each axis, in the order in which the axes were added.
+   */
+  public double[] getValues(int index) {
+    Assertions.checkArgument(index >= 0 && index < size);
+    double[] result = new double[values.length];
+    for (int axis = values.length - 1; axis >= 0; axis--) {
+      int axisLength = values[axis].length;
+      result[axis] = values[axis][index % axisLength];
+      index /= axisLength;
+    }
+    return result;
+  }
+
+}
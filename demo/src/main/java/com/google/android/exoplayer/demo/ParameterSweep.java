@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.demo;
+
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.simulation.AbrSimulator;
+import com.google.android.exoplayer.simulation.BandwidthTrace;
+import com.google.android.exoplayer.simulation.SimulationResult;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.Assertions;
+
+import android.annotation.TargetApi;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an {@link AbrSimulator} for every parameter combination of a {@link ParameterGrid}, across
+ * a corpus of {@link BandwidthTrace}s, and ranks the combinations by an {@link Objective}.
+ * <p>
+ * Combinations are fanned out across a {@link ForkJoinPool}. Each trace is replayed from a number
+ * of start offsets drawn from a seeded random number generator. The same offsets are used for
+ * every combination, so that all combinations are compared on identical network conditions and a
+ * sweep is reproducible from its seed regardless of the number of threads used to run it.
+ * <p>
+ * This class is intended to be run on a development machine rather than on a device.
+ */
+@TargetApi(21)
+public final class ParameterSweep {
+
+  /**
+   * Creates evaluators for a parameter combination.
+   */
+  public interface EvaluatorFactory {
+
+    /**
+     * Creates an evaluator for a new session. Called concurrently from several threads.
+     *
+     * @param bandwidthMeter The meter that will provide the session's bandwidth estimates.
+     * @param parameters The parameter values of the combination, in the order of the axes of the
+     *     {@link ParameterGrid}.
+     * @return The evaluator.
+     */
+    FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter, double[] parameters);
+
+  }
+
+  /**
+   * Scores a simulated session. Higher scores are better.
+   */
+  public interface Objective {
+
+    /**
+     * Scores a session.
+     *
+     * @param result The metrics of the session.
+     * @return The score.
+     */
+    double score(SimulationResult result);
+
+  }
+
+  /**
+   * A linear quality of experience objective, which rewards bitrate and penalizes switching and
+   * stalls. Penalties are expressed in kilobits per second so that they can be traded off directly
+   * against bitrate, and are averaged per segment.
+   */
+  public static final class QoeObjective implements Objective {
+
+    public static final double DEFAULT_SWITCHING_PENALTY_KBPS = 500;
+    public static final double DEFAULT_STALL_PENALTY_KBPS = 4300;
+
+    private final double switchingPenaltyKbps;
+    private final double stallPenaltyKbps;
+
+    public QoeObjective() {
+      this(DEFAULT_SWITCHING_PENALTY_KBPS, DEFAULT_STALL_PENALTY_KBPS);
+    }
+
+    /**
+     * @param switchingPenaltyKbps The penalty for each ladder step switched.
+     * @param stallPenaltyKbps The penalty for each second of startup delay or rebuffering.
+     */
+    public QoeObjective(double switchingPenaltyKbps, double stallPenaltyKbps) {
+      this.switchingPenaltyKbps = switchingPenaltyKbps;
+      this.stallPenaltyKbps = stallPenaltyKbps;
+    }
+
+    @Override
+    public double score(SimulationResult result) {
+      if (result.segmentCount == 0) {
+        return 0;
+      }
+      double stallSeconds = (result.durationRebufferingMs + result.startupDelayMs) / 1000.0;
+      return result.avgBitrate
+          - (switchingPenaltyKbps * result.magSwitching + stallPenaltyKbps * stallSeconds)
+          / result.segmentCount;
+    }
+
+  }
+
+  public static final int DEFAULT_SESSIONS_PER_TRACE = 4;
+
+  private static final int COMBINATIONS_PER_TASK = 8;
+
+  private static final Comparator<SweepResult> SCORE_COMPARATOR = new Comparator<SweepResult>() {
+    @Override
+    public int compare(SweepResult a, SweepResult b) {
+      int result = Double.compare(b.score, a.score);
+      return result != 0 ? result : a.index - b.index;
+    }
+  };
+
+  private final AbrSimulator simulator;
+  private final BandwidthTrace[] sessionTraces;
+  private final long[] sessionOffsetsUs;
+
+  /**
+   * @param simulator The simulator to run.
+   * @param traces The corpus of traces.
+   * @param sessionsPerTrace The number of sessions to simulate per trace and combination. The
+   *     first session of each trace starts at the beginning of the trace.
+   * @param seed The seed from which the start offsets of the remaining sessions are drawn.
+   */
+  public ParameterSweep(AbrSimulator simulator, List<BandwidthTrace> traces, int sessionsPerTrace,
+      long seed) {
+    Assertions.checkArgument(!traces.isEmpty() && sessionsPerTrace > 0);
+    this.simulator = simulator;
+    int sessionCount = traces.size() * sessionsPerTrace;
+    sessionTraces = new BandwidthTrace[sessionCount];
+    sessionOffsetsUs = new long[sessionCount];
+    Random random = new Random(seed);
+    for (int i = 0; i < sessionCount; i++) {
+      BandwidthTrace trace = traces.get(i / sessionsPerTrace);
+      sessionTraces[i] = trace;
+      sessionOffsetsUs[i] = i % sessionsPerTrace == 0 ? 0
+          : (long) (random.nextDouble() * trace.getDurationUs());
+    }
+  }
+
+  /**
+   * Returns the number of sessions simulated for each combination.
+   */
+  public int getSessionCount() {
+    return sessionTraces.length;
+  }
+
+  /**
+   * Runs the sweep using one thread per available processor.
+   *
+   * @see #run(ParameterGrid, EvaluatorFactory, Objective, int)
+   */
+  public SweepResult[] run(ParameterGrid grid, EvaluatorFactory evaluatorFactory,
+      Objective objective) {
+    return run(grid, evaluatorFactory, objective, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Runs the sweep.
+   *
+   * @param grid The parameter combinations to simulate.
+   * @param evaluatorFactory Creates the evaluators for each combination.
+   * @param objective Scores the simulated sessions.
+   * @param parallelism The number of threads to use.
+   * @return The result of each combination, sorted into order of decreasing score. Combinations
+   *     with equal scores are ordered by index.
+   */
+  public SweepResult[] run(ParameterGrid grid, EvaluatorFactory evaluatorFactory,
+      Objective objective, int parallelism) {
+    SweepResult[] results = new SweepResult[grid.getSize()];
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new SweepTask(grid, evaluatorFactory, objective, results, 0, results.length));
+    } finally {
+      pool.shutdown();
+    }
+    Arrays.sort(results, SCORE_COMPARATOR);
+    return results;
+  }
+
+  /**
+   * Simulates all sessions for a single parameter combination, on the calling thread.
+   *
+   * @param grid The parameter grid.
+   * @param index The index of the combination.
+   * @param evaluatorFactory Creates the evaluators for the combination.
+   * @param objective Scores the simulated sessions.
+   * @return The result of the combination.
+   */
+  public SweepResult runCombination(ParameterGrid grid, int index,
+      final EvaluatorFactory evaluatorFactory, Objective objective) {
+    final double[] parameters = grid.getValues(index);
+    AbrSimulator.EvaluatorFactory sessionEvaluatorFactory = new AbrSimulator.EvaluatorFactory() {
+      @Override
+      public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+        return evaluatorFactory.createEvaluator(bandwidthMeter, parameters);
+      }
+    };
+    SimulationResult[] sessions = new SimulationResult[sessionTraces.length];
+    for (int i = 0; i < sessions.length; i++) {
+      sessions[i] = simulator.simulate(sessionTraces[i], sessionOffsetsUs[i],
+          sessionEvaluatorFactory);
+    }
+    return new SweepResult(index, parameters, sessions, objective);
+  }
+
+  /**
+   * Splits a range of combinations in half until it is small enough to simulate directly.
+   */
+  private final class SweepTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ParameterGrid grid;
+    private final EvaluatorFactory evaluatorFactory;
+    private final Objective objective;
+    private final SweepResult[] results;
+    private final int start;
+    private final int end;
+
+    public SweepTask(ParameterGrid grid, EvaluatorFactory evaluatorFactory, Objective objective,
+        SweepResult[] results, int start, int end) {
+      this.grid = grid;
+      this.evaluatorFactory = evaluatorFactory;
+      this.objective = objective;
+      this.results = results;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= COMBINATIONS_PER_TASK) {
+        for (int i = start; i < end; i++) {
+          results[i] = runCombination(grid, i, evaluatorFactory, objective);
+        }
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(new SweepTask(grid, evaluatorFactory, objective, results, start, middle),
+          new SweepTask(grid, evaluatorFactory, objective, results, middle, end));
+    }
+
+  }
+
+}
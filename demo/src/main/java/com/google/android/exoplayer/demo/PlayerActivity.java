@@ -23,6 +23,7 @@ import com.google.android.exoplayer.MediaCodecUtil.DecoderQueryException;
 import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.NewLogger;
 import com.google.android.exoplayer.SegmentLog;
+import com.google.android.exoplayer.TelemetryTraceWriter;
 import com.google.android.exoplayer.audio.AudioCapabilities;
 import com.google.android.exoplayer.audio.AudioCapabilitiesReceiver;
 import com.google.android.exoplayer.demo.Log.BandwidthLogData;
@@ -159,6 +160,8 @@ public class PlayerActivity extends Activity implements SurfaceHolder.Callback,
   private int id;
   private String tag;
   private SessionTimer sessionTimer;
+  private File traceFile;
+  private TelemetryTraceWriter traceWriter;
 
   private CompetingFlowClient cfClient;
 
@@ -287,6 +290,7 @@ public class PlayerActivity extends Activity implements SurfaceHolder.Callback,
       cfClient.sendMessage(CompetingFlowClient.MSG_TYPE_IPERF_END);
     //setResult(-1);
     releasePlayer();
+    closeTraceWriter();
     //finish();
   }
 
@@ -383,6 +387,7 @@ public class PlayerActivity extends Activity implements SurfaceHolder.Callback,
       mediaController.setEnabled(true);
       eventLogger = new EventLogger();
       eventLogger.startSession();
+      startTraceWriter();
       player.addListener(eventLogger);
       player.setInfoListener(eventLogger);
       player.setInternalErrorListener(eventLogger);
@@ -447,11 +452,39 @@ public class PlayerActivity extends Activity implements SurfaceHolder.Callback,
     }
     return -1;
   }
+  private void startTraceWriter(){
+    if(traceWriter != null)
+      return;
+    File traceDir = new File(Environment.getExternalStorageDirectory() + "/DASH_LOG/tmpTrace");
+    if(!traceDir.exists())
+      traceDir.mkdirs();
+    traceFile = new File(traceDir, id + ".trace");
+    try {
+      traceWriter = new TelemetryTraceWriter(NewLogger.getRecorder(), traceFile);
+      traceWriter.start();
+    } catch (IOException e) {
+      Log.e("LLEEJ", "Failed to open trace file " + traceFile, e);
+      traceFile = null;
+    }
+  }
+
+  private void closeTraceWriter(){
+    if(traceWriter == null)
+      return;
+    try {
+      traceWriter.close();
+    } catch (IOException e) {
+      Log.e("LLEEJ", "Failed to close trace file " + traceFile, e);
+    }
+    traceWriter = null;
+  }
+
   private void doFinalLogging(){
     //Log.d("LLEEJ1", "PlayerActivity,doFinalLogging() : " + logList.size());
     //eventLogger.updateNewLogDataList(logList);
-    eventLogger.updateNewSegmentLogList(NewLogger.getSegmentLogList());
-    eventLogger.updateNewByteLogList(NewLogger.getByteLogList());
+    closeTraceWriter();
+    if(traceFile != null)
+      eventLogger.updateNewTraceFile(traceFile);
     ArrayList<SegmentLog> segmentLogList = NewLogger.getSegmentLogList();
     NewLogger.init();
 
@@ -470,19 +503,19 @@ public class PlayerActivity extends Activity implements SurfaceHolder.Callback,
     SegmentLog preLog = null;
 
     for(SegmentLog log : segmentLogList){
-      newScore.avgBitrate += log.bitrate;
-      if(preLog != null && preLog.bitrate != log.bitrate){
+      newScore.avgBitrate += log.getBitrate();
+      if(preLog != null && preLog.getBitrate() != log.getBitrate()){
         newScore.numSwitching++;
-        Log.d("LLEEJ, magSwitching", "bitrate : " + log.bitrate + " , idx : " + bitrateToIdx(log.bitrate));
-        Log.d("LLEEJ, magSwitching", "bitrate : " + preLog.bitrate + " , idx : " + bitrateToIdx(preLog.bitrate));
-        newScore.magSwitching += Math.abs(bitrateToIdx(log.bitrate) - bitrateToIdx(preLog.bitrate));
+        Log.d("LLEEJ, magSwitching", "bitrate : " + log.getBitrate() + " , idx : " + bitrateToIdx(log.getBitrate()));
+        Log.d("LLEEJ, magSwitching", "bitrate : " + preLog.getBitrate() + " , idx : " + bitrateToIdx(preLog.getBitrate()));
+        newScore.magSwitching += Math.abs(bitrateToIdx(log.getBitrate()) - bitrateToIdx(preLog.getBitrate()));
       }
       preLog = log;
     }
     newScore.avgBitrate /= segmentLogList.size();
 
     for(SegmentLog log : segmentLogList){
-      newScore.varBitrate += (log.bitrate - newScore.avgBitrate) * (log.bitrate - newScore.avgBitrate);
+      newScore.varBitrate += (log.getBitrate() - newScore.avgBitrate) * (log.getBitrate() - newScore.avgBitrate);
     }
     newScore.varBitrate /= (segmentLogList.size()-1);
 
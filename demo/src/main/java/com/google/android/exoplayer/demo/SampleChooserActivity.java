@@ -15,8 +15,7 @@
  */
 package com.google.android.exoplayer.demo;
 
-import com.google.android.exoplayer.ByteLog;
-import com.google.android.exoplayer.SegmentLog;
+import com.google.android.exoplayer.TelemetryTraceReader;
 import com.google.android.exoplayer.demo.Log.Bytes;
 import com.google.android.exoplayer.demo.Log.LogData;
 import com.google.android.exoplayer.demo.Log.Score;
@@ -46,21 +45,23 @@ import android.widget.TextView;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -267,6 +268,82 @@ public class SampleChooserActivity extends Activity implements View.OnClickListe
 
 
 
+  private void deleteTempTraceFiles(){
+    File baseDir = new File(Environment.getExternalStorageDirectory() + "/DASH_LOG/tmpTrace");
+    File[] list = baseDir.listFiles();
+    if(list != null) {
+      for (int i = 0; i < list.length; i++){
+        list[i].delete();
+      }
+    }
+  }
+
+  // Writes the rows around each bitrate switch of a "requestedTime,bitrate" segment column.
+  private static void writeSwitchColumn(File segmentColumnFile, File switchColumnFile)
+      throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(segmentColumnFile));
+    PrintWriter writer = new PrintWriter(switchColumnFile);
+    try {
+      String pre = null;
+      String line;
+      while((line = reader.readLine()) != null){
+        if(pre != null){
+          String preBitrate = pre.substring(pre.indexOf(',') + 1);
+          String bitrate = line.substring(line.indexOf(',') + 1);
+          if(!preBitrate.equals(bitrate)){
+            writer.println(pre);
+            writer.println(line.substring(0, line.indexOf(',')) + "," + preBitrate);
+            writer.println(line);
+          }
+        }
+        pre = line;
+      }
+    } finally {
+      reader.close();
+      writer.close();
+    }
+  }
+
+  // Writes the column files side by side, reading one line of each file at a time.
+  private static void mergeColumns(List<File> columnFiles, String cellSuffix, String emptyCell,
+      PrintWriter printWriter) throws IOException {
+    BufferedReader[] readers = new BufferedReader[columnFiles.size()];
+    try {
+      for(int i = 0; i < readers.length; i++){
+        readers[i] = new BufferedReader(new FileReader(columnFiles.get(i)));
+      }
+      StringBuilder line = new StringBuilder();
+      while(true){
+        line.setLength(0);
+        int completed = 0;
+        for(int i = 0; i < readers.length; i++){
+          String cell = readers[i] == null ? null : readers[i].readLine();
+          if(cell == null){
+            if(readers[i] != null){
+              readers[i].close();
+              readers[i] = null;
+            }
+            completed++;
+            line.append(emptyCell);
+          }
+          else{
+            line.append(cell).append(cellSuffix);
+          }
+          if(i != readers.length - 1)
+            line.append(',');
+        }
+        if(completed == readers.length)
+          break;
+        printWriter.println(line);
+      }
+    } finally {
+      for(BufferedReader reader : readers){
+        if(reader != null)
+          reader.close();
+      }
+    }
+  }
+
   private void writeLogToDevice(){
 //    if(wholeLogList.size() == 0) {
 //      startButton.setEnabled(true);
@@ -297,86 +374,43 @@ public class SampleChooserActivity extends Activity implements View.OnClickListe
     File newByteLogFile = null;
 
     try {
+      //Convert each session's trace into per-session column files, streaming from disk
+      ArrayList<File> traceFiles = EventLogger.getTraceFileList();
+      File traceDir = new File(Environment.getExternalStorageDirectory() + "/DASH_LOG/tmpTrace");
+      ArrayList<File> switchColumnFiles = new ArrayList<File>();
+      ArrayList<File> segmentColumnFiles = new ArrayList<File>();
+      ArrayList<File> byteColumnFiles = new ArrayList<File>();
+      for(int i = 0; i < traceFiles.size(); i++){
+        File segmentColumnFile = new File(traceDir, i + "_segment.csv");
+        File byteColumnFile = new File(traceDir, i + "_byte.csv");
+        File switchColumnFile = new File(traceDir, i + "_switch.csv");
+        Writer segmentWriter = new BufferedWriter(new FileWriter(segmentColumnFile));
+        Writer byteWriter = new BufferedWriter(new FileWriter(byteColumnFile));
+        try {
+          TelemetryTraceReader.convertToCsv(traceFiles.get(i), segmentWriter, byteWriter);
+        } finally {
+          segmentWriter.close();
+          byteWriter.close();
+        }
+        writeSwitchColumn(segmentColumnFile, switchColumnFile);
+        switchColumnFiles.add(switchColumnFile);
+        segmentColumnFiles.add(segmentColumnFile);
+        byteColumnFiles.add(byteColumnFile);
+        traceFiles.get(i).renameTo(new File(baseDir, fileName + "_" + i + ".trace"));
+      }
 
       //LogFile
       newFile = new File(baseDir.getPath()+"/"+fileName+".csv");
       newFile.createNewFile();
       PrintWriter printWriter = new PrintWriter(newFile);
-
-      //ArrayList<ArrayList<LogData>> totalList = EventLogger.getLogDataList();
-
-      ArrayList<ArrayList<SegmentLog>> totalList = EventLogger.getSegmentLogList();
-      ArrayList<ArrayList<SegmentLog>> tempList = new ArrayList<ArrayList<SegmentLog>>();
-
-      for(ArrayList<SegmentLog> segmentLogList : totalList){
-        SegmentLog pre = null;
-        ArrayList<SegmentLog> list = new ArrayList<SegmentLog>();
-        for(SegmentLog log : segmentLogList){
-          if(pre != null){
-            if(pre.bitrate != log.bitrate){
-              list.add(pre);
-              list.add(new SegmentLog(-1, pre.bitrate,log.requestedTime));
-              list.add(log);
-            }
-          }
-          pre = log;
-        }
-        tempList.add(list);
-      }
-      int cursor = 0;
-      HashSet<Integer> completedSet = new HashSet<Integer>();
-      while(true){
-        String line = "";
-        if(completedSet.size() == tempList.size())
-          break;
-        for(int i = 0; i < tempList.size(); i ++){
-          if(completedSet.contains(i)){
-            line += ",,";
-            continue;
-          }
-          if(tempList.get(i).size() == cursor){
-            completedSet.add(i);
-            line += ",,";
-            continue;
-          }
-          SegmentLog log = tempList.get(i).get(cursor);
-          line += log.requestedTime + "," + log.bitrate + ",";
-        }
-        line = line.substring(0, line.length() - 1);
-        printWriter.println(line);
-        cursor++;
-      }
+      mergeColumns(switchColumnFiles, "", ",", printWriter);
       printWriter.close();
 
       segmentInfoFile = new File(baseDir.getPath()+"/"+fileName+"_Summary.csv");
       segmentInfoFile.createNewFile();
 
       printWriter = new PrintWriter(segmentInfoFile);
-      ArrayList<ArrayList<SegmentLog>> segmentLogList = EventLogger.getSegmentLogList();
-
-      int cursor1 = 0;
-      HashSet<Integer> completedSet1 = new HashSet<Integer>();
-      while(true){
-        String line = "";
-        if(completedSet1.size() == segmentLogList.size())
-          break;
-        for(int i = 0; i < segmentLogList.size(); i ++){
-          if(completedSet1.contains(i)){
-            line += ",,,";
-            continue;
-          }
-          if(segmentLogList.get(i).size() == cursor1){
-            completedSet1.add(i);
-            line += ",,,";
-            continue;
-          }
-          SegmentLog log = segmentLogList.get(i).get(cursor1);
-          line += log.requestedTime + "," + log.bitrate + "," + ",";
-       }
-        line = line.substring(0, line.length() - 1);
-        printWriter.println(line);
-        cursor1++;
-      }
+      mergeColumns(segmentColumnFiles, ",", ",,", printWriter);
 
       printWriter.println();
       printWriter.println();
@@ -422,32 +456,9 @@ public class SampleChooserActivity extends Activity implements View.OnClickListe
       newByteLogFile.createNewFile();
 
       printWriter = new PrintWriter(newByteLogFile);
-      ArrayList<ArrayList<ByteLog>> newByteLogList = EventLogger.getBytesLogList();
-
-      int cursor2 = 0;
-      HashSet<Integer> completedSet2 = new HashSet<Integer>();
-      while(true){
-        String line = "";
-        if(completedSet2.size() == newByteLogList.size())
-          break;
-        for(int i = 0; i < newByteLogList.size(); i ++){
-          if(completedSet2.contains(i)){
-            line += ",,,";
-            continue;
-          }
-          if(newByteLogList.get(i).size() == cursor2){
-            completedSet2.add(i);
-            line += ",,,";
-            continue;
-          }
-          ByteLog log = newByteLogList.get(i).get(cursor2);
-          line += log.endTime + "," + log.bytes + "," + ",";
-        }
-        line = line.substring(0, line.length() - 1);
-        printWriter.println(line);
-        cursor2++;
-      }
+      mergeColumns(byteColumnFiles, ",", ",,", printWriter);
       printWriter.close();
+      deleteTempTraceFiles();
 
       //Bytes Data
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.demo;
+
+import com.google.android.exoplayer.simulation.SimulationResult;
+
+import java.util.Arrays;
+
+/**
+ * The metrics of one parameter combination of a {@link ParameterSweep}, averaged over all of the
+ * sessions simulated for it. See {@link SimulationResult} for the definition of each metric.
+ */
+public final class SweepResult {
+
+  /**
+   * The index of the combination in the {@link ParameterGrid}.
+   */
+  public final int index;
+  /**
+   * The parameter values of the combination.
+   */
+  public final double[] parameters;
+  /**
+   * The number of sessions simulated.
+   */
+  public final int sessionCount;
+  public final double avgBitrate;
+  public final double varBitrate;
+  public final double numSwitching;
+  public final double magSwitching;
+  public final double numRebuffering;
+  public final double durationRebufferingMs;
+  public final double startupDelayMs;
+  /**
+   * The score assigned by the sweep's {@link ParameterSweep.Objective}. Higher is better.
+   */
+  public final double score;
+
+  /* package */ SweepResult(int index, double[] parameters, SimulationResult[] sessions,
+      ParameterSweep.Objective objective) {
+    this.index = index;
+    this.parameters = parameters;
+    this.sessionCount = sessions.length;
+    double avgBitrate = 0;
+    double varBitrate = 0;
+    double numSwitching = 0;
+    double magSwitching = 0;
+    double numRebuffering = 0;
+    double durationRebufferingMs = 0;
+    double startupDelayMs = 0;
+    double score = 0;
+    for (SimulationResult session : sessions) {
+      avgBitrate += session.avgBitrate;
+      varBitrate += session.varBitrate;
+      numSwitching += session.numSwitching;
+      magSwitching += session.magSwitching;
+      numRebuffering += session.numRebuffering;
+      durationRebufferingMs += session.durationRebufferingMs;
+      startupDelayMs += session.startupDelayMs;
+      score += objective.score(session);
+    }
+    int count = Math.max(1, sessions.length);
+    this.avgBitrate = avgBitrate / count;
+    this.varBitrate = varBitrate / count;
+    this.numSwitching = numSwitching / count;
+    this.magSwitching = magSwitching / count;
+    this.numRebuffering = numRebuffering / count;
+    this.durationRebufferingMs = durationRebufferingMs / count;
+    this.startupDelayMs = startupDelayMs / count;
+    this.score = score / count;
+  }
+
+  @Override
+  public String toString() {
+    return "SweepResult[" + index + ", " + Arrays.toString(parameters) + ", " + score + ", "
+        + avgBitrate + ", " + varBitrate + ", " + numSwitching + ", " + magSwitching + ", "
+        + numRebuffering + ", " + durationRebufferingMs + ", " + startupDelayMs + "]";
+  }
+
+}
@@ -130,7 +130,11 @@ public class DashRendererBuilder implements RendererBuilder {
       this.player = player;
       this.selectedMode = selectedMode;
 
-      MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+      // Whether the manifest is live is only known once it has been parsed, so every manifest is
+      // parsed incrementally. Live manifests are refreshed repeatedly and reuse the Periods that are
+      // unchanged between refreshes. A static manifest is parsed once and has nothing to reuse.
+      MediaPresentationDescriptionParser parser =
+          new MediaPresentationDescriptionParser(null, true);
       //LLEEJ : DataSource
       manifestDataSource = new DefaultUriDataSource(context, userAgent);
       //LLEEJ : ManifestFetcher가 DataSource를 총체적으로 관리
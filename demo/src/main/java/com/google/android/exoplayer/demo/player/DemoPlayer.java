@@ -104,7 +104,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
 
 
   public interface BytesListener {
-    void onBytesTransferred(int elapsedMs, long bytes);
+    void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs, long lastReadTimeMs);
   }
 
 
@@ -146,7 +146,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     void onSwitchToSteadyState(long elapsedMs);
     void onAllChunksDownloaded(long totalBytes);
     void onBufferLoadChanged(long bufferDurationMs);
-    void onBytesTransferred(int elpasedMs, long bytes);
+    void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs, long lastReadTimeMs);
     void onGetRequestPatched(long elapsedMs);
   }
 
@@ -492,9 +492,10 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
   }
 
   @Override
-  public void onBytesTransferred(int elapsedMs, long bytes) {
+  public void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs,
+      long lastReadTimeMs) {
     if (infoListener != null) {
-      infoListener.onBytesTransferred(elapsedMs, bytes);
+      infoListener.onBytesTransferred(readCount, bytes, firstReadTimeMs, lastReadTimeMs);
     }
   }
 
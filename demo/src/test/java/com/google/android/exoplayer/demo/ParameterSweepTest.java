@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.demo;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.simulation.AbrSimulator;
+import com.google.android.exoplayer.simulation.BandwidthTrace;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unit test for {@link ParameterSweep} and {@link ParameterGrid}.
+ */
+public class ParameterSweepTest extends TestCase {
+
+  private static final Format[] FORMATS = new Format[] {
+      new Format("0", MimeTypes.VIDEO_MP4, 1280, 720, -1, -1, -1, 2000000),
+      new Format("1", MimeTypes.VIDEO_MP4, 854, 480, -1, -1, -1, 1000000),
+      new Format("2", MimeTypes.VIDEO_MP4, 640, 360, -1, -1, -1, 500000)};
+
+  private static final ParameterSweep.EvaluatorFactory FACTORY =
+      new ParameterSweep.EvaluatorFactory() {
+        @Override
+        public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter,
+            double[] parameters) {
+          return new AdaptiveEvaluator(bandwidthMeter,
+              AdaptiveEvaluator.DEFAULT_MAX_INITIAL_BITRATE,
+              (int) parameters[0],
+              AdaptiveEvaluator.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+              AdaptiveEvaluator.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+              (float) parameters[1]);
+        }
+      };
+
+  public void testGridIndexing() {
+    ParameterGrid grid = new ParameterGrid.Builder()
+        .addAxis("a", 1, 2)
+        .addLinearAxis("b", 0, 1, 3)
+        .build();
+    assertEquals(6, grid.getSize());
+    assertEquals("b", grid.getAxisName(1));
+    assertTrue(Arrays.equals(new double[] {1, 0}, grid.getValues(0)));
+    assertTrue(Arrays.equals(new double[] {1, 0.5}, grid.getValues(1)));
+    assertTrue(Arrays.equals(new double[] {2, 1}, grid.getValues(5)));
+  }
+
+  public void testResultsAreRankedByScore() {
+    SweepResult[] results = buildSweep(1).run(buildGrid(), FACTORY,
+        new ParameterSweep.QoeObjective(), 2);
+    assertEquals(buildGrid().getSize(), results.length);
+    for (int i = 1; i < results.length; i++) {
+      assertTrue(results[i - 1].score >= results[i].score);
+    }
+  }
+
+  public void testSweepIsReproducibleAcrossParallelism() {
+    ParameterSweep.Objective objective = new ParameterSweep.QoeObjective();
+    SweepResult[] serial = buildSweep(7).run(buildGrid(), FACTORY, objective, 1);
+    SweepResult[] parallel = buildSweep(7).run(buildGrid(), FACTORY, objective, 4);
+    assertEquals(Arrays.toString(serial), Arrays.toString(parallel));
+  }
+
+  private static ParameterGrid buildGrid() {
+    return new ParameterGrid.Builder()
+        .addLinearAxis("minDurationForQualityIncreaseMs", 2000, 20000, 4)
+        .addLinearAxis("bandwidthFraction", 0.5, 1.0, 5)
+        .build();
+  }
+
+  private static ParameterSweep buildSweep(long seed) {
+    ArrayList<BandwidthTrace> traces = new ArrayList<>();
+    traces.add(buildTrace(new long[] {100, 900, 1000, 2500}, 50000));
+    traces.add(buildTrace(new long[] {100, 200, 300, 400}, 18750));
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    return new ParameterSweep(simulator, traces, 3, seed);
+  }
+
+  private static BandwidthTrace buildTrace(long[] timesMs, int bytesPerSample) {
+    int[] bytes = new int[timesMs.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = bytesPerSample;
+    }
+    return new BandwidthTrace(timesMs, bytes, timesMs.length,
+        BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+  }
+
+}
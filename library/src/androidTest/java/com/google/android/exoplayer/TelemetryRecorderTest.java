@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit test for {@link TelemetryRecorder}.
+ */
+public class TelemetryRecorderTest extends TestCase {
+
+  public void testSegmentViews() {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4);
+    recorder.recordSegment(1, 500000, 2000000);
+    recorder.recordSegment(2, 1000000, 4000000);
+    assertTrue(recorder.updateSegmentLoadDuration(1, 1500));
+
+    ArrayList<SegmentLog> logs = recorder.getSegmentLogs();
+    assertEquals(2, logs.size());
+    assertEquals(1, logs.get(0).getIndex());
+    assertEquals(500.0, logs.get(0).getBitrate(), 0);
+    assertEquals("2.00", logs.get(0).getRequestedTime());
+    assertEquals("1.50", logs.get(0).getLoadDuration());
+    assertNull(logs.get(1).getLoadDuration());
+  }
+
+  public void testByteViewsAreRelativeToSessionStart() {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4);
+    recorder.setSessionStartTimeMs(1000);
+    recorder.recordBytes(1250, 4096);
+
+    ArrayList<ByteLog> logs = recorder.getByteLogs();
+    assertEquals(1, logs.size());
+    assertEquals(250, logs.get(0).getEndTimeMs());
+    assertEquals("0.250000", logs.get(0).getEndTime());
+    assertEquals(4096, logs.get(0).getBytes());
+  }
+
+  public void testChunkLoads() {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4, 2);
+    recorder.recordChunkLoad(-1, 2, 1, null, 100, 0, 10, 20, 30, 40, 50);
+    recorder.recordChunkLoad(7, 1, 3, null, 4096, 8000000, 100, 200, 300, 400, 500);
+    recorder.recordChunkLoad(8, 1, 3, null, 2048, 6000000, 600, 700, 800, 900, 1000);
+    assertEquals(3, recorder.getChunkLoadCount());
+    assertEquals(1, recorder.getOldestChunkLoadSequence());
+    assertFalse(recorder.isChunkLoadAvailable(0));
+    assertTrue(recorder.isChunkLoadAvailable(1));
+    assertEquals(7, recorder.getChunkLoadIndex(1));
+    assertEquals(1, recorder.getChunkLoadType(1));
+    assertEquals(3, recorder.getChunkLoadTrigger(1));
+    assertEquals(4096, recorder.getChunkLoadBytes(1));
+    assertEquals(8000000, recorder.getChunkLoadBufferedDurationUs(1));
+    assertEquals(100, recorder.getChunkLoadEvaluationTimeNs(1));
+    assertEquals(200, recorder.getChunkLoadStartTimeNs(1));
+    assertEquals(300, recorder.getChunkLoadFirstByteTimeNs(1));
+    assertEquals(400, recorder.getChunkLoadLastByteTimeNs(1));
+    assertEquals(500, recorder.getChunkLoadConsumeTimeNs(1));
+    assertEquals(8, recorder.getChunkLoadIndex(2));
+  }
+
+  public void testOldestSamplesAreOverwritten() {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4);
+    for (int i = 0; i < 6; i++) {
+      recorder.recordBytes(i, i);
+    }
+    assertEquals(6, recorder.getByteCount());
+    assertEquals(2, recorder.getOldestByteSequence());
+    assertFalse(recorder.isByteSampleAvailable(1));
+
+    ArrayList<ByteLog> logs = recorder.getByteLogs();
+    assertEquals(4, logs.size());
+    assertEquals(2, logs.get(0).getBytes());
+    assertEquals(5, logs.get(3).getBytes());
+  }
+
+  public void testLogsAreCopies() {
+    TelemetryRecorder recorder = new TelemetryRecorder(1, 1);
+    recorder.recordSegment(1, 500000, 2000000);
+    recorder.recordBytes(100, 1);
+    ArrayList<SegmentLog> segmentLogs = recorder.getSegmentLogs();
+    ArrayList<ByteLog> byteLogs = recorder.getByteLogs();
+    recorder.recordSegment(2, 1000000, 4000000);
+    recorder.recordBytes(200, 2);
+    assertEquals(1, segmentLogs.get(0).getIndex());
+    assertEquals(100, byteLogs.get(0).getEndTimeMs());
+    assertEquals(1, byteLogs.get(0).getBytes());
+  }
+
+  public void testLogsAreNotTornByConcurrentWriter() throws InterruptedException {
+    final TelemetryRecorder recorder = new TelemetryRecorder(4, 4);
+    final AtomicBoolean finished = new AtomicBoolean();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; !finished.get(); i++) {
+          recorder.recordBytes(i, i);
+        }
+      }
+    };
+    writer.start();
+    try {
+      for (int i = 0; i < 10000; i++) {
+        for (ByteLog log : recorder.getByteLogs()) {
+          assertEquals(log.getEndTimeMs(), log.getBytes());
+        }
+      }
+    } finally {
+      finished.set(true);
+      writer.join();
+    }
+  }
+
+  public void testConcurrentWriters() throws InterruptedException {
+    final TelemetryRecorder recorder = new TelemetryRecorder(4, 8192);
+    Thread[] writers = new Thread[4];
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            recorder.recordBytes(j, 1);
+          }
+        }
+      };
+      writers[i].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(4000, recorder.getByteCount());
+    assertEquals(4000, recorder.getByteLogs().size());
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.chunk.Format;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Unit test for {@link TelemetryTraceWriter} and {@link TelemetryTraceReader}.
+ */
+public class TelemetryTraceWriterTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("telemetry", ".trace");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testIncrementalDrainConvertsToCsv() throws IOException {
+    TelemetryRecorder recorder = new TelemetryRecorder(16, 16);
+    recorder.setSessionStartTimeMs(1000);
+    TelemetryTraceWriter writer = new TelemetryTraceWriter(recorder, file);
+    recorder.recordSegment(1, 500000, 2000000);
+    recorder.recordBytes(1500, 100);
+    writer.drain();
+    recorder.recordBytes(2000, 200);
+    recorder.recordSegment(2, 1000000, 4000000);
+    writer.close();
+
+    StringWriter segments = new StringWriter();
+    StringWriter bytes = new StringWriter();
+    TelemetryTraceReader.convertToCsv(file, segments, bytes);
+    assertEquals("2.00,500.0\n4.00,1000.0\n", segments.toString());
+    assertEquals("0.500000,100\n1.000000,200\n", bytes.toString());
+  }
+
+  public void testNewestSegmentWaitsForLoadDuration() throws IOException {
+    TelemetryRecorder recorder = new TelemetryRecorder(16, 16);
+    TelemetryTraceWriter writer = new TelemetryTraceWriter(recorder, file);
+    recorder.recordSegment(1, 500000, 2000000);
+    writer.drain();
+    recorder.updateSegmentLoadDuration(1, 1500);
+    recorder.recordSegment(2, 1000000, 4000000);
+    writer.drain();
+    recorder.recordSegment(3, 1000000, 6000000);
+    writer.close();
+
+    final StringBuilder segments = new StringBuilder();
+    TelemetryTraceReader reader = new TelemetryTraceReader(file);
+    reader.readAll(new TelemetryTraceReader.Output() {
+      @Override
+      public void onSessionStart(long sessionStartTimeMs) {}
+      @Override
+      public void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs) {
+        segments.append(index).append(',').append(loadDurationMs).append('\n');
+      }
+      @Override
+      public void onBytes(long timeMs, int bytes) {}
+      @Override
+      public void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+          long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs,
+          long firstByteTimeNs, long lastByteTimeNs, long consumeTimeNs) {}
+      @Override
+      public void onSamplesLost(int recordType, long count) {
+        fail();
+      }
+    });
+    reader.close();
+    // The load duration of segment 2 was never reported, so it is written once segment 3 is
+    // recorded. Segment 3 is written when the writer is closed.
+    assertEquals("1,1500\n2,-1\n3,-1\n", segments.toString());
+  }
+
+  public void testOverwrittenSamplesAreReportedAsLost() throws IOException {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4);
+    TelemetryTraceWriter writer = new TelemetryTraceWriter(recorder, file);
+    for (int i = 0; i < 10; i++) {
+      recorder.recordBytes(i, i);
+    }
+    writer.close();
+
+    final long[] lostAndRead = new long[2];
+    TelemetryTraceReader reader = new TelemetryTraceReader(file);
+    reader.readAll(new TelemetryTraceReader.Output() {
+      @Override
+      public void onSessionStart(long sessionStartTimeMs) {}
+      @Override
+      public void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs) {}
+      @Override
+      public void onBytes(long timeMs, int bytes) {
+        lostAndRead[1]++;
+      }
+      @Override
+      public void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+          long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs,
+          long firstByteTimeNs, long lastByteTimeNs, long consumeTimeNs) {}
+      @Override
+      public void onSamplesLost(int recordType, long count) {
+        assertEquals(TelemetryTraceWriter.RECORD_BYTES, recordType);
+        lostAndRead[0] += count;
+      }
+    });
+    reader.close();
+    assertEquals(6, lostAndRead[0]);
+    assertEquals(4, lostAndRead[1]);
+  }
+
+  public void testChunkLoadsAreDrained() throws IOException {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 4, 4);
+    TelemetryTraceWriter writer = new TelemetryTraceWriter(recorder, file);
+    Format format = new Format("1", "video/mp4", 480, 240, -1, -1, -1, 500000);
+    recorder.recordChunkLoad(-1, 2, 1, null, 100, 0, 10, 20, 30, 40, 50);
+    writer.drain();
+    recorder.recordChunkLoad(7, 1, 3, format, 4096, 8000000, 100, 200, 300, 400, 500);
+    writer.close();
+
+    final StringBuilder chunkLoads = new StringBuilder();
+    TelemetryTraceReader reader = new TelemetryTraceReader(file);
+    reader.readAll(new TelemetryTraceReader.Output() {
+      @Override
+      public void onSessionStart(long sessionStartTimeMs) {}
+      @Override
+      public void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs) {}
+      @Override
+      public void onBytes(long timeMs, int bytes) {}
+      @Override
+      public void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+          long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs,
+          long firstByteTimeNs, long lastByteTimeNs, long consumeTimeNs) {
+        chunkLoads.append(chunkIndex).append(',').append(type).append(',').append(trigger)
+            .append(',').append(bitrate).append(',').append(bytes).append(',')
+            .append(bufferedDurationUs).append(',').append(evaluationTimeNs).append(',')
+            .append(loadStartTimeNs).append(',').append(firstByteTimeNs).append(',')
+            .append(lastByteTimeNs).append(',').append(consumeTimeNs).append('\n');
+      }
+      @Override
+      public void onSamplesLost(int recordType, long count) {
+        fail();
+      }
+    });
+    reader.close();
+    assertEquals("-1,2,1,-1,100,0,10,20,30,40,50\n"
+        + "7,1,3,500000,4096,8000000,100,200,300,400,500\n", chunkLoads.toString());
+  }
+
+  public void testBatchesSpanBufferFlushes() throws IOException {
+    TelemetryRecorder recorder = new TelemetryRecorder(4, 1024);
+    TelemetryTraceWriter writer = new TelemetryTraceWriter(recorder, file, 64);
+    for (int i = 0; i < 1000; i++) {
+      recorder.recordBytes(i, 1);
+    }
+    writer.close();
+
+    StringWriter bytes = new StringWriter();
+    TelemetryTraceReader.convertToCsv(file, null, bytes);
+    assertEquals(1000, bytes.toString().split("\n").length);
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link Chunk}.
+ */
+public class ChunkTest extends TestCase {
+
+  public void testByteTimesBeforeLoad() {
+    TestDataChunk chunk = new TestDataChunk(new FakeDataSource.Builder()
+        .appendReadData(new byte[] {1}).build());
+    assertEquals(0, chunk.getFirstByteTimeNs());
+    assertEquals(0, chunk.getLastByteTimeNs());
+  }
+
+  public void testByteTimesAfterLoad() throws IOException, InterruptedException {
+    TestDataChunk chunk = new TestDataChunk(new FakeDataSource.Builder()
+        .appendReadData(new byte[] {1, 2, 3})
+        .appendReadData(new byte[] {4, 5, 6})
+        .build());
+    chunk.load();
+    assertEquals(6, chunk.bytesLoaded());
+    assertTrue(chunk.getFirstByteTimeNs() > 0);
+    assertTrue(chunk.getLastByteTimeNs() >= chunk.getFirstByteTimeNs());
+  }
+
+  private static final class TestDataChunk extends DataChunk {
+
+    public TestDataChunk(FakeDataSource dataSource) {
+      super(dataSource, new DataSpec(null, 0, C.LENGTH_UNBOUNDED, null), TYPE_UNSPECIFIED,
+          TRIGGER_UNSPECIFIED, null, NO_PARENT_ID, null);
+    }
+
+    @Override
+    protected void consume(byte[] data, int limit) {
+      // Do nothing.
+    }
+
+  }
+
+}
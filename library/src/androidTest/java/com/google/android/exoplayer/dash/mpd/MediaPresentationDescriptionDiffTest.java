@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit test for {@link MediaPresentationDescriptionDiff}.
+ */
+public class MediaPresentationDescriptionDiffTest extends TestCase {
+
+  private static final Period PERIOD_0 = buildPeriod("0", 0);
+  private static final Period PERIOD_1 = buildPeriod("1", 10000);
+  private static final Period PERIOD_2 = buildPeriod("2", 20000);
+  private static final Period PERIOD_3 = buildPeriod("3", 30000);
+
+  public void testIdenticalManifests() {
+    MediaPresentationDescription manifest = buildManifest(-1, PERIOD_0, PERIOD_1);
+    MediaPresentationDescriptionDiff diff = MediaPresentationDescriptionDiff.compute(manifest,
+        buildManifest(-1, PERIOD_0, PERIOD_1));
+    assertTrue(diff.isEmpty());
+    assertFalse(diff.isOutOfSync());
+    assertEquals(2, diff.retainedPeriodCount);
+    assertEquals(0, diff.getChangedPeriodCount());
+  }
+
+  public void testRemovedAndAddedPeriods() {
+    MediaPresentationDescriptionDiff diff = MediaPresentationDescriptionDiff.compute(
+        buildManifest(-1, PERIOD_0, PERIOD_1, PERIOD_2),
+        buildManifest(-1, PERIOD_1, PERIOD_2, PERIOD_3));
+    assertFalse(diff.isEmpty());
+    assertEquals(1, diff.removedPeriodCount);
+    assertEquals(2, diff.retainedPeriodCount);
+    assertEquals(1, diff.addedPeriodCount);
+    // The duration of the last retained period is now bounded by the start of the added period.
+    assertFalse(diff.isPeriodChanged(0));
+    assertTrue(diff.isPeriodChanged(1));
+    assertEquals(1, diff.getChangedPeriodCount());
+  }
+
+  public void testChangedPeriod() {
+    Period refreshedPeriod1 = buildPeriod("1", 10000);
+    MediaPresentationDescriptionDiff diff = MediaPresentationDescriptionDiff.compute(
+        buildManifest(-1, PERIOD_0, PERIOD_1), buildManifest(-1, PERIOD_0, refreshedPeriod1));
+    assertEquals(0, diff.removedPeriodCount);
+    assertEquals(0, diff.addedPeriodCount);
+    assertFalse(diff.isPeriodChanged(0));
+    assertTrue(diff.isPeriodChanged(1));
+  }
+
+  public void testChangedDuration() {
+    MediaPresentationDescriptionDiff diff = MediaPresentationDescriptionDiff.compute(
+        buildManifest(-1, PERIOD_0, PERIOD_1), buildManifest(40000, PERIOD_0, PERIOD_1));
+    assertFalse(diff.isPeriodChanged(0));
+    assertTrue(diff.isPeriodChanged(1));
+  }
+
+  public void testOutOfSync() {
+    MediaPresentationDescriptionDiff diff = MediaPresentationDescriptionDiff.compute(
+        buildManifest(-1, PERIOD_0, PERIOD_1, PERIOD_2), buildManifest(-1, PERIOD_0, PERIOD_1));
+    assertTrue(diff.isOutOfSync());
+    assertFalse(diff.isEmpty());
+  }
+
+  private static MediaPresentationDescription buildManifest(long durationMs, Period... periods) {
+    return new MediaPresentationDescription(0, durationMs, 0, true, 0, -1, null, null,
+        new ArrayList<>(Arrays.asList(periods)));
+  }
+
+  private static Period buildPeriod(String id, long startMs) {
+    List<AdaptationSet> adaptationSets = Collections.emptyList();
+    return new Period(id, startMs, adaptationSets);
+  }
+
+}
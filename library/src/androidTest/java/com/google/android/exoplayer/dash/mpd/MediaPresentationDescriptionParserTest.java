@@ -15,8 +15,11 @@
  */
 package com.google.android.exoplayer.dash.mpd;
 
+import com.google.android.exoplayer.dash.DashSegmentIndex;
+
 import android.test.InstrumentationTestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -26,6 +29,7 @@ import java.io.InputStream;
 public class MediaPresentationDescriptionParserTest extends InstrumentationTestCase {
 
   private static final String SAMPLE_MPD_1 = "dash/sample_mpd_1";
+  private static final String MANIFEST_URL = "https://example.com/test.mpd";
 
   public void testParseMediaPresentationDescription() throws IOException {
     MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
@@ -35,4 +39,111 @@ public class MediaPresentationDescriptionParserTest extends InstrumentationTestC
     parser.parse("https://example.com/test.mpd", inputStream);
   }
 
+  public void testIncrementalParseMatchesFullParse() throws IOException {
+    String manifest = buildLiveManifest(buildPeriod("0", 1000), buildPeriod("1", 2000));
+    MediaPresentationDescription expected =
+        new MediaPresentationDescriptionParser().parse(MANIFEST_URL, toInputStream(manifest));
+    MediaPresentationDescription actual = new MediaPresentationDescriptionParser(null, true)
+        .parse(MANIFEST_URL, toInputStream(manifest));
+
+    assertEquals(expected.getPeriodCount(), actual.getPeriodCount());
+    for (int i = 0; i < expected.getPeriodCount(); i++) {
+      Representation expectedRepresentation = getRepresentation(expected.getPeriod(i));
+      Representation actualRepresentation = getRepresentation(actual.getPeriod(i));
+      DashSegmentIndex expectedIndex = expectedRepresentation.getIndex();
+      DashSegmentIndex actualIndex = actualRepresentation.getIndex();
+      int firstSegmentNum = expectedIndex.getFirstSegmentNum();
+      int lastSegmentNum = expectedIndex.getLastSegmentNum(0);
+      assertEquals(firstSegmentNum, actualIndex.getFirstSegmentNum());
+      assertEquals(lastSegmentNum, actualIndex.getLastSegmentNum(0));
+      for (int segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+        long timeUs = expectedIndex.getTimeUs(segmentNum);
+        assertEquals(timeUs, actualIndex.getTimeUs(segmentNum));
+        assertEquals(expectedIndex.getDurationUs(segmentNum, 0),
+            actualIndex.getDurationUs(segmentNum, 0));
+        assertEquals(expectedIndex.getSegmentUrl(segmentNum).getUriString(),
+            actualIndex.getSegmentUrl(segmentNum).getUriString());
+        assertEquals(segmentNum, actualIndex.getSegmentNum(timeUs + 1, 0));
+        assertEquals(expectedIndex.getSegmentNum(timeUs + 1, 0),
+            actualIndex.getSegmentNum(timeUs + 1, 0));
+      }
+    }
+  }
+
+  public void testIncrementalParseReusesUnchangedPeriods() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser(null, true);
+    MediaPresentationDescription first = parser.parse(MANIFEST_URL,
+        toInputStream(buildLiveManifest(buildPeriod("0", 1000), buildPeriod("1", 2000))));
+    MediaPresentationDescription second = parser.parse(MANIFEST_URL,
+        toInputStream(buildLiveManifest(buildPeriod("0", 1000), buildPeriod("1", 2001))));
+
+    assertSame(first.getPeriod(0), second.getPeriod(0));
+    assertNotSame(first.getPeriod(1), second.getPeriod(1));
+    DashSegmentIndex index = getRepresentation(second.getPeriod(1)).getIndex();
+    assertEquals(2001, index.getLastSegmentNum(0) - index.getFirstSegmentNum() + 1);
+
+    // A Period is only reused if it's unchanged since the most recent parse.
+    MediaPresentationDescription third = parser.parse(MANIFEST_URL,
+        toInputStream(buildLiveManifest(buildPeriod("0", 1000), buildPeriod("1", 2000))));
+    assertSame(first.getPeriod(0), third.getPeriod(0));
+    assertNotSame(first.getPeriod(1), third.getPeriod(1));
+    // A Period isn't reused if its inherited base URL has changed.
+    MediaPresentationDescription fourth = parser.parse("https://example.org/test.mpd",
+        toInputStream(buildLiveManifest(buildPeriod("0", 1000), buildPeriod("1", 2000))));
+    assertNotSame(first.getPeriod(0), fourth.getPeriod(0));
+  }
+
+  private static Representation getRepresentation(Period period) {
+    return period.adaptationSets.get(0).representations.get(0);
+  }
+
+  private static InputStream toInputStream(String manifest) {
+    return new ByteArrayInputStream(manifest.getBytes());
+  }
+
+  private static String buildLiveManifest(String... periods) {
+    StringBuilder builder = new StringBuilder()
+        .append("<?xml version=\"1.0\"?>\n")
+        .append("<MPD type=\"dynamic\" availabilityStartTime=\"2015-01-01T00:00:00Z\"")
+        .append(" minimumUpdatePeriod=\"PT2S\" timeShiftBufferDepth=\"PT4H\">\n");
+    for (String period : periods) {
+      builder.append(period);
+    }
+    return builder.append("</MPD>\n").toString();
+  }
+
+  /**
+   * Builds a Period whose timeline has the specified number of segments, in runs of alternating
+   * durations that exercise explicit start times and repeat counts.
+   */
+  private static String buildPeriod(String id, int segmentCount) {
+    StringBuilder builder = new StringBuilder()
+        .append("<Period id=\"").append(id).append("\" start=\"PT").append(id).append("H\">\n")
+        .append("<AdaptationSet mimeType=\"video/mp4\">\n")
+        .append("<SegmentTemplate timescale=\"90000\" media=\"$Time$.m4s\" startNumber=\"10\">")
+        .append("<SegmentTimeline>");
+    int segmentIndex = 0;
+    long time = 1234;
+    boolean explicitTime = true;
+    while (segmentIndex < segmentCount) {
+      int repeatCount = Math.min(segmentCount - segmentIndex, 1 + segmentIndex % 7) - 1;
+      long duration = segmentIndex % 2 == 0 ? 180000 : 179999;
+      builder.append("<S");
+      if (explicitTime) {
+        builder.append(" t=\"").append(time).append('"');
+      }
+      builder.append(" d=\"").append(duration).append('"');
+      if (repeatCount > 0) {
+        builder.append(" r=\"").append(repeatCount).append('"');
+      }
+      builder.append("/>");
+      segmentIndex += repeatCount + 1;
+      time += (repeatCount + 1) * duration;
+      explicitTime = !explicitTime;
+    }
+    return builder.append("</SegmentTimeline></SegmentTemplate>\n")
+        .append("<Representation id=\"1\" bandwidth=\"1000000\"/>\n")
+        .append("</AdaptationSet>\n</Period>\n").toString();
+  }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Unit test for {@link TsExtractor}.
+ */
+public class TsExtractorTest extends TestCase {
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PMT_PID = 0x1000;
+  private static final int AUDIO_PID = 0x101;
+  private static final int AAC_TRACK_ID = 0x0F;
+  private static final int FRAME_COUNT = 10;
+
+  private static final byte[] PAT_SECTION = TestUtil.createByteArray(
+      0x00, 0x00, 0xB0, 0x0D, 0x00, 0x01, 0xC1, 0x00, 0x00, 0x00, 0x01, 0xF0, 0x00,
+      0x00, 0x00, 0x00, 0x00);
+  private static final byte[] PMT_SECTION = TestUtil.createByteArray(
+      0x00, 0x02, 0xB0, 0x12, 0x00, 0x01, 0xC1, 0x00, 0x00, 0xE1, 0x01, 0xF0, 0x00,
+      0x0F, 0xE1, 0x01, 0xF0, 0x00, 0x00, 0x00, 0x00, 0x00);
+
+  public void testReadWithPartialReads() throws Exception {
+    byte[] data = buildStream(false);
+    FakeExtractorOutput output = extract(new FakeExtractorInput.Builder().setData(data)
+        .setSimulatePartialReads(true).build());
+    output.trackOutputs.get(AAC_TRACK_ID).assertSampleCount(FRAME_COUNT);
+  }
+
+  public void testReadsManyPacketsPerCall() throws Exception {
+    byte[] data = buildStream(false);
+    TsExtractor extractor = new TsExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    assertEquals(Extractor.RESULT_CONTINUE, extractor.read(input, null));
+    // The whole stream fits in the buffer, so is demuxed by a single call.
+    assertEquals(data.length, input.getPosition());
+    output.trackOutputs.get(AAC_TRACK_ID).assertSampleCount(FRAME_COUNT);
+    assertEquals(Extractor.RESULT_END_OF_INPUT, extractor.read(input, null));
+  }
+
+  public void testResyncAfterCorruptDataWithoutLosingPackets() throws Exception {
+    byte[] data = buildStream(true);
+    FakeExtractorOutput output = extract(new FakeExtractorInput.Builder().setData(data).build());
+    output.trackOutputs.get(AAC_TRACK_ID).assertSampleCount(FRAME_COUNT);
+  }
+
+  public void testPartialPacketAtEndOfInputIgnored() throws Exception {
+    byte[] stream = buildStream(false);
+    byte[] data = Arrays.copyOf(stream, stream.length + 100);
+    System.arraycopy(stream, stream.length - TS_PACKET_SIZE, data, stream.length, 100);
+    FakeExtractorOutput output = extract(new FakeExtractorInput.Builder().setData(data).build());
+    output.trackOutputs.get(AAC_TRACK_ID).assertSampleCount(FRAME_COUNT);
+  }
+
+  public void testReuseAfterPartialPacketAtEndOfInput() throws Exception {
+    byte[] stream = buildStream(false);
+    byte[] data = Arrays.copyOf(stream, stream.length + 100);
+    System.arraycopy(stream, stream.length - TS_PACKET_SIZE, data, stream.length, 100);
+    TsExtractor extractor = new TsExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+    // Continue with the PES packets of the stream. The partial packet must not be prepended to
+    // the data read from the new input.
+    byte[] continuation = Arrays.copyOfRange(stream, 2 * TS_PACKET_SIZE, stream.length);
+    input = new FakeExtractorInput.Builder().setData(continuation).build();
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+    output.trackOutputs.get(AAC_TRACK_ID).assertSampleCount(2 * FRAME_COUNT);
+  }
+
+  private static FakeExtractorOutput extract(FakeExtractorInput input) throws Exception {
+    TsExtractor extractor = new TsExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    while (extractor.read(input, null) != Extractor.RESULT_END_OF_INPUT) {}
+    return output;
+  }
+
+  /**
+   * Builds a stream containing a PAT, a PMT declaring a single AAC stream, and
+   * {@link #FRAME_COUNT} PES packets each containing an ADTS frame.
+   *
+   * @param insertCorruptData Whether to insert bytes that are not a packet between the PES
+   *     packets.
+   */
+  private static byte[] buildStream(boolean insertCorruptData) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writePacket(stream, 0, PAT_SECTION);
+    writePacket(stream, PMT_PID, PMT_SECTION);
+    byte[] frame = TestUtil.joinByteArrays(AdtsReaderTest.ADTS_HEADER,
+        AdtsReaderTest.ADTS_CONTENT);
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      long pts = 90000 + i * 2090;
+      byte[] pesHeader = TestUtil.createByteArray(0x00, 0x00, 0x01, 0xC0, 0x00,
+          8 + frame.length, 0x80, 0x80, 0x05, 0x21 | (int) ((pts >> 29) & 0x0E),
+          (int) ((pts >> 22) & 0xFF), (int) (((pts >> 14) & 0xFE) | 0x01),
+          (int) ((pts >> 7) & 0xFF), (int) (((pts << 1) & 0xFE) | 0x01));
+      writePacket(stream, AUDIO_PID, TestUtil.joinByteArrays(pesHeader, frame));
+      if (insertCorruptData && i == FRAME_COUNT / 2) {
+        stream.write(new byte[5], 0, 5);
+      }
+    }
+    return stream.toByteArray();
+  }
+
+  /**
+   * Writes a packet with the payload unit start indicator set, padding the payload with an
+   * adaptation field.
+   */
+  private static void writePacket(ByteArrayOutputStream stream, int pid, byte[] payload) {
+    byte[] packet = new byte[TS_PACKET_SIZE];
+    Arrays.fill(packet, (byte) 0xFF);
+    packet[0] = 0x47;
+    packet[1] = (byte) (0x40 | (pid >> 8));
+    packet[2] = (byte) pid;
+    int adaptationFieldLength = TS_PACKET_SIZE - 5 - payload.length;
+    packet[3] = 0x30; // Adaptation field and payload.
+    packet[4] = (byte) adaptationFieldLength;
+    if (adaptationFieldLength > 0) {
+      packet[5] = 0x00; // No adaptation field flags.
+    }
+    System.arraycopy(payload, 0, packet, TS_PACKET_SIZE - payload.length, payload.length);
+    stream.write(packet, 0, packet.length);
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for {@link HlsMediaPlaylistDiff}.
+ */
+public class HlsMediaPlaylistDiffTest extends TestCase {
+
+  public void testIdenticalPlaylists() {
+    HlsMediaPlaylistDiff diff = HlsMediaPlaylistDiff.compute(buildPlaylist(10, 5, true),
+        buildPlaylist(10, 5, true));
+    assertTrue(diff.isEmpty());
+    assertFalse(diff.isOutOfSync());
+  }
+
+  public void testSlidingWindow() {
+    HlsMediaPlaylistDiff diff = HlsMediaPlaylistDiff.compute(buildPlaylist(10, 5, true),
+        buildPlaylist(12, 5, true));
+    assertEquals(2, diff.removedSegmentCount);
+    assertEquals(2, diff.appendedSegmentCount);
+    assertFalse(diff.isEmpty());
+    assertFalse(diff.isOutOfSync());
+  }
+
+  public void testEnded() {
+    HlsMediaPlaylistDiff diff = HlsMediaPlaylistDiff.compute(buildPlaylist(10, 5, true),
+        buildPlaylist(10, 5, false));
+    assertTrue(diff.ended);
+    assertFalse(diff.isEmpty());
+  }
+
+  public void testOutOfSync() {
+    HlsMediaPlaylistDiff diff = HlsMediaPlaylistDiff.compute(buildPlaylist(10, 5, true),
+        buildPlaylist(10, 4, true));
+    assertEquals(-1, diff.appendedSegmentCount);
+    assertTrue(diff.isOutOfSync());
+  }
+
+  public void testMediaSequenceReset() {
+    HlsMediaPlaylistDiff diff = HlsMediaPlaylistDiff.compute(buildPlaylist(100, 5, true),
+        buildPlaylist(0, 5, true));
+    assertEquals(-100, diff.removedSegmentCount);
+    assertFalse(diff.isOutOfSync());
+  }
+
+  private static HlsMediaPlaylist buildPlaylist(int mediaSequence, int segmentCount,
+      boolean live) {
+    List<HlsMediaPlaylist.Segment> segments = new ArrayList<>();
+    for (int i = 0; i < segmentCount; i++) {
+      segments.add(new HlsMediaPlaylist.Segment("segment" + (mediaSequence + i) + ".ts", 4, 0,
+          i * 4000000L, false, null, null, 0, -1));
+    }
+    return new HlsMediaPlaylist("http://example.com/", mediaSequence, 4, 3, live, segments);
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
+import com.google.android.exoplayer.chunk.FormatEvaluator.FixedEvaluator;
+import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Unit test for {@link AbrSimulator}.
+ */
+public class AbrSimulatorTest extends TestCase {
+
+  private static final Format[] FORMATS = new Format[] {
+      new Format("0", MimeTypes.VIDEO_MP4, 1280, 720, -1, -1, -1, 2000000),
+      new Format("1", MimeTypes.VIDEO_MP4, 854, 480, -1, -1, -1, 1000000),
+      new Format("2", MimeTypes.VIDEO_MP4, 640, 360, -1, -1, -1, 500000)};
+
+  private static final AbrSimulator.EvaluatorFactory FIXED_FACTORY =
+      new AbrSimulator.EvaluatorFactory() {
+        @Override
+        public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+          return new FixedEvaluator();
+        }
+      };
+
+  private static final AbrSimulator.EvaluatorFactory ADAPTIVE_FACTORY =
+      new AbrSimulator.EvaluatorFactory() {
+        @Override
+        public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+          return new AdaptiveEvaluator(bandwidthMeter);
+        }
+      };
+
+  public void testFixedEvaluatorOnFastNetwork() {
+    // 10Mbps. Each 2s segment at 2Mbps takes 400ms to load.
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 200, 300, 400}, 125000);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    SimulationResult result = simulator.simulate(trace, FIXED_FACTORY);
+    // Two segments are required to reach the minimum buffer of 2.5s.
+    assertEquals(800, result.startupDelayMs);
+    assertEquals(2000.0, result.avgBitrate);
+    assertEquals(0.0, result.varBitrate);
+    assertEquals(0, result.numSwitching);
+    assertEquals(0, result.numRebuffering);
+    assertEquals(0, result.durationRebufferingMs);
+  }
+
+  public void testFixedEvaluatorOnSlowNetworkRebuffers() {
+    // 1Mbps, half the bitrate of the selected format.
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 200, 300, 400}, 12500);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    SimulationResult result = simulator.simulate(trace, FIXED_FACTORY);
+    assertEquals(8000, result.startupDelayMs);
+    assertTrue(result.numRebuffering > 0);
+    // Each second of playback takes two seconds to load.
+    long loadDurationMs = result.startupDelayMs + 60000 + result.durationRebufferingMs;
+    assertTrue(loadDurationMs >= 2 * 60000);
+  }
+
+  public void testAdaptiveEvaluatorSwitchesUpOnFastNetwork() {
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 200, 300, 400}, 125000);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    SimulationResult result = simulator.simulate(trace, ADAPTIVE_FACTORY);
+    assertEquals(0, result.numRebuffering);
+    assertTrue(result.numSwitching > 0);
+    assertTrue(result.magSwitching <= result.numSwitching * (FORMATS.length - 1));
+    assertTrue(result.avgBitrate > 1000);
+  }
+
+  public void testAdaptiveEvaluatorAvoidsRebufferingOnSlowNetwork() {
+    // 1.5Mbps, so only the 1Mbps and 500kbps formats are sustainable.
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 200, 300, 400}, 18750);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    SimulationResult result = simulator.simulate(trace, ADAPTIVE_FACTORY);
+    assertEquals(0, result.numRebuffering);
+    assertTrue(result.avgBitrate <= 1000);
+  }
+
+  public void testUnavailableFormatIsRejected() {
+    final Format unavailableFormat =
+        new Format("3", MimeTypes.VIDEO_MP4, 1920, 1080, -1, -1, -1, 4000000);
+    AbrSimulator.EvaluatorFactory factory = new AbrSimulator.EvaluatorFactory() {
+      @Override
+      public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+        return new FormatEvaluator() {
+          @Override
+          public void enable() {}
+          @Override
+          public void disable() {}
+          @Override
+          public void evaluate(List<? extends MediaChunk> queue, long playbackPositionUs,
+              Format[] formats, Evaluation evaluation) {
+            evaluation.format = unavailableFormat;
+          }
+        };
+      }
+    };
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 200, 300, 400}, 125000);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    try {
+      simulator.simulate(trace, factory);
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  public void testSessionsAreDeterministic() {
+    BandwidthTrace trace = BandwidthTraceTest.buildTrace(new long[] {100, 900, 1000, 2500}, 50000);
+    AbrSimulator simulator = new AbrSimulator(FORMATS, 2000, 60000);
+    SimulationResult first = simulator.simulate(trace, 300000, ADAPTIVE_FACTORY);
+    SimulationResult second = simulator.simulate(trace, 300000, ADAPTIVE_FACTORY);
+    assertEquals(first.toString(), second.toString());
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.ParserException;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Unit test for {@link BandwidthTrace}.
+ */
+public class BandwidthTraceTest extends TestCase {
+
+  public void testConstantRate() {
+    // 12500 bytes every 100ms is 1Mbps.
+    BandwidthTrace trace = buildTrace(new long[] {100, 200, 300, 400}, 12500);
+    assertEquals(400000, trace.getDurationUs());
+    assertEquals(1000000, trace.getAverageBitrate());
+    assertEquals(6250, trace.getBytesAt(50000));
+    assertEquals(200000, trace.getTransferEndTimeUs(0, 25000));
+    assertEquals(250000, trace.getTransferEndTimeUs(50000, 25000));
+  }
+
+  public void testTransferWrapsAroundEndOfTrace() {
+    BandwidthTrace trace = buildTrace(new long[] {100, 200, 300, 400}, 12500);
+    assertEquals(500000, trace.getTransferEndTimeUs(300000, 25000));
+    assertEquals(1300000, trace.getTransferEndTimeUs(0, 162500));
+  }
+
+  public void testIdleGapsAreShortened() {
+    BandwidthTrace trace = buildTrace(new long[] {100, 200, 5200}, 12500);
+    assertEquals(100000 + 100000 + BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS * 1000,
+        trace.getDurationUs());
+  }
+
+  public void testEmptyTraceIsRejected() {
+    try {
+      new BandwidthTrace(new long[] {100}, new int[] {0}, 1,
+          BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  public void testFromByteCsvReadsSessionColumns() throws IOException {
+    String csv = "0.100000,100,,0.100000,1000,\n"
+        + "0.200000,100,,0.200000,1000,\n"
+        + ",,,0.300000,1000,\n";
+    BandwidthTrace first = BandwidthTrace.fromByteCsv(new StringReader(csv), 0,
+        BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+    assertEquals(200, first.getTotalBytes());
+    BandwidthTrace second = BandwidthTrace.fromByteCsv(new StringReader(csv), 1,
+        BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+    assertEquals(3000, second.getTotalBytes());
+    assertEquals(300000, second.getDurationUs());
+  }
+
+  public void testFromByteCsvWithMalformedCell() {
+    try {
+      BandwidthTrace.fromByteCsv(new StringReader("0.1,abc\n"), 0,
+          BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    } catch (IOException e) {
+      fail();
+    }
+  }
+
+  /* package */ static BandwidthTrace buildTrace(long[] timesMs, int bytesPerSample) {
+    int[] bytes = new int[timesMs.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = bytesPerSample;
+    }
+    return new BandwidthTrace(timesMs, bytes, timesMs.length,
+        BandwidthTrace.DEFAULT_MAX_IDLE_GAP_MS);
+  }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.MediaFormatHolder;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+/**
+ * Unit test for {@link HeadlessPlayback}.
+ */
+public class HeadlessPlaybackTest extends TestCase {
+
+  private static final long SAMPLE_DURATION_US = 20000;
+  private static final int SAMPLE_SIZE = 100;
+  private static final long IDLE_INTERVAL_MS = 10;
+
+  public void testPlaybackFasterThanRealtime() throws Exception {
+    FakeSampleSource source = new FakeSampleSource(new SystemSimulationClock(), 10000000,
+        Long.MAX_VALUE);
+    HeadlessPlayback playback = new HeadlessPlayback(new SampleSource[] {source}, 10, 60000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertEquals(0, result.numRebuffering);
+    assertEquals(0, result.formatChangeCount);
+    assertEquals(500, result.sampleCount);
+    assertEquals(500 * SAMPLE_SIZE, result.sampleBytes);
+    assertTrue(result.playedDurationMs >= 9900);
+    // 10s of media at 10x should take around 1s.
+    assertTrue(result.elapsedRealtimeMs < 5000);
+    assertTrue(source.released);
+  }
+
+  public void testPlaybackOnVirtualClock() throws Exception {
+    VirtualClock clock = new VirtualClock();
+    FakeSampleSource source = new FakeSampleSource(clock, 10000000, Long.MAX_VALUE);
+    HeadlessPlayback playback = newHeadlessPlayback(source, clock, 60000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertEquals(0, result.numRebuffering);
+    assertEquals(0, result.startupDelayMs);
+    assertEquals(500, result.sampleCount);
+    // 10s of media at 10x takes 1s on the virtual clock.
+    assertEquals(1000, result.elapsedRealtimeMs, IDLE_INTERVAL_MS);
+    assertTrue(source.released);
+  }
+
+  public void testMaxDuration() throws Exception {
+    VirtualClock clock = new VirtualClock();
+    FakeSampleSource source = new FakeSampleSource(clock, 10000000, Long.MAX_VALUE);
+    HeadlessPlayback playback = newHeadlessPlayback(source, clock, 2000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertEquals(2000, result.playedDurationMs);
+    assertTrue(result.sampleCount < 500);
+    assertTrue(source.released);
+  }
+
+  public void testRebufferingWhenLoadingIsSlowerThanPlayback() throws Exception {
+    // Media is loaded at 5x realtime and played at 10x.
+    VirtualClock clock = new VirtualClock();
+    FakeSampleSource source = new FakeSampleSource(clock, 10000000, 5000);
+    HeadlessPlayback playback = new HeadlessPlayback(new SampleSource[] {source}, clock, 10, 60000,
+        500, 1000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertTrue(result.numRebuffering > 0);
+    assertTrue(result.durationRebufferingMs > 0);
+    assertTrue(result.startupDelayMs > 0);
+    assertEquals(500, result.sampleCount);
+  }
+
+  public void testFormatChanges() throws Exception {
+    VirtualClock clock = new VirtualClock();
+    FakeSampleSource source = new FakeSampleSource(clock, 10000000, Long.MAX_VALUE);
+    source.formatChangeTimeUs = 5000000;
+    HeadlessPlayback playback = newHeadlessPlayback(source, clock, 60000);
+    HeadlessPlayback.Result result = playback.run();
+
+    assertEquals(1, result.formatChangeCount);
+  }
+
+  public void testLoadError() throws InterruptedException {
+    VirtualClock clock = new VirtualClock();
+    FakeSampleSource source = new FakeSampleSource(clock, 10000000, Long.MAX_VALUE);
+    source.error = new IOException();
+    HeadlessPlayback playback = newHeadlessPlayback(source, clock, 60000);
+    try {
+      playback.run();
+      fail();
+    } catch (IOException e) {
+      assertSame(source.error, e);
+    }
+    assertTrue(source.released);
+  }
+
+  private static HeadlessPlayback newHeadlessPlayback(SampleSource source, SimulationClock clock,
+      long maxDurationMs) {
+    return new HeadlessPlayback(new SampleSource[] {source}, clock, 10, maxDurationMs,
+        HeadlessPlayback.DEFAULT_MIN_BUFFER_MS, HeadlessPlayback.DEFAULT_MIN_REBUFFER_MS);
+  }
+
+  /**
+   * A {@link SimulationClock} that advances only when it is waited on.
+   */
+  private static final class VirtualClock implements SimulationClock {
+
+    private long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+    @Override
+    public void sleep(long durationMs) {
+      timeMs += durationMs;
+    }
+
+  }
+
+  /**
+   * A single track source of fixed size samples, which become available at a fixed multiple of
+   * realtime.
+   */
+  private static final class FakeSampleSource implements SampleSource,
+      SampleSource.SampleSourceReader {
+
+    private final Clock clock;
+    private final long durationUs;
+    private final long loadSpeedUsPerMs;
+    private final MediaFormat format;
+
+    private long startTimeMs;
+    private long nextSampleTimeUs;
+    private boolean formatPending;
+    private long formatChangeTimeUs;
+    private IOException error;
+    private boolean released;
+
+    public FakeSampleSource(Clock clock, long durationUs, long loadSpeedUsPerMs) {
+      this.clock = clock;
+      this.durationUs = durationUs;
+      this.loadSpeedUsPerMs = loadSpeedUsPerMs;
+      format = MediaFormat.createFormatForMimeType("0", MimeTypes.VIDEO_H264, 1000000, durationUs);
+      formatChangeTimeUs = -1;
+    }
+
+    @Override
+    public SampleSourceReader register() {
+      return this;
+    }
+
+    @Override
+    public void maybeThrowError() throws IOException {
+      if (error != null) {
+        throw error;
+      }
+    }
+
+    @Override
+    public boolean prepare(long positionUs) {
+      startTimeMs = clock.elapsedRealtime();
+      return true;
+    }
+
+    @Override
+    public int getTrackCount() {
+      return 1;
+    }
+
+    @Override
+    public MediaFormat getFormat(int track) {
+      return format;
+    }
+
+    @Override
+    public void enable(int track, long positionUs) {
+      nextSampleTimeUs = positionUs;
+      formatPending = true;
+    }
+
+    @Override
+    public boolean continueBuffering(int track, long positionUs) {
+      return getBufferedPositionUs() > positionUs;
+    }
+
+    @Override
+    public long readDiscontinuity(int track) {
+      return NO_DISCONTINUITY;
+    }
+
+    @Override
+    public int readData(int track, long positionUs, MediaFormatHolder formatHolder,
+        SampleHolder sampleHolder) {
+      if (formatPending) {
+        formatHolder.format = format;
+        formatPending = false;
+        return FORMAT_READ;
+      }
+      if (nextSampleTimeUs >= durationUs) {
+        return END_OF_STREAM;
+      }
+      if (nextSampleTimeUs + SAMPLE_DURATION_US > getBufferedPositionUs()
+          && getBufferedPositionUs() != TrackRenderer.END_OF_TRACK_US) {
+        return NOTHING_READ;
+      }
+      sampleHolder.timeUs = nextSampleTimeUs;
+      sampleHolder.size = SAMPLE_SIZE;
+      nextSampleTimeUs += SAMPLE_DURATION_US;
+      if (nextSampleTimeUs == formatChangeTimeUs) {
+        formatPending = true;
+      }
+      return SAMPLE_READ;
+    }
+
+    @Override
+    public void seekToUs(long positionUs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+      long elapsedMs = clock.elapsedRealtime() - startTimeMs;
+      if (loadSpeedUsPerMs == Long.MAX_VALUE || elapsedMs * loadSpeedUsPerMs >= durationUs) {
+        return TrackRenderer.END_OF_TRACK_US;
+      }
+      return elapsedMs * loadSpeedUsPerMs;
+    }
+
+    @Override
+    public void disable(int track) {
+      // Do nothing.
+    }
+
+    @Override
+    public void release() {
+      released = true;
+    }
+
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link BandwidthEstimator} implementations.
+ */
+public class BandwidthEstimatorTest extends TestCase {
+
+  // 125000 bytes per second, or 1000000 bits per second.
+  private static final long BYTES_PER_SECOND = 125000;
+
+  public void testNoEstimateBeforeFirstSample() {
+    for (BandwidthEstimator estimator : createEstimators()) {
+      assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    }
+  }
+
+  public void testConstantRate() {
+    for (BandwidthEstimator estimator : createEstimators()) {
+      for (int i = 0; i < 20; i++) {
+        estimator.addSample(BYTES_PER_SECOND, 1000);
+      }
+      assertEquals(estimator.getClass().getSimpleName(), 1000000,
+          estimator.getBitrateEstimate(), 1000);
+    }
+  }
+
+  public void testSlidingPercentileMatchesMedian() {
+    BandwidthEstimator estimator = new SlidingPercentileBandwidthEstimator();
+    estimator.addSample(BYTES_PER_SECOND, 1000);
+    estimator.addSample(BYTES_PER_SECOND, 500);
+    estimator.addSample(BYTES_PER_SECOND, 250);
+    assertEquals(2000000, estimator.getBitrateEstimate());
+  }
+
+  public void testDualEwmaFallsQuicklyAndRisesSlowly() {
+    DualEwmaBandwidthEstimator estimator = new DualEwmaBandwidthEstimator();
+    for (int i = 0; i < 20; i++) {
+      estimator.addSample(BYTES_PER_SECOND * 4, 1000);
+    }
+    // A single slow transfer pulls the fast average, and hence the estimate, well down.
+    estimator.addSample(BYTES_PER_SECOND, 1000);
+    long dropped = estimator.getBitrateEstimate();
+    assertTrue(dropped < 3500000);
+    // A single fast transfer after a slow period moves the slow average, and hence the estimate,
+    // only a small part of the way up.
+    for (int i = 0; i < 20; i++) {
+      estimator.addSample(BYTES_PER_SECOND, 1000);
+    }
+    estimator.addSample(BYTES_PER_SECOND * 4, 1000);
+    assertTrue(estimator.getBitrateEstimate() < 2000000);
+  }
+
+  public void testDualEwmaIgnoresSmallTransfers() {
+    DualEwmaBandwidthEstimator estimator = new DualEwmaBandwidthEstimator();
+    estimator.addSample(100, 1000);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+  }
+
+  public void testHarmonicMeanOverWindow() {
+    HarmonicMeanBandwidthEstimator estimator = new HarmonicMeanBandwidthEstimator(2);
+    estimator.addSample(BYTES_PER_SECOND, 1000);
+    estimator.addSample(BYTES_PER_SECOND, 1000);
+    estimator.addSample(BYTES_PER_SECOND * 3, 1000);
+    // The harmonic mean of 1 and 3 Mbps is 1.5 Mbps.
+    assertEquals(1500000, estimator.getBitrateEstimate());
+  }
+
+  public void testKalmanConvergesToNewRate() {
+    KalmanBandwidthEstimator estimator = new KalmanBandwidthEstimator();
+    estimator.addSample(BYTES_PER_SECOND, 1000);
+    for (int i = 0; i < 50; i++) {
+      estimator.addSample(BYTES_PER_SECOND * 2, 1000);
+    }
+    assertEquals(2000000, estimator.getBitrateEstimate(), 50000);
+  }
+
+  private static BandwidthEstimator[] createEstimators() {
+    return new BandwidthEstimator[] {
+        new SlidingPercentileBandwidthEstimator(),
+        new DualEwmaBandwidthEstimator(),
+        new HarmonicMeanBandwidthEstimator(),
+        new KalmanBandwidthEstimator()};
+  }
+
+}
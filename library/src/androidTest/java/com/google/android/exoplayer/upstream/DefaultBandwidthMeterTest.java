@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Clock;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for {@link DefaultBandwidthMeter}.
+ */
+public class DefaultBandwidthMeterTest extends TestCase {
+
+  private ManualClock clock;
+  private RecordingEstimator estimator;
+  private DefaultBandwidthMeter bandwidthMeter;
+
+  @Override
+  public void setUp() {
+    clock = new ManualClock();
+    estimator = new RecordingEstimator();
+    bandwidthMeter = new DefaultBandwidthMeter(null, null, clock, estimator);
+  }
+
+  public void testSingleTransfer() {
+    bandwidthMeter.onTransferStart();
+    clock.timeMs = 1000;
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onBytesTransferred(24000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(1, estimator.sampleCount);
+    assertEquals(25000, estimator.totalBytes);
+    assertEquals(1000, estimator.totalElapsedMs);
+    assertEquals(200000, bandwidthMeter.getBitrateEstimate());
+  }
+
+  public void testOverlappingTransfersAreMerged() throws InterruptedException {
+    // Two transfers on separate threads: A from 0 to 2000ms, and B from 1000 to 3000ms.
+    TransferThread transferA = new TransferThread();
+    TransferThread transferB = new TransferThread();
+    transferA.run(new Runnable() {
+      @Override
+      public void run() {
+        bandwidthMeter.onTransferStart();
+        bandwidthMeter.onBytesTransferred(10000);
+      }
+    });
+    clock.timeMs = 1000;
+    transferB.run(new Runnable() {
+      @Override
+      public void run() {
+        bandwidthMeter.onTransferStart();
+        bandwidthMeter.onBytesTransferred(20000);
+      }
+    });
+    clock.timeMs = 2000;
+    transferA.run(new Runnable() {
+      @Override
+      public void run() {
+        bandwidthMeter.onBytesTransferred(10000);
+        bandwidthMeter.onTransferEnd();
+      }
+    });
+    // The first sample covers all bytes transferred by either transfer while A was open.
+    assertEquals(1, estimator.sampleCount);
+    assertEquals(40000, estimator.totalBytes);
+    assertEquals(2000, estimator.totalElapsedMs);
+    clock.timeMs = 3000;
+    transferB.run(new Runnable() {
+      @Override
+      public void run() {
+        bandwidthMeter.onBytesTransferred(5000);
+        bandwidthMeter.onTransferEnd();
+      }
+    });
+    // The second sample covers only the remainder of B.
+    assertEquals(2, estimator.sampleCount);
+    assertEquals(45000, estimator.totalBytes);
+    assertEquals(3000, estimator.totalElapsedMs);
+    transferA.release();
+    transferB.release();
+  }
+
+  public void testZeroDurationSampleIsMergedIntoNext() {
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(0, estimator.sampleCount);
+    clock.timeMs = 100;
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(1, estimator.sampleCount);
+    assertEquals(2000, estimator.totalBytes);
+    assertEquals(100, estimator.totalElapsedMs);
+  }
+
+  public void testConcurrentBytesAreNotLost() throws InterruptedException {
+    final int threadCount = 4;
+    final int readsPerThread = 100000;
+    final CountDownLatch startedLatch = new CountDownLatch(threadCount);
+    final CountDownLatch readLatch = new CountDownLatch(1);
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          bandwidthMeter.onTransferStart();
+          startedLatch.countDown();
+          try {
+            readLatch.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          for (int j = 0; j < readsPerThread; j++) {
+            bandwidthMeter.onBytesTransferred(1);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    startedLatch.await();
+    readLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    clock.timeMs = 1000;
+    bandwidthMeter.onTransferEnd();
+    assertEquals((long) threadCount * readsPerThread, estimator.totalBytes);
+  }
+
+  public void testReadsAreBatchedByBytes() {
+    RecordingListener listener = new RecordingListener();
+    bandwidthMeter = new DefaultBandwidthMeter(new ImmediateHandler(), listener, clock, estimator,
+        Integer.MAX_VALUE, 3000);
+    bandwidthMeter.onTransferStart();
+    for (int i = 0; i < 7; i++) {
+      clock.timeMs = i;
+      bandwidthMeter.onBytesTransferred(1000);
+    }
+    assertEquals(2, listener.batches.size());
+    assertBatch(listener.batches.get(0), 3, 3000, 0, 2);
+    assertBatch(listener.batches.get(1), 3, 3000, 3, 5);
+    // The remainder is delivered when the transfer ends.
+    bandwidthMeter.onTransferEnd();
+    assertEquals(3, listener.batches.size());
+    assertBatch(listener.batches.get(2), 1, 1000, 6, 6);
+  }
+
+  public void testReadsAreBatchedByInterval() {
+    RecordingListener listener = new RecordingListener();
+    bandwidthMeter = new DefaultBandwidthMeter(new ImmediateHandler(), listener, clock, estimator,
+        100, Long.MAX_VALUE);
+    bandwidthMeter.onTransferStart();
+    for (int i = 0; i < 25; i++) {
+      clock.timeMs = i * 10;
+      bandwidthMeter.onBytesTransferred(10);
+    }
+    assertEquals(2, listener.batches.size());
+    assertBatch(listener.batches.get(0), 11, 110, 0, 100);
+    assertBatch(listener.batches.get(1), 11, 110, 110, 210);
+  }
+
+  public void testUnbatchedReads() {
+    RecordingListener listener = new RecordingListener();
+    bandwidthMeter = new DefaultBandwidthMeter(new ImmediateHandler(), listener, clock, estimator,
+        0, 0);
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onBytesTransferred(10);
+    bandwidthMeter.onBytesTransferred(20);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(2, listener.batches.size());
+    assertBatch(listener.batches.get(1), 1, 20, 0, 0);
+  }
+
+  private static void assertBatch(long[] batch, int readCount, long bytes, long firstReadTimeMs,
+      long lastReadTimeMs) {
+    assertEquals(readCount, batch[0]);
+    assertEquals(bytes, batch[1]);
+    assertEquals(firstReadTimeMs, batch[2]);
+    assertEquals(lastReadTimeMs, batch[3]);
+  }
+
+  /**
+   * Runs operations on a dedicated thread, so that each operation sees the thread's transfer.
+   */
+  private static final class TransferThread {
+
+    private final ExecutorService executor;
+
+    public TransferThread() {
+      executor = Executors.newSingleThreadExecutor();
+    }
+
+    public void run(Runnable runnable) throws InterruptedException {
+      try {
+        executor.submit(runnable).get();
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    public void release() {
+      executor.shutdown();
+    }
+
+  }
+
+  /**
+   * Runs posted callbacks immediately on the posting thread.
+   */
+  private static final class ImmediateHandler extends Handler {
+
+    public ImmediateHandler() {
+      super(Looper.getMainLooper());
+    }
+
+    @Override
+    public boolean sendMessageAtTime(Message message, long uptimeMillis) {
+      message.getCallback().run();
+      return true;
+    }
+
+  }
+
+  private static final class RecordingListener implements BandwidthMeter.EventListener {
+
+    public final ArrayList<long[]> batches = new ArrayList<>();
+
+    @Override
+    public void onBandwidthSample(int elapsedMs, long bytes, long bitrate, float bitsPerSecond) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs,
+        long lastReadTimeMs) {
+      batches.add(new long[] {readCount, bytes, firstReadTimeMs, lastReadTimeMs});
+    }
+
+  }
+
+  private static final class ManualClock implements Clock {
+
+    public volatile long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+  private static final class RecordingEstimator implements BandwidthEstimator {
+
+    public int sampleCount;
+    public long totalBytes;
+    public long totalElapsedMs;
+    private long lastBitrate = BandwidthMeter.NO_ESTIMATE;
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      sampleCount++;
+      totalBytes += bytes;
+      totalElapsedMs += elapsedMs;
+      lastBitrate = (bytes * 8000) / elapsedMs;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return lastBitrate;
+    }
+
+  }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link LoaderScheduler}.
+ */
+public class LoaderSchedulerTest extends TestCase {
+
+  private static final long TIMEOUT_MS = 5000;
+
+  private HandlerThread callbackThread;
+  private Looper looper;
+  private List<String> loadOrder;
+  private List<long[]> timings;
+  private LoaderScheduler scheduler;
+
+  @Override
+  public void setUp() {
+    callbackThread = new HandlerThread("LoaderSchedulerTest");
+    callbackThread.start();
+    looper = callbackThread.getLooper();
+    loadOrder = Collections.synchronizedList(new ArrayList<String>());
+    timings = Collections.synchronizedList(new ArrayList<long[]>());
+    scheduler = new LoaderScheduler("LoaderSchedulerTest", 1, new SystemClock(),
+        new LoaderScheduler.EventListener() {
+          @Override
+          public void onLoadFinished(int priority, long queueWaitMs, long runTimeMs,
+              long cancelationLatencyMs) {
+            timings.add(new long[] {priority, queueWaitMs, runTimeMs, cancelationLatencyMs});
+          }
+        });
+  }
+
+  @Override
+  public void tearDown() {
+    scheduler.release();
+    callbackThread.quit();
+  }
+
+  public void testLoadsRunInPriorityOrder() throws InterruptedException {
+    BlockingLoadable blocker = new BlockingLoadable("blocker");
+    TestCallback blockerCallback = new TestCallback();
+    new Loader(scheduler, 0).startLoading(looper, blocker, blockerCallback);
+    assertTrue(blocker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    TestCallback lowCallback = new TestCallback();
+    TestCallback highCallback = new TestCallback();
+    new Loader(scheduler, NetworkLock.DOWNLOAD_PRIORITY).startLoading(looper,
+        new BlockingLoadable("low", 0), lowCallback);
+    new Loader(scheduler, NetworkLock.STREAMING_PRIORITY).startLoading(looper,
+        new BlockingLoadable("high", 0), highCallback);
+    assertEquals(1, scheduler.getActiveLoadCount());
+    assertEquals(2, scheduler.getQueuedLoadCount());
+
+    blocker.release.countDown();
+    assertTrue(blockerCallback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(lowCallback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(highCallback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals("[blocker, high, low]", loadOrder.toString());
+  }
+
+  public void testCancelQueuedLoad() throws InterruptedException {
+    BlockingLoadable blocker = new BlockingLoadable("blocker");
+    TestCallback blockerCallback = new TestCallback();
+    new Loader(scheduler, 0).startLoading(looper, blocker, blockerCallback);
+    assertTrue(blocker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    final Loader queuedLoader = new Loader(scheduler, 0);
+    TestCallback queuedCallback = new TestCallback();
+    queuedLoader.startLoading(looper, new BlockingLoadable("queued", 0), queuedCallback);
+    queuedLoader.cancelLoading();
+    // The canceled load is reported without waiting for the running load to finish.
+    assertTrue(queuedCallback.canceled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals(0, scheduler.getQueuedLoadCount());
+    assertEquals(1, timings.size());
+    assertEquals(0, timings.get(0)[2]);
+
+    blocker.release.countDown();
+    assertTrue(blockerCallback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals("[blocker]", loadOrder.toString());
+  }
+
+  public void testCancelRunningLoad() throws InterruptedException {
+    BlockingLoadable loadable = new BlockingLoadable("running");
+    Loader loader = new Loader(scheduler, 0);
+    TestCallback callback = new TestCallback();
+    loader.startLoading(looper, loadable, callback);
+    assertTrue(loadable.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    loader.cancelLoading();
+    assertTrue(callback.canceled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    waitForTimings(1);
+    long[] timing = timings.get(0);
+    assertTrue(timing[3] >= 0 && timing[3] <= timing[2]);
+
+    // The scheduler's thread remains usable.
+    TestCallback nextCallback = new TestCallback();
+    new Loader(scheduler, 0).startLoading(looper, new BlockingLoadable("next", 0), nextCallback);
+    assertTrue(nextCallback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+  }
+
+  public void testTimings() throws InterruptedException {
+    BlockingLoadable blocker = new BlockingLoadable("blocker");
+    TestCallback blockerCallback = new TestCallback();
+    new Loader(scheduler, 0).startLoading(looper, blocker, blockerCallback);
+    assertTrue(blocker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    TestCallback callback = new TestCallback();
+    new Loader(scheduler, 3).startLoading(looper, new BlockingLoadable("queued", 0), callback);
+    Thread.sleep(50);
+    blocker.release.countDown();
+    assertTrue(callback.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    waitForTimings(2);
+    long[] blockerTiming = timings.get(0);
+    long[] queuedTiming = timings.get(1);
+    assertTrue(blockerTiming[2] >= 50);
+    assertEquals(-1, blockerTiming[3]);
+    assertEquals(3, queuedTiming[0]);
+    assertTrue(queuedTiming[1] >= 50);
+  }
+
+  /**
+   * Timings are reported after the load's callback has been posted, so may arrive after it.
+   */
+  private void waitForTimings(int count) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (timings.size() < count && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, timings.size());
+  }
+
+  private final class BlockingLoadable implements Loader.Loadable {
+
+    private final String name;
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+
+    private volatile boolean canceled;
+
+    public BlockingLoadable(String name) {
+      this(name, 1);
+    }
+
+    public BlockingLoadable(String name, int releaseCount) {
+      this.name = name;
+      started = new CountDownLatch(1);
+      release = new CountDownLatch(releaseCount);
+    }
+
+    @Override
+    public void cancelLoad() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void load() throws InterruptedException {
+      loadOrder.add(name);
+      started.countDown();
+      release.await();
+    }
+
+  }
+
+  private static final class TestCallback implements Loader.Callback {
+
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final CountDownLatch canceled = new CountDownLatch(1);
+
+    @Override
+    public void onLoadCanceled(Loader.Loadable loadable) {
+      canceled.countDown();
+    }
+
+    @Override
+    public void onLoadCompleted(Loader.Loadable loadable) {
+      completed.countDown();
+    }
+
+    @Override
+    public void onLoadError(Loader.Loadable loadable, IOException exception) {
+      throw new IllegalStateException(exception);
+    }
+
+  }
+
+}
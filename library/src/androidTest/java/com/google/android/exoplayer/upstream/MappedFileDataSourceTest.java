@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link MappedFileDataSource}.
+ */
+public class MappedFileDataSourceTest extends TestCase {
+
+  private static final int REGION_LENGTH = 1024 * 1024;
+
+  private File file;
+  private byte[] data;
+
+  @Override
+  public void setUp() throws IOException {
+    data = new byte[REGION_LENGTH * 5 / 2];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31 + i / 1000);
+    }
+    file = File.createTempFile("MappedFileDataSourceTest", null);
+    writeFile(data);
+  }
+
+  @Override
+  public void tearDown() {
+    file.delete();
+  }
+
+  public void testReadAcrossRegions() throws IOException {
+    MappedFileDataSource dataSource =
+        new MappedFileDataSource(null, 2 * REGION_LENGTH, REGION_LENGTH);
+    assertTrue(Arrays.equals(data, readAll(dataSource, new DataSpec(Uri.fromFile(file)))));
+    // Three regions were mapped, of which the last two are kept.
+    assertEquals(2, dataSource.getMappingCount());
+  }
+
+  public void testMappedBytesAreCapped() throws IOException {
+    MappedFileDataSource dataSource =
+        new MappedFileDataSource(null, REGION_LENGTH * 3 / 2, REGION_LENGTH);
+    assertTrue(Arrays.equals(data, readAll(dataSource, new DataSpec(Uri.fromFile(file)))));
+    // The first region is evicted to map the second. The third is half a region, so both fit.
+    assertEquals(2, dataSource.getMappingCount());
+    assertEquals(REGION_LENGTH * 3 / 2, dataSource.getMappedBytes());
+    dataSource.clearMappings();
+    assertEquals(0, dataSource.getMappedBytes());
+  }
+
+  public void testReadRange() throws IOException {
+    MappedFileDataSource dataSource =
+        new MappedFileDataSource(null, 2 * REGION_LENGTH, REGION_LENGTH);
+    DataSpec dataSpec = new DataSpec(Uri.fromFile(file), REGION_LENGTH - 100, 200, null);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, REGION_LENGTH - 100, REGION_LENGTH + 100),
+        readAll(dataSource, dataSpec)));
+  }
+
+  public void testReopenReusesMapping() throws IOException {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    readAll(dataSource, new DataSpec(Uri.fromFile(file), 0, 100, null));
+    assertEquals(1, dataSource.getMappingCount());
+    DataSpec dataSpec = new DataSpec(Uri.fromFile(file), 1000, 100, null);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 1000, 1100), readAll(dataSource, dataSpec)));
+    assertEquals(1, dataSource.getMappingCount());
+  }
+
+  public void testChangedFileIsRemapped() throws IOException {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    readAll(dataSource, new DataSpec(Uri.fromFile(file)));
+    byte[] newData = Arrays.copyOf(data, 1000);
+    writeFile(newData);
+    assertTrue(Arrays.equals(newData, readAll(dataSource, new DataSpec(Uri.fromFile(file)))));
+  }
+
+  public void testMissingFile() {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    try {
+      dataSource.open(new DataSpec(Uri.fromFile(new File(file.getPath() + ".missing"))));
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  private void writeFile(byte[] data) throws IOException {
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(data);
+    } finally {
+      output.close();
+    }
+  }
+
+  private static byte[] readAll(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    dataSource.open(dataSpec);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return output.toByteArray();
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Clock;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link ParallelRangeDataSource}.
+ */
+public class ParallelRangeDataSourceTest extends TestCase {
+
+  private static final int MIN_PART_LENGTH = 1000;
+
+  private byte[] data;
+  private ExecutorService executorService;
+  private ManualClock clock;
+  private volatile long loadEndTimeMs;
+
+  @Override
+  public void setUp() {
+    data = new byte[10000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    executorService = Executors.newCachedThreadPool();
+    clock = new ManualClock();
+  }
+
+  @Override
+  public void tearDown() {
+    executorService.shutdown();
+  }
+
+  public void testSplitRequestIsReassembledInOrder() throws IOException {
+    CountingDataSource[] dataSources = newDataSources(4);
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(dataSources, 4);
+    DataSpec dataSpec = new DataSpec(null, 100, 9000, null);
+    byte[] result = readAll(dataSource, dataSpec);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 9100), result));
+    for (CountingDataSource source : dataSources) {
+      assertEquals(1, source.openCount);
+      assertEquals(2250, source.lastDataSpec.length);
+    }
+    assertEquals(2350, dataSources[1].lastDataSpec.position);
+  }
+
+  public void testShortRequestIsReadDirectly() throws IOException {
+    CountingDataSource[] dataSources = newDataSources(4);
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(dataSources, 4);
+    byte[] result = readAll(dataSource, new DataSpec(null, 0, 1999, null));
+    assertTrue(Arrays.equals(Arrays.copyOf(data, 1999), result));
+    assertEquals(1, dataSources[0].openCount);
+    assertEquals(0, dataSources[1].openCount);
+  }
+
+  public void testUnboundedRequestIsReadDirectly() throws IOException {
+    CountingDataSource[] dataSources = newDataSources(4);
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(dataSources, 4);
+    byte[] result = readAll(dataSource, new DataSpec(null, 0, C.LENGTH_UNBOUNDED, null));
+    assertTrue(Arrays.equals(data, result));
+    assertEquals(0, dataSources[1].openCount);
+  }
+
+  public void testPartErrorIsReported() throws IOException {
+    CountingDataSource[] dataSources = newDataSources(2);
+    dataSources[1].fail = true;
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(dataSources, 2);
+    try {
+      readAll(dataSource, new DataSpec(null, 0, 10000, null));
+      fail();
+    } catch (IOException e) {
+      assertEquals("Failed", e.getMessage());
+    }
+  }
+
+  public void testCloseBeforeEndCancelsParts() throws IOException {
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(newDataSources(4), 4);
+    dataSource.open(new DataSpec(null, 0, 10000, null));
+    byte[] buffer = new byte[10];
+    assertEquals(10, dataSource.read(buffer, 0, buffer.length));
+    dataSource.close();
+    // The source can be opened again.
+    assertTrue(Arrays.equals(data, readAll(dataSource, new DataSpec(null, 0, 10000, null))));
+  }
+
+  public void testSmallPartBuffersAreReassembledInOrder() throws IOException {
+    ParallelRangeDataSource dataSource = new ParallelRangeDataSource(newDataSources(4),
+        executorService, clock, MIN_PART_LENGTH, 4, 64);
+    DataSpec dataSpec = new DataSpec(null, 100, 9000, null);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 9100), readAll(dataSource, dataSpec)));
+  }
+
+  public void testSourceNotReusedUntilPartFinished() throws Exception {
+    CountingDataSource[] dataSources = newDataSources(2);
+    final CountDownLatch readBlocker = new CountDownLatch(1);
+    dataSources[1].readBlocker = readBlocker;
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(dataSources, 2);
+    dataSource.open(new DataSpec(null, 0, 10000, null));
+    // Closing is interrupted while the second part is blocked in a read that ignores interrupts.
+    Thread.currentThread().interrupt();
+    try {
+      dataSource.close();
+      fail();
+    } catch (InterruptedIOException e) {
+      // Expected.
+    }
+    assertTrue(Thread.interrupted());
+    dataSources[1].readBlocker = null;
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+        readBlocker.countDown();
+      }
+    }.start();
+    // Opening again waits for the second part to release its source.
+    assertTrue(Arrays.equals(data, readAll(dataSource, new DataSpec(null, 0, 10000, null))));
+    assertFalse(dataSources[1].usedConcurrently);
+  }
+
+  public void testParallelismAdaptsToThroughput() throws IOException {
+    ParallelRangeDataSource dataSource = newParallelRangeDataSource(newDataSources(3), 1);
+    DataSpec dataSpec = new DataSpec(null, 0, 10000, null);
+    assertEquals(1, dataSource.getParallelism());
+    // The first measurement increases the parallelism.
+    readAll(dataSource, dataSpec, 1000);
+    assertEquals(2, dataSource.getParallelism());
+    // The throughput improves, so the parallelism is increased again.
+    readAll(dataSource, dataSpec, 500);
+    assertEquals(3, dataSource.getParallelism());
+    // The throughput improves, but the parallelism is at its maximum.
+    readAll(dataSource, dataSpec, 400);
+    assertEquals(3, dataSource.getParallelism());
+    // The throughput does not improve, so the parallelism is decreased.
+    readAll(dataSource, dataSpec, 400);
+    assertEquals(2, dataSource.getParallelism());
+    // The throughput drops, so the direction reverses.
+    readAll(dataSource, dataSpec, 800);
+    assertEquals(3, dataSource.getParallelism());
+  }
+
+  private ParallelRangeDataSource newParallelRangeDataSource(DataSource[] dataSources,
+      int initialParallelism) {
+    return new ParallelRangeDataSource(dataSources, executorService, clock, MIN_PART_LENGTH,
+        initialParallelism);
+  }
+
+  private CountingDataSource[] newDataSources(int count) {
+    CountingDataSource[] dataSources = new CountingDataSource[count];
+    for (int i = 0; i < count; i++) {
+      dataSources[i] = new CountingDataSource(data);
+    }
+    return dataSources;
+  }
+
+  private byte[] readAll(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    return readAll(dataSource, dataSpec, 0);
+  }
+
+  /**
+   * Reads a request in full. The clock is advanced by {@code durationMs} as each upstream source
+   * finishes loading, so that the request appears to have been loaded in that time.
+   */
+  private byte[] readAll(DataSource dataSource, DataSpec dataSpec, long durationMs)
+      throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    loadEndTimeMs = clock.timeMs + durationMs;
+    dataSource.open(dataSpec);
+    try {
+      byte[] buffer = new byte[300];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return output.toByteArray();
+  }
+
+  private static final class ManualClock implements Clock {
+
+    public volatile long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+  /**
+   * A {@link ByteArrayDataSource} that records its requests, may fail when opened or block when
+   * read, and advances the clock to the end of the current load when closed.
+   */
+  private final class CountingDataSource implements DataSource {
+
+    private final ByteArrayDataSource dataSource;
+
+    public volatile int openCount;
+    public volatile DataSpec lastDataSpec;
+    public volatile boolean fail;
+    public volatile CountDownLatch readBlocker;
+    public volatile boolean usedConcurrently;
+
+    private final AtomicInteger users;
+
+    public CountingDataSource(byte[] data) {
+      dataSource = new ByteArrayDataSource(data);
+      users = new AtomicInteger();
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openCount++;
+      if (users.incrementAndGet() > 1) {
+        usedConcurrently = true;
+      }
+      lastDataSpec = dataSpec;
+      if (fail) {
+        throw new IOException("Failed");
+      }
+      return dataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      CountDownLatch readBlocker = this.readBlocker;
+      if (readBlocker != null) {
+        // Block as a socket read would, ignoring interrupts.
+        while (true) {
+          try {
+            readBlocker.await();
+            break;
+          } catch (InterruptedException e) {
+            // Do nothing.
+          }
+        }
+      }
+      return dataSource.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+      clock.timeMs = loadEndTimeMs;
+      users.decrementAndGet();
+      dataSource.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PipelinedHttpDataSource}.
+ */
+public class PipelinedHttpDataSourceTest extends TestCase {
+
+  private static final int BODY_LENGTH = 1000;
+
+  private TestServer server;
+  private PipelinedHttpDataSource dataSource;
+
+  @Override
+  public void setUp() throws IOException {
+    server = new TestServer();
+    dataSource = new PipelinedHttpDataSource("test", null, null);
+  }
+
+  @Override
+  public void tearDown() throws IOException {
+    dataSource.closeIdleConnections();
+    server.close();
+  }
+
+  public void testConnectionIsReused() throws Exception {
+    assertBody("/a", readAll(dataSpec("/a")));
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertEquals(1, server.getConnectionCount());
+    assertEquals(Arrays.asList("GET /a HTTP/1.1", "GET /b HTTP/1.1"), server.getRequestLines());
+  }
+
+  public void testPredictedRequestsArePipelined() throws Exception {
+    dataSource.setPredictedDataSpecs(dataSpec("/b"), dataSpec("/c"), dataSpec("/d"));
+    assertEquals(BODY_LENGTH, dataSource.open(dataSpec("/a")));
+    // The first two predicted requests are sent before the first response is read, as at most two
+    // requests are pipelined behind the one being read.
+    server.awaitRequestCount(3);
+    assertBody("/a", readToEnd());
+    dataSource.close();
+
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertBody("/c", readAll(dataSpec("/c")));
+    // The third predicted request is sent once /b is opened.
+    server.awaitRequestCount(4);
+    assertEquals(1, server.getConnectionCount());
+    assertEquals(Arrays.asList("GET /a HTTP/1.1", "GET /b HTTP/1.1", "GET /c HTTP/1.1",
+        "GET /d HTTP/1.1"), server.getRequestLines());
+  }
+
+  public void testPipeliningContinuesFromPrediction() throws Exception {
+    dataSource.setPredictedDataSpecs(dataSpec("/b"), dataSpec("/c"));
+    assertBody("/a", readAll(dataSpec("/a")));
+    dataSource.setPredictedDataSpecs(dataSpec("/c"), dataSpec("/d"));
+    dataSource.open(dataSpec("/b"));
+    server.awaitRequestCount(4);
+    assertBody("/b", readToEnd());
+    dataSource.close();
+    assertEquals(1, server.getConnectionCount());
+    assertEquals("GET /d HTTP/1.1", server.getRequestLines().get(3));
+  }
+
+  public void testMispredictedRequestUsesNewConnection() throws Exception {
+    dataSource.setPredictedDataSpecs(dataSpec("/b"));
+    assertBody("/a", readAll(dataSpec("/a")));
+    assertBody("/c", readAll(dataSpec("/c")));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testRangeRequest() throws Exception {
+    DataSpec dataSpec = new DataSpec(Uri.parse(server.getUrl("/a")), 100, 200, null);
+    assertEquals(200, dataSource.open(dataSpec));
+    byte[] data = readToEnd();
+    dataSource.close();
+    assertEquals(200, data.length);
+    for (int i = 0; i < data.length; i++) {
+      assertEquals(TestServer.getByte("/a", 100 + i), data[i]);
+    }
+  }
+
+  public void testChunkedResponse() throws Exception {
+    assertEquals(C.LENGTH_UNBOUNDED, dataSource.open(dataSpec("/chunked")));
+    assertBody("/chunked", readToEnd());
+    dataSource.close();
+    // The whole chunked body was consumed, so the connection can be reused.
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testConnectionCloseResponse() throws Exception {
+    assertBody("/close", readAll(dataSpec("/close")));
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testUnreadBodyIsDrained() throws Exception {
+    dataSource.open(dataSpec("/a"));
+    byte[] buffer = new byte[10];
+    dataSource.read(buffer, 0, buffer.length);
+    dataSource.close();
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testInvalidResponseCode() throws Exception {
+    try {
+      dataSource.open(dataSpec("/missing"));
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(404, e.responseCode);
+    }
+    dataSource.close();
+  }
+
+  public void testStaleConnectionIsRetried() throws Exception {
+    assertBody("/a", readAll(dataSpec("/a")));
+    server.closeConnections();
+    assertBody("/b", readAll(dataSpec("/b")));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testTransferEvents() throws Exception {
+    final int[] counts = new int[3];
+    dataSource = new PipelinedHttpDataSource("test", null, new TransferListener() {
+      @Override
+      public void onTransferStart() {
+        counts[0]++;
+      }
+
+      @Override
+      public void onBytesTransferred(int bytesTransferred) {
+        counts[1] += bytesTransferred;
+      }
+
+      @Override
+      public void onTransferEnd() {
+        counts[2]++;
+      }
+    });
+    readAll(dataSpec("/a"));
+    assertEquals(1, counts[0]);
+    assertEquals(BODY_LENGTH, counts[1]);
+    assertEquals(1, counts[2]);
+  }
+
+  private DataSpec dataSpec(String path) {
+    return new DataSpec(Uri.parse(server.getUrl(path)));
+  }
+
+  private byte[] readAll(DataSpec dataSpec) throws IOException {
+    dataSource.open(dataSpec);
+    try {
+      return readToEnd();
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private byte[] readToEnd() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[100];
+    int read;
+    while ((read = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      output.write(buffer, 0, read);
+    }
+    return output.toByteArray();
+  }
+
+  private static void assertBody(String path, byte[] data) {
+    assertEquals(BODY_LENGTH, data.length);
+    for (int i = 0; i < data.length; i++) {
+      assertEquals(TestServer.getByte(path, i), data[i]);
+    }
+  }
+
+  /**
+   * A minimal HTTP/1.1 server that answers requests in order on each connection. Every path other
+   * than {@code /missing} has a body of {@link #BODY_LENGTH} bytes. The body of {@code /chunked} is
+   * sent with chunked transfer encoding, and {@code /close} closes the connection.
+   */
+  private static final class TestServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets;
+    private final List<String> requestLines;
+
+    public TestServer() throws IOException {
+      serverSocket = new ServerSocket(0);
+      sockets = new ArrayList<>();
+      requestLines = new ArrayList<>();
+      new Thread(this).start();
+    }
+
+    public static byte getByte(String path, int position) {
+      return (byte) (position * 31 + path.hashCode());
+    }
+
+    public String getUrl(String path) {
+      return "http://localhost:" + serverSocket.getLocalPort() + path;
+    }
+
+    public synchronized int getConnectionCount() {
+      return sockets.size();
+    }
+
+    public synchronized List<String> getRequestLines() {
+      return new ArrayList<>(requestLines);
+    }
+
+    public synchronized void awaitRequestCount(int count) throws InterruptedException {
+      long deadlineMs = System.currentTimeMillis() + 5000;
+      while (requestLines.size() < count && System.currentTimeMillis() < deadlineMs) {
+        wait(100);
+      }
+      assertEquals(count, requestLines.size());
+    }
+
+    public synchronized void closeConnections() throws IOException {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+
+    public void close() throws IOException {
+      serverSocket.close();
+      closeConnections();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = serverSocket.accept();
+          synchronized (this) {
+            sockets.add(socket);
+          }
+          new Thread() {
+            @Override
+            public void run() {
+              serve(socket);
+            }
+          }.start();
+        }
+      } catch (IOException e) {
+        // The server was closed.
+      }
+    }
+
+    private void serve(Socket socket) {
+      try {
+        InputStream input = new BufferedInputStream(socket.getInputStream());
+        OutputStream output = socket.getOutputStream();
+        String requestLine;
+        while ((requestLine = readLine(input)) != null) {
+          String range = null;
+          String line;
+          while (!(line = readLine(input)).isEmpty()) {
+            if (line.startsWith("Range: bytes=")) {
+              range = line.substring(13);
+            }
+          }
+          synchronized (this) {
+            requestLines.add(requestLine);
+            notifyAll();
+          }
+          String path = requestLine.split(" ")[1];
+          if (!respond(output, path, range)) {
+            break;
+          }
+        }
+        socket.close();
+      } catch (IOException e) {
+        // The connection was closed.
+      }
+    }
+
+    private boolean respond(OutputStream output, String path, String range) throws IOException {
+      if (path.equals("/missing")) {
+        output.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n".getBytes("US-ASCII"));
+        return true;
+      }
+      int start = 0;
+      int end = BODY_LENGTH - 1;
+      if (range != null) {
+        String[] bounds = range.split("-");
+        start = Integer.parseInt(bounds[0]);
+        end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : end;
+      }
+      byte[] body = new byte[end - start + 1];
+      for (int i = 0; i < body.length; i++) {
+        body[i] = getByte(path, start + i);
+      }
+      StringBuilder head = new StringBuilder(range == null ? "HTTP/1.1 200 OK\r\n"
+          : "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + end + "/"
+              + BODY_LENGTH + "\r\n");
+      boolean close = path.equals("/close");
+      if (close) {
+        head.append("Connection: close\r\n");
+      }
+      if (path.equals("/chunked")) {
+        output.write(head.append("Transfer-Encoding: chunked\r\n\r\n").toString()
+            .getBytes("US-ASCII"));
+        for (int offset = 0; offset < body.length; offset += 300) {
+          int length = Math.min(300, body.length - offset);
+          output.write((Integer.toHexString(length) + "\r\n").getBytes("US-ASCII"));
+          output.write(body, offset, length);
+          output.write("\r\n".getBytes("US-ASCII"));
+        }
+        output.write("0\r\n\r\n".getBytes("US-ASCII"));
+      } else {
+        output.write(head.append("Content-Length: ").append(body.length).append("\r\n\r\n")
+            .toString().getBytes("US-ASCII"));
+        output.write(body);
+      }
+      output.flush();
+      return !close;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = input.read()) != '\n') {
+        if (b == -1) {
+          return line.length() == 0 ? null : line.toString();
+        }
+        if (b != '\r') {
+          line.append((char) b);
+        }
+      }
+      return line.toString();
+    }
+
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDataSink.CacheDataSinkException;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link AsyncCacheDataSink}.
+ */
+public class AsyncCacheDataSinkTest extends TestCase {
+
+  private static final String KEY = "key";
+  private static final long TIMEOUT_MS = 10000;
+
+  private File cacheDir;
+  private SimpleCache cache;
+
+  @Override
+  public void setUp() throws IOException {
+    cacheDir = File.createTempFile("AsyncCacheDataSinkTest", null);
+    cacheDir.delete();
+    cacheDir.mkdirs();
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  @Override
+  public void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testWriteFragmentsIntoCacheFiles() throws Exception {
+    byte[] data = buildData(1000);
+    // Use fewer, smaller buffers than the data, so that writes wait for the disk thread.
+    AsyncCacheDataSink sink = new AsyncCacheDataSink(cache, 300, 64, 2);
+    CacheSpan hole = cache.startReadWrite(KEY, 0);
+    sink.open(new DataSpec(Uri.parse("test://data"), 0, data.length, KEY));
+    for (int offset = 0; offset < data.length; offset += 70) {
+      sink.write(data, offset, Math.min(70, data.length - offset));
+    }
+    sink.close();
+    cache.releaseHoleSpan(hole);
+
+    assertTrue(cache.isCached(KEY, 0, data.length));
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY);
+    assertEquals(4, spans.size());
+    byte[] cachedData = new byte[data.length];
+    for (CacheSpan span : spans) {
+      readFile(span.file, cachedData, (int) span.position, (int) span.length);
+    }
+    assertTrue(Arrays.equals(data, cachedData));
+  }
+
+  public void testSinkReusable() throws Exception {
+    AsyncCacheDataSink sink = new AsyncCacheDataSink(cache, Long.MAX_VALUE);
+    byte[] data = buildData(100);
+    for (int position = 0; position < 300; position += 100) {
+      CacheSpan hole = cache.startReadWrite(KEY, position);
+      sink.open(new DataSpec(Uri.parse("test://data"), position, data.length, KEY));
+      sink.write(data, 0, data.length);
+      sink.close();
+      cache.releaseHoleSpan(hole);
+    }
+    assertTrue(cache.isCached(KEY, 0, 300));
+    assertEquals(3, cache.getCachedSpans(KEY).size());
+  }
+
+  public void testDiskFailureReportedOnClose() throws Exception {
+    AsyncCacheDataSink sink = new AsyncCacheDataSink(cache, Long.MAX_VALUE);
+    // The cache file of a key containing a separator is in a directory that does not exist, so the
+    // disk thread fails to create it.
+    String key = "missing/key";
+    CacheSpan hole = cache.startReadWrite(key, 0);
+    sink.open(new DataSpec(Uri.parse("test://data"), 0, 100, key));
+    byte[] data = buildData(100);
+    try {
+      sink.write(data, 0, data.length);
+      sink.close();
+      fail();
+    } catch (CacheDataSinkException e) {
+      // Expected.
+    }
+    cache.releaseHoleSpan(hole);
+    assertEquals(0, cache.getCacheSpace());
+  }
+
+  public void testDataAfterDiskFailureDiscarded() throws Exception {
+    // The second cache file cannot be created.
+    FailingCache failingCache = new FailingCache(cache, 2);
+    AsyncCacheDataSink sink = new AsyncCacheDataSink(failingCache, 100, 50, 8);
+    byte[] data = buildData(300);
+    CacheSpan hole = cache.startReadWrite(KEY, 0);
+    sink.open(new DataSpec(Uri.parse("test://data"), 0, data.length, KEY));
+    sink.write(data, 0, 200);
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    boolean failureReported = false;
+    while (!failureReported && System.currentTimeMillis() < deadlineMs) {
+      try {
+        sink.write(data, 0, 0);
+        Thread.sleep(10);
+      } catch (CacheDataSinkException e) {
+        failureReported = true;
+      }
+    }
+    assertTrue(failureReported);
+    // Data written after the failure has been reported is discarded too.
+    sink.write(data, 200, 100);
+    sink.close();
+    cache.releaseHoleSpan(hole);
+
+    assertEquals(2, failingCache.startFileCount);
+    assertEquals(100, cache.getCacheSpace());
+    assertTrue(cache.isCached(KEY, 0, 100));
+    assertFalse(cache.isCached(KEY, 100, 1));
+  }
+
+  private static byte[] buildData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  private static void readFile(File file, byte[] target, int offset, int length)
+      throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      int bytesRead = 0;
+      while (bytesRead < length) {
+        bytesRead += input.read(target, offset + bytesRead, length - bytesRead);
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Delegates to a cache, except that one call to {@link #startFile(String, long, long)} returns a
+   * file that cannot be created.
+   */
+  private static final class FailingCache implements Cache {
+
+    private final Cache cache;
+    private final int failingStartFileCall;
+
+    public volatile int startFileCount;
+
+    public FailingCache(Cache cache, int failingStartFileCall) {
+      this.cache = cache;
+      this.failingStartFileCall = failingStartFileCall;
+    }
+
+    @Override
+    public File startFile(String key, long position, long length) {
+      File file = cache.startFile(key, position, length);
+      if (++startFileCount == failingStartFileCall) {
+        return new File(new File(file.getParentFile(), "missing"), file.getName());
+      }
+      return file;
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      return cache.addListener(key, listener);
+    }
+
+    @Override
+    public void removeListener(String key, Listener listener) {
+      cache.removeListener(key, listener);
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> getCachedSpans(String key) {
+      return cache.getCachedSpans(key);
+    }
+
+    @Override
+    public Set<String> getKeys() {
+      return cache.getKeys();
+    }
+
+    @Override
+    public long getCacheSpace() {
+      return cache.getCacheSpace();
+    }
+
+    @Override
+    public CacheSpan startReadWrite(String key, long position) throws InterruptedException {
+      return cache.startReadWrite(key, position);
+    }
+
+    @Override
+    public CacheSpan startReadWriteNonBlocking(String key, long position) {
+      return cache.startReadWriteNonBlocking(key, position);
+    }
+
+    @Override
+    public void commitFile(File file) {
+      cache.commitFile(file);
+    }
+
+    @Override
+    public void releaseHoleSpan(CacheSpan holeSpan) {
+      cache.releaseHoleSpan(holeSpan);
+    }
+
+    @Override
+    public void removeSpan(CacheSpan span) {
+      cache.removeSpan(span);
+    }
+
+    @Override
+    public boolean isCached(String key, long position, long length) {
+      return cache.isCached(key, position, length);
+    }
+
+  }
+
+}
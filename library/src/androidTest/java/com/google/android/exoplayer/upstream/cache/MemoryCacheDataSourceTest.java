@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link MemoryCacheDataSource} and {@link MemoryCache}.
+ */
+public class MemoryCacheDataSourceTest extends TestCase {
+
+  private static final Uri URI = Uri.parse("http://example.com/manifest.mpd");
+
+  private FakeHttpDataSource upstream;
+
+  @Override
+  public void setUp() {
+    upstream = new FakeHttpDataSource();
+    upstream.setResponse(buildData(1000), "\"v1\"");
+  }
+
+  public void testCachedResponseServedWithoutUpstream() throws IOException {
+    MemoryCacheDataSource dataSource =
+        new MemoryCacheDataSource(upstream, new MemoryCache(10000), false);
+    DataSpec dataSpec = new DataSpec(URI, DataSpec.FLAG_CACHE_IN_MEMORY);
+
+    assertTrue(Arrays.equals(upstream.data, readFully(dataSource, dataSpec)));
+    assertTrue(Arrays.equals(upstream.data, readFully(dataSource, dataSpec)));
+    assertEquals(1, upstream.openCount);
+  }
+
+  public void testRangesCachedSeparately() throws IOException {
+    MemoryCacheDataSource dataSource =
+        new MemoryCacheDataSource(upstream, new MemoryCache(10000), false);
+    DataSpec first = new DataSpec(URI, 0, 100, "key", DataSpec.FLAG_CACHE_IN_MEMORY);
+    DataSpec second = new DataSpec(URI, 100, 100, "key", DataSpec.FLAG_CACHE_IN_MEMORY);
+
+    readFully(dataSource, first);
+    readFully(dataSource, second);
+    byte[] secondData = readFully(dataSource, second);
+    assertEquals(2, upstream.openCount);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(upstream.data, 100, 200), secondData));
+  }
+
+  public void testUnflaggedRequestsNotCached() throws IOException {
+    MemoryCache cache = new MemoryCache(10000);
+    MemoryCacheDataSource dataSource = new MemoryCacheDataSource(upstream, cache, false);
+    DataSpec dataSpec = new DataSpec(URI);
+
+    readFully(dataSource, dataSpec);
+    readFully(dataSource, dataSpec);
+    assertEquals(2, upstream.openCount);
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  public void testPartiallyReadResponseCached() throws IOException {
+    MemoryCacheDataSource dataSource =
+        new MemoryCacheDataSource(upstream, new MemoryCache(10000), false);
+    DataSpec dataSpec = new DataSpec(URI, DataSpec.FLAG_CACHE_IN_MEMORY);
+
+    dataSource.open(dataSpec);
+    dataSource.read(new byte[10], 0, 10);
+    dataSource.close();
+    assertTrue(Arrays.equals(upstream.data, readFully(dataSource, dataSpec)));
+    assertEquals(1, upstream.openCount);
+  }
+
+  public void testRevalidationNotModified() throws IOException {
+    MemoryCacheDataSource dataSource =
+        new MemoryCacheDataSource(upstream, new MemoryCache(10000), true);
+    DataSpec dataSpec = new DataSpec(URI, DataSpec.FLAG_CACHE_IN_MEMORY);
+
+    readFully(dataSource, dataSpec);
+    upstream.bytesRead = 0;
+    assertTrue(Arrays.equals(upstream.data, readFully(dataSource, dataSpec)));
+    assertEquals(2, upstream.openCount);
+    assertEquals(0, upstream.bytesRead);
+    assertEquals("\"v1\"", upstream.lastIfNoneMatch);
+    assertTrue(upstream.requestProperties.isEmpty());
+  }
+
+  public void testRevalidationModified() throws IOException {
+    MemoryCacheDataSource dataSource =
+        new MemoryCacheDataSource(upstream, new MemoryCache(10000), true);
+    DataSpec dataSpec = new DataSpec(URI, DataSpec.FLAG_CACHE_IN_MEMORY);
+
+    readFully(dataSource, dataSpec);
+    byte[] newData = buildData(500);
+    upstream.setResponse(newData, "\"v2\"");
+    assertTrue(Arrays.equals(newData, readFully(dataSource, dataSpec)));
+    // The new response replaces the old one.
+    assertTrue(Arrays.equals(newData, readFully(dataSource, dataSpec)));
+    assertEquals(3, upstream.openCount);
+    assertEquals("\"v2\"", upstream.lastIfNoneMatch);
+  }
+
+  public void testCompressionAndLruEviction() throws IOException {
+    // Each response compresses to a fraction of its size, so all but the first fit the budget.
+    MemoryCache cache = new MemoryCache(250, MemoryCache.DEFAULT_MAX_ENTRY_BYTES, true);
+    MemoryCacheDataSource dataSource = new MemoryCacheDataSource(upstream, cache, false);
+    for (int i = 0; i < 10; i++) {
+      readFully(dataSource, new DataSpec(Uri.parse("http://example.com/" + i),
+          DataSpec.FLAG_CACHE_IN_MEMORY));
+    }
+    assertTrue(cache.getSize() <= 250);
+    int entryCount = cache.getEntryCount();
+    assertTrue(entryCount > 1 && entryCount < 10);
+
+    // The most recent response is still cached, and the first has been evicted.
+    upstream.openCount = 0;
+    assertTrue(Arrays.equals(upstream.data, readFully(dataSource,
+        new DataSpec(Uri.parse("http://example.com/9"), DataSpec.FLAG_CACHE_IN_MEMORY))));
+    assertEquals(0, upstream.openCount);
+    readFully(dataSource, new DataSpec(Uri.parse("http://example.com/0"),
+        DataSpec.FLAG_CACHE_IN_MEMORY));
+    assertEquals(1, upstream.openCount);
+  }
+
+  private static byte[] readFully(MemoryCacheDataSource dataSource, DataSpec dataSpec)
+      throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    dataSource.open(dataSpec);
+    byte[] buffer = new byte[64];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != -1) {
+      output.write(buffer, 0, bytesRead);
+    }
+    dataSource.close();
+    return output.toByteArray();
+  }
+
+  private static byte[] buildData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i % 10);
+    }
+    return data;
+  }
+
+  /**
+   * Serves a single response, honoring If-None-Match.
+   */
+  private static final class FakeHttpDataSource implements HttpDataSource {
+
+    public final Map<String, String> requestProperties = new HashMap<>();
+
+    public byte[] data;
+    public int openCount;
+    public int bytesRead;
+    public String lastIfNoneMatch;
+
+    private String etag;
+    private DataSpec dataSpec;
+    private int readPosition;
+    private int bytesRemaining;
+
+    public void setResponse(byte[] data, String etag) {
+      this.data = data;
+      this.etag = etag;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+      openCount++;
+      lastIfNoneMatch = requestProperties.get("If-None-Match");
+      if (etag.equals(lastIfNoneMatch)) {
+        throw new InvalidResponseCodeException(304,
+            Collections.<String, List<String>>emptyMap(), dataSpec);
+      }
+      this.dataSpec = dataSpec;
+      readPosition = (int) dataSpec.position;
+      bytesRemaining = dataSpec.length == C.LENGTH_UNBOUNDED ? data.length - readPosition
+          : (int) dataSpec.length;
+      return dataSpec.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (bytesRemaining == 0) {
+        return -1;
+      }
+      int bytesToRead = Math.min(readLength, bytesRemaining);
+      System.arraycopy(data, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      bytesRemaining -= bytesToRead;
+      bytesRead += bytesToRead;
+      return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+      dataSpec = null;
+    }
+
+    @Override
+    public String getUri() {
+      return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+      requestProperties.put(name, value);
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+      requestProperties.remove(name);
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+      requestProperties.clear();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return dataSpec == null ? null
+          : Collections.singletonMap("Etag", Collections.singletonList(etag));
+    }
+
+  }
+
+}
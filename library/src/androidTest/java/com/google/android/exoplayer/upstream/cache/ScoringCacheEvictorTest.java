@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.FileDataSource;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link ScoringCacheEvictor} and {@link CacheMetrics}.
+ */
+public class ScoringCacheEvictorTest extends TestCase {
+
+  /**
+   * Resolves keys of the form {@code bitrate_segmentIndex}, with playback at segment zero.
+   */
+  private static final ScoringCacheEvictor.SegmentResolver RESOLVER =
+      new ScoringCacheEvictor.SegmentResolver() {
+        @Override
+        public int getBitrate(CacheSpan span) {
+          int separator = span.key.indexOf('_');
+          return separator == -1 ? -1 : Integer.parseInt(span.key.substring(0, separator));
+        }
+
+        @Override
+        public long getDistanceFromPlaybackPositionUs(CacheSpan span) {
+          int separator = span.key.indexOf('_');
+          return separator == -1 ? C.UNKNOWN_TIME_US
+              : Integer.parseInt(span.key.substring(separator + 1)) * 2000000L;
+        }
+      };
+
+  private File cacheDir;
+
+  @Override
+  public void setUp() throws IOException {
+    cacheDir = File.createTempFile("ScoringCacheEvictorTest", null);
+    cacheDir.delete();
+    cacheDir.mkdirs();
+  }
+
+  @Override
+  public void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testBitrateScorerEvictsHighestBitrateFirst() throws Exception {
+    CacheMetrics metrics = new CacheMetrics();
+    SimpleCache cache = new SimpleCache(cacheDir, new ScoringCacheEvictor(300,
+        new ScoringCacheEvictor.BitrateScorer(RESOLVER), metrics));
+    writeSpan(cache, "manifest", 0, 100);
+    writeSpan(cache, "500000_1", 0, 100);
+    writeSpan(cache, "2000000_1", 0, 100);
+    writeSpan(cache, "1000000_1", 0, 100);
+
+    assertEquals(300, cache.getCacheSpace());
+    assertTrue(cache.getKeys().contains("manifest"));
+    assertTrue(cache.getKeys().contains("500000_1"));
+    assertTrue(cache.getKeys().contains("1000000_1"));
+    assertFalse(cache.getKeys().contains("2000000_1"));
+    assertEquals(1, metrics.getEvictionCount());
+    assertEquals(100, metrics.getEvictedBytes());
+  }
+
+  public void testPlaybackDistanceScorerEvictsFurthestFirst() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new ScoringCacheEvictor(300,
+        new ScoringCacheEvictor.PlaybackDistanceScorer(RESOLVER)));
+    writeSpan(cache, "500000_5", 0, 100);
+    writeSpan(cache, "500000_1", 0, 100);
+    writeSpan(cache, "500000_3", 0, 100);
+    writeSpan(cache, "500000_2", 0, 100);
+
+    assertEquals(300, cache.getCacheSpace());
+    assertFalse(cache.getKeys().contains("500000_5"));
+  }
+
+  public void testFrequencyScorerRetainsFrequentlyReadSpans() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new ScoringCacheEvictor(300,
+        new ScoringCacheEvictor.FrequencyScorer()));
+    writeSpan(cache, "a", 0, 100);
+    writeSpan(cache, "b", 0, 100);
+    writeSpan(cache, "c", 0, 100);
+    // Read a and c repeatedly, and b once. b is then the least frequently read span, although it
+    // was read more recently than a.
+    for (int i = 0; i < 3; i++) {
+      readSpan(cache, "a");
+      readSpan(cache, "c");
+    }
+    readSpan(cache, "b");
+    writeSpan(cache, "d", 0, 100);
+
+    assertEquals(300, cache.getCacheSpace());
+    assertTrue(cache.getKeys().contains("a"));
+    assertFalse(cache.getKeys().contains("b"));
+    assertTrue(cache.getKeys().contains("c"));
+  }
+
+  public void testRecencyScorerEvictsLeastRecentlyUsed() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new ScoringCacheEvictor(200,
+        new ScoringCacheEvictor.RecencyScorer()));
+    writeSpan(cache, "a", 0, 100);
+    Thread.sleep(5);
+    writeSpan(cache, "b", 0, 100);
+    Thread.sleep(5);
+    readSpan(cache, "a");
+    writeSpan(cache, "c", 0, 100);
+
+    assertTrue(cache.getKeys().contains("a"));
+    assertFalse(cache.getKeys().contains("b"));
+  }
+
+  public void testCacheDataSourceRecordsHitsAndMisses() throws Exception {
+    CacheMetrics metrics = new CacheMetrics();
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    byte[] data = new byte[100];
+    CacheDataSource dataSource = new CacheDataSource(cache, new ByteArrayDataSource(data),
+        new FileDataSource(), new CacheDataSink(cache, Long.MAX_VALUE), true, false, null,
+        metrics);
+    DataSpec dataSpec = new DataSpec(Uri.parse("test://data"), 0, data.length, "key");
+
+    readFully(dataSource, dataSpec);
+    assertEquals(0, metrics.getHitCount());
+    assertEquals(1, metrics.getMissCount());
+    assertEquals(100, metrics.getUpstreamBytesRead());
+
+    readFully(dataSource, dataSpec);
+    assertEquals(1, metrics.getHitCount());
+    assertEquals(1, metrics.getMissCount());
+    assertEquals(100, metrics.getCachedBytesRead());
+    assertEquals(0.5, metrics.getHitRatio());
+    assertEquals(0.5, metrics.getByteHitRatio());
+
+    metrics.reset();
+    assertTrue(Double.isNaN(metrics.getHitRatio()));
+    assertTrue(Double.isNaN(metrics.getByteHitRatio()));
+  }
+
+  private static void readFully(CacheDataSource dataSource, DataSpec dataSpec)
+      throws IOException {
+    dataSource.open(dataSpec);
+    byte[] buffer = new byte[32];
+    while (dataSource.read(buffer, 0, buffer.length) != -1) {}
+    dataSource.close();
+  }
+
+  private static void readSpan(SimpleCache cache, String key) throws InterruptedException {
+    CacheSpan span = cache.startReadWrite(key, 0);
+    assertTrue(span.isCached);
+  }
+
+  private static void writeSpan(Cache cache, String key, long position, int length)
+      throws IOException, InterruptedException {
+    CacheSpan hole = cache.startReadWrite(key, position);
+    File file = cache.startFile(key, position, length);
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(new byte[length]);
+    } finally {
+      output.close();
+    }
+    cache.commitFile(file);
+    cache.releaseHoleSpan(hole);
+  }
+
+}
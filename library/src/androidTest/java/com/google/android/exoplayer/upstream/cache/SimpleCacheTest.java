@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link SimpleCache}.
+ */
+public class SimpleCacheTest extends TestCase {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private File cacheDir;
+
+  @Override
+  public void setUp() throws IOException {
+    cacheDir = File.createTempFile("SimpleCacheTest", null);
+    cacheDir.delete();
+    cacheDir.mkdirs();
+  }
+
+  @Override
+  public void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testWriteThenRead() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    assertFalse(hole.isCached);
+    assertNull(cache.startReadWriteNonBlocking("key", 0));
+    writeSpan(cache, "key", 0, 100);
+    cache.releaseHoleSpan(hole);
+
+    CacheSpan span = cache.startReadWrite("key", 50);
+    assertTrue(span.isCached);
+    assertEquals(0, span.position);
+    assertEquals(100, span.length);
+    assertTrue(cache.isCached("key", 0, 100));
+    assertFalse(cache.isCached("key", 0, 101));
+    assertEquals(100, cache.getCacheSpace());
+    assertEquals(1, cache.getCachedSpans("key").size());
+  }
+
+  public void testInitializeFromDirectory() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    writeSpan(cache, "key", 0, 100);
+    writeSpan(cache, "key", 100, 50);
+    cache.releaseHoleSpan(hole);
+    waitForIndex(2);
+
+    SimpleCache reloadedCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(150, reloadedCache.getCacheSpace());
+    assertTrue(reloadedCache.isCached("key", 0, 150));
+  }
+
+  public void testInitializeFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    writeSpan(cache, "key", 0, 100);
+    cache.releaseHoleSpan(hole);
+    long lastAccessTimestamp = cache.startReadWrite("key", 0).lastAccessTimestamp;
+    hole = cache.startReadWrite("key", 100);
+    writeSpan(cache, "key", 100, 50);
+    cache.releaseHoleSpan(hole);
+    waitForIndex(2);
+    // A file written by a process that died before indexing it.
+    File unindexedFile = CacheSpan.getCacheFileName(cacheDir, "key", 500, 0);
+    writeFile(unindexedFile, 10);
+    unindexedFile.setLastModified(System.currentTimeMillis() - 60000);
+
+    SimpleCache reloadedCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(150, reloadedCache.getCacheSpace());
+    assertEquals(2, reloadedCache.getCachedSpans("key").size());
+    assertEquals(lastAccessTimestamp,
+        reloadedCache.getCachedSpans("key").first().lastAccessTimestamp);
+    waitForDeletion(unindexedFile);
+    assertConsistent(reloadedCache);
+  }
+
+  public void testUnindexedFileRemovedRegardlessOfModificationTime() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    writeSpan(cache, "key", 0, 100);
+    cache.releaseHoleSpan(hole);
+    waitForIndex(1);
+    // Modification times may be coarse or ahead of the clock, so are not used.
+    File unindexedFile = CacheSpan.getCacheFileName(cacheDir, "key", 500, 0);
+    writeFile(unindexedFile, 10);
+    unindexedFile.setLastModified(System.currentTimeMillis() + 60000);
+
+    SimpleCache reloadedCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    hole = reloadedCache.startReadWrite("key", 200);
+    File startedFile = reloadedCache.startFile("key", 200, 10);
+    writeFile(startedFile, 10);
+    waitForDeletion(unindexedFile);
+    // A file handed out by startFile is kept, even though it is not yet indexed.
+    assertTrue(startedFile.exists());
+    reloadedCache.commitFile(startedFile);
+    reloadedCache.releaseHoleSpan(hole);
+    assertTrue(reloadedCache.isCached("key", 200, 10));
+    assertConsistent(reloadedCache);
+  }
+
+  public void testCorruptIndexFallsBackToScan() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    writeSpan(cache, "key", 0, 100);
+    cache.releaseHoleSpan(hole);
+    waitForIndex(1);
+    RandomAccessFile indexFile =
+        new RandomAccessFile(new File(cacheDir, CachedSpanIndex.FILE_NAME), "rw");
+    try {
+      indexFile.seek(13);
+      indexFile.write(0x7F);
+    } finally {
+      indexFile.close();
+    }
+    assertNull(new CachedSpanIndex(cacheDir).read());
+
+    SimpleCache reloadedCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(reloadedCache.isCached("key", 0, 100));
+    // The scanned spans are indexed again.
+    waitForIndex(1);
+  }
+
+  public void testIndexUpdatedOnEviction() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(150));
+    for (int i = 0; i < 3; i++) {
+      String key = "key" + i;
+      CacheSpan hole = cache.startReadWrite(key, 0);
+      writeSpan(cache, key, 0, 100);
+      cache.releaseHoleSpan(hole);
+    }
+    assertEquals(Collections.singleton("key2"), cache.getKeys());
+    CachedSpanIndex index = new CachedSpanIndex(cacheDir);
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    List<CacheSpan> indexedSpans = index.read();
+    while ((indexedSpans == null || indexedSpans.size() != 1 || !"key2".equals(
+        indexedSpans.get(0).key)) && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+      indexedSpans = index.read();
+    }
+    assertEquals(1, indexedSpans.size());
+    assertEquals("key2", indexedSpans.get(0).key);
+  }
+
+  public void testReopenOverBudgetCacheEvicts() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    for (int i = 0; i < 3; i++) {
+      writeSpan(cache, "key", i * 500, 500);
+    }
+    cache.releaseHoleSpan(hole);
+    waitForIndex(3);
+
+    // The evictor removes spans of the same key while the spans are being loaded.
+    final SimpleCache reloadedCache =
+        new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(1000));
+    final AtomicReference<Long> cacheSpace = new AtomicReference<>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        cacheSpace.set(reloadedCache.getCacheSpace());
+      }
+    };
+    thread.start();
+    thread.join(TIMEOUT_MS);
+    assertNotNull(cacheSpace.get());
+    assertEquals(1000, (long) cacheSpace.get());
+    assertConsistent(reloadedCache);
+  }
+
+  public void testBlockedWriterWokenByRelease() throws Exception {
+    final SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan hole = cache.startReadWrite("key", 0);
+    final AtomicReference<CacheSpan> blockedSpan = new AtomicReference<>();
+    final CountDownLatch acquired = new CountDownLatch(1);
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          blockedSpan.set(cache.startReadWrite("key", 0));
+          acquired.countDown();
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    }.start();
+    // A writer for another key is not blocked.
+    assertNotNull(cache.startReadWriteNonBlocking("other", 0));
+    assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+    writeSpan(cache, "key", 0, 10);
+    cache.releaseHoleSpan(hole);
+    assertTrue(acquired.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(blockedSpan.get().isCached);
+  }
+
+  public void testEvictionAcrossKeys() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(250));
+    for (int i = 0; i < 5; i++) {
+      String key = "key" + i;
+      CacheSpan hole = cache.startReadWrite(key, 0);
+      writeSpan(cache, key, 0, 100);
+      cache.releaseHoleSpan(hole);
+    }
+    assertTrue(cache.getCacheSpace() <= 250);
+    assertConsistent(cache);
+  }
+
+  public void testConcurrentLoadsWithEviction() throws Exception {
+    final SimpleCache cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(5000));
+    final int threadCount = 8;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      final int threadIndex = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 200; j++) {
+              String key = "key" + ((threadIndex + j) % 12);
+              long position = (j % 5) * 100;
+              CacheSpan span = cache.startReadWrite(key, position);
+              if (!span.isCached) {
+                writeSpan(cache, key, position, 100);
+                cache.releaseHoleSpan(span);
+              }
+              cache.isCached(key, 0, 500);
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join(TIMEOUT_MS);
+      assertFalse(thread.isAlive());
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertTrue(cache.getCacheSpace() <= 5000);
+    assertConsistent(cache);
+  }
+
+  /**
+   * Asserts that the cache's accounting matches the spans it holds, and that exactly the files of
+   * those spans exist on disk.
+   */
+  private void assertConsistent(SimpleCache cache) {
+    long totalLength = 0;
+    int spanCount = 0;
+    for (String key : cache.getKeys()) {
+      NavigableSet<CacheSpan> spans = cache.getCachedSpans(key);
+      if (spans == null) {
+        continue;
+      }
+      for (CacheSpan span : spans) {
+        assertTrue(span.file.exists());
+        totalLength += span.length;
+        spanCount++;
+      }
+    }
+    assertEquals(totalLength, cache.getCacheSpace());
+    int fileCount = 0;
+    for (File file : cacheDir.listFiles()) {
+      if (!CachedSpanIndex.isIndexFile(file)) {
+        fileCount++;
+      }
+    }
+    assertEquals(spanCount, fileCount);
+  }
+
+  /**
+   * Waits for the index to be written with the specified number of spans.
+   */
+  private void waitForIndex(int spanCount) throws InterruptedException {
+    CachedSpanIndex index = new CachedSpanIndex(cacheDir);
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadlineMs) {
+      List<CacheSpan> spans = index.read();
+      if (spans != null && spans.size() == spanCount) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    fail();
+  }
+
+  private static void waitForDeletion(File file) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (file.exists() && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertFalse(file.exists());
+  }
+
+  private static void writeSpan(Cache cache, String key, long position, int length)
+      throws IOException {
+    File file = cache.startFile(key, position, length);
+    writeFile(file, length);
+    cache.commitFile(file);
+  }
+
+  private static void writeFile(File file, int length) throws IOException {
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(new byte[length]);
+    } finally {
+      output.close();
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import junit.framework.TestCase;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests for {@link NalUnitUtil}.
@@ -27,6 +28,7 @@ public class NalUnitUtilTest extends TestCase {
 
   private static final int TEST_PARTIAL_NAL_POSITION = 4;
   private static final int TEST_NAL_POSITION = 10;
+  private static final int FUZZ_ITERATIONS = 2000;
 
   public void testFindNalUnit() {
     byte[] data = buildTestData();
@@ -111,6 +113,27 @@ public class NalUnitUtilTest extends TestCase {
     assertPrefixFlagsCleared(prefixFlags);
   }
 
+  public void testFindNalUnitMatchesByteByByteSearch() {
+    Random random = new Random(0);
+    for (int iteration = 0; iteration < FUZZ_ITERATIONS; iteration++) {
+      byte[] data = buildFuzzData(random, random.nextInt(256));
+      boolean[] prefixFlags = new boolean[3];
+      boolean[] expectedPrefixFlags = new boolean[3];
+      int offset = 0;
+      while (offset < data.length) {
+        // Search ranges of random length, carrying the prefix flags across them as a reader would.
+        int endOffset = Math.min(data.length, offset + random.nextInt(48));
+        int result = NalUnitUtil.findNalUnit(data, offset, endOffset, prefixFlags);
+        int expectedResult = findNalUnitByteByByte(data, offset, endOffset, expectedPrefixFlags);
+        assertEquals(expectedResult, result);
+        assertTrue(Arrays.equals(expectedPrefixFlags, prefixFlags));
+        assertEquals(findNalUnitByteByByte(data, offset, endOffset, null),
+            NalUnitUtil.findNalUnit(data, offset, endOffset, null));
+        offset = result < offset ? offset : result < endOffset ? result + 3 : endOffset;
+      }
+    }
+  }
+
   public void testUnescapeDoesNotModifyBuffersWithoutStartCodes() {
     assertUnescapeDoesNotModify("");
     assertUnescapeDoesNotModify("0000");
@@ -123,6 +146,23 @@ public class NalUnitUtilTest extends TestCase {
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
   }
 
+  public void testUnescapeMatchesByteByByteUnescape() {
+    Random random = new Random(0);
+    for (int iteration = 0; iteration < FUZZ_ITERATIONS; iteration++) {
+      byte[] data = buildFuzzData(random, random.nextInt(256));
+      for (int i = 0; i < data.length; i++) {
+        if (data[i] == 1) {
+          data[i] = 3;
+        }
+      }
+      int limit = random.nextInt(data.length + 1);
+      byte[] expected = unescapeByteByByte(data, limit);
+      byte[] unescaped = data.clone();
+      int length = NalUnitUtil.unescapeStream(unescaped, limit);
+      assertTrue(Arrays.equals(expected, Arrays.copyOf(unescaped, length)));
+    }
+  }
+
   public void testDiscardToSps() {
     assertDiscardToSpsMatchesExpected("", "");
     assertDiscardToSpsMatchesExpected("00", "");
@@ -155,6 +195,86 @@ public class NalUnitUtilTest extends TestCase {
     return data;
   }
 
+  /**
+   * Builds data in which zero and one bytes are common, so that complete and partial NAL unit
+   * start code prefixes occur frequently.
+   */
+  private static byte[] buildFuzzData(Random random, int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      int value = random.nextInt(8);
+      data[i] = (byte) (value < 3 ? 0 : value < 5 ? 1 : random.nextInt(256));
+    }
+    return data;
+  }
+
+  /**
+   * The byte by byte implementation of {@link NalUnitUtil#findNalUnit(byte[], int, int,
+   * boolean[])} that preceded the current one, used as a reference.
+   */
+  private static int findNalUnitByteByByte(byte[] data, int startOffset, int endOffset,
+      boolean[] prefixFlags) {
+    int length = endOffset - startOffset;
+    if (length == 0) {
+      return endOffset;
+    }
+    if (prefixFlags != null) {
+      if (prefixFlags[0]) {
+        NalUnitUtil.clearPrefixFlags(prefixFlags);
+        return startOffset - 3;
+      } else if (length > 1 && prefixFlags[1] && data[startOffset] == 1) {
+        NalUnitUtil.clearPrefixFlags(prefixFlags);
+        return startOffset - 2;
+      } else if (length > 2 && prefixFlags[2] && data[startOffset] == 0
+          && data[startOffset + 1] == 1) {
+        NalUnitUtil.clearPrefixFlags(prefixFlags);
+        return startOffset - 1;
+      }
+    }
+    int limit = endOffset - 1;
+    for (int i = startOffset + 2; i < limit; i += 3) {
+      if ((data[i] & 0xFE) != 0) {
+        // Do nothing.
+      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
+        if (prefixFlags != null) {
+          NalUnitUtil.clearPrefixFlags(prefixFlags);
+        }
+        return i - 2;
+      } else {
+        i -= 2;
+      }
+    }
+    if (prefixFlags != null) {
+      prefixFlags[0] = length > 2
+          ? (data[endOffset - 3] == 0 && data[endOffset - 2] == 0 && data[endOffset - 1] == 1)
+          : length == 2 ? (prefixFlags[2] && data[endOffset - 2] == 0 && data[endOffset - 1] == 1)
+          : (prefixFlags[1] && data[endOffset - 1] == 1);
+      prefixFlags[1] = length > 1 ? data[endOffset - 2] == 0 && data[endOffset - 1] == 0
+          : prefixFlags[2] && data[endOffset - 1] == 0;
+      prefixFlags[2] = data[endOffset - 1] == 0;
+    }
+    return endOffset;
+  }
+
+  /**
+   * Returns a copy of {@code data} up to {@code limit}, omitting each 3 that follows two zeros that
+   * are not themselves part of a preceding escape code.
+   */
+  private static byte[] unescapeByteByByte(byte[] data, int limit) {
+    byte[] output = new byte[limit];
+    int outputLength = 0;
+    int zeroCount = 0;
+    for (int i = 0; i < limit; i++) {
+      if (zeroCount >= 2 && data[i] == 3) {
+        zeroCount = 0;
+        continue;
+      }
+      zeroCount = data[i] == 0 ? zeroCount + 1 : 0;
+      output[outputLength++] = data[i];
+    }
+    return Arrays.copyOf(output, outputLength);
+  }
+
   private static void assertPrefixFlagsCleared(boolean[] flags) {
     assertEquals(false, flags[0] || flags[1] || flags[2]);
   }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Unit test for {@link SlidingPercentile}.
+ */
+public class SlidingPercentileTest extends TestCase {
+
+  public void testEmpty() {
+    assertTrue(Float.isNaN(new SlidingPercentile(10).getPercentile(0.5f)));
+  }
+
+  public void testMedianOfEqualWeights() {
+    SlidingPercentile percentile = new SlidingPercentile(100);
+    percentile.addSample(1, 30);
+    percentile.addSample(1, 10);
+    percentile.addSample(1, 20);
+    assertEquals(20f, percentile.getPercentile(0.5f));
+    assertEquals(10f, percentile.getPercentile(0.1f));
+    assertEquals(30f, percentile.getPercentile(1f));
+  }
+
+  public void testOldestSampleIsReducedThenEvicted() {
+    SlidingPercentile percentile = new SlidingPercentile(10);
+    percentile.addSample(6, 1);
+    percentile.addSample(6, 2);
+    // The first sample has been reduced to a weight of 4, so the second is the median.
+    assertEquals(2f, percentile.getPercentile(0.5f));
+    assertEquals(1f, percentile.getPercentile(0.4f));
+    percentile.addSample(10, 3);
+    // Only the third sample remains.
+    assertEquals(3f, percentile.getPercentile(0.01f));
+  }
+
+  public void testMatchesReferenceImplementation() {
+    Random random = new Random(0);
+    int[] maxWeights = new int[] {1, 7, 100, 2000};
+    for (int maxWeight : maxWeights) {
+      SlidingPercentile percentile = new SlidingPercentile(maxWeight);
+      ReferencePercentile reference = new ReferencePercentile(maxWeight);
+      for (int i = 0; i < 5000; i++) {
+        int weight = random.nextInt(4) == 0 ? 0 : random.nextInt(maxWeight + 10);
+        // Draw from a small range of values so that ties are common.
+        float value = random.nextInt(50) * 1000f;
+        percentile.addSample(weight, value);
+        reference.addSample(weight, value);
+        float fraction = (random.nextInt(100) + 1) / 100f;
+        assertEquals(reference.getPercentile(fraction), percentile.getPercentile(fraction));
+      }
+    }
+  }
+
+  /**
+   * A straightforward implementation that sorts the samples on every query.
+   */
+  private static final class ReferencePercentile {
+
+    private final int maxWeight;
+    private final ArrayList<float[]> samples;
+    private int totalWeight;
+
+    public ReferencePercentile(int maxWeight) {
+      this.maxWeight = maxWeight;
+      samples = new ArrayList<>();
+    }
+
+    public void addSample(int weight, float value) {
+      samples.add(new float[] {weight, value});
+      totalWeight += weight;
+      while (totalWeight > maxWeight) {
+        int excessWeight = totalWeight - maxWeight;
+        float[] oldest = samples.get(0);
+        if (oldest[0] <= excessWeight) {
+          totalWeight -= (int) oldest[0];
+          samples.remove(0);
+        } else {
+          oldest[0] -= excessWeight;
+          totalWeight -= excessWeight;
+        }
+      }
+    }
+
+    public float getPercentile(float percentile) {
+      ArrayList<float[]> sorted = new ArrayList<>(samples);
+      Collections.sort(sorted, new Comparator<float[]>() {
+        @Override
+        public int compare(float[] a, float[] b) {
+          return Float.compare(a[1], b[1]);
+        }
+      });
+      float desiredWeight = percentile * totalWeight;
+      int accumulatedWeight = 0;
+      for (float[] sample : sorted) {
+        accumulatedWeight += (int) sample[0];
+        if (accumulatedWeight >= desiredWeight) {
+          return sample[1];
+        }
+      }
+      return sorted.isEmpty() ? Float.NaN : sorted.get(sorted.size() - 1)[1];
+    }
+
+  }
+
+}
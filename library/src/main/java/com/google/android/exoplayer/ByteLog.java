@@ -1,15 +1,32 @@
 package com.google.android.exoplayer;
 
 /**
+ * A byte sample copied out of a {@link TelemetryRecorder}.
+ * <p>
  * Created by lleej on 2016-12-06.
  */
 
-public class ByteLog {
-    public String endTime;
-    public int bytes;
+public final class ByteLog {
+    private final long endTimeMs;
+    private final int bytes;
 
-    public ByteLog(String endTime, int bytes){
-        this.endTime = endTime;
+    /* package */ ByteLog(long endTimeMs, int bytes){
+        this.endTimeMs = endTimeMs;
         this.bytes = bytes;
     }
+
+    /**
+     * Returns the time at which the transfer completed, relative to the session start.
+     */
+    public long getEndTimeMs(){
+        return endTimeMs;
+    }
+
+    public String getEndTime(){
+        return TelemetryRecorder.formatByteSeconds(endTimeMs);
+    }
+
+    public int getBytes(){
+        return bytes;
+    }
 }
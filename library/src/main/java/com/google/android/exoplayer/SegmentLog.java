@@ -1,25 +1,47 @@
 package com.google.android.exoplayer;
 
-import java.io.Serializable;
-
 /**
+ * A segment sample copied out of a {@link TelemetryRecorder}.
+ * <p>
  * Created by lleej on 2016-12-01.
  */
 
-public class SegmentLog{
-    public int index;
-    public String requestedTime;
-    public String loadDuration;
-    public double bitrate;
+public final class SegmentLog{
+    private final int index;
+    private final int bitrate;
+    private final long requestedTimeUs;
+    private final long loadDurationMs;
 
-    public SegmentLog(int index, int bitrate, String requestedTime){
-        this.index = index;
-        this.bitrate = bitrate/1000.0;
-        this.requestedTime = requestedTime;
-    }
-    public SegmentLog(int index, double bitrate, String requestedTime){
+    /* package */ SegmentLog(int index, int bitrate, long requestedTimeUs, long loadDurationMs){
         this.index = index;
         this.bitrate = bitrate;
-        this.requestedTime = requestedTime;
+        this.requestedTimeUs = requestedTimeUs;
+        this.loadDurationMs = loadDurationMs;
+    }
+
+    public int getIndex(){
+        return index;
+    }
+
+    /**
+     * Returns the bitrate of the requested format, in kilobits per second.
+     */
+    public double getBitrate(){
+        return bitrate / 1000.0;
+    }
+
+    public long getRequestedTimeUs(){
+        return requestedTimeUs;
+    }
+
+    public String getRequestedTime(){
+        return TelemetryRecorder.formatSeconds(requestedTimeUs / 1000);
+    }
+
+    /**
+     * Returns the formatted load duration, or null if it was never reported.
+     */
+    public String getLoadDuration(){
+        return loadDurationMs < 0 ? null : TelemetryRecorder.formatSeconds(loadDurationMs);
     }
 }
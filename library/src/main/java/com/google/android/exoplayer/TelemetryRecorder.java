@@ -0,0 +1,492 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the segment requests, chunk load timelines and byte transfers of a playback session into
+ * preallocated primitive ring buffers.
+ * <p>
+ * The record methods neither allocate nor block, so they are safe to call from the loader thread
+ * on every read. Other threads read the stored samples without locking: each slot carries a
+ * sequence stamp that is cleared when the slot is claimed and published once it has been written.
+ * A reader checks that the stamp matches the sequence number it expects both before and after
+ * copying the fields of a sample, and treats a mismatch as a lost sample, since the slot may have
+ * been overwritten while it was being read. When a ring is full the oldest samples are
+ * overwritten. Formatting into strings is deferred to the {@link SegmentLog} and {@link ByteLog}
+ * copies, which are only expected to be made at export time.
+ */
+public final class TelemetryRecorder {
+
+  /**
+   * The default number of segment samples retained.
+   */
+  public static final int DEFAULT_SEGMENT_CAPACITY = 4096;
+  /**
+   * The default number of byte samples retained.
+   */
+  public static final int DEFAULT_BYTE_CAPACITY = 131072;
+  /**
+   * The default number of chunk load samples retained.
+   */
+  public static final int DEFAULT_CHUNK_LOAD_CAPACITY = 4096;
+
+  private static final long NO_LOAD_DURATION = -1;
+
+  private static final NumberFormat TIME_FORMAT;
+  static {
+    TIME_FORMAT = NumberFormat.getInstance(Locale.US);
+    TIME_FORMAT.setMinimumFractionDigits(2);
+    TIME_FORMAT.setMaximumFractionDigits(2);
+  }
+
+  private static final NumberFormat BYTE_TIME_FORMAT;
+  static {
+    BYTE_TIME_FORMAT = NumberFormat.getInstance(Locale.US);
+    BYTE_TIME_FORMAT.setMinimumFractionDigits(6);
+    BYTE_TIME_FORMAT.setMaximumFractionDigits(6);
+  }
+
+  private final Ring segmentRing;
+  private final int[] segmentIndices;
+  private final int[] segmentBitrates;
+  private final long[] segmentRequestedTimesUs;
+  private final long[] segmentLoadDurationsMs;
+
+  private final Ring byteRing;
+  private final long[] byteTimesMs;
+  private final int[] byteCounts;
+
+  private final Ring chunkLoadRing;
+  private final int[] chunkLoadIndices;
+  private final int[] chunkLoadTypes;
+  private final int[] chunkLoadTriggers;
+  private final Format[] chunkLoadFormats;
+  private final long[] chunkLoadBytes;
+  private final long[] chunkLoadBufferedDurationsUs;
+  private final long[] chunkLoadEvaluationTimesNs;
+  private final long[] chunkLoadStartTimesNs;
+  private final long[] chunkLoadFirstByteTimesNs;
+  private final long[] chunkLoadLastByteTimesNs;
+  private final long[] chunkLoadConsumeTimesNs;
+
+  private volatile long sessionStartTimeMs;
+
+  public TelemetryRecorder() {
+    this(DEFAULT_SEGMENT_CAPACITY, DEFAULT_BYTE_CAPACITY);
+  }
+
+  /**
+   * @param segmentCapacity The number of segment samples to retain. Must be a power of two.
+   * @param byteCapacity The number of byte samples to retain. Must be a power of two.
+   */
+  public TelemetryRecorder(int segmentCapacity, int byteCapacity) {
+    this(segmentCapacity, byteCapacity, DEFAULT_CHUNK_LOAD_CAPACITY);
+  }
+
+  /**
+   * @param segmentCapacity The number of segment samples to retain. Must be a power of two.
+   * @param byteCapacity The number of byte samples to retain. Must be a power of two.
+   * @param chunkLoadCapacity The number of chunk load samples to retain. Must be a power of two.
+   */
+  public TelemetryRecorder(int segmentCapacity, int byteCapacity, int chunkLoadCapacity) {
+    segmentRing = new Ring(segmentCapacity);
+    segmentIndices = new int[segmentCapacity];
+    segmentBitrates = new int[segmentCapacity];
+    segmentRequestedTimesUs = new long[segmentCapacity];
+    segmentLoadDurationsMs = new long[segmentCapacity];
+    byteRing = new Ring(byteCapacity);
+    byteTimesMs = new long[byteCapacity];
+    byteCounts = new int[byteCapacity];
+    chunkLoadRing = new Ring(chunkLoadCapacity);
+    chunkLoadIndices = new int[chunkLoadCapacity];
+    chunkLoadTypes = new int[chunkLoadCapacity];
+    chunkLoadTriggers = new int[chunkLoadCapacity];
+    chunkLoadFormats = new Format[chunkLoadCapacity];
+    chunkLoadBytes = new long[chunkLoadCapacity];
+    chunkLoadBufferedDurationsUs = new long[chunkLoadCapacity];
+    chunkLoadEvaluationTimesNs = new long[chunkLoadCapacity];
+    chunkLoadStartTimesNs = new long[chunkLoadCapacity];
+    chunkLoadFirstByteTimesNs = new long[chunkLoadCapacity];
+    chunkLoadLastByteTimesNs = new long[chunkLoadCapacity];
+    chunkLoadConsumeTimesNs = new long[chunkLoadCapacity];
+  }
+
+  /**
+   * Sets the elapsed realtime at which the session started. Byte sample times are reported
+   * relative to this value.
+   *
+   * @param sessionStartTimeMs The session start time, in milliseconds.
+   */
+  public void setSessionStartTimeMs(long sessionStartTimeMs) {
+    this.sessionStartTimeMs = sessionStartTimeMs;
+  }
+
+  /**
+   * Returns the elapsed realtime at which the session started, in milliseconds.
+   */
+  public long getSessionStartTimeMs() {
+    return sessionStartTimeMs;
+  }
+
+  /**
+   * Records a segment request.
+   *
+   * @param index The index of the segment.
+   * @param bitrate The bitrate of the requested format, in bits per second.
+   * @param requestedTimeUs The playback position at which the segment was requested.
+   * @return The sequence number of the sample.
+   */
+  public long recordSegment(int index, int bitrate, long requestedTimeUs) {
+    long sequence = segmentRing.claim();
+    int slot = segmentRing.slot(sequence);
+    segmentIndices[slot] = index;
+    segmentBitrates[slot] = bitrate;
+    segmentRequestedTimesUs[slot] = requestedTimeUs;
+    segmentLoadDurationsMs[slot] = NO_LOAD_DURATION;
+    segmentRing.publish(sequence);
+    return sequence;
+  }
+
+  /**
+   * Sets the load duration of the most recently recorded segment with the specified index.
+   *
+   * @param index The index of the segment.
+   * @param loadDurationMs The load duration, in milliseconds.
+   * @return Whether a retained segment with the specified index was found.
+   */
+  public boolean updateSegmentLoadDuration(int index, long loadDurationMs) {
+    long oldest = segmentRing.getOldestSequence();
+    for (long sequence = segmentRing.getCount() - 1; sequence >= oldest; sequence--) {
+      int slot = segmentRing.slot(sequence);
+      if (segmentRing.isPublished(sequence) && segmentIndices[slot] == index) {
+        segmentLoadDurationsMs[slot] = loadDurationMs;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records a byte transfer.
+   *
+   * @param timeMs The elapsed realtime at which the transfer completed, in milliseconds.
+   * @param bytes The number of bytes transferred.
+   * @return The sequence number of the sample.
+   */
+  public long recordBytes(long timeMs, int bytes) {
+    long sequence = byteRing.claim();
+    int slot = byteRing.slot(sequence);
+    byteTimesMs[slot] = timeMs;
+    byteCounts[slot] = bytes;
+    byteRing.publish(sequence);
+    return sequence;
+  }
+
+  /**
+   * Records the timeline of a completed chunk load. Times are {@link Util#elapsedRealtimeNanos()}
+   * values, so that the latency before the first byte can be separated from the time taken to
+   * transfer the remainder of the chunk.
+   *
+   * @param chunkIndex The index of the chunk, or -1 if the chunk is not a media chunk.
+   * @param type The type of the chunk.
+   * @param trigger The reason the chunk was selected.
+   * @param format The format of the chunk, or null if the chunk is not associated with a format.
+   * @param bytes The number of bytes loaded.
+   * @param bufferedDurationUs The duration of media buffered ahead of the playback position when
+   *     the load was requested.
+   * @param evaluationTimeNs The time at which the chunk source was asked for the chunk.
+   * @param loadStartTimeNs The time at which the load was handed to the loader.
+   * @param firstByteTimeNs The time at which the first byte was loaded, or 0 if none were.
+   * @param lastByteTimeNs The time at which the last byte was loaded, or 0 if none were.
+   * @param consumeTimeNs The time at which the completed chunk was consumed into the buffer.
+   * @return The sequence number of the sample.
+   */
+  public long recordChunkLoad(int chunkIndex, int type, int trigger, Format format, long bytes,
+      long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs, long firstByteTimeNs,
+      long lastByteTimeNs, long consumeTimeNs) {
+    long sequence = chunkLoadRing.claim();
+    int slot = chunkLoadRing.slot(sequence);
+    chunkLoadIndices[slot] = chunkIndex;
+    chunkLoadTypes[slot] = type;
+    chunkLoadTriggers[slot] = trigger;
+    chunkLoadFormats[slot] = format;
+    chunkLoadBytes[slot] = bytes;
+    chunkLoadBufferedDurationsUs[slot] = bufferedDurationUs;
+    chunkLoadEvaluationTimesNs[slot] = evaluationTimeNs;
+    chunkLoadStartTimesNs[slot] = loadStartTimeNs;
+    chunkLoadFirstByteTimesNs[slot] = firstByteTimeNs;
+    chunkLoadLastByteTimesNs[slot] = lastByteTimeNs;
+    chunkLoadConsumeTimesNs[slot] = consumeTimeNs;
+    chunkLoadRing.publish(sequence);
+    return sequence;
+  }
+
+  /**
+   * Returns the total number of segment samples recorded, including overwritten ones.
+   */
+  public long getSegmentCount() {
+    return segmentRing.getCount();
+  }
+
+  /**
+   * Returns the sequence number of the oldest segment sample that is still retained.
+   */
+  public long getOldestSegmentSequence() {
+    return segmentRing.getOldestSequence();
+  }
+
+  /**
+   * Returns whether the segment sample with the specified sequence number is fully written and
+   * has not been overwritten. Fields read from the sample are only valid if this method still
+   * returns true after they have been read.
+   */
+  public boolean isSegmentAvailable(long sequence) {
+    return segmentRing.isPublished(sequence);
+  }
+
+  public int getSegmentIndex(long sequence) {
+    return segmentIndices[segmentRing.slot(sequence)];
+  }
+
+  public int getSegmentBitrate(long sequence) {
+    return segmentBitrates[segmentRing.slot(sequence)];
+  }
+
+  public long getSegmentRequestedTimeUs(long sequence) {
+    return segmentRequestedTimesUs[segmentRing.slot(sequence)];
+  }
+
+  /**
+   * Returns the load duration of the segment sample in milliseconds, or a negative value if the
+   * load duration has not been set.
+   */
+  public long getSegmentLoadDurationMs(long sequence) {
+    return segmentLoadDurationsMs[segmentRing.slot(sequence)];
+  }
+
+  /**
+   * Returns the total number of byte samples recorded, including overwritten ones.
+   */
+  public long getByteCount() {
+    return byteRing.getCount();
+  }
+
+  /**
+   * Returns the sequence number of the oldest byte sample that is still retained.
+   */
+  public long getOldestByteSequence() {
+    return byteRing.getOldestSequence();
+  }
+
+  /**
+   * Returns whether the byte sample with the specified sequence number is fully written and has
+   * not been overwritten. Fields read from the sample are only valid if this method still returns
+   * true after they have been read.
+   */
+  public boolean isByteSampleAvailable(long sequence) {
+    return byteRing.isPublished(sequence);
+  }
+
+  public long getByteTimeMs(long sequence) {
+    return byteTimesMs[byteRing.slot(sequence)];
+  }
+
+  public int getBytes(long sequence) {
+    return byteCounts[byteRing.slot(sequence)];
+  }
+
+  /**
+   * Returns the total number of chunk load samples recorded, including overwritten ones.
+   */
+  public long getChunkLoadCount() {
+    return chunkLoadRing.getCount();
+  }
+
+  /**
+   * Returns the sequence number of the oldest chunk load sample that is still retained.
+   */
+  public long getOldestChunkLoadSequence() {
+    return chunkLoadRing.getOldestSequence();
+  }
+
+  /**
+   * Returns whether the chunk load sample with the specified sequence number is fully written and
+   * has not been overwritten. Fields read from the sample are only valid if this method still
+   * returns true after they have been read.
+   */
+  public boolean isChunkLoadAvailable(long sequence) {
+    return chunkLoadRing.isPublished(sequence);
+  }
+
+  public int getChunkLoadIndex(long sequence) {
+    return chunkLoadIndices[chunkLoadRing.slot(sequence)];
+  }
+
+  public int getChunkLoadType(long sequence) {
+    return chunkLoadTypes[chunkLoadRing.slot(sequence)];
+  }
+
+  public int getChunkLoadTrigger(long sequence) {
+    return chunkLoadTriggers[chunkLoadRing.slot(sequence)];
+  }
+
+  public Format getChunkLoadFormat(long sequence) {
+    return chunkLoadFormats[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadBytes(long sequence) {
+    return chunkLoadBytes[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadBufferedDurationUs(long sequence) {
+    return chunkLoadBufferedDurationsUs[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadEvaluationTimeNs(long sequence) {
+    return chunkLoadEvaluationTimesNs[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadStartTimeNs(long sequence) {
+    return chunkLoadStartTimesNs[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadFirstByteTimeNs(long sequence) {
+    return chunkLoadFirstByteTimesNs[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadLastByteTimeNs(long sequence) {
+    return chunkLoadLastByteTimesNs[chunkLoadRing.slot(sequence)];
+  }
+
+  public long getChunkLoadConsumeTimeNs(long sequence) {
+    return chunkLoadConsumeTimesNs[chunkLoadRing.slot(sequence)];
+  }
+
+  /**
+   * Copies the retained segment samples, oldest first. Samples that are overwritten while they are
+   * being copied are omitted.
+   *
+   * @return The segment logs.
+   */
+  public ArrayList<SegmentLog> getSegmentLogs() {
+    long count = segmentRing.getCount();
+    ArrayList<SegmentLog> logs = new ArrayList<>();
+    for (long sequence = segmentRing.getOldestSequence(); sequence < count; sequence++) {
+      if (!segmentRing.isPublished(sequence)) {
+        continue;
+      }
+      int slot = segmentRing.slot(sequence);
+      SegmentLog log = new SegmentLog(segmentIndices[slot], segmentBitrates[slot],
+          segmentRequestedTimesUs[slot], segmentLoadDurationsMs[slot]);
+      if (segmentRing.isPublished(sequence)) {
+        logs.add(log);
+      }
+    }
+    return logs;
+  }
+
+  /**
+   * Copies the retained byte samples, oldest first. Samples that are overwritten while they are
+   * being copied are omitted.
+   *
+   * @return The byte logs.
+   */
+  public ArrayList<ByteLog> getByteLogs() {
+    long sessionStartTimeMs = this.sessionStartTimeMs;
+    long count = byteRing.getCount();
+    ArrayList<ByteLog> logs = new ArrayList<>();
+    for (long sequence = byteRing.getOldestSequence(); sequence < count; sequence++) {
+      if (!byteRing.isPublished(sequence)) {
+        continue;
+      }
+      int slot = byteRing.slot(sequence);
+      ByteLog log = new ByteLog(byteTimesMs[slot] - sessionStartTimeMs, byteCounts[slot]);
+      if (byteRing.isPublished(sequence)) {
+        logs.add(log);
+      }
+    }
+    return logs;
+  }
+
+  /* package */ static String formatSeconds(long timeMs) {
+    return TIME_FORMAT.format(timeMs / 1000f);
+  }
+
+  /* package */ static String formatByteSeconds(long timeMs) {
+    return BYTE_TIME_FORMAT.format(timeMs / 1000f);
+  }
+
+  /**
+   * Hands out sequence numbers for a power of two sized ring, and tracks which slots have been
+   * published.
+   */
+  private static final class Ring {
+
+    private final int mask;
+    private final AtomicLong cursor;
+    private final AtomicLongArray stamps;
+
+    public Ring(int capacity) {
+      Assertions.checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0);
+      mask = capacity - 1;
+      cursor = new AtomicLong();
+      stamps = new AtomicLongArray(capacity);
+    }
+
+    public long claim() {
+      long sequence = cursor.getAndIncrement();
+      // Invalidate the slot before it is overwritten, so that readers reject a torn sample. Unlike
+      // a volatile write, getAndSet also keeps the writes to the slot from moving before it.
+      stamps.getAndSet(slot(sequence), 0);
+      return sequence;
+    }
+
+    public void publish(long sequence) {
+      stamps.lazySet(slot(sequence), sequence + 1);
+    }
+
+    public boolean isPublished(long sequence) {
+      // Unlike a volatile read, compareAndSet also keeps preceding reads of the slot from moving
+      // after it, so a reader that checks again after reading a sample sees any overwrite.
+      long stamp = sequence + 1;
+      return sequence >= 0 && stamps.compareAndSet(slot(sequence), stamp, stamp);
+    }
+
+    public int slot(long sequence) {
+      return (int) (sequence & mask);
+    }
+
+    public long getCount() {
+      return cursor.get();
+    }
+
+    public long getOldestSequence() {
+      return Math.max(0, cursor.get() - (mask + 1));
+    }
+
+  }
+
+}
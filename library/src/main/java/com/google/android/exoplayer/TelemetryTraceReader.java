@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads trace files written by {@link TelemetryTraceWriter}.
+ */
+public final class TelemetryTraceReader implements Closeable {
+
+  /**
+   * Receives the samples read from a trace.
+   */
+  public interface Output {
+
+    /**
+     * Called when the session start time is read.
+     *
+     * @param sessionStartTimeMs The elapsed realtime at which the session started.
+     */
+    void onSessionStart(long sessionStartTimeMs);
+
+    /**
+     * Called for each segment sample.
+     *
+     * @param index The index of the segment.
+     * @param bitrate The bitrate of the requested format, in bits per second.
+     * @param requestedTimeUs The playback position at which the segment was requested.
+     * @param loadDurationMs The load duration, or a negative value if it was not reported.
+     */
+    void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs);
+
+    /**
+     * Called for each byte sample.
+     *
+     * @param timeMs The elapsed realtime at which the transfer completed.
+     * @param bytes The number of bytes transferred.
+     */
+    void onBytes(long timeMs, int bytes);
+
+    /**
+     * Called for each chunk load sample. Times are as passed to
+     * {@link TelemetryRecorder#recordChunkLoad}.
+     *
+     * @param chunkIndex The index of the chunk, or -1 if the chunk is not a media chunk.
+     * @param type The type of the chunk.
+     * @param trigger The reason the chunk was selected.
+     * @param bitrate The bitrate of the chunk's format, or -1 if it had no format.
+     * @param bytes The number of bytes loaded.
+     * @param bufferedDurationUs The duration of media buffered ahead of the playback position when
+     *     the load was requested.
+     * @param evaluationTimeNs The time at which the chunk source was asked for the chunk.
+     * @param loadStartTimeNs The time at which the load was handed to the loader.
+     * @param firstByteTimeNs The time at which the first byte was loaded, or 0 if none were.
+     * @param lastByteTimeNs The time at which the last byte was loaded, or 0 if none were.
+     * @param consumeTimeNs The time at which the completed chunk was consumed into the buffer.
+     */
+    void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+        long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs, long firstByteTimeNs,
+        long lastByteTimeNs, long consumeTimeNs);
+
+    /**
+     * Called when samples were overwritten in the recorder before they could be written.
+     *
+     * @param recordType {@link TelemetryTraceWriter#RECORD_SEGMENT},
+     *     {@link TelemetryTraceWriter#RECORD_BYTES} or
+     *     {@link TelemetryTraceWriter#RECORD_CHUNK_LOAD}.
+     * @param count The number of samples lost.
+     */
+    void onSamplesLost(int recordType, long count);
+
+  }
+
+  private final FileInputStream inputStream;
+  private final FileChannel channel;
+
+  private ByteBuffer buffer;
+  private boolean endOfInput;
+
+  /**
+   * @param file The trace file.
+   * @throws IOException If the file could not be opened, or is not a trace file.
+   */
+  public TelemetryTraceReader(File file) throws IOException {
+    inputStream = new FileInputStream(file);
+    channel = inputStream.getChannel();
+    buffer = ByteBuffer.allocate(TelemetryTraceWriter.DEFAULT_BUFFER_SIZE);
+    buffer.flip();
+    if (!ensureAvailable(8) || buffer.getInt() != TelemetryTraceWriter.MAGIC) {
+      close();
+      throw new ParserException("Not a telemetry trace: " + file);
+    }
+    int version = buffer.getInt();
+    if (version != TelemetryTraceWriter.VERSION) {
+      close();
+      throw new ParserException("Unsupported telemetry trace version: " + version);
+    }
+  }
+
+  /**
+   * Reads the next record, passing its samples to {@code output}.
+   * <p>
+   * A record that was only partially written, for example because the process died while
+   * draining, is treated as the end of the trace.
+   *
+   * @param output Receives the samples.
+   * @return Whether a record was read. False if the end of the trace has been reached.
+   * @throws IOException If an error occurs reading from the file.
+   */
+  public boolean read(Output output) throws IOException {
+    if (!ensureAvailable(TelemetryTraceWriter.RECORD_HEADER_SIZE)) {
+      return false;
+    }
+    int recordType = buffer.get();
+    int payloadLength = buffer.getInt();
+    if (payloadLength < 0 || !ensureAvailable(payloadLength)) {
+      return false;
+    }
+    int payloadEnd = buffer.position() + payloadLength;
+    switch (recordType) {
+      case TelemetryTraceWriter.RECORD_SESSION_START:
+        output.onSessionStart(buffer.getLong());
+        break;
+      case TelemetryTraceWriter.RECORD_SEGMENT:
+        output.onSegment(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+        break;
+      case TelemetryTraceWriter.RECORD_BYTES:
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+          output.onBytes(buffer.getLong(), buffer.getInt());
+        }
+        break;
+      case TelemetryTraceWriter.RECORD_CHUNK_LOAD:
+        output.onChunkLoad(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+            buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+            buffer.getLong(), buffer.getLong(), buffer.getLong());
+        break;
+      case TelemetryTraceWriter.RECORD_SAMPLES_LOST:
+        output.onSamplesLost(buffer.get(), buffer.getLong());
+        break;
+      default:
+        // Unknown record type. Skip it.
+        break;
+    }
+    buffer.position(payloadEnd);
+    return true;
+  }
+
+  /**
+   * Reads all remaining records.
+   *
+   * @param output Receives the samples.
+   * @throws IOException If an error occurs reading from the file.
+   */
+  public void readAll(Output output) throws IOException {
+    while (read(output)) {
+      // Do nothing.
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    inputStream.close();
+  }
+
+  /**
+   * Converts a trace into CSV, one sample per line, formatted as in {@link SegmentLog} and
+   * {@link ByteLog}. Samples are converted as they are read, so memory use does not depend on the
+   * length of the trace.
+   *
+   * @param file The trace file.
+   * @param segmentWriter Receives {@code requestedTime,bitrate} lines. May be null.
+   * @param byteWriter Receives {@code endTime,bytes} lines. May be null.
+   * @throws IOException If an error occurs reading the trace or writing the output.
+   */
+  public static void convertToCsv(File file, final Writer segmentWriter, final Writer byteWriter)
+      throws IOException {
+    TelemetryTraceReader reader = new TelemetryTraceReader(file);
+    final IOException[] writeException = new IOException[1];
+    try {
+      reader.readAll(new Output() {
+
+        private long sessionStartTimeMs;
+
+        @Override
+        public void onSessionStart(long sessionStartTimeMs) {
+          this.sessionStartTimeMs = sessionStartTimeMs;
+        }
+
+        @Override
+        public void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs) {
+          if (segmentWriter != null) {
+            writeLine(segmentWriter, TelemetryRecorder.formatSeconds(requestedTimeUs / 1000) + ","
+                + (bitrate / 1000.0));
+          }
+        }
+
+        @Override
+        public void onBytes(long timeMs, int bytes) {
+          if (byteWriter != null) {
+            writeLine(byteWriter, TelemetryRecorder.formatByteSeconds(timeMs - sessionStartTimeMs)
+                + "," + bytes);
+          }
+        }
+
+        @Override
+        public void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+            long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs,
+            long firstByteTimeNs, long lastByteTimeNs, long consumeTimeNs) {
+          // Do nothing.
+        }
+
+        @Override
+        public void onSamplesLost(int recordType, long count) {
+          // Do nothing.
+        }
+
+        private void writeLine(Writer writer, String line) {
+          if (writeException[0] != null) {
+            return;
+          }
+          try {
+            writer.write(line);
+            writer.write('\n');
+          } catch (IOException e) {
+            writeException[0] = e;
+          }
+        }
+
+      });
+    } finally {
+      reader.close();
+    }
+    if (writeException[0] != null) {
+      throw writeException[0];
+    }
+  }
+
+  private boolean ensureAvailable(int length) throws IOException {
+    if (buffer.remaining() >= length) {
+      return true;
+    }
+    if (length > buffer.capacity()) {
+      ByteBuffer newBuffer = ByteBuffer.allocate(length);
+      newBuffer.put(buffer);
+      buffer = newBuffer;
+    } else {
+      buffer.compact();
+    }
+    while (!endOfInput && buffer.position() < length) {
+      if (channel.read(buffer) == -1) {
+        endOfInput = true;
+      }
+    }
+    buffer.flip();
+    return buffer.remaining() >= length;
+  }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.util.Util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incrementally drains a {@link TelemetryRecorder} into a binary trace file while playback is in
+ * progress, so that samples do not accumulate in memory until the end of the session.
+ * <p>
+ * A trace starts with {@link #MAGIC} and {@link #VERSION}, followed by records of the form
+ * {@code [type (1 byte)][payload length (4 bytes)][payload]}. The newest segment is held back until
+ * its load duration is reported, a later segment is recorded or the writer is closed. Byte samples
+ * are written in batches, each payload holding a sample count followed by {@code (timeMs, bytes)}
+ * pairs. Chunk load timelines are written one per record, with the format reduced to its bitrate.
+ * Traces can be read back with {@link TelemetryTraceReader}.
+ */
+public final class TelemetryTraceWriter {
+
+  /**
+   * The trace file signature, "EXOT".
+   */
+  public static final int MAGIC = 0x45584F54;
+  /**
+   * The trace format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Record type carrying the session start time.
+   */
+  public static final int RECORD_SESSION_START = 1;
+  /**
+   * Record type carrying a single segment sample.
+   */
+  public static final int RECORD_SEGMENT = 2;
+  /**
+   * Record type carrying a batch of byte samples.
+   */
+  public static final int RECORD_BYTES = 3;
+  /**
+   * Record type reporting samples that were overwritten before they could be drained.
+   */
+  public static final int RECORD_SAMPLES_LOST = 4;
+  /**
+   * Record type carrying a single chunk load sample.
+   */
+  public static final int RECORD_CHUNK_LOAD = 5;
+
+  public static final int DEFAULT_DRAIN_INTERVAL_MS = 1000;
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /* package */ static final int RECORD_HEADER_SIZE = 5;
+  /* package */ static final int SEGMENT_PAYLOAD_SIZE = 24;
+  /* package */ static final int BYTE_SAMPLE_SIZE = 12;
+  /* package */ static final int CHUNK_LOAD_PAYLOAD_SIZE = 72;
+
+  private static final String TAG = "TelemetryTraceWriter";
+
+  private final TelemetryRecorder recorder;
+  private final FileOutputStream outputStream;
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+
+  private ScheduledExecutorService drainExecutor;
+  private long nextSegmentSequence;
+  private long nextByteSequence;
+  private long nextChunkLoadSequence;
+  private long writtenSessionStartTimeMs;
+  private boolean closed;
+
+  /**
+   * @param recorder The recorder to drain.
+   * @param file The file to write the trace to. Any existing content is replaced.
+   * @throws IOException If the file could not be opened.
+   */
+  public TelemetryTraceWriter(TelemetryRecorder recorder, File file) throws IOException {
+    this(recorder, file, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param recorder The recorder to drain.
+   * @param file The file to write the trace to. Any existing content is replaced.
+   * @param bufferSize The size of the write buffer, in bytes.
+   * @throws IOException If the file could not be opened.
+   */
+  public TelemetryTraceWriter(TelemetryRecorder recorder, File file, int bufferSize)
+      throws IOException {
+    this.recorder = recorder;
+    outputStream = new FileOutputStream(file);
+    channel = outputStream.getChannel();
+    buffer = ByteBuffer.allocate(
+        Math.max(bufferSize, RECORD_HEADER_SIZE + CHUNK_LOAD_PAYLOAD_SIZE));
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    writtenSessionStartTimeMs = -1;
+  }
+
+  /**
+   * Starts draining the recorder periodically on a background thread, using
+   * {@link #DEFAULT_DRAIN_INTERVAL_MS}.
+   */
+  public void start() {
+    start(DEFAULT_DRAIN_INTERVAL_MS);
+  }
+
+  /**
+   * Starts draining the recorder periodically on a background thread.
+   *
+   * @param drainIntervalMs The interval between drains.
+   */
+  public synchronized void start(long drainIntervalMs) {
+    if (drainExecutor != null || closed) {
+      return;
+    }
+    drainExecutor = Util.newSingleThreadScheduledExecutor(TAG);
+    drainExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          drain();
+        } catch (IOException e) {
+          Log.e(TAG, "Failed to drain telemetry", e);
+        }
+      }
+    }, drainIntervalMs, drainIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes the samples recorded since the previous drain to the trace file, except for a newest
+   * segment whose load duration has not yet been reported.
+   *
+   * @throws IOException If an error occurs writing to the file.
+   */
+  public synchronized void drain() throws IOException {
+    drain(false);
+  }
+
+  /**
+   * Stops periodic draining, drains any remaining samples and closes the trace file.
+   *
+   * @throws IOException If an error occurs writing to the file.
+   */
+  public void close() throws IOException {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = drainExecutor;
+      drainExecutor = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(DEFAULT_DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      try {
+        drain(true);
+      } finally {
+        closed = true;
+        outputStream.close();
+      }
+    }
+  }
+
+  private void drain(boolean isFinalDrain) throws IOException {
+    if (closed) {
+      return;
+    }
+    long sessionStartTimeMs = recorder.getSessionStartTimeMs();
+    if (sessionStartTimeMs != writtenSessionStartTimeMs) {
+      ensureCapacity(RECORD_HEADER_SIZE + 8);
+      putRecordHeader(RECORD_SESSION_START, 8);
+      buffer.putLong(sessionStartTimeMs);
+      writtenSessionStartTimeMs = sessionStartTimeMs;
+    }
+    drainSegments(isFinalDrain);
+    drainBytes();
+    drainChunkLoads();
+    flush();
+  }
+
+  private void drainSegments(boolean isFinalDrain) throws IOException {
+    long count = recorder.getSegmentCount();
+    long oldest = recorder.getOldestSegmentSequence();
+    if (nextSegmentSequence < oldest) {
+      putSamplesLost(RECORD_SEGMENT, oldest - nextSegmentSequence);
+      nextSegmentSequence = oldest;
+    }
+    while (nextSegmentSequence < count) {
+      long sequence = nextSegmentSequence;
+      if (!recorder.isSegmentAvailable(sequence)) {
+        if (sequence >= recorder.getOldestSegmentSequence()) {
+          // The sample is still being written. Pick it up on the next drain.
+          return;
+        }
+        putSamplesLost(RECORD_SEGMENT, 1);
+        nextSegmentSequence++;
+        continue;
+      }
+      long loadDurationMs = recorder.getSegmentLoadDurationMs(sequence);
+      if (loadDurationMs < 0 && sequence == count - 1 && !isFinalDrain) {
+        // The segment may still be loading. Pick it up once its load duration is reported or a
+        // later segment is recorded.
+        return;
+      }
+      int index = recorder.getSegmentIndex(sequence);
+      int bitrate = recorder.getSegmentBitrate(sequence);
+      long requestedTimeUs = recorder.getSegmentRequestedTimeUs(sequence);
+      nextSegmentSequence++;
+      if (!recorder.isSegmentAvailable(sequence)) {
+        // The sample was overwritten while it was being copied.
+        putSamplesLost(RECORD_SEGMENT, 1);
+        continue;
+      }
+      ensureCapacity(RECORD_HEADER_SIZE + SEGMENT_PAYLOAD_SIZE);
+      putRecordHeader(RECORD_SEGMENT, SEGMENT_PAYLOAD_SIZE);
+      buffer.putInt(index);
+      buffer.putInt(bitrate);
+      buffer.putLong(requestedTimeUs);
+      buffer.putLong(loadDurationMs);
+    }
+  }
+
+  private void drainBytes() throws IOException {
+    long count = recorder.getByteCount();
+    long oldest = recorder.getOldestByteSequence();
+    if (nextByteSequence < oldest) {
+      putSamplesLost(RECORD_BYTES, oldest - nextByteSequence);
+      nextByteSequence = oldest;
+    }
+    int batchPosition = -1;
+    int batchCount = 0;
+    while (nextByteSequence < count) {
+      long sequence = nextByteSequence;
+      if (!recorder.isByteSampleAvailable(sequence)) {
+        if (sequence >= recorder.getOldestByteSequence()) {
+          // The sample is still being written. Pick it up on the next drain.
+          break;
+        }
+        batchPosition = finishByteBatch(batchPosition, batchCount);
+        batchCount = 0;
+        putSamplesLost(RECORD_BYTES, 1);
+        nextByteSequence++;
+        continue;
+      }
+      long timeMs = recorder.getByteTimeMs(sequence);
+      int bytes = recorder.getBytes(sequence);
+      nextByteSequence++;
+      if (!recorder.isByteSampleAvailable(sequence)) {
+        // The sample was overwritten while it was being copied.
+        batchPosition = finishByteBatch(batchPosition, batchCount);
+        batchCount = 0;
+        putSamplesLost(RECORD_BYTES, 1);
+        continue;
+      }
+      if (batchPosition == -1 || buffer.remaining() < BYTE_SAMPLE_SIZE) {
+        finishByteBatch(batchPosition, batchCount);
+        batchCount = 0;
+        ensureCapacity(RECORD_HEADER_SIZE + 4 + BYTE_SAMPLE_SIZE);
+        batchPosition = buffer.position();
+        buffer.position(batchPosition + RECORD_HEADER_SIZE + 4);
+      }
+      buffer.putLong(timeMs);
+      buffer.putInt(bytes);
+      batchCount++;
+    }
+    finishByteBatch(batchPosition, batchCount);
+  }
+
+  private void drainChunkLoads() throws IOException {
+    long count = recorder.getChunkLoadCount();
+    long oldest = recorder.getOldestChunkLoadSequence();
+    if (nextChunkLoadSequence < oldest) {
+      putSamplesLost(RECORD_CHUNK_LOAD, oldest - nextChunkLoadSequence);
+      nextChunkLoadSequence = oldest;
+    }
+    while (nextChunkLoadSequence < count) {
+      long sequence = nextChunkLoadSequence;
+      if (!recorder.isChunkLoadAvailable(sequence)) {
+        if (sequence >= recorder.getOldestChunkLoadSequence()) {
+          // The sample is still being written. Pick it up on the next drain.
+          return;
+        }
+        putSamplesLost(RECORD_CHUNK_LOAD, 1);
+        nextChunkLoadSequence++;
+        continue;
+      }
+      Format format = recorder.getChunkLoadFormat(sequence);
+      int chunkIndex = recorder.getChunkLoadIndex(sequence);
+      int type = recorder.getChunkLoadType(sequence);
+      int trigger = recorder.getChunkLoadTrigger(sequence);
+      long bytes = recorder.getChunkLoadBytes(sequence);
+      long bufferedDurationUs = recorder.getChunkLoadBufferedDurationUs(sequence);
+      long evaluationTimeNs = recorder.getChunkLoadEvaluationTimeNs(sequence);
+      long loadStartTimeNs = recorder.getChunkLoadStartTimeNs(sequence);
+      long firstByteTimeNs = recorder.getChunkLoadFirstByteTimeNs(sequence);
+      long lastByteTimeNs = recorder.getChunkLoadLastByteTimeNs(sequence);
+      long consumeTimeNs = recorder.getChunkLoadConsumeTimeNs(sequence);
+      nextChunkLoadSequence++;
+      if (!recorder.isChunkLoadAvailable(sequence)) {
+        // The sample was overwritten while it was being copied.
+        putSamplesLost(RECORD_CHUNK_LOAD, 1);
+        continue;
+      }
+      ensureCapacity(RECORD_HEADER_SIZE + CHUNK_LOAD_PAYLOAD_SIZE);
+      putRecordHeader(RECORD_CHUNK_LOAD, CHUNK_LOAD_PAYLOAD_SIZE);
+      buffer.putInt(chunkIndex);
+      buffer.putInt(type);
+      buffer.putInt(trigger);
+      buffer.putInt(format != null ? format.bitrate : -1);
+      buffer.putLong(bytes);
+      buffer.putLong(bufferedDurationUs);
+      buffer.putLong(evaluationTimeNs);
+      buffer.putLong(loadStartTimeNs);
+      buffer.putLong(firstByteTimeNs);
+      buffer.putLong(lastByteTimeNs);
+      buffer.putLong(consumeTimeNs);
+    }
+  }
+
+  /**
+   * Fills in the header of a byte batch whose samples have been written.
+   *
+   * @return -1, indicating that there is no longer an open batch.
+   */
+  private int finishByteBatch(int batchPosition, int batchCount) {
+    if (batchPosition != -1) {
+      int payloadLength = 4 + batchCount * BYTE_SAMPLE_SIZE;
+      buffer.put(batchPosition, (byte) RECORD_BYTES);
+      buffer.putInt(batchPosition + 1, payloadLength);
+      buffer.putInt(batchPosition + RECORD_HEADER_SIZE, batchCount);
+    }
+    return -1;
+  }
+
+  private void putSamplesLost(int recordType, long lostCount) throws IOException {
+    ensureCapacity(RECORD_HEADER_SIZE + 9);
+    putRecordHeader(RECORD_SAMPLES_LOST, 9);
+    buffer.put((byte) recordType);
+    buffer.putLong(lostCount);
+  }
+
+  private void putRecordHeader(int recordType, int payloadLength) {
+    buffer.put((byte) recordType);
+    buffer.putInt(payloadLength);
+  }
+
+  private void ensureCapacity(int length) throws IOException {
+    if (buffer.remaining() < length) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+}
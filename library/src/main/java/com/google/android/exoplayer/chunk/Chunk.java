@@ -19,6 +19,9 @@ import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
 import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.IOException;
 
 /**
  * An abstract base class for {@link Loadable} implementations that load chunks of data required
@@ -102,8 +105,15 @@ public abstract class Chunk implements Loadable {
    */
   public final int parentId;
 
+  /**
+   * The source from which the data is loaded. Reads are timed, so that the times at which the
+   * first and last bytes were loaded can be reported.
+   */
   protected final DataSource dataSource;
 
+  private volatile long firstByteTimeNs;
+  private volatile long lastByteTimeNs;
+
   /**
    * @param dataSource The source from which the data should be loaded.
    * @param dataSpec Defines the data to be loaded. {@code dataSpec.length} must not exceed
@@ -117,7 +127,7 @@ public abstract class Chunk implements Loadable {
    */
   public Chunk(DataSource dataSource, DataSpec dataSpec, int type, int trigger, Format format,
       int parentId) {
-    this.dataSource = Assertions.checkNotNull(dataSource);
+    this.dataSource = new TimedDataSource(Assertions.checkNotNull(dataSource));
     this.dataSpec = Assertions.checkNotNull(dataSpec);
     this.type = type;
     this.trigger = trigger;
@@ -132,4 +142,60 @@ public abstract class Chunk implements Loadable {
    */
   public abstract long bytesLoaded();
 
+  /**
+   * Gets the time at which the first byte of the chunk was loaded.
+   *
+   * @return The {@link Util#elapsedRealtimeNanos()} of the first byte, or 0 if no bytes have been
+   *     loaded.
+   */
+  public final long getFirstByteTimeNs() {
+    return firstByteTimeNs;
+  }
+
+  /**
+   * Gets the time at which the most recent byte of the chunk was loaded.
+   *
+   * @return The {@link Util#elapsedRealtimeNanos()} of the most recent byte, or 0 if no bytes have
+   *     been loaded.
+   */
+  public final long getLastByteTimeNs() {
+    return lastByteTimeNs;
+  }
+
+  /**
+   * Records the times of the first and most recent successful reads from the wrapped source.
+   */
+  private final class TimedDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    public TimedDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      int bytesRead = upstream.read(buffer, offset, readLength);
+      if (bytesRead > 0) {
+        long nowNs = Util.elapsedRealtimeNanos();
+        if (firstByteTimeNs == 0) {
+          firstByteTimeNs = nowNs;
+        }
+        lastByteTimeNs = nowNs;
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+      upstream.close();
+    }
+
+  }
+
 }
@@ -27,7 +27,9 @@ import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.extractor.DefaultTrackOutput;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.LoaderScheduler;
 import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
 
 import android.os.Handler;
 import android.os.SystemClock;
@@ -37,6 +39,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A {@link SampleSource} that loads media in {@link Chunk}s, which are themselves obtained from a
@@ -74,6 +77,9 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final int minLoadableRetryCount;
+  private final LoaderScheduler loaderScheduler;
+  private final int loadPriority;
+  private final Executor loadCallbackExecutor;
 
   private int state;
   private long downstreamPositionUs;
@@ -89,6 +95,9 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private int currentLoadableExceptionCount;
   private long currentLoadableExceptionTimestamp;
   private long currentLoadStartTimeMs;
+  private long currentEvaluationTimeNs;
+  private long currentLoadStartTimeNs;
+  private long currentLoadBufferedDurationUs;
 
   private MediaFormat downstreamMediaFormat;
   private Format downstreamFormat;
@@ -134,6 +143,53 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
       int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
       int eventSourceId, int minLoadableRetryCount) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, null, 0);
+  }
+
+  /**
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param loaderScheduler A shared {@link LoaderScheduler} on which to run loads. May be null, in
+   *     which case the source loads on a thread of its own.
+   * @param loadPriority The priority of the source's loads on {@code loaderScheduler}.
+   */
+  public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, LoaderScheduler loaderScheduler,
+      int loadPriority) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, loaderScheduler, loadPriority, null);
+  }
+
+  /**
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param loaderScheduler A shared {@link LoaderScheduler} on which to run loads. May be null, in
+   *     which case the source loads on a thread of its own.
+   * @param loadPriority The priority of the source's loads on {@code loaderScheduler}.
+   * @param loadCallbackExecutor An executor on which the source receives the results of its loads.
+   *     It must run them on the thread that drives the source. May be null, in which case they are
+   *     received on the {@link android.os.Looper} of that thread.
+   */
+  public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, LoaderScheduler loaderScheduler,
+      int loadPriority, Executor loadCallbackExecutor) {
     this.chunkSource = chunkSource;
     this.loadControl = loadControl;
     this.bufferSizeContribution = bufferSizeContribution;
@@ -141,6 +197,9 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     this.eventListener = eventListener;
     this.eventSourceId = eventSourceId;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.loaderScheduler = loaderScheduler;
+    this.loadPriority = loadPriority;
+    this.loadCallbackExecutor = loadCallbackExecutor;
     currentLoadableHolder = new ChunkOperationHolder();
     mediaChunks = new LinkedList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
@@ -165,7 +224,8 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       return false;
     }
     if (chunkSource.getTrackCount() > 0) {
-      loader = new Loader("Loader:" + chunkSource.getFormat(0).mimeType);
+      loader = Loader.newInstance("Loader:" + chunkSource.getFormat(0).mimeType, loaderScheduler,
+          loadPriority, loadCallbackExecutor);
     }
     state = STATE_PREPARED;
     return true;
@@ -351,13 +411,19 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   @Override
   public void onLoadCompleted(Loadable loadable) {
     long now = SystemClock.elapsedRealtime();
+    long nowNs = Util.elapsedRealtimeNanos();
     long loadDurationMs = now - currentLoadStartTimeMs;
     Chunk currentLoadable = currentLoadableHolder.chunk;
     chunkSource.onChunkLoadCompleted(currentLoadable);
+    NewLogger.addChunkLoadLog(
+        isMediaChunk(currentLoadable) ? ((BaseMediaChunk) currentLoadable).chunkIndex : -1,
+        currentLoadable.type, currentLoadable.trigger, currentLoadable.format,
+        currentLoadable.bytesLoaded(), currentLoadBufferedDurationUs, currentEvaluationTimeNs,
+        currentLoadStartTimeNs, currentLoadable.getFirstByteTimeNs(),
+        currentLoadable.getLastByteTimeNs(), nowNs);
     if (isMediaChunk(currentLoadable)) {
       BaseMediaChunk mediaChunk = (BaseMediaChunk) currentLoadable;
       Log.d("Playback", "----" + mediaChunk.chunkIndex + " , " + loadDurationMs);
-        //NewLogger.updateLoadDuration(mediaChunk.chunkIndex, loadDurationMs);
       notifyLoadCompleted(currentLoadable.bytesLoaded(), mediaChunk.type, mediaChunk.trigger,
           mediaChunk.format, mediaChunk.startTimeUs, mediaChunk.endTimeUs, now, loadDurationMs);
     } else {
@@ -544,6 +610,9 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     }
     //LLEEJ: Inter-GET
     currentLoadStartTimeMs = SystemClock.elapsedRealtime();
+    currentLoadStartTimeNs = Util.elapsedRealtimeNanos();
+    currentLoadBufferedDurationUs = isPendingReset() || mediaChunks.isEmpty() ? 0
+        : Math.max(0, mediaChunks.getLast().endTimeUs - downstreamPositionUs);
     notifyGetRequestPatched(currentLoadStartTimeMs);
     if (isMediaChunk(currentLoadable)) {
       BaseMediaChunk mediaChunk = (BaseMediaChunk) currentLoadable;
@@ -568,12 +637,18 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
    * is reached.
    */
   private void doChunkOperation() {
+    Chunk previousChunk = currentLoadableHolder.chunk;
+    long evaluationTimeNs = Util.elapsedRealtimeNanos();
     currentLoadableHolder.endOfStream = false;
     currentLoadableHolder.queueSize = readOnlyMediaChunks.size();
     chunkSource.getChunkOperation(readOnlyMediaChunks,
         pendingResetPositionUs != NO_RESET_PENDING ? pendingResetPositionUs : downstreamPositionUs,
         currentLoadableHolder);
     loadingFinished = currentLoadableHolder.endOfStream;
+    if (currentLoadableHolder.chunk != previousChunk) {
+      // A new chunk was selected by this evaluation.
+      currentEvaluationTimeNs = evaluationTimeNs;
+    }
   }
 
   /**
@@ -19,7 +19,6 @@ import com.google.android.exoplayer.BehindLiveWindowException;
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.NewLogger;
-import com.google.android.exoplayer.SegmentLog;
 import com.google.android.exoplayer.TimeRange;
 import com.google.android.exoplayer.TimeRange.DynamicTimeRange;
 import com.google.android.exoplayer.TimeRange.StaticTimeRange;
@@ -40,6 +39,7 @@ import com.google.android.exoplayer.dash.DashTrackSelector.Output;
 import com.google.android.exoplayer.dash.mpd.AdaptationSet;
 import com.google.android.exoplayer.dash.mpd.ContentProtection;
 import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionDiff;
 import com.google.android.exoplayer.dash.mpd.Period;
 import com.google.android.exoplayer.dash.mpd.RangedUri;
 import com.google.android.exoplayer.dash.mpd.Representation;
@@ -49,6 +49,7 @@ import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
 import com.google.android.exoplayer.extractor.webm.WebmExtractor;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer.util.Clock;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.MimeTypes;
@@ -110,6 +111,9 @@ public class DashChunkSource implements ChunkSource, Output {
   }
 
   private static final String TAG = "DashChunkSource";
+  // The number of segments following each media chunk that are predicted to a
+  // PrefetchingDataSource.
+  private static final int PREDICTED_SEGMENT_COUNT = 2;
 
   private final Handler eventHandler;
   private final EventListener eventListener;
@@ -521,10 +525,13 @@ public class DashChunkSource implements ChunkSource, Output {
     Chunk nextMediaChunk = newMediaChunk(periodHolder, representationHolder, dataSource,
         mediaFormat, enabledTrack, segmentNum, evaluation.trigger);
     lastChunkWasInitialization = false;
+    if (dataSource instanceof PrefetchingDataSource) {
+      predictNextSegments((PrefetchingDataSource) dataSource, representationHolder, segmentNum);
+    }
 
 
     if(isVideo){
-      NewLogger.addSegmentLog(new SegmentLog(segmentNum++, nextMediaChunk.format.bitrate, getSessionTimeToString(playbackPositionUs)));
+      NewLogger.addSegmentLog(segmentNum++, nextMediaChunk.format.bitrate, playbackPositionUs);
       Log.d("Playback", segmentNum + " , " + nextMediaChunk.format.bitrate + " ," + getSessionTimeToString(playbackPositionUs));
     }
     //AdaptationSet adaptationSet = manifest.getPeriod(periodIndex).adaptationSets.get(adaptationSetIndex);
@@ -733,8 +740,9 @@ public class DashChunkSource implements ChunkSource, Output {
     } else {
       requestUri = indexUri;
     }
+    // Initialization data is re-requested whenever the representation is switched back to.
     DataSpec dataSpec = new DataSpec(requestUri.getUri(), requestUri.start, requestUri.length,
-        representation.getCacheKey());
+        representation.getCacheKey(), DataSpec.FLAG_CACHE_IN_MEMORY);
     return new InitializationChunk(dataSource, dataSpec, trigger, representation.format,
         extractor, manifestIndex);
   }
@@ -748,9 +756,7 @@ public class DashChunkSource implements ChunkSource, Output {
     long startTimeUs = representationHolder.getSegmentStartTimeUs(segmentNum);
     long endTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
     Log.d("SEGMENT DEBUG","DashChunkSource.newMediaChunk(): "+ (endTimeUs - startTimeUs));
-    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
-    DataSpec dataSpec = new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
-        representation.getCacheKey());
+    DataSpec dataSpec = newSegmentDataSpec(representationHolder, segmentNum);
 
     //LLEEJ: Inter-GET 초기
     long sampleOffsetUs = periodHolder.startTimeUs - representation.presentationTimeOffsetUs;
@@ -767,6 +773,31 @@ public class DashChunkSource implements ChunkSource, Output {
     }
   }
 
+  private static DataSpec newSegmentDataSpec(RepresentationHolder representationHolder,
+      int segmentNum) {
+    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
+    return new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
+        representationHolder.representation.getCacheKey());
+  }
+
+  /**
+   * Predicts that the segments following {@code segmentNum} will be loaded next, in the same
+   * representation, so that the data source can request them early. Segments of dynamic manifests
+   * are not predicted, since those beyond the live edge may not exist yet.
+   */
+  private void predictNextSegments(PrefetchingDataSource dataSource,
+      RepresentationHolder representationHolder, int segmentNum) {
+    ArrayList<DataSpec> predictedDataSpecs = new ArrayList<>(PREDICTED_SEGMENT_COUNT);
+    if (!currentManifest.dynamic) {
+      for (int i = 1; i <= PREDICTED_SEGMENT_COUNT
+          && !representationHolder.isBeyondLastSegment(segmentNum + i); i++) {
+        predictedDataSpecs.add(newSegmentDataSpec(representationHolder, segmentNum + i));
+      }
+    }
+    dataSource.setPredictedDataSpecs(
+        predictedDataSpecs.toArray(new DataSpec[predictedDataSpecs.size()]));
+  }
+
   private long getNowUnixTimeUs() {
     if (elapsedRealtimeOffsetUs != 0) {
       return (systemClock.elapsedRealtime() * 1000) + elapsedRealtimeOffsetUs;
@@ -793,36 +824,38 @@ public class DashChunkSource implements ChunkSource, Output {
   }
 
   private void processManifest(MediaPresentationDescription manifest) {
-    // Remove old periods.
-    Period firstPeriod = manifest.getPeriod(0);
-    while (periodHolders.size() > 0
-        && periodHolders.valueAt(0).startTimeUs < firstPeriod.startMs * 1000) {
-      PeriodHolder periodHolder = periodHolders.valueAt(0);
-      // TODO: Use periodHolders.removeAt(0) if the minimum API level is ever increased to 11.
-      periodHolders.remove(periodHolder.localIndex);
-    }
+    if (periodHolders.size() > 0) {
+      // The existing periods were created from the current manifest, so only the periods that
+      // differ between it and the new manifest need to be processed.
+      MediaPresentationDescriptionDiff diff =
+          MediaPresentationDescriptionDiff.compute(currentManifest, manifest);
+
+      // After discarding old periods, we should never have more periods than listed in the new
+      // manifest.  That would mean that a previously announced period is no longer advertised.  If
+      // this condition occurs, assume that we are hitting a manifest server that is out of sync and
+      // behind, discard this manifest, and try again later.
+      if (diff.isOutOfSync()) {
+        return;
+      }
 
-    // After discarding old periods, we should never have more periods than listed in the new
-    // manifest.  That would mean that a previously announced period is no longer advertised.  If
-    // this condition occurs, assume that we are hitting a manifest server that is out of sync and
-    // behind, discard this manifest, and try again later.
-    if (periodHolders.size() > manifest.getPeriodCount()) {
-      return;
-    }
+      // Remove old periods.
+      for (int i = 0; i < diff.removedPeriodCount; i++) {
+        PeriodHolder periodHolder = periodHolders.valueAt(0);
+        // TODO: Use periodHolders.removeAt(0) if the minimum API level is ever increased to 11.
+        periodHolders.remove(periodHolder.localIndex);
+      }
 
-    // Update existing periods. Only the first and last periods can change.
-    try {
-      int periodHolderCount = periodHolders.size();
-      if (periodHolderCount > 0) {
-        periodHolders.valueAt(0).updatePeriod(manifest, 0, enabledTrack);
-        if (periodHolderCount > 1) {
-          int lastIndex = periodHolderCount - 1;
-          periodHolders.valueAt(lastIndex).updatePeriod(manifest, lastIndex, enabledTrack);
+      // Update existing periods that have changed.
+      try {
+        for (int i = 0; i < diff.retainedPeriodCount; i++) {
+          if (diff.isPeriodChanged(i)) {
+            periodHolders.valueAt(i).updatePeriod(manifest, i, enabledTrack);
+          }
         }
+      } catch (BehindLiveWindowException e) {
+        fatalError = e;
+        return;
       }
-    } catch (BehindLiveWindowException e) {
-      fatalError = e;
-      return;
     }
 
     // Add new periods.
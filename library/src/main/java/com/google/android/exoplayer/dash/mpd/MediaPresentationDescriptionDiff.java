@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+/**
+ * The difference between two consecutive refreshes of a {@link MediaPresentationDescription}.
+ * <p>
+ * Periods are matched by start time. Periods of the old manifest that start before the first period
+ * of the new manifest have been removed, the remaining periods of the old manifest correspond in
+ * order to the first periods of the new manifest, and any further periods of the new manifest have
+ * been added. A retained period is unchanged if the new manifest holds the same {@link Period}
+ * instance with the same duration, which is the case for periods that are reused by a
+ * {@link MediaPresentationDescriptionParser} in incremental mode. Computing the difference takes
+ * time proportional to the number of periods, and does not inspect their segments.
+ */
+public final class MediaPresentationDescriptionDiff {
+
+  /**
+   * The number of periods at the start of the old manifest that have been removed.
+   */
+  public final int removedPeriodCount;
+  /**
+   * The number of periods present in both manifests. Equal to -1 if the new manifest does not
+   * advertise a period that was retained from the old manifest, in which case the new manifest is
+   * likely to have been served by a server that is out of sync and behind.
+   */
+  public final int retainedPeriodCount;
+  /**
+   * The number of periods at the end of the new manifest that have been added.
+   */
+  public final int addedPeriodCount;
+
+  private final boolean[] changedPeriods;
+  private final int changedPeriodCount;
+
+  private MediaPresentationDescriptionDiff(int removedPeriodCount, int retainedPeriodCount,
+      int addedPeriodCount, boolean[] changedPeriods, int changedPeriodCount) {
+    this.removedPeriodCount = removedPeriodCount;
+    this.retainedPeriodCount = retainedPeriodCount;
+    this.addedPeriodCount = addedPeriodCount;
+    this.changedPeriods = changedPeriods;
+    this.changedPeriodCount = changedPeriodCount;
+  }
+
+  /**
+   * Computes the difference between two manifests.
+   *
+   * @param oldManifest The manifest that was previously in use.
+   * @param newManifest The manifest that replaces it.
+   * @return The difference between the manifests.
+   */
+  public static MediaPresentationDescriptionDiff compute(MediaPresentationDescription oldManifest,
+      MediaPresentationDescription newManifest) {
+    int oldPeriodCount = oldManifest.getPeriodCount();
+    int newPeriodCount = newManifest.getPeriodCount();
+    int removedPeriodCount = 0;
+    if (newPeriodCount > 0) {
+      long firstPeriodStartMs = newManifest.getPeriod(0).startMs;
+      while (removedPeriodCount < oldPeriodCount
+          && oldManifest.getPeriod(removedPeriodCount).startMs < firstPeriodStartMs) {
+        removedPeriodCount++;
+      }
+    } else {
+      removedPeriodCount = oldPeriodCount;
+    }
+
+    int retainedPeriodCount = oldPeriodCount - removedPeriodCount;
+    if (retainedPeriodCount > newPeriodCount) {
+      return new MediaPresentationDescriptionDiff(removedPeriodCount, -1, 0, null, 0);
+    }
+
+    boolean[] changedPeriods = new boolean[retainedPeriodCount];
+    int changedPeriodCount = 0;
+    for (int i = 0; i < retainedPeriodCount; i++) {
+      int oldIndex = removedPeriodCount + i;
+      if (oldManifest.getPeriod(oldIndex) != newManifest.getPeriod(i)
+          || oldManifest.getPeriodDuration(oldIndex) != newManifest.getPeriodDuration(i)) {
+        changedPeriods[i] = true;
+        changedPeriodCount++;
+      }
+    }
+    return new MediaPresentationDescriptionDiff(removedPeriodCount, retainedPeriodCount,
+        newPeriodCount - retainedPeriodCount, changedPeriods, changedPeriodCount);
+  }
+
+  /**
+   * Returns whether the new manifest is likely to have been served by a server that is out of sync
+   * and behind, because it does not advertise a period that was retained from the old manifest.
+   */
+  public boolean isOutOfSync() {
+    return retainedPeriodCount == -1;
+  }
+
+  /**
+   * Returns whether the manifests describe the same periods, with the same durations.
+   */
+  public boolean isEmpty() {
+    return removedPeriodCount == 0 && addedPeriodCount == 0 && changedPeriodCount == 0
+        && !isOutOfSync();
+  }
+
+  /**
+   * Returns the number of retained periods that have changed.
+   */
+  public int getChangedPeriodCount() {
+    return changedPeriodCount;
+  }
+
+  /**
+   * Returns whether a retained period has changed.
+   *
+   * @param index The index of the period in the new manifest. Must be less than
+   *     {@link #retainedPeriodCount}.
+   * @return True if the period or its duration has changed. False otherwise.
+   */
+  public boolean isPeriodChanged(int index) {
+    return changedPeriods[index];
+  }
+
+}
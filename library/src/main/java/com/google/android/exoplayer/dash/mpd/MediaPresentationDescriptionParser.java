@@ -17,6 +17,7 @@ package com.google.android.exoplayer.dash.mpd;
 
 import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.PackedSegmentTimeline;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentList;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimelineElement;
@@ -40,10 +41,12 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -53,6 +56,13 @@ import java.util.regex.Pattern;
 
 /**
  * A parser of media presentation description files.
+ * <p>
+ * In incremental mode, which is intended for live manifests that are refreshed repeatedly by a
+ * {@link com.google.android.exoplayer.util.ManifestFetcher}, segment timelines are stored as
+ * {@link PackedSegmentTimeline}s, and a Period whose bytes are identical to those of a Period in
+ * the manifest parsed by the previous call to {@link #parse(String, InputStream)} is reused rather
+ * than parsed again. Periods are matched by a hash of their byte ranges, which are located by
+ * scanning the manifest before it is parsed.
  */
 public class MediaPresentationDescriptionParser extends DefaultHandler
     implements UriLoadable.Parser<MediaPresentationDescription> {
@@ -61,9 +71,27 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   private static final Pattern FRAME_RATE_PATTERN = Pattern.compile("(\\d+)(?:/(\\d+))?");
 
+  private static final int INITIAL_MANIFEST_BUFFER_SIZE = 16 * 1024;
+  private static final byte[] PERIOD_START_TAG = new byte[] {'<', 'P', 'e', 'r', 'i', 'o', 'd'};
+  private static final byte[] PERIOD_END_TAG =
+      new byte[] {'<', '/', 'P', 'e', 'r', 'i', 'o', 'd'};
+
   private final String contentId;
+  private final boolean incremental;
   private final XmlPullParserFactory xmlParserFactory;
 
+  // State of incremental parsing, accessed only within parseIncrementally. Manifests are read into
+  // two buffers in turn, so that the data of the previous manifest remains available.
+  private byte[] manifestData;
+  private byte[] spareManifestData;
+  private int manifestLength;
+  private int[] periodOffsets;
+  private int[] periodLengths;
+  private int periodRangeCount;
+  private int periodIndex;
+  private List<ParsedPeriod> previousPeriods;
+  private List<ParsedPeriod> currentPeriods;
+
   /**
    * Equivalent to calling {@code new MediaPresentationDescriptionParser(null)}.
    */
@@ -77,7 +105,23 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
   // TODO: Remove the need to inject a content identifier here, by not including it in the parsed
   // manifest. Instead, it should be injected directly where needed (i.e. DashChunkSource).
   public MediaPresentationDescriptionParser(String contentId) {
+    this(contentId, false);
+  }
+
+  /**
+   * @param contentId An optional content identifier to include in the parsed manifest.
+   * @param incremental Whether to parse in incremental mode, in which case successive calls to
+   *     {@link #parse(String, InputStream)} are serialized.
+   */
+  public MediaPresentationDescriptionParser(String contentId, boolean incremental) {
     this.contentId = contentId;
+    this.incremental = incremental;
+    if (incremental) {
+      periodOffsets = new int[4];
+      periodLengths = new int[4];
+      previousPeriods = Collections.emptyList();
+      currentPeriods = new ArrayList<>();
+    }
     try {
       xmlParserFactory = XmlPullParserFactory.newInstance();
     } catch (XmlPullParserException e) {
@@ -90,6 +134,46 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
   @Override
   public MediaPresentationDescription parse(String connectionUrl, InputStream inputStream)
       throws IOException, ParserException {
+    return incremental ? parseIncrementally(connectionUrl, inputStream)
+        : parseInternal(connectionUrl, inputStream);
+  }
+
+  private synchronized MediaPresentationDescription parseIncrementally(String connectionUrl,
+      InputStream inputStream) throws IOException, ParserException {
+    readManifest(inputStream);
+    findPeriodRanges();
+    periodIndex = 0;
+    boolean parsed = false;
+    try {
+      MediaPresentationDescription manifest = parseInternal(connectionUrl,
+          new ByteArrayInputStream(manifestData, 0, manifestLength));
+      parsed = true;
+      return manifest;
+    } finally {
+      // Only Periods of the most recently parsed manifest are candidates for reuse.
+      previousPeriods = parsed ? currentPeriods : Collections.<ParsedPeriod>emptyList();
+      currentPeriods = new ArrayList<>();
+    }
+  }
+
+  private void readManifest(InputStream inputStream) throws IOException {
+    byte[] data = spareManifestData != null ? spareManifestData
+        : new byte[INITIAL_MANIFEST_BUFFER_SIZE];
+    int length = 0;
+    int bytesRead;
+    while ((bytesRead = inputStream.read(data, length, data.length - length)) != -1) {
+      length += bytesRead;
+      if (length == data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+    }
+    spareManifestData = manifestData;
+    manifestData = data;
+    manifestLength = length;
+  }
+
+  private MediaPresentationDescription parseInternal(String connectionUrl, InputStream inputStream)
+      throws IOException, ParserException {
     try {
       XmlPullParser xpp = xmlParserFactory.newPullParser();
       xpp.setInput(inputStream, null);
@@ -134,7 +218,9 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
       } else if (ParserUtil.isStartTag(xpp, "Location")) {
         location = xpp.nextText();
       } else if (ParserUtil.isStartTag(xpp, "Period") && !seenEarlyAccessPeriod) {
-        Pair<Period, Long> periodWithDurationMs = parsePeriod(xpp, baseUrl, nextPeriodStartMs);
+        Pair<Period, Long> periodWithDurationMs = incremental
+            ? parseOrReusePeriod(xpp, baseUrl, nextPeriodStartMs)
+            : parsePeriod(xpp, baseUrl, nextPeriodStartMs);
         Period period = periodWithDurationMs.first;
         if (period.startMs == -1) {
           if (dynamic) {
@@ -220,6 +306,141 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
     return new Period(id, startMs, adaptationSets);
   }
 
+  /**
+   * Reuses the result of parsing an identical Period in the previous manifest if there is one, and
+   * parses the Period otherwise.
+   */
+  private Pair<Period, Long> parseOrReusePeriod(XmlPullParser xpp, String baseUrl,
+      long defaultStartMs) throws XmlPullParserException, IOException {
+    int index = periodIndex++;
+    if (index >= periodRangeCount) {
+      // The byte range of the Period wasn't found.
+      return parsePeriod(xpp, baseUrl, defaultStartMs);
+    }
+    int offset = periodOffsets[index];
+    int length = periodLengths[index];
+    long hash = hash(manifestData, offset, length);
+    String id = xpp.getAttributeValue(null, "id");
+    Pair<Period, Long> periodWithDurationMs = null;
+    for (int i = 0; i < previousPeriods.size(); i++) {
+      ParsedPeriod previousPeriod = previousPeriods.get(i);
+      if (previousPeriod.matches(manifestData, offset, length, hash, baseUrl, defaultStartMs, id)) {
+        periodWithDurationMs = previousPeriod.periodWithDurationMs;
+        do {
+          xpp.next();
+        } while (!ParserUtil.isEndTag(xpp, "Period"));
+        break;
+      }
+    }
+    if (periodWithDurationMs == null) {
+      periodWithDurationMs = parsePeriod(xpp, baseUrl, defaultStartMs);
+    }
+    currentPeriods.add(new ParsedPeriod(manifestData, offset, length, hash, baseUrl,
+        defaultStartMs, periodWithDurationMs));
+    return periodWithDurationMs;
+  }
+
+  /**
+   * Locates the byte range of each Period element in the manifest data. Period elements cannot be
+   * nested, so each range extends from a start tag to the following end tag.
+   */
+  private void findPeriodRanges() {
+    byte[] data = manifestData;
+    int limit = manifestLength;
+    periodRangeCount = 0;
+    int position = 0;
+    while ((position = indexOf(data, limit, PERIOD_START_TAG, position)) != -1) {
+      int startTagNameEnd = position + PERIOD_START_TAG.length;
+      if (startTagNameEnd == limit || !isTagNameTerminator(data[startTagNameEnd])) {
+        // The tag is for a different element whose name starts with Period.
+        position = startTagNameEnd;
+        continue;
+      }
+      int startTagEnd = findTagEnd(data, limit, startTagNameEnd);
+      if (startTagEnd == -1) {
+        return;
+      }
+      int end;
+      if (data[startTagEnd - 1] == '/') {
+        // The element is empty.
+        end = startTagEnd + 1;
+      } else {
+        int endTagPosition = indexOf(data, limit, PERIOD_END_TAG, startTagEnd);
+        int endTagEnd = endTagPosition == -1 ? -1
+            : findTagEnd(data, limit, endTagPosition + PERIOD_END_TAG.length);
+        if (endTagEnd == -1) {
+          return;
+        }
+        end = endTagEnd + 1;
+      }
+      if (periodRangeCount == periodOffsets.length) {
+        periodOffsets = Arrays.copyOf(periodOffsets, periodRangeCount * 2);
+        periodLengths = Arrays.copyOf(periodLengths, periodRangeCount * 2);
+      }
+      periodOffsets[periodRangeCount] = position;
+      periodLengths[periodRangeCount] = end - position;
+      periodRangeCount++;
+      position = end;
+    }
+  }
+
+  private static boolean isTagNameTerminator(byte value) {
+    return value == '>' || value == '/' || value == ' ' || value == '\t' || value == '\n'
+        || value == '\r';
+  }
+
+  /**
+   * Returns the position of the {@code '>'} that closes the tag containing {@code position}, or
+   * -1 if the tag isn't closed. Attribute values may contain {@code '>'}, so quotes are tracked.
+   */
+  private static int findTagEnd(byte[] data, int limit, int position) {
+    byte quote = 0;
+    for (int i = position; i < limit; i++) {
+      byte value = data[i];
+      if (quote != 0) {
+        if (value == quote) {
+          quote = 0;
+        }
+      } else if (value == '"' || value == '\'') {
+        quote = value;
+      } else if (value == '>') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(byte[] data, int limit, byte[] target, int fromIndex) {
+    int last = limit - target.length;
+    for (int i = fromIndex; i <= last; i++) {
+      if (data[i] == target[0] && rangeEquals(data, i, target, 0, target.length)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean rangeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aOffset + i] != b[bOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of a byte range.
+   */
+  private static long hash(byte[] data, int offset, int length) {
+    long hash = 0xCBF29CE484222325L;
+    for (int i = offset; i < offset + length; i++) {
+      hash ^= data[i] & 0xFF;
+      hash *= 0x100000001B3L;
+    }
+    return hash;
+  }
+
   // AdaptationSet parsing.
 
   protected AdaptationSet parseAdaptationSet(XmlPullParser xpp, String baseUrl,
@@ -545,6 +766,9 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   protected List<SegmentTimelineElement> parseSegmentTimeline(XmlPullParser xpp)
       throws XmlPullParserException, IOException {
+    if (incremental) {
+      return parsePackedSegmentTimeline(xpp);
+    }
     List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
     long elapsedTime = 0;
     do {
@@ -562,6 +786,28 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
     return segmentTimeline;
   }
 
+  /**
+   * Parses a SegmentTimeline into a {@link PackedSegmentTimeline}, with one run per S element.
+   */
+  private PackedSegmentTimeline parsePackedSegmentTimeline(XmlPullParser xpp)
+      throws XmlPullParserException, IOException {
+    PackedSegmentTimeline segmentTimeline = new PackedSegmentTimeline();
+    long elapsedTime = 0;
+    do {
+      xpp.next();
+      if (ParserUtil.isStartTag(xpp, "S")) {
+        elapsedTime = parseLong(xpp, "t", elapsedTime);
+        long duration = parseLong(xpp, "d");
+        int count = 1 + parseInt(xpp, "r", 0);
+        if (count > 0) {
+          segmentTimeline.addRun(elapsedTime, duration, count);
+          elapsedTime += count * duration;
+        }
+      }
+    } while (!ParserUtil.isEndTag(xpp, "SegmentTimeline"));
+    return segmentTimeline;
+  }
+
   protected SegmentTimelineElement buildSegmentTimelineElement(long elapsedTime, long duration) {
     return new SegmentTimelineElement(elapsedTime, duration);
   }
@@ -848,4 +1094,44 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   }
 
+  /**
+   * A Period parsed in incremental mode, together with the byte range and context from which it was
+   * parsed.
+   */
+  private static final class ParsedPeriod {
+
+    public final Pair<Period, Long> periodWithDurationMs;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+    private final long hash;
+    private final String baseUrl;
+    private final long defaultStartMs;
+
+    public ParsedPeriod(byte[] data, int offset, int length, long hash, String baseUrl,
+        long defaultStartMs, Pair<Period, Long> periodWithDurationMs) {
+      this.data = data;
+      this.offset = offset;
+      this.length = length;
+      this.hash = hash;
+      this.baseUrl = baseUrl;
+      this.defaultStartMs = defaultStartMs;
+      this.periodWithDurationMs = periodWithDurationMs;
+    }
+
+    /**
+     * Returns whether parsing the specified byte range in the specified context would yield this
+     * Period.
+     */
+    public boolean matches(byte[] otherData, int otherOffset, int otherLength, long otherHash,
+        String otherBaseUrl, long otherDefaultStartMs, String id) {
+      return hash == otherHash && length == otherLength && defaultStartMs == otherDefaultStartMs
+          && Util.areEqual(baseUrl, otherBaseUrl)
+          && Util.areEqual(periodWithDurationMs.first.id, id)
+          && rangeEquals(data, offset, otherData, otherOffset, length);
+    }
+
+  }
+
 }
@@ -19,7 +19,10 @@ import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.dash.DashSegmentIndex;
 import com.google.android.exoplayer.util.Util;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * An approximate representation of a SegmentBase manifest element.
@@ -175,7 +178,7 @@ public abstract class SegmentBase {
      */
     public final long getSegmentDurationUs(int sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get(sequenceNumber - startNumber).duration;
+        long duration = getTimelineDuration(sequenceNumber - startNumber);
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         return sequenceNumber == getLastSegmentNum(periodDurationUs)
@@ -190,7 +193,7 @@ public abstract class SegmentBase {
     public final long getSegmentTimeUs(int sequenceNumber) {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
-        unscaledSegmentTime = segmentTimeline.get(sequenceNumber - startNumber).startTime
+        unscaledSegmentTime = getTimelineStartTime(sequenceNumber - startNumber)
             - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -225,6 +228,26 @@ public abstract class SegmentBase {
       return segmentTimeline != null;
     }
 
+    /**
+     * Returns the start time of the timeline element at the specified index, reading it directly
+     * from a {@link PackedSegmentTimeline} rather than creating the element.
+     */
+    /* package */ final long getTimelineStartTime(int index) {
+      return segmentTimeline instanceof PackedSegmentTimeline
+          ? ((PackedSegmentTimeline) segmentTimeline).getStartTime(index)
+          : segmentTimeline.get(index).startTime;
+    }
+
+    /**
+     * Returns the duration of the timeline element at the specified index, reading it directly
+     * from a {@link PackedSegmentTimeline} rather than creating the element.
+     */
+    /* package */ final long getTimelineDuration(int index) {
+      return segmentTimeline instanceof PackedSegmentTimeline
+          ? ((PackedSegmentTimeline) segmentTimeline).getDuration(index)
+          : segmentTimeline.get(index).duration;
+    }
+
   }
 
   /**
@@ -329,7 +352,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, int sequenceNumber) {
       long time = 0;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get(sequenceNumber - startNumber).startTime;
+        time = getTimelineStartTime(sequenceNumber - startNumber);
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -373,4 +396,86 @@ public abstract class SegmentBase {
 
   }
 
+  /**
+   * A segment timeline that stores each S element of the MPD as a run of segments of equal
+   * duration in primitive arrays, rather than storing a {@link SegmentTimelineElement} for each
+   * segment. Elements are created on demand by {@link #get(int)}.
+   */
+  public static final class PackedSegmentTimeline extends AbstractList<SegmentTimelineElement>
+      implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] runStartTimes;
+    private long[] runDurations;
+    private int[] runFirstIndices;
+    private int runCount;
+    private int size;
+
+    /* package */ PackedSegmentTimeline() {
+      runStartTimes = new long[INITIAL_CAPACITY];
+      runDurations = new long[INITIAL_CAPACITY];
+      runFirstIndices = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a run of segments of equal duration.
+     *
+     * @param startTime The start time of the first segment in the run.
+     * @param duration The duration of each segment in the run.
+     * @param count The number of segments in the run. Must be positive.
+     */
+    /* package */ void addRun(long startTime, long duration, int count) {
+      if (runCount == runStartTimes.length) {
+        int newCapacity = runCount * 2;
+        runStartTimes = Arrays.copyOf(runStartTimes, newCapacity);
+        runDurations = Arrays.copyOf(runDurations, newCapacity);
+        runFirstIndices = Arrays.copyOf(runFirstIndices, newCapacity);
+      }
+      runStartTimes[runCount] = startTime;
+      runDurations[runCount] = duration;
+      runFirstIndices[runCount] = size;
+      runCount++;
+      size += count;
+    }
+
+    /**
+     * Returns the start time of the segment at the specified index.
+     */
+    public long getStartTime(int index) {
+      int run = getRunIndex(index);
+      return runStartTimes[run] + (index - runFirstIndices[run]) * runDurations[run];
+    }
+
+    /**
+     * Returns the duration of the segment at the specified index.
+     */
+    public long getDuration(int index) {
+      return runDurations[getRunIndex(index)];
+    }
+
+    @Override
+    public SegmentTimelineElement get(int index) {
+      int run = getRunIndex(index);
+      long duration = runDurations[run];
+      return new SegmentTimelineElement(
+          runStartTimes[run] + (index - runFirstIndices[run]) * duration, duration);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    private int getRunIndex(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      int run = Arrays.binarySearch(runFirstIndices, 0, runCount, index);
+      // Runs are never empty, so an exact match is the run that starts at the index.
+      return run >= 0 ? run : -run - 2;
+    }
+
+  }
+
 }
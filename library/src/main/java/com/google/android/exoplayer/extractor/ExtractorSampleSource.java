@@ -29,6 +29,7 @@ import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.LoaderScheduler;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 
@@ -169,6 +170,8 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
   private final int minLoadableRetryCount;
   private final Uri uri;
   private final DataSource dataSource;
+  private final LoaderScheduler loaderScheduler;
+  private final int loadPriority;
 
   private volatile boolean tracksBuilt;
   private volatile SeekMap seekMap;
@@ -230,11 +233,34 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
    */
   public ExtractorSampleSource(Uri uri, DataSource dataSource, Allocator allocator,
       int requestedBufferSize, int minLoadableRetryCount, Extractor... extractors) {
+    this(uri, dataSource, allocator, requestedBufferSize, minLoadableRetryCount, null, 0,
+        extractors);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the media stream.
+   * @param dataSource A data source to read the media stream.
+   * @param allocator An {@link Allocator} from which to obtain memory allocations.
+   * @param requestedBufferSize The requested total buffer size for storing sample data, in bytes.
+   *     The actual allocated size may exceed the value passed in if the implementation requires it.
+   * @param minLoadableRetryCount The minimum number of times that the sample source will retry
+   *     if a loading error occurs.
+   * @param loaderScheduler A shared {@link LoaderScheduler} on which to run loads. May be null, in
+   *     which case the source loads on a thread of its own.
+   * @param loadPriority The priority of the source's loads on {@code loaderScheduler}.
+   * @param extractors {@link Extractor}s to extract the media stream, in order of decreasing
+   *     priority. If omitted, the default extractors will be used.
+   */
+  public ExtractorSampleSource(Uri uri, DataSource dataSource, Allocator allocator,
+      int requestedBufferSize, int minLoadableRetryCount, LoaderScheduler loaderScheduler,
+      int loadPriority, Extractor... extractors) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.allocator = allocator;
     this.requestedBufferSize = requestedBufferSize;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.loaderScheduler = loaderScheduler;
+    this.loadPriority = loadPriority;
     if (extractors == null || extractors.length == 0) {
       extractors = new Extractor[DEFAULT_EXTRACTOR_CLASSES.size()];
       for (int i = 0; i < extractors.length; i++) {
@@ -264,7 +290,7 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
       return true;
     }
     if (loader == null) {
-      loader = new Loader("Loader:ExtractorSampleSource");
+      loader = Loader.newInstance("Loader:ExtractorSampleSource", loaderScheduler, loadPriority);
     }
 
     maybeStartLoading();
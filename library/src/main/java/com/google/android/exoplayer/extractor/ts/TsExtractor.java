@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer.extractor.ts;
 
+import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.extractor.DummyTrackOutput;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorInput;
@@ -26,13 +27,16 @@ import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 
 import android.util.Log;
-import android.util.SparseArray;
-import android.util.SparseBooleanArray;
 
 import java.io.IOException;
 
 /**
  * Facilitates the extraction of data from the MPEG-2 TS container format.
+ * <p>
+ * Each call to {@link #read(ExtractorInput, PositionHolder)} reads as much data as the input can
+ * provide without blocking, up to {@link #BUFFER_PACKET_COUNT} packets, and demuxes every complete
+ * packet that it holds. Packet headers are decoded directly from the buffer, and payloads are
+ * dispatched through a table indexed by PID.
  */
 public final class TsExtractor implements Extractor {
 
@@ -45,6 +49,14 @@ public final class TsExtractor implements Extractor {
   private static final int TS_PACKET_SIZE = 188;
   private static final int TS_SYNC_BYTE = 0x47; // First byte of each TS packet.
   private static final int TS_PAT_PID = 0;
+  private static final int MAX_PID_PLUS_ONE = 0x2000;
+
+  /**
+   * The maximum number of packets read by a single call to
+   * {@link #read(ExtractorInput, PositionHolder)}. The buffer is a little under 64KB.
+   */
+  /* package */ static final int BUFFER_PACKET_COUNT = 348;
+  private static final int BUFFER_SIZE = TS_PACKET_SIZE * BUFFER_PACKET_COUNT;
 
   private static final int TS_STREAM_TYPE_MPA = 0x03;
   private static final int TS_STREAM_TYPE_MPA_LSF = 0x04;
@@ -58,6 +70,7 @@ public final class TsExtractor implements Extractor {
   private static final int TS_STREAM_TYPE_H265 = 0x24;
   private static final int TS_STREAM_TYPE_ID3 = 0x15;
   private static final int TS_STREAM_TYPE_EIA608 = 0x100; // 0xFF + 1
+  private static final int MAX_STREAM_TYPE_PLUS_ONE = 0x100;
 
   private static final long AC3_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("AC-3");
   private static final long E_AC3_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("EAC3");
@@ -66,9 +79,8 @@ public final class TsExtractor implements Extractor {
   private final PtsTimestampAdjuster ptsTimestampAdjuster;
   private final int workaroundFlags;
   private final ParsableByteArray tsPacketBuffer;
-  private final ParsableBitArray tsScratch;
-  /* package */ final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
-  /* package */ final SparseBooleanArray streamTypes;
+  /* package */ final TsPayloadReader[] tsPayloadReaders; // Indexed by pid
+  /* package */ final boolean[] streamTypes; // Indexed by stream type
 
   // Accessed only by the loading thread.
   private ExtractorOutput output;
@@ -85,11 +97,11 @@ public final class TsExtractor implements Extractor {
   public TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags) {
     this.ptsTimestampAdjuster = ptsTimestampAdjuster;
     this.workaroundFlags = workaroundFlags;
-    tsPacketBuffer = new ParsableByteArray(TS_PACKET_SIZE);
-    tsScratch = new ParsableBitArray(new byte[3]);
-    tsPayloadReaders = new SparseArray<>();
-    tsPayloadReaders.put(TS_PAT_PID, new PatReader());
-    streamTypes = new SparseBooleanArray();
+    tsPacketBuffer = new ParsableByteArray(BUFFER_SIZE);
+    tsPacketBuffer.setLimit(0);
+    tsPayloadReaders = new TsPayloadReader[MAX_PID_PLUS_ONE];
+    tsPayloadReaders[TS_PAT_PID] = new PatReader();
+    streamTypes = new boolean[MAX_STREAM_TYPE_PLUS_ONE];
   }
 
   // Extractor implementation.
@@ -116,50 +128,77 @@ public final class TsExtractor implements Extractor {
   @Override
   public void seek() {
     ptsTimestampAdjuster.reset();
-    for (int i = 0; i < tsPayloadReaders.size(); i++) {
-      tsPayloadReaders.valueAt(i).seek();
+    for (TsPayloadReader payloadReader : tsPayloadReaders) {
+      if (payloadReader != null) {
+        payloadReader.seek();
+      }
     }
+    // Discard buffered data, which precedes the seek.
+    tsPacketBuffer.reset();
   }
 
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
-    if (!input.readFully(tsPacketBuffer.data, 0, TS_PACKET_SIZE, true)) {
-      return RESULT_END_OF_INPUT;
-    }
-
-    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
-    // the header.
-    tsPacketBuffer.setPosition(0);
-    tsPacketBuffer.setLimit(TS_PACKET_SIZE);
-    int syncByte = tsPacketBuffer.readUnsignedByte();
-    if (syncByte != TS_SYNC_BYTE) {
-      return RESULT_CONTINUE;
+    byte[] data = tsPacketBuffer.data;
+    // Move any partial packet left by the previous call to the start of the buffer.
+    int bytesLeft = tsPacketBuffer.bytesLeft();
+    if (tsPacketBuffer.getPosition() > 0) {
+      System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
+      tsPacketBuffer.reset(data, bytesLeft);
     }
+    // Read until the buffer holds at least one packet, taking whatever else is available.
+    do {
+      int limit = tsPacketBuffer.limit();
+      int bytesRead = input.read(data, limit, BUFFER_SIZE - limit);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        // Any partial packet is discarded, so that it is not joined to data from the next input
+        // when the extractor is reused.
+        tsPacketBuffer.reset();
+        return RESULT_END_OF_INPUT;
+      }
+      tsPacketBuffer.setLimit(limit + bytesRead);
+    } while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE);
+
+    int limit = tsPacketBuffer.limit();
+    int position = tsPacketBuffer.getPosition();
+    while (true) {
+      // Resynchronize on the next sync byte, so that a packet following corrupt data is not lost.
+      while (position < limit && data[position] != TS_SYNC_BYTE) {
+        position++;
+      }
+      int packetEnd = position + TS_PACKET_SIZE;
+      if (packetEnd > limit) {
+        break;
+      }
 
-    tsPacketBuffer.readBytes(tsScratch, 3);
-    tsScratch.skipBits(1); // transport_error_indicator
-    boolean payloadUnitStartIndicator = tsScratch.readBit();
-    tsScratch.skipBits(1); // transport_priority
-    int pid = tsScratch.readBits(13);
-    tsScratch.skipBits(2); // transport_scrambling_control
-    boolean adaptationFieldExists = tsScratch.readBit();
-    boolean payloadExists = tsScratch.readBit();
-    // Last 4 bits of scratch are skipped: continuity_counter
-
-    // Skip the adaptation field.
-    if (adaptationFieldExists) {
-      int adaptationFieldLength = tsPacketBuffer.readUnsignedByte();
-      tsPacketBuffer.skipBytes(adaptationFieldLength);
-    }
+      // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
+      // the header. transport_error_indicator (1), transport_priority (1),
+      // transport_scrambling_control (2) and continuity_counter (4) are ignored.
+      int header1 = data[position + 1] & 0xFF;
+      int header3 = data[position + 3] & 0xFF;
+      boolean payloadUnitStartIndicator = (header1 & 0x40) != 0;
+      int pid = ((header1 & 0x1F) << 8) | (data[position + 2] & 0xFF);
+      boolean adaptationFieldExists = (header3 & 0x20) != 0;
+      boolean payloadExists = (header3 & 0x10) != 0;
+
+      // Skip the adaptation field.
+      int payloadPosition = position + 4;
+      if (adaptationFieldExists) {
+        payloadPosition += 1 + (data[payloadPosition] & 0xFF);
+      }
 
-    // Read the payload.
-    if (payloadExists) {
-      TsPayloadReader payloadReader = tsPayloadReaders.get(pid);
-      if (payloadReader != null) {
+      // Read the payload.
+      TsPayloadReader payloadReader = tsPayloadReaders[pid];
+      if (payloadExists && payloadReader != null && payloadPosition <= packetEnd) {
+        tsPacketBuffer.setLimit(packetEnd);
+        tsPacketBuffer.setPosition(payloadPosition);
         payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator, output);
+        tsPacketBuffer.setLimit(limit);
       }
+      position = packetEnd;
     }
+    tsPacketBuffer.setPosition(position);
 
     return RESULT_CONTINUE;
   }
@@ -233,7 +272,7 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          tsPayloadReaders.put(pid, new PmtReader());
+          tsPayloadReaders[pid] = new PmtReader();
         }
       }
 
@@ -328,7 +367,7 @@ public final class TsExtractor implements Extractor {
           sectionData.skipBytes(esInfoLength);
         }
         remainingEntriesLength -= esInfoLength + 5;
-        if (streamTypes.get(streamType)) {
+        if (streamType < 0 || streamType >= MAX_STREAM_TYPE_PLUS_ONE || streamTypes[streamType]) {
           continue;
         }
 
@@ -376,9 +415,8 @@ public final class TsExtractor implements Extractor {
         }
 
         if (pesPayloadReader != null) {
-          streamTypes.put(streamType, true);
-          tsPayloadReaders.put(elementaryPid,
-              new PesReader(pesPayloadReader, ptsTimestampAdjuster));
+          streamTypes[streamType] = true;
+          tsPayloadReaders[elementaryPid] = new PesReader(pesPayloadReader, ptsTimestampAdjuster);
         }
       }
 
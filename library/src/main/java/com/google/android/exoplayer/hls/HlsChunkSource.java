@@ -759,6 +759,14 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
   private void setMediaPlaylist(int variantIndex, HlsMediaPlaylist mediaPlaylist) {
     variantLastPlaylistLoadTimesMs[variantIndex] = SystemClock.elapsedRealtime();
+    HlsMediaPlaylist oldMediaPlaylist = variantPlaylists[variantIndex];
+    if (oldMediaPlaylist != null
+        && HlsMediaPlaylistDiff.compute(oldMediaPlaylist, mediaPlaylist).isOutOfSync()) {
+      // The new playlist no longer advertises segments that were previously announced. Assume that
+      // we are hitting a server that is out of sync and behind, keep the old playlist, and try
+      // again once the playlist is next re-requested.
+      return;
+    }
     variantPlaylists[variantIndex] = mediaPlaylist;
     live |= mediaPlaylist.live;
     durationUs = live ? C.UNKNOWN_TIME_US : mediaPlaylist.durationUs;
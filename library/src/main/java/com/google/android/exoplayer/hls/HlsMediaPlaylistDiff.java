@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+/**
+ * The difference between two consecutive loads of the same {@link HlsMediaPlaylist}.
+ * <p>
+ * Segments are identified by their media sequence numbers, so the difference is computed in
+ * constant time regardless of the number of segments in the playlists.
+ */
+public final class HlsMediaPlaylistDiff {
+
+  /**
+   * The number of segments at the start of the old playlist that have been removed. Negative if the
+   * new playlist starts before the old one.
+   */
+  public final int removedSegmentCount;
+  /**
+   * The number of segments at the end of the new playlist that have been appended. Negative if the
+   * new playlist ends before the old one.
+   */
+  public final int appendedSegmentCount;
+  /**
+   * Whether the new playlist has ended, where the old playlist had not.
+   */
+  public final boolean ended;
+
+  private HlsMediaPlaylistDiff(int removedSegmentCount, int appendedSegmentCount, boolean ended) {
+    this.removedSegmentCount = removedSegmentCount;
+    this.appendedSegmentCount = appendedSegmentCount;
+    this.ended = ended;
+  }
+
+  /**
+   * Computes the difference between two playlists.
+   *
+   * @param oldPlaylist The playlist that was previously in use.
+   * @param newPlaylist The playlist that replaces it.
+   * @return The difference between the playlists.
+   */
+  public static HlsMediaPlaylistDiff compute(HlsMediaPlaylist oldPlaylist,
+      HlsMediaPlaylist newPlaylist) {
+    int removedSegmentCount = newPlaylist.mediaSequence - oldPlaylist.mediaSequence;
+    int appendedSegmentCount = (newPlaylist.mediaSequence + newPlaylist.segments.size())
+        - (oldPlaylist.mediaSequence + oldPlaylist.segments.size());
+    return new HlsMediaPlaylistDiff(removedSegmentCount, appendedSegmentCount,
+        oldPlaylist.live && !newPlaylist.live);
+  }
+
+  /**
+   * Returns whether the new playlist is likely to have been served by a server that is out of sync
+   * and behind, because it does not start before the old playlist but ends before it. A playlist
+   * that starts before the old one is not considered to be out of sync, since the media sequence
+   * numbers may have been reset.
+   */
+  public boolean isOutOfSync() {
+    return removedSegmentCount >= 0 && appendedSegmentCount < 0;
+  }
+
+  /**
+   * Returns whether the playlists advertise the same segments, and have the same live state.
+   */
+  public boolean isEmpty() {
+    return removedSegmentCount == 0 && appendedSegmentCount == 0 && !ended;
+  }
+
+}
@@ -29,6 +29,7 @@ import com.google.android.exoplayer.chunk.ChunkOperationHolder;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.LoaderScheduler;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.MimeTypes;
 
@@ -71,6 +72,8 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   private final LoadControl loadControl;
   private final Handler eventHandler;
   private final EventListener eventListener;
+  private final LoaderScheduler loaderScheduler;
+  private final int loadPriority;
 
   private int remainingReleaseCount;
   private boolean prepared;
@@ -124,6 +127,28 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   public HlsSampleSource(HlsChunkSource chunkSource, LoadControl loadControl,
       int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
       int eventSourceId, int minLoadableRetryCount) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, null, 0);
+  }
+
+  /**
+   * @param chunkSource An {@link HlsChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param loaderScheduler A shared {@link LoaderScheduler} on which to run loads. May be null, in
+   *     which case the source loads on a thread of its own.
+   * @param loadPriority The priority of the source's loads on {@code loaderScheduler}.
+   */
+  public HlsSampleSource(HlsChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, LoaderScheduler loaderScheduler,
+      int loadPriority) {
     this.chunkSource = chunkSource;
     this.loadControl = loadControl;
     this.bufferSizeContribution = bufferSizeContribution;
@@ -131,6 +156,8 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.eventSourceId = eventSourceId;
+    this.loaderScheduler = loaderScheduler;
+    this.loadPriority = loadPriority;
     this.pendingResetPositionUs = NO_RESET_PENDING;
     extractors = new LinkedList<>();
     chunkOperationHolder = new ChunkOperationHolder();
@@ -167,7 +194,7 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
     }
     // We're not prepared and we haven't loaded what we need.
     if (loader == null) {
-      loader = new Loader("Loader:HLS");
+      loader = Loader.newInstance("Loader:HLS", loaderScheduler, loadPriority);
       loadControl.register(this, bufferSizeContribution);
       loadControlRegistered = true;
     }
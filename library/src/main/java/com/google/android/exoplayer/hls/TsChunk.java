@@ -66,8 +66,8 @@ public final class TsChunk extends MediaChunk {
         startTimeUs, endTimeUs, chunkIndex);
     this.discontinuitySequenceNumber = discontinuitySequenceNumber;
     this.extractorWrapper = extractorWrapper;
-    // Note: this.dataSource and dataSource may be different.
-    this.isEncrypted = this.dataSource instanceof Aes128DataSource;
+    // Matches the condition under which buildDataSource wraps the source for decryption.
+    this.isEncrypted = encryptionKey != null && encryptionIv != null;
   }
 
   @Override
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.ExoPlayer;
+import com.google.android.exoplayer.chunk.Chunk;
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
+import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.Period;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates adaptive playback sessions offline, by replaying a {@link BandwidthTrace} through a
+ * {@link FormatEvaluator}.
+ * <p>
+ * The simulation models a single video stream of fixed duration segments. Segments are loaded
+ * one at a time, at the rate the trace allows, until the buffer reaches the high watermark, after
+ * which loading resumes once the buffer has drained to the low watermark. Playback starts once the
+ * minimum buffer has been loaded, stalls when the buffer runs dry, and resumes once the minimum
+ * rebuffer has been loaded again. The evaluator is invoked before each segment is requested with
+ * the same arguments it would receive during playback, and receives bandwidth estimates from a
+ * {@link SimulatedBandwidthMeter}. No time passes in the real world, so a session typically
+ * completes in well under a millisecond.
+ * <p>
+ * Instances are immutable, and may be used to run simulations on several threads at once provided
+ * the evaluators they create do not share state.
+ */
+public final class AbrSimulator {
+
+  /**
+   * Creates the evaluator to use for each simulated session.
+   */
+  public interface EvaluatorFactory {
+
+    /**
+     * Creates an evaluator for a new session.
+     *
+     * @param bandwidthMeter The meter that will provide the session's bandwidth estimates.
+     * @return The evaluator.
+     */
+    FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter);
+
+  }
+
+  public static final int DEFAULT_LOW_WATERMARK_MS = DefaultLoadControl.DEFAULT_LOW_WATERMARK_MS;
+  public static final int DEFAULT_HIGH_WATERMARK_MS = DefaultLoadControl.DEFAULT_HIGH_WATERMARK_MS;
+  public static final int DEFAULT_MIN_BUFFER_MS = ExoPlayer.Factory.DEFAULT_MIN_BUFFER_MS;
+  public static final int DEFAULT_MIN_REBUFFER_MS = ExoPlayer.Factory.DEFAULT_MIN_REBUFFER_MS;
+
+  private static final DataSource NO_OP_DATA_SOURCE = new DataSource() {
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      throw new IOException("Simulated chunks cannot be loaded");
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      throw new IOException("Simulated chunks cannot be loaded");
+    }
+
+  };
+
+  private final Format[] formats;
+  private final long segmentDurationUs;
+  private final long sessionDurationUs;
+  private final long lowWatermarkUs;
+  private final long highWatermarkUs;
+  private final long minBufferUs;
+  private final long minRebufferUs;
+
+  /**
+   * Constructs an instance, using the {@code DEFAULT_*} constants defined in this class.
+   *
+   * @param formats The available formats. Sorted into order of decreasing bandwidth.
+   * @param segmentDurationMs The duration of each segment.
+   * @param sessionDurationMs The duration of playback after which a session ends.
+   */
+  public AbrSimulator(Format[] formats, long segmentDurationMs, long sessionDurationMs) {
+    this(formats, segmentDurationMs, sessionDurationMs, DEFAULT_LOW_WATERMARK_MS,
+        DEFAULT_HIGH_WATERMARK_MS, DEFAULT_MIN_BUFFER_MS, DEFAULT_MIN_REBUFFER_MS);
+  }
+
+  /**
+   * @param formats The available formats. Sorted into order of decreasing bandwidth.
+   * @param segmentDurationMs The duration of each segment.
+   * @param sessionDurationMs The duration of playback after which a session ends.
+   * @param lowWatermarkMs The buffered duration below which loading resumes.
+   * @param highWatermarkMs The buffered duration at which loading stops.
+   * @param minBufferMs The buffered duration required for playback to start.
+   * @param minRebufferMs The buffered duration required for playback to resume after a stall.
+   */
+  public AbrSimulator(Format[] formats, long segmentDurationMs, long sessionDurationMs,
+      int lowWatermarkMs, int highWatermarkMs, int minBufferMs, int minRebufferMs) {
+    Assertions.checkArgument(formats.length > 0);
+    Assertions.checkArgument(segmentDurationMs > 0);
+    Assertions.checkArgument(lowWatermarkMs < highWatermarkMs);
+    Assertions.checkArgument(minBufferMs <= highWatermarkMs && minRebufferMs <= highWatermarkMs);
+    this.formats = formats.clone();
+    Arrays.sort(this.formats, new Format.DecreasingBandwidthComparator());
+    this.segmentDurationUs = segmentDurationMs * 1000;
+    this.sessionDurationUs = sessionDurationMs * 1000;
+    this.lowWatermarkUs = lowWatermarkMs * 1000L;
+    this.highWatermarkUs = highWatermarkMs * 1000L;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.minRebufferUs = minRebufferMs * 1000L;
+  }
+
+  /**
+   * Simulates a session starting at the beginning of a trace.
+   *
+   * @param trace The trace of the network capacity.
+   * @param evaluatorFactory Creates the evaluator for the session.
+   * @return The metrics of the session.
+   */
+  public SimulationResult simulate(BandwidthTrace trace, EvaluatorFactory evaluatorFactory) {
+    return simulate(trace, 0, evaluatorFactory);
+  }
+
+  /**
+   * Simulates a session starting at a given offset into a trace. Starting sessions at different
+   * offsets allows a single trace to produce sessions that see different network conditions.
+   *
+   * @param trace The trace of the network capacity.
+   * @param traceOffsetUs The time in the trace at which the session starts.
+   * @param evaluatorFactory Creates the evaluator for the session.
+   * @return The metrics of the session.
+   */
+  public SimulationResult simulate(BandwidthTrace trace, long traceOffsetUs,
+      EvaluatorFactory evaluatorFactory) {
+    SimulatedBandwidthMeter bandwidthMeter = new SimulatedBandwidthMeter();
+    FormatEvaluator evaluator = evaluatorFactory.createEvaluator(bandwidthMeter);
+    Session session = new Session();
+    evaluator.enable();
+    try {
+      session.run(trace, traceOffsetUs, evaluator, bandwidthMeter);
+    } finally {
+      evaluator.disable();
+    }
+    return session.buildResult();
+  }
+
+  /**
+   * Returns the video formats of the first period of a DASH manifest, sorted into order of
+   * decreasing bandwidth.
+   *
+   * @param manifest The manifest.
+   * @return The video formats, or an empty array if the first period has no video.
+   */
+  public static Format[] getVideoFormats(MediaPresentationDescription manifest) {
+    Period period = manifest.getPeriod(0);
+    int adaptationSetIndex = period.getAdaptationSetIndex(AdaptationSet.TYPE_VIDEO);
+    if (adaptationSetIndex == -1) {
+      return new Format[0];
+    }
+    AdaptationSet adaptationSet = period.adaptationSets.get(adaptationSetIndex);
+    Format[] formats = new Format[adaptationSet.representations.size()];
+    for (int i = 0; i < formats.length; i++) {
+      formats[i] = adaptationSet.representations.get(i).format;
+    }
+    Arrays.sort(formats, new Format.DecreasingBandwidthComparator());
+    return formats;
+  }
+
+  /**
+   * The state of a single simulated session.
+   */
+  private final class Session {
+
+    private final ArrayList<MediaChunk> queue;
+    private final List<MediaChunk> readOnlyQueue;
+    private final Evaluation evaluation;
+
+    private long nowUs;
+    private long positionUs;
+    private boolean started;
+    private boolean playing;
+    private long stallStartUs;
+    private int nextChunkIndex;
+
+    private int segmentCount;
+    private double bitrateMean;
+    private double bitrateSquaredDeviations;
+    private int previousFormatIndex;
+    private int numSwitching;
+    private int magSwitching;
+    private int numRebuffering;
+    private long durationRebufferingUs;
+    private long startupDelayUs;
+
+    public Session() {
+      queue = new ArrayList<>();
+      readOnlyQueue = Collections.unmodifiableList(queue);
+      evaluation = new Evaluation();
+      previousFormatIndex = -1;
+    }
+
+    public void run(BandwidthTrace trace, long traceOffsetUs, FormatEvaluator evaluator,
+        SimulatedBandwidthMeter bandwidthMeter) {
+      boolean draining = false;
+      while (positionUs < sessionDurationUs) {
+        while (!queue.isEmpty() && queue.get(0).endTimeUs <= positionUs) {
+          queue.remove(0);
+        }
+        long bufferedUs = getBufferedUs();
+        if (!playing) {
+          long requiredBufferUs = started ? minRebufferUs : minBufferUs;
+          if (bufferedUs >= requiredBufferUs) {
+            startPlayback();
+          }
+        }
+
+        if (bufferedUs >= highWatermarkUs) {
+          draining = true;
+        } else if (bufferedUs <= lowWatermarkUs) {
+          draining = false;
+        }
+        if (draining) {
+          // Loading is suspended until the buffer drains to the low watermark.
+          advance(bufferedUs - lowWatermarkUs);
+          continue;
+        }
+
+        evaluation.queueSize = queue.size();
+        evaluator.evaluate(readOnlyQueue, positionUs, formats, evaluation);
+        Format format = evaluation.format;
+        Assertions.checkState(format != null);
+        discardUpstreamChunks(evaluation.queueSize);
+
+        long startTimeUs = nextChunkIndex * segmentDurationUs;
+        long endTimeUs = startTimeUs + segmentDurationUs;
+        long bytes = (long) format.bitrate * segmentDurationUs / 8000000;
+        onSegmentRequested(format);
+
+        long transferStartUs = traceOffsetUs + nowUs;
+        long transferDurationUs = trace.getTransferEndTimeUs(transferStartUs, bytes)
+            - transferStartUs;
+        if (!advance(transferDurationUs)) {
+          // The session ended while the segment was loading.
+          return;
+        }
+        bandwidthMeter.addSample(bytes, transferDurationUs / 1000);
+        queue.add(new SimulatedMediaChunk(format, evaluation.trigger, startTimeUs, endTimeUs,
+            nextChunkIndex, bytes));
+        nextChunkIndex++;
+      }
+    }
+
+    public SimulationResult buildResult() {
+      double varBitrate = segmentCount > 1 ? bitrateSquaredDeviations / (segmentCount - 1) : 0;
+      return new SimulationResult(segmentCount, bitrateMean, varBitrate, numSwitching,
+          magSwitching, numRebuffering, durationRebufferingUs / 1000, startupDelayUs / 1000);
+    }
+
+    private long getBufferedUs() {
+      return queue.isEmpty() ? 0 : queue.get(queue.size() - 1).endTimeUs - positionUs;
+    }
+
+    private void startPlayback() {
+      playing = true;
+      if (started) {
+        durationRebufferingUs += nowUs - stallStartUs;
+      } else {
+        started = true;
+        startupDelayUs = nowUs;
+      }
+    }
+
+    /**
+     * Advances the clock, playing out the buffer if playback has started.
+     *
+     * @return Whether the session is still in progress.
+     */
+    private boolean advance(long durationUs) {
+      if (!playing) {
+        nowUs += durationUs;
+        return true;
+      }
+      long bufferedUs = getBufferedUs();
+      long remainingUs = sessionDurationUs - positionUs;
+      if (remainingUs <= Math.min(durationUs, bufferedUs)) {
+        nowUs += remainingUs;
+        positionUs = sessionDurationUs;
+        return false;
+      }
+      if (bufferedUs < durationUs) {
+        playing = false;
+        numRebuffering++;
+        stallStartUs = nowUs + bufferedUs;
+        positionUs += bufferedUs;
+      } else {
+        positionUs += durationUs;
+      }
+      nowUs += durationUs;
+      return true;
+    }
+
+    private void discardUpstreamChunks(int queueSize) {
+      // The chunk at the head of the queue is being read, and can never be discarded.
+      queueSize = Math.max(queueSize, 1);
+      if (queueSize >= queue.size()) {
+        return;
+      }
+      nextChunkIndex = queue.get(queueSize).chunkIndex;
+      queue.subList(queueSize, queue.size()).clear();
+    }
+
+    private void onSegmentRequested(Format format) {
+      int formatIndex = Arrays.asList(formats).indexOf(format);
+      if (formatIndex == -1) {
+        throw new IllegalStateException("Evaluator selected an unavailable format: " + format.id);
+      }
+      double bitrate = format.bitrate / 1000.0;
+      segmentCount++;
+      // Welford's update, to avoid the cancellation of a naive sum of squares.
+      double delta = bitrate - bitrateMean;
+      bitrateMean += delta / segmentCount;
+      bitrateSquaredDeviations += delta * (bitrate - bitrateMean);
+      if (previousFormatIndex != -1 && formats[previousFormatIndex].bitrate != format.bitrate) {
+        numSwitching++;
+        magSwitching += Math.abs(formatIndex - previousFormatIndex);
+      }
+      previousFormatIndex = formatIndex;
+    }
+
+  }
+
+  /**
+   * A {@link MediaChunk} standing in for a segment loaded by the simulation.
+   */
+  private static final class SimulatedMediaChunk extends MediaChunk {
+
+    private final long bytes;
+
+    public SimulatedMediaChunk(Format format, int trigger, long startTimeUs, long endTimeUs,
+        int chunkIndex, long bytes) {
+      super(NO_OP_DATA_SOURCE, new DataSpec(null, 0, Math.max(bytes, 1), null), trigger, format,
+          startTimeUs, endTimeUs, chunkIndex, Chunk.NO_PARENT_ID);
+      this.bytes = bytes;
+    }
+
+    @Override
+    public long bytesLoaded() {
+      return bytes;
+    }
+
+    @Override
+    public void cancelLoad() {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return false;
+    }
+
+    @Override
+    public void load() {
+      // Do nothing. The chunk is loaded when it is created.
+    }
+
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.TelemetryTraceReader;
+import com.google.android.exoplayer.util.LongArray;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * The network capacity observed during a recorded playback session, replayable as a function from
+ * time to the number of bytes that can be transferred.
+ * <p>
+ * A trace is built from the byte samples recorded by the player, each of which reports the number
+ * of bytes read and the time at which the read completed. The bytes of a sample are assumed to
+ * have arrived at a constant rate since the previous sample. Gaps longer than a threshold are
+ * assumed to be periods during which the player was not loading (for example because its buffer
+ * was full), and are shortened to the threshold so that they do not appear as periods of low
+ * capacity. A trace repeats itself when a simulation runs past its end.
+ */
+public final class BandwidthTrace {
+
+  /**
+   * The default maximum gap between two samples that is assumed to be part of a transfer.
+   */
+  public static final long DEFAULT_MAX_IDLE_GAP_MS = 500;
+
+  private final long[] timesUs;
+  private final long[] cumulativeBytes;
+  private final long durationUs;
+  private final long totalBytes;
+
+  /**
+   * @param sampleTimesMs The times at which the samples were recorded, in milliseconds relative to
+   *     the start of the session.
+   * @param sampleBytes The number of bytes reported by each sample.
+   * @param sampleCount The number of samples.
+   * @param maxIdleGapMs Gaps between samples longer than this are shortened to this duration.
+   * @throws IllegalArgumentException If the samples do not describe any transferred bytes.
+   */
+  public BandwidthTrace(long[] sampleTimesMs, int[] sampleBytes, int sampleCount,
+      long maxIdleGapMs) {
+    timesUs = new long[sampleCount + 1];
+    cumulativeBytes = new long[sampleCount + 1];
+    long maxIdleGapUs = maxIdleGapMs * 1000;
+    long previousTimeUs = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      // Samples recorded on concurrent loader threads may be slightly out of order.
+      long sampleTimeUs = Math.max(previousTimeUs, sampleTimesMs[i] * 1000);
+      long gapUs = Math.min(sampleTimeUs - previousTimeUs, maxIdleGapUs);
+      timesUs[i + 1] = timesUs[i] + gapUs;
+      cumulativeBytes[i + 1] = cumulativeBytes[i] + Math.max(0, sampleBytes[i]);
+      previousTimeUs = sampleTimeUs;
+    }
+    durationUs = timesUs[sampleCount];
+    totalBytes = cumulativeBytes[sampleCount];
+    if (durationUs <= 0 || totalBytes <= 0) {
+      throw new IllegalArgumentException("Trace does not describe any transfer");
+    }
+  }
+
+  /**
+   * Returns the duration of a single pass over the trace, in microseconds.
+   */
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  /**
+   * Returns the number of bytes transferred in a single pass over the trace.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the mean capacity of the trace, in bits per second.
+   */
+  public long getAverageBitrate() {
+    return totalBytes * 8000000 / durationUs;
+  }
+
+  /**
+   * Returns the number of bytes that can be transferred between the start of the trace and the
+   * specified time.
+   *
+   * @param timeUs The time, in microseconds.
+   * @return The number of bytes.
+   */
+  public long getBytesAt(long timeUs) {
+    long loops = timeUs / durationUs;
+    long offsetUs = timeUs - loops * durationUs;
+    int index = Arrays.binarySearch(timesUs, offsetUs);
+    long bytes;
+    if (index >= 0) {
+      // Several points may share a time. The last of them includes all of their bytes.
+      while (index < timesUs.length - 1 && timesUs[index + 1] == offsetUs) {
+        index++;
+      }
+      bytes = cumulativeBytes[index];
+    } else {
+      int next = -index - 1;
+      int previous = next - 1;
+      bytes = cumulativeBytes[previous] + (cumulativeBytes[next] - cumulativeBytes[previous])
+          * (offsetUs - timesUs[previous]) / (timesUs[next] - timesUs[previous]);
+    }
+    return loops * totalBytes + bytes;
+  }
+
+  /**
+   * Returns the time at which a transfer would complete.
+   *
+   * @param startTimeUs The time at which the transfer starts, in microseconds.
+   * @param bytes The number of bytes to transfer.
+   * @return The time at which the transfer completes, in microseconds.
+   */
+  public long getTransferEndTimeUs(long startTimeUs, long bytes) {
+    if (bytes <= 0) {
+      return startTimeUs;
+    }
+    long targetBytes = getBytesAt(startTimeUs) + bytes;
+    long loops = (targetBytes - 1) / totalBytes;
+    long offsetBytes = targetBytes - loops * totalBytes;
+    // Find the first point at which at least offsetBytes have been transferred.
+    int index = Arrays.binarySearch(cumulativeBytes, offsetBytes);
+    long offsetUs;
+    if (index >= 0) {
+      while (index > 0 && cumulativeBytes[index - 1] == offsetBytes) {
+        index--;
+      }
+      offsetUs = timesUs[index];
+    } else {
+      int next = -index - 1;
+      int previous = next - 1;
+      offsetUs = timesUs[previous] + (timesUs[next] - timesUs[previous])
+          * (offsetBytes - cumulativeBytes[previous])
+          / (cumulativeBytes[next] - cumulativeBytes[previous]);
+    }
+    return Math.max(startTimeUs, loops * durationUs + offsetUs);
+  }
+
+  /**
+   * Builds a trace from a binary trace written by
+   * {@link com.google.android.exoplayer.TelemetryTraceWriter}.
+   *
+   * @param file The trace file.
+   * @param maxIdleGapMs Gaps between samples longer than this are shortened to this duration.
+   * @return The trace.
+   * @throws IOException If an error occurs reading the file, or it does not describe a transfer.
+   */
+  public static BandwidthTrace fromTelemetryTrace(File file, long maxIdleGapMs)
+      throws IOException {
+    final SampleList samples = new SampleList();
+    TelemetryTraceReader reader = new TelemetryTraceReader(file);
+    try {
+      reader.readAll(new TelemetryTraceReader.Output() {
+
+        private long sessionStartTimeMs;
+
+        @Override
+        public void onSessionStart(long sessionStartTimeMs) {
+          this.sessionStartTimeMs = sessionStartTimeMs;
+        }
+
+        @Override
+        public void onSegment(int index, int bitrate, long requestedTimeUs, long loadDurationMs) {
+          // Do nothing.
+        }
+
+        @Override
+        public void onBytes(long timeMs, int bytes) {
+          samples.add(timeMs - sessionStartTimeMs, bytes);
+        }
+
+        @Override
+        public void onChunkLoad(int chunkIndex, int type, int trigger, int bitrate, long bytes,
+            long bufferedDurationUs, long evaluationTimeNs, long loadStartTimeNs,
+            long firstByteTimeNs, long lastByteTimeNs, long consumeTimeNs) {
+          // Do nothing.
+        }
+
+        @Override
+        public void onSamplesLost(int recordType, long count) {
+          // Do nothing.
+        }
+
+      });
+    } finally {
+      reader.close();
+    }
+    return samples.toTrace(maxIdleGapMs);
+  }
+
+  /**
+   * Builds a trace from one session of a {@code _Byte.csv} export, in which each session occupies
+   * three columns holding the sample time in seconds, the number of bytes and an empty separator.
+   * A file holding a single {@code time,bytes} pair per line is read as session zero.
+   *
+   * @param reader Reads the CSV. Not closed by this method.
+   * @param sessionIndex The index of the session to read.
+   * @param maxIdleGapMs Gaps between samples longer than this are shortened to this duration.
+   * @return The trace.
+   * @throws IOException If an error occurs reading the CSV, or it does not describe a transfer.
+   */
+  public static BandwidthTrace fromByteCsv(Reader reader, int sessionIndex, long maxIdleGapMs)
+      throws IOException {
+    BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader
+        : new BufferedReader(reader);
+    SampleList samples = new SampleList();
+    int timeColumn = sessionIndex * 3;
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      String[] cells = line.split(",", -1);
+      if (cells.length <= timeColumn + 1 || cells[timeColumn].trim().isEmpty()) {
+        // This session has fewer samples than the longest session in the file.
+        continue;
+      }
+      try {
+        long timeMs = (long) (Double.parseDouble(cells[timeColumn].trim()) * 1000);
+        int bytes = Integer.parseInt(cells[timeColumn + 1].trim());
+        samples.add(timeMs, bytes);
+      } catch (NumberFormatException e) {
+        throw new ParserException(e);
+      }
+    }
+    return samples.toTrace(maxIdleGapMs);
+  }
+
+  private static final class SampleList {
+
+    private final LongArray timesMs = new LongArray();
+    private final LongArray bytes = new LongArray();
+
+    public void add(long timeMs, int sampleBytes) {
+      timesMs.add(timeMs);
+      bytes.add(sampleBytes);
+    }
+
+    public BandwidthTrace toTrace(long maxIdleGapMs) throws ParserException {
+      int count = timesMs.size();
+      long[] sampleTimesMs = timesMs.toArray();
+      int[] sampleBytes = new int[count];
+      for (int i = 0; i < count; i++) {
+        sampleBytes[i] = (int) bytes.get(i);
+      }
+      try {
+        return new BandwidthTrace(sampleTimesMs, sampleBytes, count, maxIdleGapMs);
+      } catch (IllegalArgumentException e) {
+        throw new ParserException(e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} that queues tasks submitted from any thread, and runs them when
+ * {@link #runPendingTasks()} is called. It takes the place of a {@link android.os.Looper} for
+ * sources that are driven from a plain thread, such as by {@link HeadlessPlayback}.
+ */
+public final class CallbackQueue implements Executor {
+
+  private final ConcurrentLinkedQueue<Runnable> tasks;
+
+  public CallbackQueue() {
+    tasks = new ConcurrentLinkedQueue<>();
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(task);
+  }
+
+  /**
+   * Runs the queued tasks on the calling thread, in the order in which they were submitted,
+   * including any that are submitted while doing so.
+   */
+  public void runPendingTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.MediaFormatHolder;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.SampleSource.SampleSourceReader;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.chunk.ChunkSampleSource;
+import com.google.android.exoplayer.chunk.ChunkSource;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.dash.DashChunkSource;
+import com.google.android.exoplayer.dash.DefaultDashTrackSelector;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.io.IOException;
+
+/**
+ * Plays {@link SampleSource}s without renderers, decoders or a surface, consuming each sample once
+ * the position of a {@link ScaledMediaClock} reaches it. The sources load exactly as they would
+ * during playback, so that adaptation, buffering and loader throughput can be measured on
+ * development and continuous integration machines, at realtime or many times faster.
+ * <p>
+ * Playback starts once every source has buffered {@code minBufferMs} ahead of the playback
+ * position, stalls when a source runs out of samples, and resumes once every source has buffered
+ * {@code minRebufferMs}, mirroring the behavior of {@link com.google.android.exoplayer.ExoPlayer}.
+ * <p>
+ * Sources are driven on the thread that calls {@link #run()}, which waits between operations on a
+ * {@link SimulationClock}. Neither the harness nor the {@link SystemSimulationClock} calls into the
+ * platform, and the thread does not need a {@link android.os.Looper}. Sources that load through a
+ * {@link com.google.android.exoplayer.upstream.Loader} instead receive their load callbacks on a
+ * {@link CallbackQueue}, which the harness runs before each operation. Sources for DASH content can
+ * be created with {@link #newDashSampleSource}.
+ * <p>
+ * Accelerated playback is only meaningful if the sources can load faster than realtime, for
+ * example from local files. All durations in the {@link Result} other than the elapsed realtime
+ * are measured in media time, so that they are comparable across speeds.
+ */
+public final class HeadlessPlayback {
+
+  /**
+   * The metrics of a playback.
+   */
+  public static final class Result {
+
+    /**
+     * The media position reached, in milliseconds.
+     */
+    public final long playedDurationMs;
+    /**
+     * The realtime taken by the playback, in milliseconds.
+     */
+    public final long elapsedRealtimeMs;
+    /**
+     * The media time from the start of the playback until the first sample was consumed, in
+     * milliseconds.
+     */
+    public final long startupDelayMs;
+    /**
+     * The number of times playback stalled after it had started.
+     */
+    public final int numRebuffering;
+    /**
+     * The total media time spent stalled, in milliseconds.
+     */
+    public final long durationRebufferingMs;
+    /**
+     * The number of times the media format of a source changed after its first format.
+     */
+    public final int formatChangeCount;
+    /**
+     * The number of samples consumed.
+     */
+    public final long sampleCount;
+    /**
+     * The total size of the samples consumed, in bytes.
+     */
+    public final long sampleBytes;
+
+    /* package */ Result(long playedDurationMs, long elapsedRealtimeMs, long startupDelayMs,
+        int numRebuffering, long durationRebufferingMs, int formatChangeCount, long sampleCount,
+        long sampleBytes) {
+      this.playedDurationMs = playedDurationMs;
+      this.elapsedRealtimeMs = elapsedRealtimeMs;
+      this.startupDelayMs = startupDelayMs;
+      this.numRebuffering = numRebuffering;
+      this.durationRebufferingMs = durationRebufferingMs;
+      this.formatChangeCount = formatChangeCount;
+      this.sampleCount = sampleCount;
+      this.sampleBytes = sampleBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "Result[" + playedDurationMs + ", " + elapsedRealtimeMs + ", " + startupDelayMs + ", "
+          + numRebuffering + ", " + durationRebufferingMs + ", " + formatChangeCount + ", "
+          + sampleCount + ", " + sampleBytes + "]";
+    }
+
+  }
+
+  /**
+   * Creates a {@link ChunkSampleSource} that plays the first track of the specified type of an
+   * on-demand DASH manifest. If the manifest has several video representations, the first track is
+   * adaptive and formats are selected by {@code formatEvaluator}.
+   *
+   * @param manifest The manifest.
+   * @param adaptationSetType The type of the adaptation set to play, as defined by
+   *     {@link AdaptationSet}.
+   * @param dataSource The source from which to load the media, for example a
+   *     {@link com.google.android.exoplayer.upstream.FileDataSource}.
+   * @param formatEvaluator Selects the formats to load.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of the source to the media buffer, in bytes.
+   * @param callbackQueue The queue on which the source receives the results of its loads. Must be
+   *     passed to the {@link HeadlessPlayback} that plays the source.
+   * @return The source.
+   */
+  public static SampleSource newDashSampleSource(MediaPresentationDescription manifest,
+      int adaptationSetType, DataSource dataSource, FormatEvaluator formatEvaluator,
+      LoadControl loadControl, int bufferSizeContribution, CallbackQueue callbackQueue) {
+    DefaultDashTrackSelector trackSelector;
+    if (adaptationSetType == AdaptationSet.TYPE_VIDEO) {
+      // Video representations are not filtered against a display, since there is none.
+      trackSelector = DefaultDashTrackSelector.newVideoInstance(null, true, false);
+    } else if (adaptationSetType == AdaptationSet.TYPE_AUDIO) {
+      trackSelector = DefaultDashTrackSelector.newAudioInstance();
+    } else {
+      trackSelector = DefaultDashTrackSelector.newTextInstance();
+    }
+    ChunkSource chunkSource = new DashChunkSource(manifest, trackSelector, dataSource,
+        formatEvaluator);
+    return new ChunkSampleSource(chunkSource, loadControl, bufferSizeContribution, null, null, 0,
+        ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT, null, 0, callbackQueue);
+  }
+
+  /**
+   * The default minimum duration of media that must be buffered before playback starts. Equal to
+   * {@link com.google.android.exoplayer.ExoPlayer.Factory#DEFAULT_MIN_BUFFER_MS}.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = 2500;
+  /**
+   * The default minimum duration of media that must be buffered before playback resumes after a
+   * stall. Equal to {@link com.google.android.exoplayer.ExoPlayer.Factory#DEFAULT_MIN_REBUFFER_MS}.
+   */
+  public static final int DEFAULT_MIN_REBUFFER_MS = 5000;
+
+  private static final int IDLE_INTERVAL_MS = 10;
+
+  private static final int STATE_PREPARING = 0;
+  private static final int STATE_BUFFERING = 1;
+  private static final int STATE_PLAYING = 2;
+
+  private final SampleSourceReader[] readers;
+  private final CallbackQueue callbackQueue;
+  private final SimulationClock clock;
+  private final ScaledMediaClock mediaClock;
+  private final long maxPositionUs;
+  private final long minBufferUs;
+  private final long minRebufferUs;
+  private final MediaFormatHolder formatHolder;
+  private final SampleHolder[] sampleHolders;
+  private final boolean[] pendingSamples;
+  private final boolean[] ended;
+  private final int[] formatCounts;
+
+  private boolean ran;
+  private int state;
+  private boolean started;
+  private long startTimeMs;
+  private long stallStartTimeMs;
+  private long startupDelayMs;
+  private int numRebuffering;
+  private long durationRebufferingMs;
+  private int formatChangeCount;
+  private long sampleCount;
+  private long sampleBytes;
+
+  /**
+   * @param sources The sources to play. The first track of each source is played.
+   * @param speed The speed of playback, as a multiple of realtime.
+   * @param maxDurationMs The media position at which to stop playback, if the sources have not
+   *     ended before then.
+   */
+  public HeadlessPlayback(SampleSource[] sources, double speed, long maxDurationMs) {
+    this(sources, null, speed, maxDurationMs);
+  }
+
+  /**
+   * @param sources The sources to play. The first track of each source is played.
+   * @param callbackQueue The queue on which the sources receive the results of their loads. May be
+   *     null if none of the sources uses one.
+   * @param speed The speed of playback, as a multiple of realtime.
+   * @param maxDurationMs The media position at which to stop playback, if the sources have not
+   *     ended before then.
+   */
+  public HeadlessPlayback(SampleSource[] sources, CallbackQueue callbackQueue, double speed,
+      long maxDurationMs) {
+    this(sources, callbackQueue, new SystemSimulationClock(), speed, maxDurationMs,
+        DEFAULT_MIN_BUFFER_MS, DEFAULT_MIN_REBUFFER_MS);
+  }
+
+  /**
+   * @param sources The sources to play. The first track of each source is played.
+   * @param clock The clock from which realtime is read, and on which the harness waits between
+   *     operations.
+   * @param speed The speed of playback, as a multiple of realtime.
+   * @param maxDurationMs The media position at which to stop playback, if the sources have not
+   *     ended before then.
+   * @param minBufferMs The media that must be buffered before playback starts, in milliseconds.
+   * @param minRebufferMs The media that must be buffered before playback resumes after a stall,
+   *     in milliseconds.
+   */
+  public HeadlessPlayback(SampleSource[] sources, SimulationClock clock, double speed,
+      long maxDurationMs, long minBufferMs, long minRebufferMs) {
+    this(sources, null, clock, speed, maxDurationMs, minBufferMs, minRebufferMs);
+  }
+
+  /**
+   * @param sources The sources to play. The first track of each source is played.
+   * @param callbackQueue The queue on which the sources receive the results of their loads. May be
+   *     null if none of the sources uses one.
+   * @param clock The clock from which realtime is read, and on which the harness waits between
+   *     operations.
+   * @param speed The speed of playback, as a multiple of realtime.
+   * @param maxDurationMs The media position at which to stop playback, if the sources have not
+   *     ended before then.
+   * @param minBufferMs The media that must be buffered before playback starts, in milliseconds.
+   * @param minRebufferMs The media that must be buffered before playback resumes after a stall,
+   *     in milliseconds.
+   */
+  public HeadlessPlayback(SampleSource[] sources, CallbackQueue callbackQueue,
+      SimulationClock clock, double speed, long maxDurationMs, long minBufferMs,
+      long minRebufferMs) {
+    Assertions.checkArgument(sources.length > 0 && speed > 0);
+    readers = new SampleSourceReader[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      readers[i] = sources[i].register();
+    }
+    this.callbackQueue = callbackQueue;
+    this.clock = clock;
+    this.mediaClock = new ScaledMediaClock(clock, speed);
+    this.maxPositionUs = maxDurationMs * 1000;
+    this.minBufferUs = minBufferMs * 1000;
+    this.minRebufferUs = minRebufferMs * 1000;
+    formatHolder = new MediaFormatHolder();
+    sampleHolders = new SampleHolder[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      sampleHolders[i] = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    }
+    pendingSamples = new boolean[sources.length];
+    ended = new boolean[sources.length];
+    formatCounts = new int[sources.length];
+  }
+
+  /**
+   * Plays the sources until they end or the maximum duration is reached, on the calling thread.
+   * May only be called once.
+   *
+   * @return The metrics of the playback.
+   * @throws IOException If a source failed to load.
+   * @throws InterruptedException If the calling thread was interrupted.
+   */
+  public Result run() throws IOException, InterruptedException {
+    Assertions.checkState(!ran);
+    ran = true;
+    startTimeMs = clock.elapsedRealtime();
+    try {
+      while (true) {
+        long operationStartTimeMs = clock.elapsedRealtime();
+        if (doSomeWork(operationStartTimeMs)) {
+          return buildResult();
+        }
+        long nextOperationDelayMs = operationStartTimeMs + IDLE_INTERVAL_MS
+            - clock.elapsedRealtime();
+        if (nextOperationDelayMs > 0) {
+          clock.sleep(nextOperationDelayMs);
+        }
+      }
+    } catch (RuntimeException e) {
+      throw new IOException(e);
+    } finally {
+      for (SampleSourceReader reader : readers) {
+        if (state != STATE_PREPARING) {
+          reader.disable(0);
+        }
+        reader.release();
+      }
+    }
+  }
+
+  /**
+   * Performs one operation.
+   *
+   * @param operationStartTimeMs The realtime at which the operation started.
+   * @return Whether playback has finished.
+   */
+  private boolean doSomeWork(long operationStartTimeMs) throws IOException {
+    if (callbackQueue != null) {
+      callbackQueue.runPendingTasks();
+    }
+    if (state == STATE_PREPARING) {
+      boolean prepared = true;
+      for (SampleSourceReader reader : readers) {
+        if (!reader.prepare(0)) {
+          reader.maybeThrowError();
+          prepared = false;
+        }
+      }
+      if (!prepared) {
+        return false;
+      }
+      for (SampleSourceReader reader : readers) {
+        reader.enable(0, 0);
+      }
+      state = STATE_BUFFERING;
+    }
+
+    long positionUs = mediaClock.getPositionUs();
+    boolean allEnded = true;
+    boolean starved = false;
+    boolean allBuffered = true;
+    long requiredBufferUs = started ? minRebufferUs : minBufferUs;
+    for (int i = 0; i < readers.length; i++) {
+      SampleSourceReader reader = readers[i];
+      reader.continueBuffering(0, positionUs);
+      reader.maybeThrowError();
+      reader.readDiscontinuity(0);
+      consumeSamples(i, positionUs);
+      if (ended[i]) {
+        continue;
+      }
+      allEnded = false;
+      starved |= !pendingSamples[i];
+      long bufferedPositionUs = reader.getBufferedPositionUs();
+      if (bufferedPositionUs != TrackRenderer.END_OF_TRACK_US
+          && bufferedPositionUs < Math.min(positionUs + requiredBufferUs, maxPositionUs)) {
+        allBuffered = false;
+      }
+    }
+
+    if (allEnded || positionUs >= maxPositionUs) {
+      return true;
+    }
+    if (state == STATE_PLAYING && starved) {
+      mediaClock.stop();
+      state = STATE_BUFFERING;
+      numRebuffering++;
+      stallStartTimeMs = operationStartTimeMs;
+    } else if (state == STATE_BUFFERING && allBuffered) {
+      if (started) {
+        durationRebufferingMs += mediaClock.scaleDurationMs(
+            operationStartTimeMs - stallStartTimeMs);
+      } else {
+        startupDelayMs = mediaClock.scaleDurationMs(operationStartTimeMs - startTimeMs);
+        started = true;
+      }
+      mediaClock.start();
+      state = STATE_PLAYING;
+    }
+    return false;
+  }
+
+  /**
+   * Consumes the samples of a source up to the specified position. The first sample after the
+   * position is read and held, as a renderer would hold it until its presentation time.
+   */
+  private void consumeSamples(int index, long positionUs) {
+    SampleHolder sampleHolder = sampleHolders[index];
+    while (true) {
+      if (pendingSamples[index]) {
+        if (sampleHolder.timeUs > positionUs) {
+          return;
+        }
+        sampleCount++;
+        sampleBytes += sampleHolder.size;
+        pendingSamples[index] = false;
+      }
+      sampleHolder.clearData();
+      int result = readers[index].readData(0, positionUs, formatHolder, sampleHolder);
+      if (result == SampleSource.SAMPLE_READ) {
+        pendingSamples[index] = true;
+      } else if (result == SampleSource.FORMAT_READ) {
+        if (formatCounts[index]++ > 0) {
+          formatChangeCount++;
+        }
+      } else {
+        ended[index] = result == SampleSource.END_OF_STREAM;
+        return;
+      }
+    }
+  }
+
+  private Result buildResult() {
+    long elapsedRealtimeMs = clock.elapsedRealtime() - startTimeMs;
+    mediaClock.stop();
+    if (state == STATE_BUFFERING && started) {
+      durationRebufferingMs += mediaClock.scaleDurationMs(
+          clock.elapsedRealtime() - stallStartTimeMs);
+    }
+    return new Result(Math.min(mediaClock.getPositionUs(), maxPositionUs) / 1000,
+        elapsedRealtimeMs, startupDelayMs, numRebuffering, durationRebufferingMs,
+        formatChangeCount, sampleCount, sampleBytes);
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.MediaClock;
+import com.google.android.exoplayer.util.Clock;
+
+/**
+ * A {@link MediaClock} whose position advances at a fixed multiple of the rate of an underlying
+ * {@link Clock}, so that playback can be run faster than realtime.
+ */
+public final class ScaledMediaClock implements MediaClock {
+
+  private final Clock clock;
+  private final double speed;
+
+  private boolean started;
+  private long positionUs;
+  private long startTimeMs;
+
+  /**
+   * @param clock The clock from which elapsed time is read.
+   * @param speed The number of microseconds of media time that elapse per microsecond of time
+   *     elapsed on {@code clock}.
+   */
+  public ScaledMediaClock(Clock clock, double speed) {
+    this.clock = clock;
+    this.speed = speed;
+  }
+
+  /**
+   * Starts the clock. Does nothing if the clock is already started.
+   */
+  public void start() {
+    if (!started) {
+      started = true;
+      startTimeMs = clock.elapsedRealtime();
+    }
+  }
+
+  /**
+   * Stops the clock. Does nothing if the clock is already stopped.
+   */
+  public void stop() {
+    if (started) {
+      positionUs = getPositionUs();
+      started = false;
+    }
+  }
+
+  /**
+   * @param timeUs The position to set in microseconds.
+   */
+  public void setPositionUs(long timeUs) {
+    positionUs = timeUs;
+    startTimeMs = clock.elapsedRealtime();
+  }
+
+  /**
+   * Converts a duration measured on the underlying clock into media time.
+   *
+   * @param durationMs The duration on the underlying clock, in milliseconds.
+   * @return The equivalent duration of media time, in milliseconds.
+   */
+  public long scaleDurationMs(long durationMs) {
+    return (long) (durationMs * speed);
+  }
+
+  @Override
+  public long getPositionUs() {
+    return started ? positionUs + (long) ((clock.elapsedRealtime() - startTimeMs) * 1000 * speed)
+        : positionUs;
+  }
+
+}
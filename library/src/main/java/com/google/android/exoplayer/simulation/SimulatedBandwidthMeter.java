@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.upstream.BandwidthEstimator;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.upstream.SlidingPercentileBandwidthEstimator;
+
+/**
+ * A {@link BandwidthMeter} driven by simulated transfers rather than by a real data source.
+ * <p>
+ * Estimates are derived by a {@link BandwidthEstimator}, which defaults to the same estimator as
+ * {@link DefaultBandwidthMeter}, so that evaluators observe the same estimates as they would during
+ * playback.
+ */
+public final class SimulatedBandwidthMeter implements BandwidthMeter {
+
+  private final BandwidthEstimator bandwidthEstimator;
+
+  public SimulatedBandwidthMeter() {
+    this(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT);
+  }
+
+  /**
+   * @param maxWeight The maximum weight of the samples retained by the estimate.
+   */
+  public SimulatedBandwidthMeter(int maxWeight) {
+    this(new SlidingPercentileBandwidthEstimator(maxWeight));
+  }
+
+  /**
+   * @param bandwidthEstimator Derives estimates from the simulated transfers.
+   */
+  public SimulatedBandwidthMeter(BandwidthEstimator bandwidthEstimator) {
+    this.bandwidthEstimator = bandwidthEstimator;
+  }
+
+  /**
+   * Adds a sample for a completed transfer.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param elapsedMs The duration of the transfer, in milliseconds.
+   */
+  public void addSample(long bytes, long elapsedMs) {
+    if (elapsedMs <= 0) {
+      return;
+    }
+    bandwidthEstimator.addSample(bytes, elapsedMs);
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return bandwidthEstimator.getBitrateEstimate();
+  }
+
+  @Override
+  public void onTransferStart() {
+    // Do nothing. Transfers are reported through addSample.
+  }
+
+  @Override
+  public void onBytesTransferred(int bytesTransferred) {
+    // Do nothing. Transfers are reported through addSample.
+  }
+
+  @Override
+  public void onTransferEnd() {
+    // Do nothing. Transfers are reported through addSample.
+  }
+
+}
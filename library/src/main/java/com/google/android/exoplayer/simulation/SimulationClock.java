@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+import com.google.android.exoplayer.util.Clock;
+
+/**
+ * A {@link Clock} that a simulation also waits on, so that it can be run against realtime or
+ * against a virtual clock that advances whenever it is waited on.
+ */
+public interface SimulationClock extends Clock {
+
+  /**
+   * Waits for time to elapse on the clock.
+   *
+   * @param durationMs The duration to wait, in milliseconds.
+   * @throws InterruptedException If the calling thread was interrupted.
+   */
+  void sleep(long durationMs) throws InterruptedException;
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+/**
+ * The quality of experience metrics of a simulated session. The metrics are defined as for the
+ * scores computed at the end of a playback session in the demo application.
+ */
+public final class SimulationResult {
+
+  /**
+   * The number of segments requested.
+   */
+  public final int segmentCount;
+  /**
+   * The mean bitrate of the requested segments, in kilobits per second.
+   */
+  public final double avgBitrate;
+  /**
+   * The sample variance of the bitrates of the requested segments, in kilobits per second squared.
+   */
+  public final double varBitrate;
+  /**
+   * The number of times consecutive segments were requested in different formats.
+   */
+  public final int numSwitching;
+  /**
+   * The sum over all switches of the number of ladder steps switched.
+   */
+  public final int magSwitching;
+  /**
+   * The number of times playback stalled after it had started.
+   */
+  public final int numRebuffering;
+  /**
+   * The total duration of the stalls, in milliseconds.
+   */
+  public final long durationRebufferingMs;
+  /**
+   * The time from the start of the session until playback started, in milliseconds.
+   */
+  public final long startupDelayMs;
+
+  /* package */ SimulationResult(int segmentCount, double avgBitrate, double varBitrate,
+      int numSwitching, int magSwitching, int numRebuffering, long durationRebufferingMs,
+      long startupDelayMs) {
+    this.segmentCount = segmentCount;
+    this.avgBitrate = avgBitrate;
+    this.varBitrate = varBitrate;
+    this.numSwitching = numSwitching;
+    this.magSwitching = magSwitching;
+    this.numRebuffering = numRebuffering;
+    this.durationRebufferingMs = durationRebufferingMs;
+    this.startupDelayMs = startupDelayMs;
+  }
+
+  @Override
+  public String toString() {
+    return "SimulationResult[" + segmentCount + ", " + avgBitrate + ", " + varBitrate + ", "
+        + numSwitching + ", " + magSwitching + ", " + numRebuffering + ", "
+        + durationRebufferingMs + ", " + startupDelayMs + "]";
+  }
+
+}
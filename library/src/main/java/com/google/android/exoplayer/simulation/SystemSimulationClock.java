@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.simulation;
+
+/**
+ * A {@link SimulationClock} that reads and waits on realtime. Unlike
+ * {@link com.google.android.exoplayer.util.SystemClock}, it does not call into the platform, so it
+ * can be used on any JVM.
+ */
+public final class SystemSimulationClock implements SimulationClock {
+
+  @Override
+  public long elapsedRealtime() {
+    return System.nanoTime() / 1000000;
+  }
+
+  @Override
+  public void sleep(long durationMs) throws InterruptedException {
+    Thread.sleep(durationMs);
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * Derives a bandwidth estimate from the transfers observed by a {@link BandwidthMeter}.
+ * <p>
+ * Implementations are called on the thread that completes each transfer, and should neither block
+ * nor allocate when a sample is added.
+ */
+public interface BandwidthEstimator {
+
+  /**
+   * Adds a sample for a completed transfer.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param elapsedMs The duration of the transfer, in milliseconds. Always greater than zero.
+   */
+  void addSample(long bytes, long elapsedMs);
+
+  /**
+   * Gets the estimated bandwidth, in bits/sec.
+   *
+   * @return Estimated bandwidth in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE} if no estimate
+   *     is available.
+   */
+  long getBitrateEstimate();
+
+}
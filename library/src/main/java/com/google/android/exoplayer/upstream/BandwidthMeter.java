@@ -36,7 +36,17 @@ public interface BandwidthMeter extends TransferListener {
      */
     void onBandwidthSample(int elapsedMs, long bytes, long bitrate, float bitsPerSecond);
 
-    void onBytesTransferred(int elapsedMs, long bytes);
+    /**
+     * Invoked periodically to report the reads made by a transfer. Consecutive reads are coalesced
+     * into a single event, to avoid posting an event for every read.
+     *
+     * @param readCount The number of reads coalesced into the event.
+     * @param bytes The total number of bytes read.
+     * @param firstReadTimeMs The {@link android.os.SystemClock#elapsedRealtime()} of the first
+     *     read.
+     * @param lastReadTimeMs The {@link android.os.SystemClock#elapsedRealtime()} of the last read.
+     */
+    void onBytesTransferred(int readCount, long bytes, long firstReadTimeMs, long lastReadTimeMs);
   }
 
   /**
@@ -40,6 +40,16 @@ public final class DataSpec {
    */
   public static final int FLAG_ALLOW_GZIP = 1;
 
+  /**
+   * Permits the data to be held in an in-memory cache tier, such as
+   * {@link com.google.android.exoplayer.upstream.cache.MemoryCacheDataSource}.
+   * <p>
+   * Should be set only for small requests whose data is likely to be requested again, such as
+   * manifests and initialization data. {@link DataSource}s that do not cache data in memory ignore
+   * this flag.
+   */
+  public static final int FLAG_CACHE_IN_MEMORY = 2;
+
   /**
    * Identifies the source from which data should be read.
    */
@@ -69,7 +79,8 @@ public final class DataSpec {
    */
   public final String key;
   /**
-   * Request flags. Currently {@link #FLAG_ALLOW_GZIP} is the only supported flag.
+   * Request flags. Values {@link #FLAG_ALLOW_GZIP} and {@link #FLAG_CACHE_IN_MEMORY} are
+   * supported.
    */
   public final int flags;
 
@@ -15,35 +15,56 @@
  */
 package com.google.android.exoplayer.upstream;
 
-import com.google.android.exoplayer.ByteLog;
 import com.google.android.exoplayer.NewLogger;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Clock;
-import com.google.android.exoplayer.util.SlidingPercentile;
 import com.google.android.exoplayer.util.SystemClock;
 
 import android.os.Handler;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Counts transferred bytes while transfers are open and creates a bandwidth sample and updated
- * bandwidth estimate each time a transfer ends.
+ * bandwidth estimate each time a transfer ends. Estimates are derived from the samples by a
+ * {@link BandwidthEstimator}, which defaults to a {@link SlidingPercentileBandwidthEstimator}.
+ * <p>
+ * Transfers may overlap, for example when audio and video are loaded from separate data sources.
+ * Each sample then measures the throughput of the link rather than of a single transfer: it covers
+ * the bytes of all transfers since the previous sample, over the time for which at least one
+ * transfer was open. Bytes are also counted for each transfer individually, so that the progress
+ * reported to the {@link EventListener} is not skewed by other transfers.
+ * <p>
+ * Reads are reported to the {@link EventListener} in batches, each of which is delivered once it
+ * spans {@code maxBatchIntervalMs} or holds {@code maxBatchBytes}, or when its transfer ends. This
+ * avoids posting an event to the listener's thread for every read.
+ * <p>
+ * The callbacks of a transfer are expected to be made on a single thread, as is the case for the
+ * loaders that drive data sources. Byte counts are updated without locking, so that transfers on
+ * different threads do not contend with each other on every read.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter {
 
   public static final int DEFAULT_MAX_WEIGHT = 2000;
+  public static final int DEFAULT_MAX_BATCH_INTERVAL_MS = 100;
+  public static final long DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+  private static final String TAG = "DefaultBandwidthMeter";
 
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final Clock clock;
-  private final SlidingPercentile slidingPercentile;
-  private final SlidingPercentile perPacketSlidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
+  private final int maxBatchIntervalMs;
+  private final long maxBatchBytes;
+  private final ThreadLocal<Transfer> transfers;
+  private final AtomicLong linkBytes;
 
-  private long bytesAccumulator;
-  private long startTimeMs;
+  private long sampleStartTimeMs;
   private long bitrateEstimate;
   private int streamCount;
-  private int byteCount;
+
   public DefaultBandwidthMeter() {
     this(null, null);
   }
@@ -62,11 +83,45 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
 
   public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
       int maxWeight) {
+    this(eventHandler, eventListener, clock, new SlidingPercentileBandwidthEstimator(maxWeight));
+  }
+
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      BandwidthEstimator bandwidthEstimator) {
+    this(eventHandler, eventListener, new SystemClock(), bandwidthEstimator);
+  }
+
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+      BandwidthEstimator bandwidthEstimator) {
+    this(eventHandler, eventListener, clock, bandwidthEstimator, DEFAULT_MAX_BATCH_INTERVAL_MS,
+        DEFAULT_MAX_BATCH_BYTES);
+  }
+
+  /**
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param clock The clock used to time transfers.
+   * @param bandwidthEstimator Derives estimates from the bandwidth samples.
+   * @param maxBatchIntervalMs The maximum time spanned by a batch of reads reported to the
+   *     listener. Zero reports every read individually.
+   * @param maxBatchBytes The maximum number of bytes in a batch of reads reported to the listener.
+   *     Zero reports every read individually.
+   */
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+      BandwidthEstimator bandwidthEstimator, int maxBatchIntervalMs, long maxBatchBytes) {
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.clock = clock;
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
-    this.perPacketSlidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthEstimator = bandwidthEstimator;
+    this.maxBatchIntervalMs = maxBatchIntervalMs;
+    this.maxBatchBytes = maxBatchBytes;
+    transfers = new ThreadLocal<Transfer>() {
+      @Override
+      protected Transfer initialValue() {
+        return new Transfer();
+      }
+    };
+    linkBytes = new AtomicLong();
     bitrateEstimate = NO_ESTIMATE;
   }
 
@@ -76,53 +131,80 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
   }
 
   @Override
-  public synchronized void onTransferStart() {
-    if (streamCount == 0) {
-      startTimeMs = clock.elapsedRealtime();
+  public void onTransferStart() {
+    long nowMs = clock.elapsedRealtime();
+    transfers.get().start();
+    synchronized (this) {
+      if (streamCount == 0) {
+        sampleStartTimeMs = nowMs;
+      }
+      streamCount++;
     }
-    streamCount++;
-    byteCount = 0;
   }
 
   @Override
   public void onBytesTransferred(int bytes) {
-    byteCount++;
     long nowMs = clock.elapsedRealtime();
-    int elapsedMs = (int) (nowMs - startTimeMs);
+    Transfer transfer = transfers.get();
+    transfer.bytes += bytes;
+    transfer.readCount++;
+    linkBytes.addAndGet(bytes);
     NewLogger.addBytesLog(bytes, nowMs);
-    notifyBytesTransferred(elapsedMs,bytes);
-    bytesAccumulator += bytes;
+    if (eventHandler != null && eventListener != null) {
+      if (transfer.batchReadCount == 0) {
+        transfer.batchFirstReadTimeMs = nowMs;
+      }
+      transfer.batchReadCount++;
+      transfer.batchBytes += bytes;
+      transfer.batchLastReadTimeMs = nowMs;
+      if (transfer.batchBytes >= maxBatchBytes
+          || nowMs - transfer.batchFirstReadTimeMs >= maxBatchIntervalMs) {
+        flushBatch(transfer);
+      }
+    }
   }
 
   @Override
-  public synchronized void onTransferEnd() {
-    Assertions.checkState(streamCount > 0);
-    long nowMs = clock.elapsedRealtime();
-    int elapsedMs = (int) (nowMs - startTimeMs);
-    if (elapsedMs > 0) {
-      float bitsPerSecond = (bytesAccumulator * 8000) / elapsedMs;
-      slidingPercentile.addSample((int) Math.sqrt(bytesAccumulator), bitsPerSecond);
-      float bandwidthEstimateFloat = slidingPercentile.getPercentile(0.5f);
-      //if(Configure.BT_ON)
-      bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? NO_ESTIMATE
-          : (long) bandwidthEstimateFloat;
-      notifyBandwidthSample(elapsedMs, bytesAccumulator, bitrateEstimate , bitsPerSecond);
-      //notifyBytesTransferred(elapsedMs, bytesAccumulator);
-      Log.d("LLEEJ BYTE DEBUG", "onTransferEnd : "+"streamCount " + streamCount +" streams , ByteCount = " + byteCount);
+  public void onTransferEnd() {
+    Transfer transfer = transfers.get();
+    if (transfer.batchReadCount > 0) {
+      flushBatch(transfer);
     }
-    streamCount--;
-    if (streamCount > 0) {
-      startTimeMs = nowMs;
+    Log.d(TAG, "onTransferEnd: " + transfer.bytes + " bytes in " + transfer.readCount + " reads");
+    synchronized (this) {
+      Assertions.checkState(streamCount > 0);
+      long nowMs = clock.elapsedRealtime();
+      int elapsedMs = (int) (nowMs - sampleStartTimeMs);
+      streamCount--;
+      if (elapsedMs > 0) {
+        long bytes = linkBytes.getAndSet(0);
+        float bitsPerSecond = (bytes * 8000) / elapsedMs;
+        bandwidthEstimator.addSample(bytes, elapsedMs);
+        bitrateEstimate = bandwidthEstimator.getBitrateEstimate();
+        notifyBandwidthSample(elapsedMs, bytes, bitrateEstimate, bitsPerSecond);
+        sampleStartTimeMs = nowMs;
+      } else if (streamCount == 0) {
+        // The bytes cannot be attributed to a measurable interval.
+        linkBytes.set(0);
+      }
+      // Else the bytes are merged into the next sample of the ongoing transfers.
     }
-    bytesAccumulator = 0;
   }
 
-  private void notifyBytesTransferred(final int elapsedMs, final long bytes) {
+  private void flushBatch(Transfer transfer) {
+    notifyBytesTransferred(transfer.batchReadCount, transfer.batchBytes,
+        transfer.batchFirstReadTimeMs, transfer.batchLastReadTimeMs);
+    transfer.batchReadCount = 0;
+    transfer.batchBytes = 0;
+  }
+
+  private void notifyBytesTransferred(final int readCount, final long bytes,
+      final long firstReadTimeMs, final long lastReadTimeMs) {
     if (eventHandler != null && eventListener != null) {
       eventHandler.post(new Runnable()  {
         @Override
         public void run() {
-          eventListener.onBytesTransferred(elapsedMs, bytes);
+          eventListener.onBytesTransferred(readCount, bytes, firstReadTimeMs, lastReadTimeMs);
         }
       });
     }
@@ -139,4 +221,27 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
     }
   }
 
+  /**
+   * The state of a transfer, which is only accessed from the thread making the transfer.
+   */
+  private static final class Transfer {
+
+    public long bytes;
+    public int readCount;
+
+    // The reads not yet reported to the listener.
+    public int batchReadCount;
+    public long batchBytes;
+    public long batchFirstReadTimeMs;
+    public long batchLastReadTimeMs;
+
+    public void start() {
+      bytes = 0;
+      readCount = 0;
+      batchReadCount = 0;
+      batchBytes = 0;
+    }
+
+  }
+
 }
@@ -455,8 +455,21 @@ public class DefaultHttpDataSource implements HttpDataSource {
    * @return The extracted length, or {@link C#LENGTH_UNBOUNDED}.
    */
   private static long getContentLength(HttpURLConnection connection) {
+    return getContentLength(connection.getHeaderField("Content-Length"),
+        connection.getHeaderField("Content-Range"));
+  }
+
+  /**
+   * Attempts to extract the length of the content from the values of the Content-Length and
+   * Content-Range response headers.
+   *
+   * @param contentLengthHeader The value of the Content-Length header, or null.
+   * @param contentRangeHeader The value of the Content-Range header, or null.
+   * @return The extracted length, or {@link C#LENGTH_UNBOUNDED}.
+   */
+  /* package */ static long getContentLength(String contentLengthHeader,
+      String contentRangeHeader) {
     long contentLength = C.LENGTH_UNBOUNDED;
-    String contentLengthHeader = connection.getHeaderField("Content-Length");
     if (!TextUtils.isEmpty(contentLengthHeader)) {
       try {
         contentLength = Long.parseLong(contentLengthHeader);
@@ -464,7 +477,6 @@ public class DefaultHttpDataSource implements HttpDataSource {
         Log.e(TAG, "Unexpected Content-Length [" + contentLengthHeader + "]");
       }
     }
-    String contentRangeHeader = connection.getHeaderField("Content-Range");
     if (!TextUtils.isEmpty(contentRangeHeader)) {
       Matcher matcher = CONTENT_RANGE_HEADER.matcher(contentRangeHeader);
       if (matcher.find()) {
@@ -33,8 +33,10 @@ import java.io.IOException;
  * <li>asset: For fetching data from an asset in the application's apk (e.g. asset:///media.mp4).
  * <li>content: For fetching data from a content URI (e.g. content://authority/path/123).
  * </ul>
+ * Predicted requests are forwarded to the source used for remote data, if it is a
+ * {@link PrefetchingDataSource}.
  */
-public final class DefaultUriDataSource implements UriDataSource {
+public final class DefaultUriDataSource implements UriDataSource, PrefetchingDataSource {
 
   private static final String SCHEME_ASSET = "asset";
   private static final String SCHEME_CONTENT = "content";
@@ -140,6 +142,13 @@ public final class DefaultUriDataSource implements UriDataSource {
     return dataSource.read(buffer, offset, readLength);
   }
 
+  @Override
+  public void setPredictedDataSpecs(DataSpec... dataSpecs) {
+    if (httpDataSource instanceof PrefetchingDataSource) {
+      ((PrefetchingDataSource) httpDataSource).setPredictedDataSpecs(dataSpecs);
+    }
+  }
+
   @Override
   public String getUri() {
     return dataSource == null ? null : dataSource.getUri();
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * Estimates bandwidth as the lower of a fast and a slow exponentially weighted moving average of
+ * transfer rates. Each sample is weighted by the duration of its transfer, so the averages decay
+ * with elapsed transfer time rather than with the number of transfers. Taking the lower average
+ * makes the estimate quick to fall when throughput drops, and slow to rise when it recovers.
+ * <p>
+ * Both averages start at zero, and are divided by the total weight they have accumulated so far to
+ * remove the bias towards zero that this would otherwise introduce.
+ */
+public final class DualEwmaBandwidthEstimator implements BandwidthEstimator {
+
+  public static final double DEFAULT_FAST_HALF_LIFE_S = 2;
+  public static final double DEFAULT_SLOW_HALF_LIFE_S = 5;
+  /**
+   * Transfers smaller than this are dominated by latency rather than by throughput, and are
+   * ignored.
+   */
+  public static final long DEFAULT_MIN_BYTES = 16 * 1024;
+
+  private final Ewma fast;
+  private final Ewma slow;
+  private final long minBytes;
+
+  public DualEwmaBandwidthEstimator() {
+    this(DEFAULT_FAST_HALF_LIFE_S, DEFAULT_SLOW_HALF_LIFE_S, DEFAULT_MIN_BYTES);
+  }
+
+  /**
+   * @param fastHalfLifeS The half life of the fast average, in seconds of transfer time.
+   * @param slowHalfLifeS The half life of the slow average, in seconds of transfer time.
+   * @param minBytes Transfers smaller than this number of bytes are ignored.
+   */
+  public DualEwmaBandwidthEstimator(double fastHalfLifeS, double slowHalfLifeS, long minBytes) {
+    fast = new Ewma(fastHalfLifeS);
+    slow = new Ewma(slowHalfLifeS);
+    this.minBytes = minBytes;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    if (bytes < minBytes) {
+      return;
+    }
+    double bitsPerSecond = (bytes * 8000d) / elapsedMs;
+    double weightS = elapsedMs / 1000d;
+    fast.addSample(weightS, bitsPerSecond);
+    slow.addSample(weightS, bitsPerSecond);
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    if (fast.totalWeight == 0) {
+      return BandwidthMeter.NO_ESTIMATE;
+    }
+    return (long) Math.min(fast.getEstimate(), slow.getEstimate());
+  }
+
+  private static final class Ewma {
+
+    private final double alpha;
+
+    private double estimate;
+    private double totalWeight;
+
+    public Ewma(double halfLifeS) {
+      alpha = Math.exp(Math.log(0.5) / halfLifeS);
+    }
+
+    public void addSample(double weight, double value) {
+      double adjustedAlpha = Math.pow(alpha, weight);
+      estimate = adjustedAlpha * estimate + (1 - adjustedAlpha) * value;
+      totalWeight += weight;
+    }
+
+    public double getEstimate() {
+      return estimate / (1 - Math.pow(alpha, totalWeight));
+    }
+
+  }
+
+}
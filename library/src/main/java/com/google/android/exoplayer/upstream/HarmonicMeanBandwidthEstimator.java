@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+
+/**
+ * Estimates bandwidth as the harmonic mean of the transfer rates of the most recent transfers. The
+ * harmonic mean is dominated by the lowest rates in the window, so a single unusually fast
+ * transfer does little to raise the estimate.
+ */
+public final class HarmonicMeanBandwidthEstimator implements BandwidthEstimator {
+
+  public static final int DEFAULT_WINDOW_SIZE = 5;
+
+  private final double[] reciprocalRates;
+
+  private int sampleCount;
+  private int nextIndex;
+  private long bitrateEstimate;
+
+  public HarmonicMeanBandwidthEstimator() {
+    this(DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param windowSize The number of most recent transfers over which to average.
+   */
+  public HarmonicMeanBandwidthEstimator(int windowSize) {
+    Assertions.checkArgument(windowSize > 0);
+    reciprocalRates = new double[windowSize];
+    bitrateEstimate = BandwidthMeter.NO_ESTIMATE;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    if (bytes <= 0) {
+      // A zero rate would pull the harmonic mean to zero for the lifetime of the window.
+      return;
+    }
+    reciprocalRates[nextIndex] = elapsedMs / (bytes * 8000d);
+    nextIndex = (nextIndex + 1) % reciprocalRates.length;
+    sampleCount = Math.min(sampleCount + 1, reciprocalRates.length);
+    // Summed in full each time, since the window is small and a running sum would drift.
+    double reciprocalSum = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      reciprocalSum += reciprocalRates[i];
+    }
+    bitrateEstimate = (long) (sampleCount / reciprocalSum);
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * Estimates bandwidth with a scalar Kalman filter, which treats the available bandwidth as a
+ * random walk and each transfer rate as a noisy measurement of it.
+ * <p>
+ * The variance of the random walk grows with elapsed transfer time, so the filter follows the
+ * measurements more closely after long transfers than after short ones. Noise levels are expressed
+ * as standard deviations in bits per second.
+ */
+public final class KalmanBandwidthEstimator implements BandwidthEstimator {
+
+  /**
+   * The default standard deviation of the change in bandwidth over one second of transfer time.
+   */
+  public static final double DEFAULT_PROCESS_NOISE_BPS = 500000;
+  /**
+   * The default standard deviation of a single transfer rate measurement.
+   */
+  public static final double DEFAULT_MEASUREMENT_NOISE_BPS = 1000000;
+
+  private final double processVariancePerSecond;
+  private final double measurementVariance;
+
+  private boolean hasEstimate;
+  private double estimate;
+  private double estimateVariance;
+
+  public KalmanBandwidthEstimator() {
+    this(DEFAULT_PROCESS_NOISE_BPS, DEFAULT_MEASUREMENT_NOISE_BPS);
+  }
+
+  /**
+   * @param processNoiseBps The standard deviation of the change in bandwidth over one second of
+   *     transfer time, in bits per second.
+   * @param measurementNoiseBps The standard deviation of a single transfer rate measurement, in
+   *     bits per second.
+   */
+  public KalmanBandwidthEstimator(double processNoiseBps, double measurementNoiseBps) {
+    processVariancePerSecond = processNoiseBps * processNoiseBps;
+    measurementVariance = measurementNoiseBps * measurementNoiseBps;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    double bitsPerSecond = (bytes * 8000d) / elapsedMs;
+    if (!hasEstimate) {
+      hasEstimate = true;
+      estimate = bitsPerSecond;
+      estimateVariance = measurementVariance;
+      return;
+    }
+    // Predict.
+    estimateVariance += processVariancePerSecond * (elapsedMs / 1000d);
+    // Update.
+    double gain = estimateVariance / (estimateVariance + measurementVariance);
+    estimate += gain * (bitsPerSecond - estimate);
+    estimateVariance *= 1 - gain;
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return hasEstimate ? (long) estimate : BandwidthMeter.NO_ESTIMATE;
+  }
+
+}
@@ -19,13 +19,12 @@ import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.TraceUtil;
 import com.google.android.exoplayer.util.Util;
 
-import android.annotation.SuppressLint;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 import android.util.Log;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -104,6 +103,9 @@ public final class Loader {
   private static final int MSG_FATAL_ERROR = 2;
 
   private final ExecutorService downloadExecutorService;
+  private final LoaderScheduler scheduler;
+  private final int priority;
+  private final Executor callbackExecutor;
 
   private LoadTask currentTask;
   private boolean loading;
@@ -112,18 +114,73 @@ public final class Loader {
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this(Util.newSingleThreadExecutor(threadName), null, 0, null);
   }
 
   /**
-   * Invokes {@link #startLoading(Looper, Loadable, Callback)}, using the {@link Looper}
-   * associated with the calling thread.
+   * Constructs a loader whose loads run on a shared {@link LoaderScheduler}.
+   *
+   * @param scheduler The scheduler on which to run loads.
+   * @param priority The priority of the loader's loads. See {@link LoaderScheduler}.
+   */
+  public Loader(LoaderScheduler scheduler, int priority) {
+    this(null, Assertions.checkNotNull(scheduler), priority, null);
+  }
+
+  private Loader(ExecutorService downloadExecutorService, LoaderScheduler scheduler, int priority,
+      Executor callbackExecutor) {
+    this.downloadExecutorService = downloadExecutorService;
+    this.scheduler = scheduler;
+    this.priority = priority;
+    this.callbackExecutor = callbackExecutor;
+  }
+
+  /**
+   * Constructs a loader whose loads run on {@code scheduler} if it is non-null, or on a thread of
+   * its own otherwise.
+   *
+   * @param threadName A name for the loader's thread, if it has one.
+   * @param scheduler The scheduler on which to run loads. May be null.
+   * @param priority The priority of the loader's loads, if they run on {@code scheduler}.
+   * @return The loader.
+   */
+  public static Loader newInstance(String threadName, LoaderScheduler scheduler, int priority) {
+    return newInstance(threadName, scheduler, priority, null);
+  }
+
+  /**
+   * Constructs a loader whose loads run on {@code scheduler} if it is non-null, or on a thread of
+   * its own otherwise, and which by default invokes its callbacks on {@code callbackExecutor}.
+   *
+   * @param threadName A name for the loader's thread, if it has one.
+   * @param scheduler The scheduler on which to run loads. May be null.
+   * @param priority The priority of the loader's loads, if they run on {@code scheduler}.
+   * @param callbackExecutor The executor used by {@link #startLoading(Loadable, Callback)} to
+   *     invoke callbacks. May be null, in which case callbacks are invoked on the {@link Looper}
+   *     of the thread that starts each load.
+   * @return The loader.
+   */
+  public static Loader newInstance(String threadName, LoaderScheduler scheduler, int priority,
+      Executor callbackExecutor) {
+    return scheduler != null ? new Loader(null, scheduler, priority, callbackExecutor)
+        : new Loader(Util.newSingleThreadExecutor(threadName), null, 0, callbackExecutor);
+  }
+
+  /**
+   * Invokes {@link #startLoading(Executor, Loadable, Callback)} with the loader's callback
+   * executor, if it has one. Otherwise invokes {@link #startLoading(Looper, Loadable, Callback)},
+   * using the {@link Looper} associated with the calling thread.
    *
    * @param loadable The {@link Loadable} to load.
    * @param callback A callback to invoke when the load ends.
-   * @throws IllegalStateException If the calling thread does not have an associated {@link Looper}.
+   * @throws IllegalStateException If the loader does not have a callback executor and the calling
+   *     thread does not have an associated {@link Looper}.
    */
   public void startLoading(Loadable loadable, Callback callback) {
+    if (callbackExecutor != null) {
+      startLoading(callbackExecutor, loadable, callback);
+      return;
+    }
     Looper myLooper = Looper.myLooper();
     Assertions.checkState(myLooper != null);
     startLoading(myLooper, loadable, callback);
@@ -140,10 +197,31 @@ public final class Loader {
    * @param callback A callback to invoke when the load ends.
    */
   public void startLoading(Looper looper, Loadable loadable, Callback callback) {
+    startLoading(new LooperExecutor(looper), loadable, callback);
+  }
+
+  /**
+   * Start loading a {@link Loadable}, invoking the callback on an {@link Executor} rather than on
+   * the thread of a {@link Looper}. This allows loads to be driven from threads that do not have a
+   * {@link Looper}.
+   * <p>
+   * A {@link Loader} instance can only load one {@link Loadable} at a time, and so this method
+   * must not be called when another load is in progress.
+   *
+   * @param callbackExecutor The executor on which the callback should be invoked. The callback
+   *     must be invoked on the thread that started the load, as it is on a {@link Looper}.
+   * @param loadable The {@link Loadable} to load.
+   * @param callback A callback to invoke when the load ends.
+   */
+  public void startLoading(Executor callbackExecutor, Loadable loadable, Callback callback) {
     Assertions.checkState(!loading);
     loading = true;
-    currentTask = new LoadTask(looper, loadable, callback);
-    downloadExecutorService.submit(currentTask);
+    currentTask = new LoadTask(callbackExecutor, loadable, callback);
+    if (scheduler != null) {
+      currentTask.scheduledLoad = scheduler.schedule(currentTask, priority);
+    } else {
+      downloadExecutorService.submit(currentTask);
+    }
   }
 
   /**
@@ -168,84 +246,132 @@ public final class Loader {
   /**
    * Releases the {@link Loader}.
    * <p>
-   * This method should be called when the {@link Loader} is no longer required.
+   * This method should be called when the {@link Loader} is no longer required. A shared
+   * {@link LoaderScheduler} is not released.
    */
   public void release() {
     if (loading) {
       cancelLoading();
     }
-    downloadExecutorService.shutdown();
+    if (downloadExecutorService != null) {
+      downloadExecutorService.shutdown();
+    }
   }
 
-  @SuppressLint("HandlerLeak")
-  private final class LoadTask extends Handler implements Runnable {
+  /**
+   * Runs tasks on the thread of a {@link Looper}.
+   */
+  private static final class LooperExecutor implements Executor {
+
+    private final Handler handler;
+
+    public LooperExecutor(Looper looper) {
+      handler = new Handler(looper);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      handler.post(task);
+    }
+
+  }
+
+  private final class LoadTask implements Runnable {
 
     private static final String TAG = "LoadTask";
 
+    private final Executor callbackExecutor;
     private final Loadable loadable;
     private final Loader.Callback callback;
 
-    private volatile Thread executorThread;
+    private final Object threadLock;
+
+    private volatile LoaderScheduler.ScheduledLoad scheduledLoad;
+    // Guarded by threadLock.
+    private Thread executorThread;
 
-    public LoadTask(Looper looper, Loadable loadable, Loader.Callback callback) {
-      super(looper);
+    public LoadTask(Executor callbackExecutor, Loadable loadable, Loader.Callback callback) {
+      this.callbackExecutor = callbackExecutor;
       this.loadable = loadable;
       this.callback = callback;
+      threadLock = new Object();
     }
 
     public void quit() {
       loadable.cancelLoad();
-      if (executorThread != null) {
-        executorThread.interrupt();
+      if (scheduledLoad != null && scheduler.cancel(scheduledLoad)) {
+        // The load was still queued, and will never run.
+        postResult(MSG_END_OF_SOURCE, null);
+        return;
+      }
+      synchronized (threadLock) {
+        // A thread shared with other loaders must not be interrupted once this load has finished.
+        if (executorThread != null) {
+          executorThread.interrupt();
+        }
       }
     }
 
     @Override
     public void run() {
       try {
-        executorThread = Thread.currentThread();
+        synchronized (threadLock) {
+          executorThread = Thread.currentThread();
+        }
         if (!loadable.isLoadCanceled()) {
           TraceUtil.beginSection(loadable.getClass().getSimpleName() + ".load()");
           loadable.load();
           TraceUtil.endSection();
         }
-        sendEmptyMessage(MSG_END_OF_SOURCE);
+        postResult(MSG_END_OF_SOURCE, null);
       } catch (IOException e) {
-        obtainMessage(MSG_IO_EXCEPTION, e).sendToTarget();
+        postResult(MSG_IO_EXCEPTION, e);
       } catch (InterruptedException e) {
         // The load was canceled.
         Assertions.checkState(loadable.isLoadCanceled());
-        sendEmptyMessage(MSG_END_OF_SOURCE);
+        postResult(MSG_END_OF_SOURCE, null);
       } catch (Exception e) {
         // This should never happen, but handle it anyway.
         Log.e(TAG, "Unexpected exception loading stream", e);
-        obtainMessage(MSG_IO_EXCEPTION, new UnexpectedLoaderException(e)).sendToTarget();
+        postResult(MSG_IO_EXCEPTION, new UnexpectedLoaderException(e));
       } catch (Error e) {
         // We'd hope that the platform would kill the process if an Error is thrown here, but the
         // executor may catch the error (b/20616433). Throw it here, but also pass and throw it from
-        // the handler thread so that the process dies even if the executor behaves in this way.
+        // the callback thread so that the process dies even if the executor behaves in this way.
         Log.e(TAG, "Unexpected error loading stream", e);
-        obtainMessage(MSG_FATAL_ERROR, e).sendToTarget();
+        postResult(MSG_FATAL_ERROR, e);
         throw e;
+      } finally {
+        synchronized (threadLock) {
+          executorThread = null;
+        }
       }
     }
 
-    @Override
-    public void handleMessage(Message msg) {
-      if (msg.what == MSG_FATAL_ERROR) {
-        throw (Error) msg.obj;
+    private void postResult(final int what, final Object obj) {
+      callbackExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          handleResult(what, obj);
+        }
+      });
+    }
+
+    private void handleResult(int what, Object obj) {
+      if (what == MSG_FATAL_ERROR) {
+        throw (Error) obj;
       }
       onFinished();
       if (loadable.isLoadCanceled()) {
         callback.onLoadCanceled(loadable);
         return;
       }
-      switch (msg.what) {
+      switch (what) {
         case MSG_END_OF_SOURCE:
           callback.onLoadCompleted(loadable);
           break;
         case MSG_IO_EXCEPTION:
-          callback.onLoadError(loadable, (IOException) msg.obj);
+          callback.onLoadError(loadable, (IOException) obj);
           break;
       }
     }
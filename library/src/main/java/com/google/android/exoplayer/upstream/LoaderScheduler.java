@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of loading threads that can be shared by many {@link Loader}s.
+ * <p>
+ * At most {@code maxConcurrentLoads} loads run at once. Further loads are queued, and are started
+ * in order of priority and then in the order in which they were scheduled. Priorities follow the
+ * convention of {@link NetworkLock}, in which lower values are more important. For example a
+ * player might load audio at {@link NetworkLock#STREAMING_PRIORITY}, video at the next priority
+ * and background downloads at {@link NetworkLock#DOWNLOAD_PRIORITY}, so that the load blocking
+ * playback is never stuck behind a prefetch.
+ * <p>
+ * Canceling a load that is still queued removes it from the queue, so that the cancelation does
+ * not wait for a thread to become available.
+ */
+public final class LoaderScheduler {
+
+  /**
+   * Interface definition for a callback to be notified of the timing of scheduled loads.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked when a scheduled load has finished, or has been removed from the queue because it
+     * was canceled. Called on the thread that ran the load, or on the canceling thread if the load
+     * never ran.
+     *
+     * @param priority The priority of the load.
+     * @param queueWaitMs The time the load spent queued before it started running, or before it
+     *     was removed from the queue.
+     * @param runTimeMs The time the load spent running. Zero if it never ran.
+     * @param cancelationLatencyMs The time from the load being canceled to it finishing, or -1 if
+     *     the load was not canceled.
+     */
+    void onLoadFinished(int priority, long queueWaitMs, long runTimeMs, long cancelationLatencyMs);
+
+  }
+
+  /**
+   * The default maximum number of concurrent loads.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_LOADS = 4;
+
+  private static final long KEEP_ALIVE_TIME_MS = 10000;
+
+  private final Clock clock;
+  private final EventListener eventListener;
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong nextSequenceNumber;
+  private final AtomicInteger activeLoadCount;
+
+  /**
+   * @param threadName A name for the scheduler's threads.
+   */
+  public LoaderScheduler(String threadName) {
+    this(threadName, DEFAULT_MAX_CONCURRENT_LOADS, new SystemClock(), null);
+  }
+
+  /**
+   * @param threadName A name for the scheduler's threads.
+   * @param maxConcurrentLoads The maximum number of loads that may run at once.
+   * @param clock The {@link Clock} used to time loads.
+   * @param eventListener A listener to notify of the timing of each load. May be null.
+   */
+  public LoaderScheduler(final String threadName, int maxConcurrentLoads, Clock clock,
+      EventListener eventListener) {
+    Assertions.checkArgument(maxConcurrentLoads > 0);
+    this.clock = clock;
+    this.eventListener = eventListener;
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor = new ThreadPoolExecutor(maxConcurrentLoads, maxConcurrentLoads, KEEP_ALIVE_TIME_MS,
+        TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, threadName + ":" + threadCount.incrementAndGet());
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    nextSequenceNumber = new AtomicLong();
+    activeLoadCount = new AtomicInteger();
+  }
+
+  /**
+   * Returns the number of loads that are currently running.
+   */
+  public int getActiveLoadCount() {
+    return activeLoadCount.get();
+  }
+
+  /**
+   * Returns the number of loads that are waiting for a thread.
+   */
+  public int getQueuedLoadCount() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Releases the scheduler's threads once all scheduled loads have finished. No further loads may
+   * be scheduled.
+   */
+  public void release() {
+    executor.shutdown();
+  }
+
+  /**
+   * Schedules a load.
+   *
+   * @param task The load to run.
+   * @param priority The priority of the load.
+   * @return A handle that can be passed to {@link #cancel(ScheduledLoad)}.
+   */
+  /* package */ ScheduledLoad schedule(Runnable task, int priority) {
+    ScheduledLoad load = new ScheduledLoad(task, priority, nextSequenceNumber.getAndIncrement(),
+        clock.elapsedRealtime());
+    executor.execute(load);
+    return load;
+  }
+
+  /**
+   * Records the cancelation of a load, and removes it from the queue if it has not yet started.
+   *
+   * @param load The load to cancel.
+   * @return Whether the load was removed from the queue, in which case it will never run.
+   */
+  /* package */ boolean cancel(ScheduledLoad load) {
+    long nowMs = clock.elapsedRealtime();
+    load.cancelTimeMs = nowMs;
+    if (!executor.remove(load)) {
+      return false;
+    }
+    if (eventListener != null) {
+      eventListener.onLoadFinished(load.priority, nowMs - load.scheduleTimeMs, 0, 0);
+    }
+    return true;
+  }
+
+  /**
+   * A load queued on a {@link LoaderScheduler}.
+   */
+  /* package */ final class ScheduledLoad implements Runnable, Comparable<ScheduledLoad> {
+
+    private final Runnable task;
+    private final int priority;
+    private final long sequenceNumber;
+    private final long scheduleTimeMs;
+
+    private volatile long cancelTimeMs;
+
+    private ScheduledLoad(Runnable task, int priority, long sequenceNumber, long scheduleTimeMs) {
+      this.task = task;
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+      this.scheduleTimeMs = scheduleTimeMs;
+      cancelTimeMs = -1;
+    }
+
+    @Override
+    public void run() {
+      long startTimeMs = clock.elapsedRealtime();
+      activeLoadCount.incrementAndGet();
+      try {
+        task.run();
+      } finally {
+        activeLoadCount.decrementAndGet();
+        if (eventListener != null) {
+          long endTimeMs = clock.elapsedRealtime();
+          long cancelTimeMs = this.cancelTimeMs;
+          eventListener.onLoadFinished(priority, startTimeMs - scheduleTimeMs,
+              endTimeMs - startTimeMs, cancelTimeMs == -1 ? -1 : endTimeMs - cancelTimeMs);
+        }
+      }
+    }
+
+    @Override
+    public int compareTo(ScheduledLoad other) {
+      if (priority != other.priority) {
+        return priority < other.priority ? -1 : 1;
+      }
+      return sequenceNumber < other.sequenceNumber ? -1
+          : sequenceNumber == other.sequenceNumber ? 0 : 1;
+    }
+
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A local file {@link UriDataSource} that reads from memory mapped regions of the file.
+ * <p>
+ * Regions are mapped with {@link FileChannel#map} and kept after the source is closed, up to a
+ * total of {@code maxMappedBytes}, least recently used first out. Opening a file again at any
+ * position within a region that is still mapped, as happens when seeking, replaying, or reading the
+ * spans of a {@link com.google.android.exoplayer.upstream.cache.CacheDataSource} when passed as its
+ * cache read source, costs no system calls other than a check of the file's length and
+ * modification time. A region is remapped if either has changed. Reads are served by bulk copies
+ * from the mapping.
+ * <p>
+ * Files larger than {@code maxMappingLength} are mapped in several regions. Mappings are released
+ * when they are garbage collected, after they have been evicted or {@link #clearMappings()} has
+ * been called.
+ */
+public final class MappedFileDataSource implements UriDataSource {
+
+  /**
+   * Thrown when an {@link IOException} is encountered mapping or reading a file.
+   */
+  public static final class MappedFileDataSourceException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MappedFileDataSourceException(IOException cause) {
+      super(cause);
+    }
+
+  }
+
+  /**
+   * The default maximum total length of the regions kept mapped, in bytes.
+   */
+  public static final long DEFAULT_MAX_MAPPED_BYTES = 16 * 1024 * 1024;
+  /**
+   * The default maximum length of a mapped region, in bytes.
+   */
+  public static final long DEFAULT_MAX_MAPPING_LENGTH = 4 * 1024 * 1024;
+
+  // Regions start at a multiple of this length, so that nearby requests share a region.
+  private static final long MAPPING_ALIGNMENT = 1024 * 1024;
+
+  private final TransferListener listener;
+  private final long maxMappedBytes;
+  private final long maxMappingLength;
+  private final LinkedList<Mapping> mappings;
+
+  private long mappedBytes;
+
+  private String uriString;
+  private String path;
+  private long fileLength;
+  private long fileLastModified;
+  private ByteBuffer buffer;
+  private long filePosition;
+  private long bytesRemaining;
+  private boolean opened;
+
+  public MappedFileDataSource() {
+    this(null);
+  }
+
+  /**
+   * @param listener An optional listener. Specify {@code null} for no listener.
+   */
+  public MappedFileDataSource(TransferListener listener) {
+    this(listener, DEFAULT_MAX_MAPPED_BYTES, DEFAULT_MAX_MAPPING_LENGTH);
+  }
+
+  /**
+   * @param listener An optional listener. Specify {@code null} for no listener.
+   * @param maxMappedBytes The maximum total length of the regions kept mapped, in bytes. Must be
+   *     at least {@code maxMappingLength}.
+   * @param maxMappingLength The maximum length of a mapped region, in bytes. Must be at least
+   *     {@code 1048576} and no more than {@link Integer#MAX_VALUE}.
+   */
+  public MappedFileDataSource(TransferListener listener, long maxMappedBytes,
+      long maxMappingLength) {
+    Assertions.checkArgument(maxMappingLength >= MAPPING_ALIGNMENT
+        && maxMappingLength <= Integer.MAX_VALUE && maxMappedBytes >= maxMappingLength);
+    this.listener = listener;
+    this.maxMappedBytes = maxMappedBytes;
+    this.maxMappingLength = maxMappingLength;
+    mappings = new LinkedList<>();
+  }
+
+  /**
+   * Releases all mapped regions.
+   */
+  public void clearMappings() {
+    mappings.clear();
+    mappedBytes = 0;
+  }
+
+  /**
+   * Returns the number of regions that are currently mapped.
+   */
+  /* package */ int getMappingCount() {
+    return mappings.size();
+  }
+
+  /**
+   * Returns the total length of the regions that are currently mapped, in bytes.
+   */
+  /* package */ long getMappedBytes() {
+    return mappedBytes;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws MappedFileDataSourceException {
+    try {
+      uriString = dataSpec.uri.toString();
+      path = dataSpec.uri.getPath();
+      File file = new File(path);
+      if (!file.isFile()) {
+        throw new FileNotFoundException(path);
+      }
+      fileLength = file.length();
+      fileLastModified = file.lastModified();
+      filePosition = dataSpec.position;
+      bytesRemaining = dataSpec.length == C.LENGTH_UNBOUNDED ? fileLength - dataSpec.position
+          : dataSpec.length;
+      if (bytesRemaining < 0 || filePosition > fileLength) {
+        throw new EOFException();
+      }
+      buffer = filePosition < fileLength ? getBuffer(filePosition) : null;
+    } catch (IOException e) {
+      throw new MappedFileDataSourceException(e);
+    }
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart();
+    }
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int readLength) throws MappedFileDataSourceException {
+    int bytesRead = prepareRead(readLength);
+    if (bytesRead > 0) {
+      buffer.get(target, offset, bytesRead);
+      onBytesRead(bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public String getUri() {
+    return uriString;
+  }
+
+  @Override
+  public void close() {
+    uriString = null;
+    path = null;
+    buffer = null;
+    if (opened) {
+      opened = false;
+      if (listener != null) {
+        listener.onTransferEnd();
+      }
+    }
+  }
+
+  /**
+   * Ensures that the buffer has data to read at the current position, mapping the next region if
+   * necessary.
+   *
+   * @return The number of bytes that can be read, or {@link C#RESULT_END_OF_INPUT}.
+   */
+  private int prepareRead(int readLength) throws MappedFileDataSourceException {
+    if (bytesRemaining == 0 || filePosition == fileLength) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (!buffer.hasRemaining()) {
+      try {
+        buffer = getBuffer(filePosition);
+      } catch (IOException e) {
+        throw new MappedFileDataSourceException(e);
+      }
+    }
+    return (int) Math.min(Math.min(readLength, bytesRemaining), buffer.remaining());
+  }
+
+  private void onBytesRead(int bytesRead) {
+    filePosition += bytesRead;
+    bytesRemaining -= bytesRead;
+    if (listener != null) {
+      listener.onBytesTransferred(bytesRead);
+    }
+  }
+
+  /**
+   * Returns a buffer positioned at {@code position} in the current file, over a region that is
+   * already mapped if there is one.
+   */
+  private ByteBuffer getBuffer(long position) throws IOException {
+    Mapping mapping = null;
+    for (Iterator<Mapping> iterator = mappings.iterator(); iterator.hasNext();) {
+      Mapping candidate = iterator.next();
+      if (candidate.path.equals(path) && candidate.fileLength == fileLength
+          && candidate.fileLastModified == fileLastModified && candidate.start <= position
+          && position < candidate.start + candidate.buffer.capacity()) {
+        iterator.remove();
+        mapping = candidate;
+        break;
+      }
+    }
+    if (mapping == null) {
+      long start = position - position % MAPPING_ALIGNMENT;
+      long length = Math.min(fileLength - start, maxMappingLength);
+      // Evict before mapping, so that the limit also holds while the new region is mapped.
+      while (mappedBytes + length > maxMappedBytes) {
+        mappedBytes -= mappings.removeLast().buffer.capacity();
+      }
+      mapping = map(start, length);
+      mappedBytes += length;
+    }
+    mappings.addFirst(mapping);
+    ByteBuffer buffer = mapping.buffer.duplicate();
+    buffer.position((int) (position - mapping.start));
+    return buffer;
+  }
+
+  private Mapping map(long start, long length) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      // The mapping remains valid after the file is closed.
+      MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+      return new Mapping(path, fileLength, fileLastModified, start, buffer);
+    } finally {
+      file.close();
+    }
+  }
+
+  private static final class Mapping {
+
+    public final String path;
+    public final long fileLength;
+    public final long fileLastModified;
+    public final long start;
+    public final MappedByteBuffer buffer;
+
+    public Mapping(String path, long fileLength, long fileLastModified, long start,
+        MappedByteBuffer buffer) {
+      this.path = path;
+      this.fileLength = fileLength;
+      this.fileLastModified = fileLastModified;
+      this.start = start;
+      this.buffer = buffer;
+    }
+
+  }
+
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link DataSource} that loads a request of known length as several byte ranges in parallel,
+ * and reads them back in order.
+ * <p>
+ * A single transfer often cannot use the full capacity of a lossy or high latency link. When a
+ * request is opened with a known length of at least twice {@code minPartLength}, it is split into
+ * up to {@link #getParallelism()} contiguous parts of equal length. Each part is loaded through its
+ * own upstream source on the provided executor, into a buffer from which {@link #read} consumes it
+ * as it arrives. Requests of unknown length, or too short to split, are read directly through the
+ * first upstream source.
+ * <p>
+ * The parallelism adapts by hill climbing. Each time a request that could have been split is read
+ * in full, its throughput is compared with that of the previous such request. The parallelism keeps
+ * moving in the same direction for as long as the throughput improves by at least
+ * {@link #MIN_THROUGHPUT_GAIN}, and reverses otherwise.
+ * <p>
+ * Each part is a transfer of its own, so to keep bandwidth estimates correct the upstream sources
+ * should report to a {@link BandwidthMeter} that merges overlapping transfers, such as
+ * {@link DefaultBandwidthMeter}. Each part is loaded into a ring buffer of bounded size, so a part
+ * that is further ahead than its buffer waits for the parts before it to be read.
+ * <p>
+ * Closing the source cancels parts that are still loading, interrupting the threads on which they
+ * are loaded. An upstream source is not reused until the part previously loaded through it has
+ * finished, so if closing is interrupted, the next {@link #open(DataSpec)} waits for it instead.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /**
+   * The default minimum length of a part, in bytes.
+   */
+  public static final long DEFAULT_MIN_PART_LENGTH = 512 * 1024;
+  /**
+   * The default parallelism of the first request.
+   */
+  public static final int DEFAULT_INITIAL_PARALLELISM = 2;
+  /**
+   * The relative gain in throughput required to continue changing the parallelism in the same
+   * direction.
+   */
+  public static final float MIN_THROUGHPUT_GAIN = 0.1f;
+  /**
+   * The default size of the buffer into which each part is loaded, in bytes.
+   */
+  public static final int DEFAULT_PART_BUFFER_SIZE = 256 * 1024;
+
+  private static final String TAG = "ParallelRangeDataSource";
+
+  private final DataSource[] dataSources;
+  private final ExecutorService executorService;
+  private final Clock clock;
+  private final long minPartLength;
+  private final int partBufferSize;
+  // The part most recently loaded through each upstream source.
+  private final Part[] sourceParts;
+
+  private int parallelism;
+  private int parallelismStep;
+  private long lastThroughputBps;
+
+  private DataSpec dataSpec;
+  private long openTimeMs;
+  private boolean openedDirectly;
+  private long bytesReadDirectly;
+  private Part[] parts;
+  private int readingPartIndex;
+
+  /**
+   * @param dataSources The upstream sources. One part is loaded through each, so the parallelism
+   *     never exceeds their number. They must not be used elsewhere.
+   * @param executorService The executor on which parts are loaded. Must be able to run a task for
+   *     each upstream source concurrently.
+   */
+  public ParallelRangeDataSource(DataSource[] dataSources, ExecutorService executorService) {
+    this(dataSources, executorService, new SystemClock(), DEFAULT_MIN_PART_LENGTH,
+        DEFAULT_INITIAL_PARALLELISM);
+  }
+
+  /**
+   * @param dataSources The upstream sources. One part is loaded through each, so the parallelism
+   *     never exceeds their number. They must not be used elsewhere.
+   * @param executorService The executor on which parts are loaded. Must be able to run a task for
+   *     each upstream source concurrently.
+   * @param clock The clock used to measure throughput.
+   * @param minPartLength The minimum length of a part, in bytes.
+   * @param initialParallelism The parallelism of the first request.
+   */
+  public ParallelRangeDataSource(DataSource[] dataSources, ExecutorService executorService,
+      Clock clock, long minPartLength, int initialParallelism) {
+    this(dataSources, executorService, clock, minPartLength, initialParallelism,
+        DEFAULT_PART_BUFFER_SIZE);
+  }
+
+  /**
+   * @param dataSources The upstream sources. One part is loaded through each, so the parallelism
+   *     never exceeds their number. They must not be used elsewhere.
+   * @param executorService The executor on which parts are loaded. Must be able to run a task for
+   *     each upstream source concurrently.
+   * @param clock The clock used to measure throughput.
+   * @param minPartLength The minimum length of a part, in bytes.
+   * @param initialParallelism The parallelism of the first request.
+   * @param partBufferSize The size of the buffer into which each part is loaded, in bytes.
+   */
+  public ParallelRangeDataSource(DataSource[] dataSources, ExecutorService executorService,
+      Clock clock, long minPartLength, int initialParallelism, int partBufferSize) {
+    Assertions.checkArgument(dataSources.length > 0 && minPartLength > 0 && partBufferSize > 0);
+    this.dataSources = dataSources;
+    this.executorService = executorService;
+    this.clock = clock;
+    this.minPartLength = minPartLength;
+    this.partBufferSize = partBufferSize;
+    sourceParts = new Part[dataSources.length];
+    parallelism = Math.max(1, Math.min(initialParallelism, dataSources.length));
+    parallelismStep = 1;
+    lastThroughputBps = -1;
+  }
+
+  /**
+   * Returns the maximum number of parts into which the next request will be split.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Assertions.checkState(parts == null && !openedDirectly);
+    this.dataSpec = dataSpec;
+    openTimeMs = clock.elapsedRealtime();
+    int partCount = dataSpec.length == C.LENGTH_UNBOUNDED || dataSpec.postBody != null ? 1
+        : (int) Math.min(parallelism, dataSpec.length / minPartLength);
+    if (partCount <= 1) {
+      awaitSourceReleased(0);
+      bytesReadDirectly = 0;
+      long length = dataSources[0].open(dataSpec);
+      openedDirectly = true;
+      return length;
+    }
+
+    for (int i = 0; i < partCount; i++) {
+      awaitSourceReleased(i);
+    }
+    parts = new Part[partCount];
+    long partOffset = 0;
+    for (int i = 0; i < partCount; i++) {
+      long partLength = i < partCount - 1 ? dataSpec.length / partCount
+          : dataSpec.length - partOffset;
+      DataSpec partDataSpec = new DataSpec(dataSpec.uri,
+          dataSpec.absoluteStreamPosition + partOffset, dataSpec.position + partOffset, partLength,
+          dataSpec.key, dataSpec.flags);
+      parts[i] = new Part(dataSources[i], partDataSpec);
+      sourceParts[i] = parts[i];
+      partOffset += partLength;
+    }
+    for (Part part : parts) {
+      executorService.submit(part);
+    }
+    readingPartIndex = 0;
+    return dataSpec.length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (openedDirectly) {
+      int bytesRead = dataSources[0].read(buffer, offset, readLength);
+      if (bytesRead > 0) {
+        bytesReadDirectly += bytesRead;
+      }
+      return bytesRead;
+    }
+    while (readingPartIndex < parts.length) {
+      int bytesRead = parts[readingPartIndex].read(buffer, offset, readLength);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        return bytesRead;
+      }
+      readingPartIndex++;
+    }
+    return C.RESULT_END_OF_INPUT;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (openedDirectly) {
+      openedDirectly = false;
+      dataSources[0].close();
+      if (dataSpec.length != C.LENGTH_UNBOUNDED && dataSpec.length >= 2 * minPartLength
+          && bytesReadDirectly == dataSpec.length) {
+        onRequestLoaded(clock.elapsedRealtime());
+      }
+      return;
+    }
+    if (parts == null) {
+      return;
+    }
+    // Cancel the parts that are still loading, and wait for all of them to release their sources.
+    // If the wait is interrupted, the next call to open waits for the sources instead.
+    for (Part part : parts) {
+      part.cancel();
+    }
+    boolean loaded = true;
+    long loadedTimeMs = 0;
+    try {
+      for (Part part : parts) {
+        part.awaitFinished();
+        loaded &= part.isLoaded();
+        loadedTimeMs = Math.max(loadedTimeMs, part.finishedTimeMs);
+      }
+    } finally {
+      parts = null;
+    }
+    if (loaded) {
+      onRequestLoaded(loadedTimeMs);
+    }
+  }
+
+  /**
+   * Waits for the part most recently loaded through an upstream source to finish with it.
+   */
+  private void awaitSourceReleased(int sourceIndex) throws InterruptedIOException {
+    if (sourceParts[sourceIndex] != null) {
+      sourceParts[sourceIndex].awaitFinished();
+      sourceParts[sourceIndex] = null;
+    }
+  }
+
+  private void onRequestLoaded(long loadedTimeMs) {
+    long elapsedMs = loadedTimeMs - openTimeMs;
+    if (elapsedMs <= 0) {
+      return;
+    }
+    long throughputBps = dataSpec.length * 8000 / elapsedMs;
+    if (lastThroughputBps != -1 && throughputBps < lastThroughputBps * (1 + MIN_THROUGHPUT_GAIN)) {
+      parallelismStep = -parallelismStep;
+    }
+    lastThroughputBps = throughputBps;
+    // Stay at a bound until the throughput stops improving, which reverses the direction.
+    parallelism = Math.max(1, Math.min(parallelism + parallelismStep, dataSources.length));
+  }
+
+  /**
+   * A contiguous byte range of the request, loaded into a ring buffer on the executor.
+   */
+  private final class Part implements Runnable {
+
+    private final DataSource dataSource;
+    private final DataSpec dataSpec;
+    private final byte[] data;
+
+    // Guarded by this part's monitor. The loading thread only writes to the free region of the ring
+    // buffer and the reading thread only reads from the loaded region, so the buffer itself is
+    // accessed outside of the monitor.
+    private long bytesLoaded;
+    private long bytesConsumed;
+    private boolean finished;
+    private long finishedTimeMs;
+    private IOException error;
+    private boolean canceled;
+    private Thread loadingThread;
+
+    public Part(DataSource dataSource, DataSpec dataSpec) {
+      this.dataSource = dataSource;
+      this.dataSpec = dataSpec;
+      this.data = new byte[(int) Math.min(dataSpec.length, partBufferSize)];
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (canceled) {
+          finish(null);
+          return;
+        }
+        loadingThread = Thread.currentThread();
+      }
+      IOException error = null;
+      try {
+        dataSource.open(dataSpec);
+        while (true) {
+          int writeOffset;
+          int writeLength;
+          synchronized (this) {
+            while (bytesLoaded - bytesConsumed == data.length && !canceled) {
+              wait();
+            }
+            if (canceled || bytesLoaded == dataSpec.length) {
+              break;
+            }
+            writeOffset = (int) (bytesLoaded % data.length);
+            writeLength = (int) Math.min(data.length - (bytesLoaded - bytesConsumed),
+                Math.min(data.length - writeOffset, dataSpec.length - bytesLoaded));
+          }
+          int bytesRead = dataSource.read(data, writeOffset, writeLength);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            throw new EOFException();
+          }
+          synchronized (this) {
+            bytesLoaded += bytesRead;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        error = e;
+      } catch (InterruptedException e) {
+        // Interrupted by cancel.
+      } finally {
+        try {
+          dataSource.close();
+        } catch (IOException e) {
+          if (error == null && !isCanceled()) {
+            error = e;
+          } else {
+            Log.w(TAG, "Failed to close part", e);
+          }
+        }
+        finish(error);
+        // Clear any interrupt from cancel, so that it does not affect the executor's next task.
+        Thread.interrupted();
+      }
+    }
+
+    /**
+     * Reads from the part, blocking until data at the current read position has been loaded.
+     *
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the whole part has
+     *     been read.
+     */
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      int readOffset;
+      int bytesRead;
+      synchronized (this) {
+        if (bytesConsumed == dataSpec.length) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        while (bytesLoaded == bytesConsumed && !finished) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+        }
+        if (bytesLoaded == bytesConsumed) {
+          throw error != null ? error : new EOFException();
+        }
+        readOffset = (int) (bytesConsumed % data.length);
+        bytesRead = (int) Math.min(Math.min(readLength, bytesLoaded - bytesConsumed),
+            data.length - readOffset);
+      }
+      System.arraycopy(data, readOffset, buffer, offset, bytesRead);
+      synchronized (this) {
+        bytesConsumed += bytesRead;
+        notifyAll();
+      }
+      return bytesRead;
+    }
+
+    /**
+     * Cancels the part, interrupting the thread on which it is being loaded.
+     */
+    public synchronized void cancel() {
+      canceled = true;
+      if (loadingThread != null) {
+        loadingThread.interrupt();
+      }
+      notifyAll();
+    }
+
+    public synchronized void awaitFinished() throws InterruptedIOException {
+      while (!finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+
+    public synchronized boolean isLoaded() {
+      return error == null && bytesLoaded == dataSpec.length;
+    }
+
+    private synchronized boolean isCanceled() {
+      return canceled;
+    }
+
+    private synchronized void finish(IOException error) {
+      this.error = error;
+      loadingThread = null;
+      finished = true;
+      finishedTimeMs = clock.elapsedRealtime();
+      notifyAll();
+    }
+
+  }
+
+}
@@ -0,0 +1,840 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Predicate;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A {@link HttpDataSource} that speaks HTTP/1.1 directly over sockets, keeping connections alive
+ * between requests and pipelining predicted requests behind the one being read.
+ * <p>
+ * {@link DefaultHttpDataSource} makes each request in series, so that every segment pays at least
+ * one round trip before its first byte arrives, and the link is idle in between. This source keeps
+ * one idle connection per origin, and when it is given a prediction of the requests that will
+ * follow through {@link #setPredictedDataSpecs(DataSpec...)}, writes up to
+ * {@code maxPipelinedRequests} of them to the connection as soon as the current request is sent.
+ * Their responses follow the current one on the same connection, so that the next segment starts
+ * arriving as soon as the current one has been read. If the next request that is opened does not
+ * match the first pipelined one, for example because the format evaluator switched format, the
+ * connection is discarded and the request is made on a new one.
+ * <p>
+ * Responses are never compressed, so {@link DataSpec#FLAG_ALLOW_GZIP} is ignored. Proxies are not
+ * supported. Connections are not shared between instances, and an instance must only be used by
+ * one thread at a time, other than {@link #setPredictedDataSpecs(DataSpec...)}.
+ */
+public class PipelinedHttpDataSource implements HttpDataSource, PrefetchingDataSource {
+
+  /**
+   * The default maximum number of predicted requests to pipeline behind the current request.
+   */
+  public static final int DEFAULT_MAX_PIPELINED_REQUESTS = 2;
+  /**
+   * The default duration for which an idle connection is kept for reuse, in milliseconds.
+   */
+  public static final long DEFAULT_KEEP_ALIVE_DURATION_MS = 30 * 1000;
+
+  private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
+  private static final int MAX_LINE_LENGTH = 8 * 1024;
+  private static final int MAX_BYTES_TO_DRAIN = 8 * 1024;
+  private static final String TAG = "PipelinedHttpDataSource";
+
+  private final String userAgent;
+  private final Predicate<String> contentTypePredicate;
+  private final TransferListener listener;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  private final boolean allowCrossProtocolRedirects;
+  private final int maxPipelinedRequests;
+  private final long keepAliveDurationMs;
+  private final HashMap<String, String> requestProperties;
+  private final HashMap<String, Connection> idleConnections;
+  private final byte[] skipBuffer;
+
+  private DataSpec[] predictedDataSpecs;
+
+  private DataSpec dataSpec;
+  private URL url;
+  private Connection connection;
+  private Map<String, List<String>> responseHeaders;
+  private boolean opened;
+
+  private long bytesToSkip;
+  private long bytesToRead;
+
+  private long bytesSkipped;
+  private long bytesRead;
+
+  /**
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is
+   *     rejected by the predicate then a {@link HttpDataSource.InvalidContentTypeException} is
+   *     thrown from {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   */
+  public PipelinedHttpDataSource(String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener listener) {
+    this(userAgent, contentTypePredicate, listener,
+        DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, false, DEFAULT_MAX_PIPELINED_REQUESTS,
+        DEFAULT_KEEP_ALIVE_DURATION_MS);
+  }
+
+  /**
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is
+   *     rejected by the predicate then a {@link HttpDataSource.InvalidContentTypeException} is
+   *     thrown from {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   * @param connectTimeoutMillis The connection timeout, in milliseconds. A timeout of zero is
+   *     interpreted as an infinite timeout.
+   * @param readTimeoutMillis The read timeout, in milliseconds. A timeout of zero is interpreted
+   *     as an infinite timeout.
+   * @param allowCrossProtocolRedirects Whether cross-protocol redirects (i.e. redirects from HTTP
+   *     to HTTPS and vice versa) are enabled.
+   * @param maxPipelinedRequests The maximum number of predicted requests to pipeline behind the
+   *     current request. Zero disables pipelining, leaving only connection reuse.
+   * @param keepAliveDurationMs The duration for which an idle connection is kept for reuse, in
+   *     milliseconds.
+   */
+  public PipelinedHttpDataSource(String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener listener, int connectTimeoutMillis, int readTimeoutMillis,
+      boolean allowCrossProtocolRedirects, int maxPipelinedRequests, long keepAliveDurationMs) {
+    Assertions.checkArgument(maxPipelinedRequests >= 0);
+    this.userAgent = Assertions.checkNotEmpty(userAgent);
+    this.contentTypePredicate = contentTypePredicate;
+    this.listener = listener;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+    this.maxPipelinedRequests = maxPipelinedRequests;
+    this.keepAliveDurationMs = keepAliveDurationMs;
+    requestProperties = new HashMap<>();
+    idleConnections = new HashMap<>();
+    skipBuffer = new byte[4096];
+  }
+
+  @Override
+  public String getUri() {
+    return connection == null ? null : url.toString();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return connection == null ? null : responseHeaders;
+  }
+
+  @Override
+  public void setRequestProperty(String name, String value) {
+    Assertions.checkNotNull(name);
+    Assertions.checkNotNull(value);
+    synchronized (requestProperties) {
+      requestProperties.put(name, value);
+    }
+  }
+
+  @Override
+  public void clearRequestProperty(String name) {
+    Assertions.checkNotNull(name);
+    synchronized (requestProperties) {
+      requestProperties.remove(name);
+    }
+  }
+
+  @Override
+  public void clearAllRequestProperties() {
+    synchronized (requestProperties) {
+      requestProperties.clear();
+    }
+  }
+
+  @Override
+  public synchronized void setPredictedDataSpecs(DataSpec... dataSpecs) {
+    predictedDataSpecs = dataSpecs;
+  }
+
+  /**
+   * Closes all idle connections. Connections are otherwise kept open until they expire, and are
+   * only closed once a subsequent request finds them expired.
+   */
+  public void closeIdleConnections() {
+    for (Connection idleConnection : idleConnections.values()) {
+      idleConnection.close();
+    }
+    idleConnections.clear();
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    this.dataSpec = dataSpec;
+    this.bytesRead = 0;
+    this.bytesSkipped = 0;
+    int responseCode;
+    try {
+      responseCode = makeRequest(dataSpec);
+    } catch (IOException e) {
+      closeConnectionQuietly();
+      throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
+          dataSpec);
+    }
+
+    // Check for a valid response code.
+    if (responseCode < 200 || responseCode > 299) {
+      Map<String, List<String>> headers = responseHeaders;
+      closeConnectionQuietly();
+      throw new InvalidResponseCodeException(responseCode, headers, dataSpec);
+    }
+
+    // Check for a valid content type.
+    String contentType = getResponseHeader("Content-Type");
+    if (contentTypePredicate != null && !contentTypePredicate.evaluate(contentType)) {
+      closeConnectionQuietly();
+      throw new InvalidContentTypeException(contentType, dataSpec);
+    }
+
+    // If we requested a range starting from a non-zero position and received a 200 rather than a
+    // 206, then the server does not support partial requests. We'll need to manually skip to the
+    // requested position.
+    bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+
+    // Determine the length of the data to be read, after skipping. Responses are never compressed.
+    long contentLength = connection.chunked ? C.LENGTH_UNBOUNDED
+        : DefaultHttpDataSource.getContentLength(getResponseHeader("Content-Length"),
+            getResponseHeader("Content-Range"));
+    bytesToRead = dataSpec.length != C.LENGTH_UNBOUNDED ? dataSpec.length
+        : contentLength != C.LENGTH_UNBOUNDED ? contentLength - bytesToSkip
+        : C.LENGTH_UNBOUNDED;
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart();
+    }
+
+    return bytesToRead;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+    try {
+      skipInternal();
+      return readInternal(buffer, offset, readLength);
+    } catch (IOException e) {
+      throw new HttpDataSourceException(e, dataSpec);
+    }
+  }
+
+  @Override
+  public void close() throws HttpDataSourceException {
+    try {
+      if (connection != null) {
+        releaseConnection();
+      }
+    } finally {
+      if (opened) {
+        opened = false;
+        if (listener != null) {
+          listener.onTransferEnd();
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes the request for a {@link DataSpec}, following redirects where permitted, and reads the
+   * head of the final response.
+   *
+   * @return The response code.
+   */
+  private int makeRequest(DataSpec dataSpec) throws IOException {
+    url = new URL(dataSpec.uri.toString());
+    byte[] postBody = dataSpec.postBody;
+    int redirectCount = 0;
+    while (true) {
+      // Only the requests that follow the original request are predicted.
+      int responseCode = makeRequest(url, postBody, dataSpec.position, dataSpec.length,
+          redirectCount == 0);
+      if (!(responseCode == HttpURLConnection.HTTP_MULT_CHOICE
+          || responseCode == HttpURLConnection.HTTP_MOVED_PERM
+          || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
+          || responseCode == HttpURLConnection.HTTP_SEE_OTHER
+          || (postBody == null
+              && (responseCode == 307 /* HTTP_TEMP_REDIRECT */
+                  || responseCode == 308 /* HTTP_PERM_REDIRECT */)))) {
+        return responseCode;
+      }
+      URL redirectUrl = handleRedirect(url, getResponseHeader("Location"));
+      if (!allowCrossProtocolRedirects && !redirectUrl.getProtocol().equals(url.getProtocol())) {
+        // Behave as HttpURLConnection does, returning the redirect itself.
+        return responseCode;
+      }
+      if (redirectCount++ == MAX_REDIRECTS) {
+        throw new NoRouteToHostException("Too many redirects: " + redirectCount);
+      }
+      // For 300, 301, 302, and 303 POST requests follow the redirect and are transformed into GET
+      // requests. For 307 and 308 POST requests are not redirected.
+      postBody = null;
+      releaseConnection();
+      url = redirectUrl;
+    }
+  }
+
+  /**
+   * Makes a single request and reads the head of its response, reusing an idle connection to the
+   * origin if there is one. If the idle connection has the request pipelined already, no request
+   * is written. If a reused connection fails before a response is read, the request is retried
+   * once on a new connection, since the server may have closed the connection while it was idle.
+   *
+   * @return The response code.
+   */
+  private int makeRequest(URL url, byte[] postBody, long position, long length,
+      boolean pipelinePredictedRequests) throws IOException {
+    String origin = getOrigin(url);
+    String requestKey = getRequestKey(url, position, length);
+    while (true) {
+      connection = takeIdleConnection(origin, postBody == null ? requestKey : null);
+      boolean reused = connection != null;
+      if (!reused) {
+        connection = connect(url, origin);
+      }
+      try {
+        if (connection.pipelinedRequestKeys.isEmpty()) {
+          writeRequest(url, postBody, position, length);
+          connection.pipelinedRequestKeys.add(requestKey);
+        }
+        if (pipelinePredictedRequests && postBody == null) {
+          pipelinePredictedRequests();
+        }
+        connection.outputStream.flush();
+        connection.pipelinedRequestKeys.remove();
+        return readResponseHead();
+      } catch (IOException e) {
+        closeConnectionQuietly();
+        if (!reused) {
+          throw e;
+        }
+        Log.w(TAG, "Retrying request on a new connection", e);
+      }
+    }
+  }
+
+  /**
+   * Writes predicted requests to the current connection, behind the current request, until
+   * {@code maxPipelinedRequests} requests are pipelined. Requests are only pipelined if the
+   * requests that are pipelined already are the first of those predicted.
+   */
+  private void pipelinePredictedRequests() throws IOException {
+    DataSpec[] predictedDataSpecs;
+    synchronized (this) {
+      predictedDataSpecs = this.predictedDataSpecs;
+    }
+    if (predictedDataSpecs == null || !connection.reusable) {
+      return;
+    }
+    Iterator<String> pipelinedRequestKeys = connection.pipelinedRequestKeys.iterator();
+    String currentRequestKey = pipelinedRequestKeys.next();
+    // The prediction may have been made before the current request was itself predicted.
+    int index = 0;
+    for (int i = 0; i < predictedDataSpecs.length; i++) {
+      if (currentRequestKey.equals(getRequestKey(predictedDataSpecs[i]))) {
+        index = i + 1;
+        break;
+      }
+    }
+    while (pipelinedRequestKeys.hasNext()) {
+      if (index == predictedDataSpecs.length
+          || !pipelinedRequestKeys.next().equals(getRequestKey(predictedDataSpecs[index]))) {
+        return;
+      }
+      index++;
+    }
+    while (connection.pipelinedRequestKeys.size() <= maxPipelinedRequests
+        && index < predictedDataSpecs.length) {
+      DataSpec predictedDataSpec = predictedDataSpecs[index++];
+      URL predictedUrl = new URL(predictedDataSpec.uri.toString());
+      if (predictedDataSpec.postBody != null
+          || !connection.origin.equals(getOrigin(predictedUrl))) {
+        return;
+      }
+      writeRequest(predictedUrl, null, predictedDataSpec.position, predictedDataSpec.length);
+      connection.pipelinedRequestKeys.add(getRequestKey(predictedDataSpec));
+    }
+  }
+
+  /**
+   * Removes and returns the idle connection to an origin, if it has not expired and no request
+   * other than the one specified has been pipelined on it.
+   *
+   * @param origin The origin.
+   * @param requestKey The key of the request to be made, or null if the request cannot have been
+   *     pipelined.
+   * @return The connection, or null.
+   */
+  private Connection takeIdleConnection(String origin, String requestKey) {
+    Connection idleConnection = idleConnections.remove(origin);
+    if (idleConnection == null) {
+      return null;
+    }
+    String pipelinedRequestKey = idleConnection.pipelinedRequestKeys.peek();
+    if (SystemClock.elapsedRealtime() - idleConnection.idleSinceMs > keepAliveDurationMs
+        || (pipelinedRequestKey != null && !pipelinedRequestKey.equals(requestKey))) {
+      // The connection has expired, or the responses to its pipelined requests are not wanted.
+      idleConnection.close();
+      return null;
+    }
+    return idleConnection;
+  }
+
+  private Connection connect(URL url, String origin) throws IOException {
+    String host = getSocketHost(url);
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+      socket.setSoTimeout(readTimeoutMillis);
+      socket.setTcpNoDelay(true);
+      if ("https".equals(url.getProtocol())) {
+        SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+            .createSocket(socket, host, port, true);
+        socket = sslSocket;
+        sslSocket.startHandshake();
+        if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host,
+            sslSocket.getSession())) {
+          throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+        }
+      }
+      return new Connection(origin, socket);
+    } catch (IOException e) {
+      try {
+        socket.close();
+      } catch (IOException closeException) {
+        // Ignore.
+      }
+      throw e;
+    }
+  }
+
+  private void writeRequest(URL url, byte[] postBody, long position, long length)
+      throws IOException {
+    StringBuilder request = new StringBuilder();
+    String file = url.getFile();
+    request.append(postBody == null ? "GET " : "POST ").append(file.isEmpty() ? "/" : file)
+        .append(" HTTP/1.1\r\n");
+    int port = url.getPort();
+    appendHeader(request, "Host",
+        port == -1 || port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port);
+    synchronized (requestProperties) {
+      for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+        appendHeader(request, property.getKey(), property.getValue());
+      }
+    }
+    if (!(position == 0 && length == C.LENGTH_UNBOUNDED)) {
+      String rangeRequest = "bytes=" + position + "-";
+      if (length != C.LENGTH_UNBOUNDED) {
+        rangeRequest += (position + length - 1);
+      }
+      appendHeader(request, "Range", rangeRequest);
+    }
+    appendHeader(request, "User-Agent", userAgent);
+    appendHeader(request, "Accept-Encoding", "identity");
+    appendHeader(request, "Connection", "keep-alive");
+    if (postBody != null) {
+      appendHeader(request, "Content-Length", Integer.toString(postBody.length));
+    }
+    request.append("\r\n");
+    connection.outputStream.write(request.toString().getBytes("ISO-8859-1"));
+    if (postBody != null) {
+      connection.outputStream.write(postBody);
+    }
+  }
+
+  /**
+   * Reads the status line and header fields of the next response on the current connection, and
+   * determines how its body is delimited.
+   *
+   * @return The response code.
+   */
+  private int readResponseHead() throws IOException {
+    Connection connection = this.connection;
+    String statusLine;
+    int responseCode;
+    do {
+      statusLine = readLine(connection.inputStream);
+      // Status-Line = HTTP-Version SP Status-Code SP Reason-Phrase
+      if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      try {
+        responseCode = Integer.parseInt(statusLine.substring(9, 12));
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      TreeMap<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      String line;
+      while (!(line = readLine(connection.inputStream)).isEmpty()) {
+        int separatorIndex = line.indexOf(':');
+        if (separatorIndex <= 0) {
+          throw new ProtocolException("Unexpected header: " + line);
+        }
+        String name = line.substring(0, separatorIndex).trim();
+        List<String> values = headers.get(name);
+        if (values == null) {
+          values = new ArrayList<>(1);
+          headers.put(name, values);
+        }
+        values.add(line.substring(separatorIndex + 1).trim());
+      }
+      responseHeaders = Collections.unmodifiableMap(headers);
+    } while (responseCode / 100 == 1);
+
+    String connectionHeader = getResponseHeader("Connection");
+    connection.reusable = statusLine.startsWith("HTTP/1.1")
+        ? !"close".equalsIgnoreCase(connectionHeader)
+        : "keep-alive".equalsIgnoreCase(connectionHeader);
+    String transferEncodingHeader = getResponseHeader("Transfer-Encoding");
+    String contentLengthHeader = getResponseHeader("Content-Length");
+    connection.chunked = false;
+    connection.chunkStarted = false;
+    connection.chunkBytesRemaining = 0;
+    connection.bodyEnded = false;
+    if (responseCode == HttpURLConnection.HTTP_NO_CONTENT
+        || responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      connection.bodyBytesRemaining = 0;
+      connection.bodyEnded = true;
+    } else if (transferEncodingHeader != null
+        && !"identity".equalsIgnoreCase(transferEncodingHeader)) {
+      connection.chunked = true;
+    } else if (contentLengthHeader != null) {
+      try {
+        connection.bodyBytesRemaining = Long.parseLong(contentLengthHeader);
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected Content-Length [" + contentLengthHeader + "]");
+      }
+      connection.bodyEnded = connection.bodyBytesRemaining == 0;
+    } else {
+      // The body is delimited by the server closing the connection.
+      connection.bodyBytesRemaining = C.LENGTH_UNBOUNDED;
+      connection.reusable = false;
+    }
+    return responseCode;
+  }
+
+  /**
+   * Returns the first value of a header field of the current response, or null.
+   */
+  private String getResponseHeader(String name) {
+    List<String> values = responseHeaders.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  /**
+   * Releases the current connection. If the body of the response has been read, or can be read
+   * cheaply, the connection is kept for reuse, along with any requests pipelined on it. Else it is
+   * closed.
+   */
+  private void releaseConnection() {
+    Connection connection = this.connection;
+    this.connection = null;
+    if (connection.reusable && !connection.bodyEnded && (connection.chunked
+        || connection.bodyBytesRemaining <= MAX_BYTES_TO_DRAIN)) {
+      try {
+        int bytesDrained = 0;
+        int read;
+        while (bytesDrained <= MAX_BYTES_TO_DRAIN
+            && (read = connection.readBody(skipBuffer, 0, skipBuffer.length)) != -1) {
+          bytesDrained += read;
+        }
+      } catch (IOException e) {
+        connection.reusable = false;
+      }
+    }
+    if (connection.reusable && connection.bodyEnded) {
+      connection.idleSinceMs = SystemClock.elapsedRealtime();
+      Connection previousConnection = idleConnections.put(connection.origin, connection);
+      if (previousConnection != null) {
+        previousConnection.close();
+      }
+    } else {
+      connection.close();
+    }
+  }
+
+  /**
+   * Skips any bytes that need skipping. Else does nothing.
+   *
+   * @throws InterruptedIOException If the thread is interrupted during the operation.
+   * @throws EOFException If the end of the response is reached before the bytes are skipped.
+   */
+  private void skipInternal() throws IOException {
+    while (bytesSkipped != bytesToSkip) {
+      int readLength = (int) Math.min(bytesToSkip - bytesSkipped, skipBuffer.length);
+      int read = connection.readBody(skipBuffer, 0, readLength);
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      if (read == -1) {
+        throw new EOFException();
+      }
+      bytesSkipped += read;
+      if (listener != null) {
+        listener.onBytesTransferred(read);
+      }
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of data and stores them into {@code buffer}, starting at
+   * index {@code offset}.
+   *
+   * @param buffer The buffer into which the read data should be stored.
+   * @param offset The start offset into {@code buffer} at which data should be written.
+   * @param readLength The maximum number of bytes to read.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+   *     range is reached.
+   * @throws IOException If an error occurs reading from the source.
+   */
+  private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+    readLength = bytesToRead == C.LENGTH_UNBOUNDED ? readLength
+        : (int) Math.min(readLength, bytesToRead - bytesRead);
+    if (readLength == 0) {
+      // We've read all of the requested data.
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    int read = connection.readBody(buffer, offset, readLength);
+    if (read == -1) {
+      if (bytesToRead != C.LENGTH_UNBOUNDED && bytesToRead != bytesRead) {
+        // The server closed the connection having not sent sufficient data.
+        throw new EOFException();
+      }
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    bytesRead += read;
+    if (listener != null) {
+      listener.onBytesTransferred(read);
+    }
+    return read;
+  }
+
+  /**
+   * Closes the current connection quietly, if there is one.
+   */
+  private void closeConnectionQuietly() {
+    if (connection != null) {
+      connection.close();
+      connection = null;
+    }
+  }
+
+  private static URL handleRedirect(URL originalUrl, String location) throws IOException {
+    if (location == null) {
+      throw new ProtocolException("Null location redirect");
+    }
+    URL url = new URL(originalUrl, location);
+    String protocol = url.getProtocol();
+    if (!"https".equals(protocol) && !"http".equals(protocol)) {
+      throw new ProtocolException("Unsupported protocol redirect: " + protocol);
+    }
+    return url;
+  }
+
+  private static String getOrigin(URL url) throws ProtocolException {
+    String protocol = url.getProtocol();
+    if (!"https".equals(protocol) && !"http".equals(protocol)) {
+      throw new ProtocolException("Unsupported protocol: " + protocol);
+    }
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return protocol + "://" + url.getHost() + ":" + port;
+  }
+
+  private static String getSocketHost(URL url) {
+    // Strip the brackets from IPv6 literals.
+    String host = url.getHost();
+    return host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1)
+        : host;
+  }
+
+  private static String getRequestKey(DataSpec dataSpec) {
+    return dataSpec.uri.toString() + " " + dataSpec.position + " " + dataSpec.length;
+  }
+
+  private static String getRequestKey(URL url, long position, long length) {
+    return url.toString() + " " + position + " " + length;
+  }
+
+  private static void appendHeader(StringBuilder request, String name, String value) {
+    request.append(name).append(": ").append(value).append("\r\n");
+  }
+
+  /**
+   * Reads a line terminated by CRLF or LF, without its terminator.
+   */
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = inputStream.read()) != '\n') {
+      if (b == -1) {
+        throw new EOFException();
+      }
+      if (line.length() == MAX_LINE_LENGTH) {
+        throw new ProtocolException("Line too long");
+      }
+      line.append((char) b);
+    }
+    int length = line.length();
+    if (length > 0 && line.charAt(length - 1) == '\r') {
+      line.setLength(length - 1);
+    }
+    return line.toString();
+  }
+
+  /**
+   * A connection to an origin, and the delimitation of the body of its current response.
+   */
+  private static final class Connection {
+
+    public final String origin;
+    public final Socket socket;
+    public final InputStream inputStream;
+    public final OutputStream outputStream;
+    /**
+     * The keys of the requests that have been written, but whose responses have not been read.
+     */
+    public final ArrayDeque<String> pipelinedRequestKeys;
+
+    public boolean reusable;
+    public long idleSinceMs;
+
+    public boolean chunked;
+    public boolean chunkStarted;
+    public long chunkBytesRemaining;
+    public long bodyBytesRemaining;
+    public boolean bodyEnded;
+
+    public Connection(String origin, Socket socket) throws IOException {
+      this.origin = origin;
+      this.socket = socket;
+      inputStream = new BufferedInputStream(socket.getInputStream());
+      outputStream = new BufferedOutputStream(socket.getOutputStream());
+      pipelinedRequestKeys = new ArrayDeque<>();
+      reusable = true;
+    }
+
+    /**
+     * Reads from the body of the current response.
+     *
+     * @return The number of bytes read, or -1 if the end of the body has been reached.
+     */
+    public int readBody(byte[] buffer, int offset, int readLength) throws IOException {
+      if (bodyEnded) {
+        return -1;
+      }
+      if (chunked) {
+        if (chunkBytesRemaining == 0 && !readChunkSize()) {
+          return -1;
+        }
+        readLength = (int) Math.min(readLength, chunkBytesRemaining);
+      } else if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+        readLength = (int) Math.min(readLength, bodyBytesRemaining);
+      }
+      int read = inputStream.read(buffer, offset, readLength);
+      if (read == -1) {
+        if (chunked || bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+          throw new EOFException();
+        }
+        bodyEnded = true;
+        return -1;
+      }
+      if (chunked) {
+        chunkBytesRemaining -= read;
+      } else if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+        bodyBytesRemaining -= read;
+        bodyEnded = bodyBytesRemaining == 0;
+      }
+      return read;
+    }
+
+    public void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Unexpected error while closing connection", e);
+      }
+    }
+
+    /**
+     * Reads the size of the next chunk of a chunked body, or the trailer if it is the last.
+     *
+     * @return Whether there is another chunk to read.
+     */
+    private boolean readChunkSize() throws IOException {
+      if (chunkStarted) {
+        // Consume the CRLF that terminates the previous chunk.
+        readLine(inputStream);
+      }
+      chunkStarted = true;
+      String line = readLine(inputStream);
+      int extensionIndex = line.indexOf(';');
+      if (extensionIndex != -1) {
+        line = line.substring(0, extensionIndex);
+      }
+      try {
+        chunkBytesRemaining = Long.parseLong(line.trim(), 16);
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected chunk size: " + line);
+      }
+      if (chunkBytesRemaining == 0) {
+        // Consume the trailer.
+        while (!readLine(inputStream).isEmpty()) {}
+        bodyEnded = true;
+        return false;
+      }
+      return true;
+    }
+
+  }
+
+}
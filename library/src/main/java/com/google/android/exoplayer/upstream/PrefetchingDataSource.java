@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link DataSource} that can start requesting data before it is opened, given a prediction of
+ * the requests that are about to be made.
+ */
+public interface PrefetchingDataSource extends DataSource {
+
+  /**
+   * Sets the requests that are predicted to follow the next call to {@link #open(DataSpec)}, in
+   * the order in which they are expected to be opened. Replaces any previous prediction.
+   * <p>
+   * A prediction is only a hint. The source may ignore it, and must behave correctly if it turns
+   * out to be wrong. May be called from any thread.
+   *
+   * @param dataSpecs The predicted requests. May be empty.
+   */
+  void setPredictedDataSpecs(DataSpec... dataSpecs);
+
+}
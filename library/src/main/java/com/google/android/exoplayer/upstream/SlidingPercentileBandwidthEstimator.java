@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+/**
+ * Estimates bandwidth as a percentile of a sliding window of transfer rates, each weighted by the
+ * square root of the number of bytes transferred. This is the estimator that
+ * {@link DefaultBandwidthMeter} has always used.
+ */
+public final class SlidingPercentileBandwidthEstimator implements BandwidthEstimator {
+
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  private final SlidingPercentile slidingPercentile;
+  private final float percentile;
+
+  private long bitrateEstimate;
+
+  public SlidingPercentileBandwidthEstimator() {
+    this(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT);
+  }
+
+  /**
+   * @param maxWeight The maximum total weight of the samples in the window.
+   */
+  public SlidingPercentileBandwidthEstimator(int maxWeight) {
+    this(maxWeight, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * @param maxWeight The maximum total weight of the samples in the window.
+   * @param percentile The percentile of the window to use as the estimate, in the range (0,1].
+   */
+  public SlidingPercentileBandwidthEstimator(int maxWeight, float percentile) {
+    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.percentile = percentile;
+    bitrateEstimate = BandwidthMeter.NO_ESTIMATE;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    float bitsPerSecond = (bytes * 8000) / elapsedMs;
+    slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+    float bandwidthEstimateFloat = slidingPercentile.getPercentile(percentile);
+    bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? BandwidthMeter.NO_ESTIMATE
+        : (long) bandwidthEstimateFloat;
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+}
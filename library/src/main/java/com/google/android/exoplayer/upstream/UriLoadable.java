@@ -63,7 +63,8 @@ public final class UriLoadable<T> implements Loadable {
   public UriLoadable(String url, UriDataSource uriDataSource, Parser<T> parser) {
     this.uriDataSource = uriDataSource;
     this.parser = parser;
-    dataSpec = new DataSpec(Uri.parse(url), DataSpec.FLAG_ALLOW_GZIP);
+    dataSpec = new DataSpec(Uri.parse(url),
+        DataSpec.FLAG_ALLOW_GZIP | DataSpec.FLAG_CACHE_IN_MEMORY);
   }
 
   /**
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSink;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDataSink.CacheDataSinkException;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes data into a cache on a dedicated disk thread, so that disk latency is not added to the
+ * time taken to read data from upstream when used with a
+ * {@link com.google.android.exoplayer.upstream.TeeDataSource}.
+ * <p>
+ * Written data is copied into a fixed ring of pooled buffers, which are handed to the disk thread
+ * as they fill. If the disk falls behind by more than the capacity of the ring then
+ * {@link #write(byte[], int, int)} blocks until a buffer is free. {@link #close()} blocks until
+ * all of the data has been written, synced and committed to the cache, so that the caller may
+ * release its lock on the cache span afterwards. Cache files are committed only once they have
+ * been synced, as for {@link CacheDataSink}.
+ * <p>
+ * A failure on the disk thread is reported by the next call to {@link #write(byte[], int, int)}
+ * or {@link #close()}. Data written after the failure is discarded.
+ */
+public final class AsyncCacheDataSink implements DataSink {
+
+  public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+  public static final int DEFAULT_BUFFER_COUNT = 16;
+
+  private static final long THREAD_KEEP_ALIVE_TIME_MS = 5000;
+
+  private static final class Chunk {
+
+    public final byte[] data;
+    public int length;
+
+    public Chunk(byte[] data) {
+      this.data = data;
+    }
+
+  }
+
+  /**
+   * Marks the end of the data written since the sink was opened.
+   */
+  private static final Chunk END_OF_STREAM = new Chunk(null);
+
+  private final Cache cache;
+  private final long maxCacheFileSize;
+  private final ArrayBlockingQueue<Chunk> freeChunks;
+  private final ArrayBlockingQueue<Chunk> pendingChunks;
+  private final ThreadPoolExecutor diskExecutor;
+
+  private Chunk currentChunk;
+  private CountDownLatch writeFinished;
+  private volatile IOException writeException;
+
+  // Accessed only on the disk thread.
+  private DataSpec dataSpec;
+  private boolean writeFailed;
+  private File file;
+  private FileOutputStream outputStream;
+  private long outputStreamBytesWritten;
+  private long dataSpecBytesWritten;
+
+  /**
+   * @param cache The cache into which data should be written.
+   * @param maxCacheFileSize The maximum size of a cache file, in bytes. If the sink is opened for
+   *    a {@link DataSpec} whose size exceeds this value, then the data will be fragmented into
+   *    multiple cache files.
+   */
+  public AsyncCacheDataSink(Cache cache, long maxCacheFileSize) {
+    this(cache, maxCacheFileSize, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   * @param cache The cache into which data should be written.
+   * @param maxCacheFileSize The maximum size of a cache file, in bytes. If the sink is opened for
+   *    a {@link DataSpec} whose size exceeds this value, then the data will be fragmented into
+   *    multiple cache files.
+   * @param bufferSize The size of each pooled buffer, in bytes.
+   * @param bufferCount The number of pooled buffers. At most {@code bufferSize * bufferCount}
+   *    bytes are held in memory awaiting the disk thread.
+   */
+  public AsyncCacheDataSink(Cache cache, long maxCacheFileSize, int bufferSize, int bufferCount) {
+    Assertions.checkArgument(bufferSize > 0 && bufferCount > 0);
+    this.cache = Assertions.checkNotNull(cache);
+    this.maxCacheFileSize = maxCacheFileSize;
+    freeChunks = new ArrayBlockingQueue<>(bufferCount);
+    for (int i = 0; i < bufferCount; i++) {
+      freeChunks.add(new Chunk(new byte[bufferSize]));
+    }
+    // The end of stream marker is queued in addition to the buffers.
+    pendingChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+    diskExecutor = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE_TIME_MS, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "AsyncCacheDataSink");
+          }
+        });
+    // Release the thread while the sink is idle.
+    diskExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public DataSink open(final DataSpec dataSpec) throws CacheDataSinkException {
+    Assertions.checkState(dataSpec.length != C.LENGTH_UNBOUNDED);
+    Assertions.checkState(writeFinished == null);
+    writeException = null;
+    final CountDownLatch writeFinished = new CountDownLatch(1);
+    this.writeFinished = writeFinished;
+    diskExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeChunks(dataSpec);
+        } finally {
+          writeFinished.countDown();
+        }
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    throwIfWriteFailed();
+    try {
+      int bytesCopied = 0;
+      while (bytesCopied < length) {
+        if (currentChunk == null) {
+          currentChunk = freeChunks.take();
+          currentChunk.length = 0;
+        }
+        int bytesToCopy = Math.min(length - bytesCopied,
+            currentChunk.data.length - currentChunk.length);
+        System.arraycopy(buffer, offset + bytesCopied, currentChunk.data, currentChunk.length,
+            bytesToCopy);
+        currentChunk.length += bytesToCopy;
+        bytesCopied += bytesToCopy;
+        if (currentChunk.length == currentChunk.data.length) {
+          pendingChunks.add(currentChunk);
+          currentChunk = null;
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+
+  @Override
+  public void close() throws CacheDataSinkException {
+    if (writeFinished == null) {
+      return;
+    }
+    if (currentChunk != null) {
+      pendingChunks.add(currentChunk);
+      currentChunk = null;
+    }
+    pendingChunks.add(END_OF_STREAM);
+    // The caller's lock on the cache span must be held until the data has been committed, so wait
+    // even if interrupted.
+    boolean interrupted = false;
+    while (true) {
+      try {
+        writeFinished.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    writeFinished = null;
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    throwIfWriteFailed();
+  }
+
+  private void throwIfWriteFailed() throws CacheDataSinkException {
+    IOException exception = writeException;
+    if (exception != null) {
+      writeException = null;
+      throw new CacheDataSinkException(exception);
+    }
+  }
+
+  // Disk thread.
+
+  private void writeChunks(DataSpec dataSpec) {
+    this.dataSpec = dataSpec;
+    dataSpecBytesWritten = 0;
+    // Unlike writeException, which is cleared when the failure is reported, this remains set until
+    // the sink is next opened, so that no data written after a failure reaches the cache.
+    writeFailed = false;
+    try {
+      while (true) {
+        Chunk chunk;
+        try {
+          chunk = pendingChunks.take();
+        } catch (InterruptedException e) {
+          // The disk thread is never interrupted.
+          continue;
+        }
+        if (chunk == END_OF_STREAM) {
+          break;
+        }
+        if (!writeFailed) {
+          try {
+            writeChunk(chunk);
+          } catch (IOException e) {
+            writeFailed = true;
+            writeException = e;
+            discardCurrentOutputStream();
+          }
+        }
+        freeChunks.add(chunk);
+      }
+      if (!writeFailed) {
+        try {
+          closeCurrentOutputStream();
+        } catch (IOException e) {
+          writeFailed = true;
+          writeException = e;
+        }
+      }
+    } finally {
+      this.dataSpec = null;
+    }
+  }
+
+  private void writeChunk(Chunk chunk) throws IOException {
+    int bytesWritten = 0;
+    while (bytesWritten < chunk.length) {
+      if (outputStream == null) {
+        openNextOutputStream();
+      } else if (outputStreamBytesWritten == maxCacheFileSize) {
+        closeCurrentOutputStream();
+        openNextOutputStream();
+      }
+      int bytesToWrite = (int) Math.min(chunk.length - bytesWritten,
+          maxCacheFileSize - outputStreamBytesWritten);
+      outputStream.write(chunk.data, bytesWritten, bytesToWrite);
+      bytesWritten += bytesToWrite;
+      outputStreamBytesWritten += bytesToWrite;
+      dataSpecBytesWritten += bytesToWrite;
+    }
+  }
+
+  private void openNextOutputStream() throws IOException {
+    file = cache.startFile(dataSpec.key, dataSpec.absoluteStreamPosition + dataSpecBytesWritten,
+        Math.min(dataSpec.length - dataSpecBytesWritten, maxCacheFileSize));
+    outputStream = new FileOutputStream(file);
+    outputStreamBytesWritten = 0;
+  }
+
+  private void closeCurrentOutputStream() throws IOException {
+    if (outputStream == null) {
+      return;
+    }
+
+    boolean success = false;
+    try {
+      outputStream.flush();
+      outputStream.getFD().sync();
+      success = true;
+    } finally {
+      Util.closeQuietly(outputStream);
+      if (success) {
+        cache.commitFile(file);
+      } else {
+        file.delete();
+      }
+      outputStream = null;
+      file = null;
+    }
+  }
+
+  private void discardCurrentOutputStream() {
+    if (outputStream != null) {
+      Util.closeQuietly(outputStream);
+      outputStream = null;
+    }
+    if (file != null) {
+      file.delete();
+      file = null;
+    }
+  }
+
+}
@@ -58,6 +58,7 @@ public final class CacheDataSource implements DataSource {
   private final DataSource cacheWriteDataSource;
   private final DataSource upstreamDataSource;
   private final EventListener eventListener;
+  private final CacheMetrics metrics;
 
   private final boolean blockOnCache;
   private final boolean ignoreCacheOnError;
@@ -99,8 +100,12 @@ public final class CacheDataSource implements DataSource {
    *
    * @param cache The cache.
    * @param upstream A {@link DataSource} for reading data not in the cache.
-   * @param cacheReadDataSource A {@link DataSource} for reading data from the cache.
-   * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache.
+   * @param cacheReadDataSource A {@link DataSource} for reading data from the cache. A
+   *     {@link com.google.android.exoplayer.upstream.MappedFileDataSource} keeps recently read
+   *     cache files mapped, so that replaying or seeking within cached data is cheap.
+   * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache. An
+   *     {@link AsyncCacheDataSink} writes on a separate thread, so that disk latency does not slow
+   *     reads from upstream.
    * @param blockOnCache A flag indicating whether we will block reads if the cache key is locked.
    *     If this flag is false, then we will read from upstream if the cache key is locked.
    * @param ignoreCacheOnError Whether the cache is bypassed following any cache related error. If
@@ -111,6 +116,28 @@ public final class CacheDataSource implements DataSource {
   public CacheDataSource(Cache cache, DataSource upstream, DataSource cacheReadDataSource,
       DataSink cacheWriteDataSink, boolean blockOnCache, boolean ignoreCacheOnError,
       EventListener eventListener) {
+    this(cache, upstream, cacheReadDataSource, cacheWriteDataSink, blockOnCache,
+        ignoreCacheOnError, eventListener, null);
+  }
+
+  /**
+   * Constructs an instance with arbitrary {@link DataSource} and {@link DataSink} instances for
+   * reading and writing the cache, which records its hits and misses.
+   *
+   * @param cache The cache.
+   * @param upstream A {@link DataSource} for reading data not in the cache.
+   * @param cacheReadDataSource A {@link DataSource} for reading data from the cache.
+   * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache.
+   * @param blockOnCache A flag indicating whether we will block reads if the cache key is locked.
+   *     If this flag is false, then we will read from upstream if the cache key is locked.
+   * @param ignoreCacheOnError Whether the cache is bypassed following any cache related error.
+   * @param eventListener An optional {@link EventListener} to receive events.
+   * @param metrics Optional {@link CacheMetrics} in which to record hits and misses. Each source
+   *     opened to read part of a request counts as one hit or miss.
+   */
+  public CacheDataSource(Cache cache, DataSource upstream, DataSource cacheReadDataSource,
+      DataSink cacheWriteDataSink, boolean blockOnCache, boolean ignoreCacheOnError,
+      EventListener eventListener, CacheMetrics metrics) {
     this.cache = cache;
     this.cacheReadDataSource = cacheReadDataSource;
     this.blockOnCache = blockOnCache;
@@ -122,6 +149,7 @@ public final class CacheDataSource implements DataSource {
       this.cacheWriteDataSource = null;
     }
     this.eventListener = eventListener;
+    this.metrics = metrics;
   }
 
   @Override
@@ -148,6 +176,9 @@ public final class CacheDataSource implements DataSource {
         if (currentDataSource == cacheReadDataSource) {
           totalCachedBytesRead += bytesRead;
         }
+        if (metrics != null) {
+          metrics.onBytesRead(currentDataSource == cacheReadDataSource, bytesRead);
+        }
         readPosition += bytesRead;
         if (bytesRemaining != C.LENGTH_UNBOUNDED) {
           bytesRemaining -= bytesRead;
@@ -222,6 +253,13 @@ public final class CacheDataSource implements DataSource {
           : upstreamDataSource;
     }
     currentDataSource.open(dataSpec);
+    if (metrics != null) {
+      if (currentDataSource == cacheReadDataSource) {
+        metrics.onHit();
+      } else {
+        metrics.onMiss();
+      }
+    }
   }
 
   private void closeCurrentSource() throws IOException {
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the hits, misses and evictions of a cache, so that eviction policies can be compared by
+ * the fraction of requests and bytes that they serve from the cache. Hits and misses are recorded
+ * by {@link CacheDataSource}, and evictions by {@link ScoringCacheEvictor}. An instance may be
+ * shared by several data sources, and is safe for concurrent use.
+ */
+public final class CacheMetrics {
+
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private final AtomicLong cachedBytesRead;
+  private final AtomicLong upstreamBytesRead;
+  private final AtomicLong evictionCount;
+  private final AtomicLong evictedBytes;
+
+  public CacheMetrics() {
+    hitCount = new AtomicLong();
+    missCount = new AtomicLong();
+    cachedBytesRead = new AtomicLong();
+    upstreamBytesRead = new AtomicLong();
+    evictionCount = new AtomicLong();
+    evictedBytes = new AtomicLong();
+  }
+
+  /**
+   * Returns the number of reads that were served from the cache.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of reads that were served from upstream.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of bytes read from the cache.
+   */
+  public long getCachedBytesRead() {
+    return cachedBytesRead.get();
+  }
+
+  /**
+   * Returns the number of bytes read from upstream.
+   */
+  public long getUpstreamBytesRead() {
+    return upstreamBytesRead.get();
+  }
+
+  /**
+   * Returns the number of spans that have been evicted.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Returns the number of bytes that have been evicted.
+   */
+  public long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  /**
+   * Returns the fraction of reads that were served from the cache, or {@link Double#NaN} if there
+   * have been no reads.
+   */
+  public double getHitRatio() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total == 0 ? Double.NaN : (double) hits / total;
+  }
+
+  /**
+   * Returns the fraction of bytes that were read from the cache, or {@link Double#NaN} if no bytes
+   * have been read.
+   */
+  public double getByteHitRatio() {
+    long cachedBytes = cachedBytesRead.get();
+    long total = cachedBytes + upstreamBytesRead.get();
+    return total == 0 ? Double.NaN : (double) cachedBytes / total;
+  }
+
+  /**
+   * Resets all of the counts to zero.
+   */
+  public void reset() {
+    hitCount.set(0);
+    missCount.set(0);
+    cachedBytesRead.set(0);
+    upstreamBytesRead.set(0);
+    evictionCount.set(0);
+    evictedBytes.set(0);
+  }
+
+  /* package */ void onHit() {
+    hitCount.incrementAndGet();
+  }
+
+  /* package */ void onMiss() {
+    missCount.incrementAndGet();
+  }
+
+  /* package */ void onBytesRead(boolean fromCache, int bytesRead) {
+    (fromCache ? cachedBytesRead : upstreamBytesRead).addAndGet(bytesRead);
+  }
+
+  /* package */ void onEviction(long bytes) {
+    evictionCount.incrementAndGet();
+    evictedBytes.addAndGet(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return "CacheMetrics[" + getHitCount() + ", " + getMissCount() + ", " + getCachedBytesRead()
+        + ", " + getUpstreamBytesRead() + ", " + getEvictionCount() + ", " + getEvictedBytes()
+        + "]";
+  }
+
+}
@@ -92,6 +92,14 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return new CacheSpan(key, position, file.length(), true, lastAccessTimestamp, file);
   }
 
+  /**
+   * Creates a cache span from a {@link CachedSpanIndex} entry, without accessing the file.
+   */
+  /* package */ static CacheSpan createCacheEntry(String key, long position, long length,
+      long lastAccessTimestamp, File file) {
+    return new CacheSpan(key, position, length, true, lastAccessTimestamp, file);
+  }
+
   // Visible for testing.
   CacheSpan(String key, long position, long length, boolean isCached,
       long lastAccessTimestamp, File file) {
@@ -122,6 +130,25 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return CacheSpan.createCacheEntry(key, position, now, newCacheFile);
   }
 
+  /**
+   * Updates the last access time of this cache span without renaming its file. The updated time
+   * is persisted by the cache's {@link CachedSpanIndex}.
+   *
+   * @return A {@link CacheSpan} with the updated last access time.
+   */
+  /* package */ CacheSpan touchInIndex() {
+    return new CacheSpan(key, position, length, true, System.currentTimeMillis(), file);
+  }
+
+  /**
+   * Returns the timestamp in the name of the file underlying this cache span, which is the last
+   * access time of the span when the file was last renamed.
+   */
+  /* package */ long getFileTimestamp() {
+    Matcher matcher = cacheFilePattern.matcher(file.getName());
+    return matcher.matches() ? Long.parseLong(matcher.group(3)) : lastAccessTimestamp;
+  }
+
   @Override
   public int compareTo(CacheSpan another) {
     if (!key.equals(another.key)) {
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A binary index of the spans held by a {@link SimpleCache}, stored in the cache directory so that
+ * the cache can be initialized without listing and parsing every file in the directory.
+ * <p>
+ * The index is read with a single sequential read, and is replaced atomically by writing a
+ * temporary file and renaming it over the previous index. Each entry holds the key, position,
+ * length and last access timestamp of a span, and the timestamp in the name of its file. The
+ * index ends with a CRC32 of its contents, so that a truncated or corrupted index is detected.
+ */
+/* package */ final class CachedSpanIndex {
+
+  /**
+   * The name of the index file.
+   */
+  public static final String FILE_NAME = "cached_spans.idx";
+
+  private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+  private static final int MAGIC = 0x45584F49;
+  private static final int VERSION = 1;
+
+  private final File cacheDir;
+  private final File file;
+  private final File tempFile;
+
+  /**
+   * @param cacheDir The cache directory.
+   */
+  public CachedSpanIndex(File cacheDir) {
+    this.cacheDir = cacheDir;
+    file = new File(cacheDir, FILE_NAME);
+    tempFile = new File(cacheDir, TEMP_FILE_NAME);
+  }
+
+  /**
+   * Returns whether a file in the cache directory belongs to the index.
+   */
+  public static boolean isIndexFile(File file) {
+    String name = file.getName();
+    return FILE_NAME.equals(name) || TEMP_FILE_NAME.equals(name);
+  }
+
+  /**
+   * Reads the index.
+   *
+   * @return The indexed spans, or null if the index does not exist or could not be read.
+   */
+  public List<CacheSpan> read() {
+    byte[] data;
+    RandomAccessFile input = null;
+    try {
+      input = new RandomAccessFile(file, "r");
+      long length = input.length();
+      if (length < 20 || length > Integer.MAX_VALUE) {
+        return null;
+      }
+      data = new byte[(int) length];
+      input.readFully(data);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      closeQuietly(input);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length - 8);
+    DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data));
+    try {
+      if (dataInput.readInt() != MAGIC || dataInput.readInt() != VERSION) {
+        return null;
+      }
+      int count = dataInput.readInt();
+      if (count < 0) {
+        return null;
+      }
+      ArrayList<CacheSpan> spans = new ArrayList<>(Math.min(count, data.length / 36));
+      for (int i = 0; i < count; i++) {
+        String key = dataInput.readUTF();
+        long position = dataInput.readLong();
+        long length = dataInput.readLong();
+        long lastAccessTimestamp = dataInput.readLong();
+        long fileTimestamp = dataInput.readLong();
+        spans.add(CacheSpan.createCacheEntry(key, position, length, lastAccessTimestamp,
+            CacheSpan.getCacheFileName(cacheDir, key, position, fileTimestamp)));
+      }
+      if (dataInput.readLong() != crc.getValue() || dataInput.available() != 0) {
+        return null;
+      }
+      return spans;
+    } catch (IOException e) {
+      // The index is truncated.
+      return null;
+    }
+  }
+
+  /**
+   * Atomically replaces the index.
+   *
+   * @param spans The spans to index.
+   * @throws IOException If an error occurs writing the index.
+   */
+  public void write(Collection<CacheSpan> spans) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + spans.size() * 48);
+    DataOutputStream dataOutput = new DataOutputStream(bytes);
+    dataOutput.writeInt(MAGIC);
+    dataOutput.writeInt(VERSION);
+    dataOutput.writeInt(spans.size());
+    for (CacheSpan span : spans) {
+      dataOutput.writeUTF(span.key);
+      dataOutput.writeLong(span.position);
+      dataOutput.writeLong(span.length);
+      dataOutput.writeLong(span.lastAccessTimestamp);
+      dataOutput.writeLong(span.getFileTimestamp());
+    }
+    dataOutput.flush();
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    dataOutput.writeLong(crc.getValue());
+    dataOutput.flush();
+
+    FileOutputStream output = new FileOutputStream(tempFile);
+    try {
+      bytes.writeTo(output);
+      output.getFD().sync();
+    } finally {
+      output.close();
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("Failed to rename " + tempFile + " to " + file);
+    }
+  }
+
+  /**
+   * Deletes the index.
+   */
+  public void delete() {
+    file.delete();
+    tempFile.delete();
+  }
+
+  private static void closeQuietly(RandomAccessFile file) {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A byte-budgeted, least recently used store of complete responses, for use by
+ * {@link MemoryCacheDataSource}. A single instance may be shared by several data sources, so that
+ * they share the same budget.
+ * <p>
+ * Responses may optionally be stored deflated. Manifests typically compress to a small fraction of
+ * their size, which allows many more of them to be held for the same budget at the cost of
+ * inflating them on each hit. Responses that do not compress well, such as most media data, are
+ * stored as they are.
+ */
+public final class MemoryCache {
+
+  /**
+   * The default maximum size of a single response, in bytes.
+   */
+  public static final int DEFAULT_MAX_ENTRY_BYTES = 512 * 1024;
+
+  /**
+   * A cached response.
+   */
+  /* package */ static final class Entry {
+
+    /**
+     * The stored data, which is deflated if {@link #compressed} is true.
+     */
+    public final byte[] data;
+    /**
+     * The length of the response, in bytes.
+     */
+    public final int length;
+    public final boolean compressed;
+    /**
+     * The URI from which the response was read, after any redirection.
+     */
+    public final String uri;
+    /**
+     * The value of the response's ETag header, or null.
+     */
+    public final String etag;
+    /**
+     * The value of the response's Last-Modified header, or null.
+     */
+    public final String lastModified;
+
+    public Entry(byte[] data, int length, boolean compressed, String uri, String etag,
+        String lastModified) {
+      this.data = data;
+      this.length = length;
+      this.compressed = compressed;
+      this.uri = uri;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+  }
+
+  private final long maxBytes;
+  private final int maxEntryBytes;
+  private final boolean compress;
+  private final LinkedHashMap<String, Entry> entries;
+
+  private long currentBytes;
+
+  /**
+   * @param maxBytes The maximum number of bytes to store.
+   */
+  public MemoryCache(long maxBytes) {
+    this(maxBytes, DEFAULT_MAX_ENTRY_BYTES, true);
+  }
+
+  /**
+   * @param maxBytes The maximum number of bytes to store.
+   * @param maxEntryBytes The maximum size of a single response, in bytes. Larger responses are not
+   *     stored.
+   * @param compress Whether responses are stored deflated when this reduces their size.
+   */
+  public MemoryCache(long maxBytes, int maxEntryBytes, boolean compress) {
+    Assertions.checkArgument(maxBytes > 0 && maxEntryBytes > 0);
+    this.maxBytes = maxBytes;
+    this.maxEntryBytes = maxEntryBytes;
+    this.compress = compress;
+    entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns the maximum size of a single response, in bytes.
+   */
+  public int getMaxEntryBytes() {
+    return maxEntryBytes;
+  }
+
+  /**
+   * Returns the number of bytes currently stored.
+   */
+  public synchronized long getSize() {
+    return currentBytes;
+  }
+
+  /**
+   * Returns the number of responses currently stored.
+   */
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /**
+   * Removes all responses.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    currentBytes = 0;
+  }
+
+  /* package */ synchronized Entry get(String key) {
+    return entries.get(key);
+  }
+
+  /* package */ void put(String key, byte[] data, int length, String uri, String etag,
+      String lastModified) {
+    if (length > maxEntryBytes) {
+      return;
+    }
+    // Compress outside of the lock, so that other sources are not blocked.
+    byte[] compressedData = compress ? deflate(data, length) : null;
+    Entry entry = compressedData != null
+        ? new Entry(compressedData, length, true, uri, etag, lastModified)
+        : new Entry(data.length == length ? data : Arrays.copyOf(data, length), length, false, uri,
+            etag, lastModified);
+    synchronized (this) {
+      Entry previousEntry = entries.put(key, entry);
+      if (previousEntry != null) {
+        currentBytes -= previousEntry.data.length;
+      }
+      currentBytes += entry.data.length;
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (currentBytes > maxBytes && iterator.hasNext()) {
+        currentBytes -= iterator.next().getValue().data.length;
+        iterator.remove();
+      }
+    }
+  }
+
+  /* package */ synchronized void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      currentBytes -= entry.data.length;
+    }
+  }
+
+  /**
+   * Returns the uncompressed data of an entry.
+   */
+  /* package */ static byte[] getData(Entry entry) {
+    if (!entry.compressed) {
+      return entry.data;
+    }
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(entry.data);
+      byte[] data = new byte[entry.length];
+      int bytesInflated = 0;
+      while (bytesInflated < data.length && !inflater.finished()) {
+        bytesInflated += inflater.inflate(data, bytesInflated, data.length - bytesInflated);
+      }
+      Assertions.checkState(bytesInflated == data.length);
+      return data;
+    } catch (DataFormatException e) {
+      // Data deflated by this class is always well formed.
+      throw new IllegalStateException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Deflates data, returning null if doing so does not save at least an eighth of its size.
+   */
+  private static byte[] deflate(byte[] data, int length) {
+    int maxCompressedLength = length - length / 8;
+    if (maxCompressedLength <= 0) {
+      return null;
+    }
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+      // Stop as soon as the output exceeds the limit, rather than deflating incompressible data in
+      // full.
+      byte[] output = new byte[maxCompressedLength + 1];
+      int compressedLength = 0;
+      while (!deflater.finished() && compressedLength < output.length) {
+        compressedLength += deflater.deflate(output, compressedLength,
+            output.length - compressedLength);
+      }
+      return deflater.finished() && compressedLength <= maxCompressedLength
+          ? Arrays.copyOf(output, compressedLength) : null;
+    } finally {
+      deflater.end();
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link UriDataSource} that holds complete responses in a {@link MemoryCache}, in front of an
+ * upstream {@link DataSource} that may itself read from disk or the network. Only requests with
+ * {@link DataSpec#FLAG_CACHE_IN_MEMORY} set are cached. Other requests are passed directly to
+ * upstream.
+ * <p>
+ * Responses are keyed by the {@link DataSpec#key} if set or the {@link DataSpec#uri} otherwise,
+ * together with the requested range. A response is stored only once it has been read in full.
+ * <p>
+ * If revalidation is enabled then a cached response is served only once upstream has confirmed
+ * that it has not changed, using a conditional request with the response's ETag or Last-Modified
+ * date. This requires upstream to be an {@link HttpDataSource}. Revalidation should be enabled for
+ * sources used to load data that may change, such as live manifests, and disabled for sources used
+ * to load data that does not, such as initialization segments.
+ */
+public final class MemoryCacheDataSource implements UriDataSource {
+
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+
+  private static final int INITIAL_CAPTURE_BUFFER_SIZE = 4096;
+
+  private final DataSource upstream;
+  private final MemoryCache cache;
+  private final boolean revalidate;
+
+  private boolean readingUpstream;
+  private String uri;
+
+  // Set when reading from the cache.
+  private byte[] cachedData;
+  private int readPosition;
+  private int bytesRemaining;
+
+  // Set when capturing a response read from upstream.
+  private String cacheKey;
+  private byte[] captureBuffer;
+  private int captureLength;
+  private long upstreamBytesRemaining;
+  private boolean captureComplete;
+  private String etag;
+  private String lastModified;
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param cache The cache in which responses are held.
+   * @param revalidate Whether cached responses must be revalidated with upstream before they are
+   *     served.
+   */
+  public MemoryCacheDataSource(DataSource upstream, MemoryCache cache, boolean revalidate) {
+    this.upstream = Assertions.checkNotNull(upstream);
+    this.cache = Assertions.checkNotNull(cache);
+    this.revalidate = revalidate;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    if ((dataSpec.flags & DataSpec.FLAG_CACHE_IN_MEMORY) == 0
+        || dataSpec.length > cache.getMaxEntryBytes()) {
+      return openUpstream(dataSpec, null);
+    }
+
+    String key = getCacheKey(dataSpec);
+    MemoryCache.Entry entry = cache.get(key);
+    if (entry != null && revalidate) {
+      entry = revalidate(dataSpec, key, entry);
+      if (readingUpstream) {
+        // The response has changed, and is being read from upstream.
+        return upstreamBytesRemaining;
+      }
+    }
+    if (entry == null) {
+      return openUpstream(dataSpec, key);
+    }
+
+    uri = entry.uri;
+    cachedData = MemoryCache.getData(entry);
+    readPosition = 0;
+    bytesRemaining = entry.length;
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readingUpstream) {
+      int bytesRead = upstream.read(buffer, offset, readLength);
+      if (captureBuffer != null) {
+        capture(buffer, offset, bytesRead);
+      }
+      return bytesRead;
+    }
+    if (bytesRemaining == 0) {
+      return -1;
+    }
+    int bytesToRead = Math.min(readLength, bytesRemaining);
+    System.arraycopy(cachedData, readPosition, buffer, offset, bytesToRead);
+    readPosition += bytesToRead;
+    bytesRemaining -= bytesToRead;
+    return bytesToRead;
+  }
+
+  @Override
+  public String getUri() {
+    if (readingUpstream) {
+      return upstream instanceof UriDataSource ? ((UriDataSource) upstream).getUri() : uri;
+    }
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!readingUpstream) {
+      uri = null;
+      cachedData = null;
+      return;
+    }
+    try {
+      if (captureBuffer != null && !captureComplete) {
+        // The reader may stop before the end of the response, for example when parsing a manifest.
+        // Read the remainder so that the response can be cached.
+        drainUpstream();
+      }
+      if (captureBuffer != null && captureComplete) {
+        cache.put(cacheKey, captureBuffer, captureLength, getUri(), etag, lastModified);
+      }
+    } finally {
+      readingUpstream = false;
+      uri = null;
+      cacheKey = null;
+      captureBuffer = null;
+      etag = null;
+      lastModified = null;
+      upstream.close();
+    }
+  }
+
+  /**
+   * Revalidates a cached entry with upstream.
+   *
+   * @return The entry if it has not changed, or null if it cannot be revalidated. If the response
+   *     has changed then upstream is opened to read the new response, and null is returned.
+   */
+  private MemoryCache.Entry revalidate(DataSpec dataSpec, String key, MemoryCache.Entry entry)
+      throws IOException {
+    if (!(upstream instanceof HttpDataSource)
+        || (entry.etag == null && entry.lastModified == null)) {
+      return null;
+    }
+    HttpDataSource httpUpstream = (HttpDataSource) upstream;
+    if (entry.etag != null) {
+      httpUpstream.setRequestProperty(IF_NONE_MATCH, entry.etag);
+    }
+    if (entry.lastModified != null) {
+      httpUpstream.setRequestProperty(IF_MODIFIED_SINCE, entry.lastModified);
+    }
+    try {
+      openUpstream(dataSpec, key);
+      return null;
+    } catch (InvalidResponseCodeException e) {
+      if (e.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        readingUpstream = false;
+        captureBuffer = null;
+        upstream.close();
+        return entry;
+      }
+      cache.remove(key);
+      throw e;
+    } finally {
+      httpUpstream.clearRequestProperty(IF_NONE_MATCH);
+      httpUpstream.clearRequestProperty(IF_MODIFIED_SINCE);
+    }
+  }
+
+  /**
+   * Opens upstream.
+   *
+   * @param dataSpec The request.
+   * @param key The key under which the response should be cached, or null if it should not be.
+   * @return The value returned by upstream.
+   */
+  private long openUpstream(DataSpec dataSpec, String key) throws IOException {
+    uri = dataSpec.uri.toString();
+    // Set before opening, so that upstream is closed even if it fails to open.
+    readingUpstream = true;
+    captureBuffer = null;
+    long length = upstream.open(dataSpec);
+    upstreamBytesRemaining = length;
+    captureComplete = false;
+    if (key != null && (length == C.LENGTH_UNBOUNDED || length <= cache.getMaxEntryBytes())) {
+      cacheKey = key;
+      captureBuffer = new byte[length == C.LENGTH_UNBOUNDED ? INITIAL_CAPTURE_BUFFER_SIZE
+          : Math.max(1, (int) length)];
+      captureLength = 0;
+      if (upstream instanceof HttpDataSource) {
+        Map<String, List<String>> headers = ((HttpDataSource) upstream).getResponseHeaders();
+        etag = getHeader(headers, ETAG);
+        lastModified = getHeader(headers, LAST_MODIFIED);
+      }
+    }
+    return length;
+  }
+
+  private void capture(byte[] buffer, int offset, int bytesRead) {
+    if (bytesRead == -1) {
+      captureComplete = true;
+      return;
+    }
+    if (captureLength + bytesRead > cache.getMaxEntryBytes()) {
+      // The response is too large to cache.
+      captureBuffer = null;
+      return;
+    }
+    if (captureLength + bytesRead > captureBuffer.length) {
+      captureBuffer = Arrays.copyOf(captureBuffer,
+          Math.max(captureLength + bytesRead, captureBuffer.length * 2));
+    }
+    System.arraycopy(buffer, offset, captureBuffer, captureLength, bytesRead);
+    captureLength += bytesRead;
+    if (upstreamBytesRemaining != C.LENGTH_UNBOUNDED) {
+      upstreamBytesRemaining -= bytesRead;
+      captureComplete = upstreamBytesRemaining == 0;
+    }
+  }
+
+  private void drainUpstream() {
+    byte[] scratch = new byte[INITIAL_CAPTURE_BUFFER_SIZE];
+    try {
+      while (captureBuffer != null && !captureComplete) {
+        capture(scratch, 0, upstream.read(scratch, 0, scratch.length));
+      }
+    } catch (IOException e) {
+      // The response is incomplete, and will not be cached.
+      captureBuffer = null;
+    }
+  }
+
+  private static String getCacheKey(DataSpec dataSpec) {
+    return (dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString()) + "@"
+        + dataSpec.absoluteStreamPosition + "+" + dataSpec.length;
+  }
+
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    if (headers == null) {
+      return null;
+    }
+    // Header names are case insensitive.
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the cache files that a {@link Scorer} considers least valuable first. Spans with equal
+ * scores are evicted least recently used first, so a scorer that assigns every span the same
+ * score behaves like {@link LeastRecentlyUsedCacheEvictor}.
+ * <p>
+ * Scores are computed when an eviction is required rather than when spans are added, so that they
+ * may depend on state that changes over time, such as the playback position. Each eviction
+ * therefore takes time linear in the number of cached spans.
+ */
+public final class ScoringCacheEvictor implements CacheEvictor {
+
+  /**
+   * Assigns a retention value to cached spans.
+   */
+  public interface Scorer {
+
+    /**
+     * Scores a cached span. Spans with lower scores are evicted first.
+     *
+     * @param span The span.
+     * @param hitCount The number of times the span has been read since it was added to the cache,
+     *     or since the evictor was created if the span was already cached.
+     * @param nowMs The current time, in the same time base as
+     *     {@link CacheSpan#lastAccessTimestamp}.
+     * @return The score.
+     */
+    double score(CacheSpan span, int hitCount, long nowMs);
+
+  }
+
+  /**
+   * Provides information about the media segments that cached spans belong to.
+   */
+  public interface SegmentResolver {
+
+    /**
+     * Returns the bitrate of the representation that a span belongs to, or
+     * {@link com.google.android.exoplayer.chunk.Format#NO_VALUE} if it is not known.
+     */
+    int getBitrate(CacheSpan span);
+
+    /**
+     * Returns the distance in media time between a span and the current playback position, or
+     * {@link C#UNKNOWN_TIME_US} if it is not known.
+     */
+    long getDistanceFromPlaybackPositionUs(CacheSpan span);
+
+  }
+
+  /**
+   * Scores spans by the time at which they were last accessed.
+   */
+  public static final class RecencyScorer implements Scorer {
+
+    @Override
+    public double score(CacheSpan span, int hitCount, long nowMs) {
+      return span.lastAccessTimestamp;
+    }
+
+  }
+
+  /**
+   * Scores spans by how often they have been read, with each read's contribution decaying
+   * exponentially with the time since the span was last accessed. Spans that were read often but
+   * not recently are eventually evicted in favour of spans that are being read now.
+   */
+  public static final class FrequencyScorer implements Scorer {
+
+    public static final long DEFAULT_HALF_LIFE_MS = 10 * 60 * 1000;
+
+    private final double halfLifeMs;
+
+    public FrequencyScorer() {
+      this(DEFAULT_HALF_LIFE_MS);
+    }
+
+    /**
+     * @param halfLifeMs The time over which the contribution of past reads halves.
+     */
+    public FrequencyScorer(long halfLifeMs) {
+      Assertions.checkArgument(halfLifeMs > 0);
+      this.halfLifeMs = halfLifeMs;
+    }
+
+    @Override
+    public double score(CacheSpan span, int hitCount, long nowMs) {
+      long ageMs = Math.max(0, nowMs - span.lastAccessTimestamp);
+      return (hitCount + 1) * Math.pow(0.5, ageMs / halfLifeMs);
+    }
+
+  }
+
+  /**
+   * Scores spans by the bitrate of their representation, so that segments of expensive
+   * representations are evicted before those of cheap ones. Spans of unknown bitrate, such as
+   * manifests, are evicted last.
+   */
+  public static final class BitrateScorer implements Scorer {
+
+    private final SegmentResolver segmentResolver;
+
+    /**
+     * @param segmentResolver Provides the bitrate of each span.
+     */
+    public BitrateScorer(SegmentResolver segmentResolver) {
+      this.segmentResolver = segmentResolver;
+    }
+
+    @Override
+    public double score(CacheSpan span, int hitCount, long nowMs) {
+      int bitrate = segmentResolver.getBitrate(span);
+      return bitrate <= 0 ? Double.MAX_VALUE : -bitrate;
+    }
+
+  }
+
+  /**
+   * Scores spans by their distance from the playback position, so that segments far from the
+   * playback position are evicted first. Spans whose distance is unknown are evicted last.
+   */
+  public static final class PlaybackDistanceScorer implements Scorer {
+
+    private final SegmentResolver segmentResolver;
+
+    /**
+     * @param segmentResolver Provides the distance of each span from the playback position.
+     */
+    public PlaybackDistanceScorer(SegmentResolver segmentResolver) {
+      this.segmentResolver = segmentResolver;
+    }
+
+    @Override
+    public double score(CacheSpan span, int hitCount, long nowMs) {
+      long distanceUs = segmentResolver.getDistanceFromPlaybackPositionUs(span);
+      return distanceUs == C.UNKNOWN_TIME_US ? Double.MAX_VALUE : -Math.abs(distanceUs);
+    }
+
+  }
+
+  private static final class Entry {
+
+    public CacheSpan span;
+    public int hitCount;
+
+    public Entry(CacheSpan span) {
+      this.span = span;
+    }
+
+  }
+
+  private final long maxBytes;
+  private final Scorer scorer;
+  private final CacheMetrics metrics;
+  // Ordered by key and position, so that touched spans can be found from their previous version.
+  private final TreeMap<CacheSpan, Entry> entries;
+
+  private long currentSize;
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param scorer Scores the cached spans.
+   */
+  public ScoringCacheEvictor(long maxBytes, Scorer scorer) {
+    this(maxBytes, scorer, null);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param scorer Scores the cached spans.
+   * @param metrics Metrics in which to record evictions. May be null.
+   */
+  public ScoringCacheEvictor(long maxBytes, Scorer scorer, CacheMetrics metrics) {
+    this.maxBytes = maxBytes;
+    this.scorer = scorer;
+    this.metrics = metrics;
+    entries = new TreeMap<>();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    evictCache(cache, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    entries.put(span, new Entry(span));
+    currentSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (entries.remove(span) != null) {
+      currentSize -= span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    Entry entry = entries.remove(oldSpan);
+    if (entry == null) {
+      entry = new Entry(newSpan);
+      currentSize += newSpan.length;
+    } else {
+      currentSize += newSpan.length - entry.span.length;
+      entry.span = newSpan;
+      entry.hitCount++;
+    }
+    entries.put(newSpan, entry);
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    long nowMs = System.currentTimeMillis();
+    while (currentSize + requiredSpace > maxBytes && !entries.isEmpty()) {
+      CacheSpan victim = null;
+      double victimScore = 0;
+      for (Map.Entry<CacheSpan, Entry> mapEntry : entries.entrySet()) {
+        Entry entry = mapEntry.getValue();
+        double score = scorer.score(entry.span, entry.hitCount, nowMs);
+        if (victim == null || score < victimScore || (score == victimScore
+            && entry.span.lastAccessTimestamp < victim.lastAccessTimestamp)) {
+          victim = entry.span;
+          victimScore = score;
+        }
+      }
+      if (metrics != null) {
+        metrics.onEviction(victim.length);
+      }
+      cache.removeSpan(victim);
+      if (entries.get(victim) != null) {
+        // The cache did not report the removal. Stop tracking the span so that eviction ends.
+        onSpanRemoved(cache, victim);
+      }
+    }
+  }
+
+}
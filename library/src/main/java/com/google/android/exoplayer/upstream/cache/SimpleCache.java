@@ -17,29 +17,74 @@ package com.google.android.exoplayer.upstream.cache;
 
 import com.google.android.exoplayer.util.Assertions;
 
-import android.os.ConditionVariable;
-
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The cache is safe for concurrent use by many loaders. The spans of each key are guarded by one
+ * of a fixed number of striped locks, so operations on different keys rarely contend, and a
+ * writer waiting for a locked key only blocks callers that hash to the same stripe.
+ * <p>
+ * Listeners and the {@link CacheEvictor} are notified under a separate lock, which is always
+ * acquired after a stripe lock. An evictor that removes a span whose stripe is not held by the
+ * calling thread has the removal deferred: the span is reported as removed immediately, and is
+ * dropped from the in-memory representation and deleted as soon as its stripe can be locked.
+ * <p>
+ * The spans are persisted in a {@link CachedSpanIndex}, which is rewritten on a background thread
+ * whenever spans are added or removed. The cache is initialized from the index, and only scans
+ * the cache directory if the index is missing or corrupt. Files that were written but not indexed
+ * before the process died are deleted in the background once initialization has completed. Last
+ * access times are stored in the index, so reading a span does not rename its file.
  */
 public final class SimpleCache implements Cache {
 
+  private static final int STRIPE_COUNT = 16;
+  private static final long INDEX_THREAD_KEEP_ALIVE_TIME_MS = 1000;
+
   private final File cacheDir;
   private final CacheEvictor evictor;
-  private final HashMap<String, CacheSpan> lockedSpans;
-  private final HashMap<String, TreeSet<CacheSpan>> cachedSpans;
-  private final HashMap<String, ArrayList<Listener>> listeners;
-  private long totalSpace = 0;
+  private final ReentrantLock[] stripeLocks;
+  private final Condition[] stripeConditions;
+  private final ReentrantLock evictorLock;
+  private final ConcurrentHashMap<String, CacheSpan> lockedSpans;
+  private final ConcurrentHashMap<String, TreeSet<CacheSpan>> cachedSpans;
+  private final ConcurrentHashMap<String, CopyOnWriteArrayList<Listener>> listeners;
+  private final Set<CacheSpan> pendingRemovals;
+  private final AtomicLong totalSpace;
+  private final CountDownLatch initializationLatch;
+  private final CachedSpanIndex index;
+  private final ExecutorService indexWriteExecutor;
+  private final AtomicBoolean indexWriteScheduled;
+  private final Runnable indexWriteRunnable;
+  private final Thread initializationThread;
+  // Files handed out by startFile until unindexed files have been removed. Guards itself and
+  // trackingStartedFiles.
+  private final HashSet<File> startedFiles;
+
+  private volatile boolean loadingIndex;
+  private boolean trackingStartedFiles;
 
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
@@ -50,85 +95,152 @@ public final class SimpleCache implements Cache {
   public SimpleCache(File cacheDir, CacheEvictor evictor) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
-    this.lockedSpans = new HashMap<>();
-    this.cachedSpans = new HashMap<>();
-    this.listeners = new HashMap<>();
-    // Start cache initialization.
-    final ConditionVariable conditionVariable = new ConditionVariable();
-    new Thread() {
+    stripeLocks = new ReentrantLock[STRIPE_COUNT];
+    stripeConditions = new Condition[STRIPE_COUNT];
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripeLocks[i] = new ReentrantLock();
+      stripeConditions[i] = stripeLocks[i].newCondition();
+    }
+    evictorLock = new ReentrantLock();
+    lockedSpans = new ConcurrentHashMap<>();
+    cachedSpans = new ConcurrentHashMap<>();
+    listeners = new ConcurrentHashMap<>();
+    pendingRemovals = Collections.newSetFromMap(new ConcurrentHashMap<CacheSpan, Boolean>());
+    totalSpace = new AtomicLong();
+    initializationLatch = new CountDownLatch(1);
+    index = new CachedSpanIndex(cacheDir);
+    ThreadPoolExecutor indexWriteExecutor = new ThreadPoolExecutor(1, 1,
+        INDEX_THREAD_KEEP_ALIVE_TIME_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "SimpleCache:index");
+          }
+        });
+    // Release the thread while the cache is idle.
+    indexWriteExecutor.allowCoreThreadTimeOut(true);
+    this.indexWriteExecutor = indexWriteExecutor;
+    indexWriteScheduled = new AtomicBoolean();
+    startedFiles = new HashSet<>();
+    trackingStartedFiles = true;
+    indexWriteRunnable = new Runnable() {
       @Override
       public void run() {
-        synchronized (SimpleCache.this) {
-          conditionVariable.open();
-          initialize();
+        writeIndex();
+      }
+    };
+    // Start cache initialization. Calls block until it has completed, except for calls made by the
+    // evictor on the initialization thread itself.
+    initializationThread = new Thread() {
+      @Override
+      public void run() {
+        boolean initializedFromIndex;
+        try {
+          initializedFromIndex = initialize();
+        } finally {
+          initializationLatch.countDown();
+        }
+        if (initializedFromIndex) {
+          removeUnindexedFiles();
+        }
+        synchronized (startedFiles) {
+          trackingStartedFiles = false;
+          startedFiles.clear();
         }
       }
-    }.start();
-    conditionVariable.block();
+    };
+    initializationThread.start();
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    ReentrantLock lock = lockKey(key);
+    try {
+      CopyOnWriteArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey == null) {
+        listenersForKey = new CopyOnWriteArrayList<>();
+        listeners.put(key, listenersForKey);
+      }
+      listenersForKey.add(listener);
+      return getCachedSpansLocked(key);
+    } finally {
+      unlock(lock);
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
-  public synchronized void removeListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
+  public void removeListener(String key, Listener listener) {
+    ReentrantLock lock = lockKey(key);
+    try {
+      CopyOnWriteArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey != null) {
+        listenersForKey.remove(listener);
+        if (listenersForKey.isEmpty()) {
+          listeners.remove(key);
+        }
       }
+    } finally {
+      unlock(lock);
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
-    return spansForKey == null ? null : new TreeSet<>(spansForKey);
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    ReentrantLock lock = lockKey(key);
+    try {
+      return getCachedSpansLocked(key);
+    } finally {
+      unlock(lock);
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
+    blockUntilInitialized();
     return new HashSet<>(cachedSpans.keySet());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
-    return totalSpace;
+  public long getCacheSpace() {
+    blockUntilInitialized();
+    return totalSpace.get();
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position)
-      throws InterruptedException {
+  public CacheSpan startReadWrite(String key, long position) throws InterruptedException {
     CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
-    while (true) {
-      CacheSpan span = startReadWriteNonBlocking(lookupSpan);
-      if (span != null) {
-        return span;
-      } else {
-        // Write case, lock not available. We'll be woken up when a locked span is released (if the
-        // released lock is for the requested key then we'll be able to make progress) or when a
-        // span is added to the cache (if the span is for the requested key and covers the requested
-        // position, then we'll become a read and be able to make progress).
-        wait();
+    ReentrantLock lock = lockKey(key);
+    try {
+      while (true) {
+        CacheSpan span = startReadWriteNonBlockingLocked(lookupSpan);
+        if (span != null) {
+          return span;
+        } else {
+          // Write case, lock not available. We'll be woken up when a locked span in this stripe is
+          // released (if the released lock is for the requested key then we'll be able to make
+          // progress) or when a span is added to this stripe (if the span is for the requested key
+          // and covers the requested position, then we'll become a read and be able to make
+          // progress).
+          getCondition(key).await();
+          applyPendingRemovals(key);
+        }
       }
+    } finally {
+      unlock(lock);
     }
   }
 
   @Override
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position) {
-    return startReadWriteNonBlocking(CacheSpan.createLookup(key, position));
+  public CacheSpan startReadWriteNonBlocking(String key, long position) {
+    ReentrantLock lock = lockKey(key);
+    try {
+      return startReadWriteNonBlockingLocked(CacheSpan.createLookup(key, position));
+    } finally {
+      unlock(lock);
+    }
   }
 
-  private synchronized CacheSpan startReadWriteNonBlocking(CacheSpan lookupSpan) {
+  private CacheSpan startReadWriteNonBlockingLocked(CacheSpan lookupSpan) {
     CacheSpan spanningRegion = getSpan(lookupSpan);
 
     // Read case.
@@ -138,10 +250,18 @@ public final class SimpleCache implements Cache {
       TreeSet<CacheSpan> spansForKey = cachedSpans.get(oldCacheSpan.key);
       Assertions.checkState(spansForKey.remove(oldCacheSpan));
       // Obtain a new span with updated last access timestamp.
-      spanningRegion = oldCacheSpan.touch();
+      spanningRegion = oldCacheSpan.touchInIndex();
       // Add the updated span back into the in-memory representation.
       spansForKey.add(spanningRegion);
-      notifySpanTouched(oldCacheSpan, spanningRegion);
+      if (!notifySpanTouched(oldCacheSpan, spanningRegion)) {
+        // The span was evicted while it was being touched.
+        spansForKey.remove(spanningRegion);
+        spanningRegion.file.delete();
+        if (spansForKey.isEmpty()) {
+          cachedSpans.remove(spanningRegion.key);
+        }
+        return startReadWriteNonBlockingLocked(lookupSpan);
+      }
       return spanningRegion;
     }
 
@@ -156,40 +276,67 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) {
-    Assertions.checkState(lockedSpans.containsKey(key));
+  public File startFile(String key, long position, long length) {
+    blockUntilInitialized();
     if (!cacheDir.exists()) {
       // For some reason the cache directory doesn't exist. Make a best effort to create it.
       removeStaleSpans();
       cacheDir.mkdirs();
     }
-    evictor.onStartFile(this, key, position, length);
-    return CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
+    ReentrantLock lock = lockKey(key);
+    try {
+      Assertions.checkState(lockedSpans.containsKey(key));
+      evictorLock.lock();
+      try {
+        evictor.onStartFile(this, key, position, length);
+      } finally {
+        evictorLock.unlock();
+      }
+      File file = CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
+      synchronized (startedFiles) {
+        if (trackingStartedFiles) {
+          startedFiles.add(file);
+        }
+      }
+      return file;
+    } finally {
+      unlock(lock);
+    }
   }
 
   @Override
-  public synchronized void commitFile(File file) {
+  public void commitFile(File file) {
     CacheSpan span = CacheSpan.createCacheEntry(file);
     Assertions.checkState(span != null);
-    Assertions.checkState(lockedSpans.containsKey(span.key));
-    // If the file doesn't exist, don't add it to the in-memory representation.
-    if (!file.exists()) {
-      return;
-    }
-    // If the file has length 0, delete it and don't add it to the in-memory representation.
-    long length = file.length();
-    if (length == 0) {
-      file.delete();
-      return;
+    ReentrantLock lock = lockKey(span.key);
+    try {
+      Assertions.checkState(lockedSpans.containsKey(span.key));
+      // If the file doesn't exist, don't add it to the in-memory representation.
+      if (!file.exists()) {
+        return;
+      }
+      // If the file has length 0, delete it and don't add it to the in-memory representation.
+      long length = file.length();
+      if (length == 0) {
+        file.delete();
+        return;
+      }
+      addSpan(span);
+      getCondition(span.key).signalAll();
+    } finally {
+      unlock(lock);
     }
-    addSpan(span);
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
-    notifyAll();
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    ReentrantLock lock = lockKey(holeSpan.key);
+    try {
+      Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
+      getCondition(holeSpan.key).signalAll();
+    } finally {
+      unlock(lock);
+    }
   }
 
   /**
@@ -199,6 +346,8 @@ public final class SimpleCache implements Cache {
    * {@link CacheSpan} defines the file in which the data is stored. If the lookup position is not
    * contained by an existing entry, then the returned {@link CacheSpan} defines the maximum extents
    * of the hole in the cache.
+   * <p>
+   * Must be called with the stripe lock of the key held.
    *
    * @param lookupSpan A lookup {@link CacheSpan} specifying a key and position.
    * @return The corresponding cache {@link CacheSpan}.
@@ -217,9 +366,9 @@ public final class SimpleCache implements Cache {
       if (floorSpan.file.exists()) {
         return floorSpan;
       } else {
-        // The file has been deleted from under us. It's likely that other files will have been
-        // deleted too, so scan the whole in-memory representation.
-        removeStaleSpans();
+        // The file has been deleted from under us. It's likely that other files of the same key
+        // will have been deleted too, so scan all of the key's spans.
+        removeStaleSpans(key);
         return getSpan(lookupSpan);
       }
     }
@@ -230,33 +379,143 @@ public final class SimpleCache implements Cache {
   }
 
   /**
-   * Ensures that the cache's in-memory representation has been initialized.
+   * Initializes the cache's in-memory representation from the index, or by scanning the cache
+   * directory if the index cannot be read.
+   *
+   * @return Whether the in-memory representation was initialized from the index.
    */
-  private void initialize() {
+  private boolean initialize() {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
     }
+    List<CacheSpan> indexedSpans = index.read();
+    if (indexedSpans != null) {
+      // Adding the indexed spans does not change the index, unless the evictor removes some.
+      loadingIndex = true;
+      long indexedLength = 0;
+      for (int i = 0; i < indexedSpans.size(); i++) {
+        CacheSpan span = indexedSpans.get(i);
+        indexedLength += span.length;
+        addSpanDuringInitialization(span);
+      }
+      loadingIndex = false;
+      if (totalSpace.get() != indexedLength) {
+        scheduleIndexWrite();
+      }
+      return true;
+    }
+    index.delete();
     File[] files = cacheDir.listFiles();
     if (files == null) {
-      return;
+      return false;
     }
     for (int i = 0; i < files.length; i++) {
       File file = files[i];
-      if (file.length() == 0) {
+      if (CachedSpanIndex.isIndexFile(file)) {
+        continue;
+      } else if (file.length() == 0) {
         file.delete();
       } else {
         CacheSpan span = CacheSpan.createCacheEntry(file);
         if (span == null) {
           file.delete();
         } else {
-          addSpan(span);
+          addSpanDuringInitialization(span);
         }
       }
     }
+    // Index the scanned spans, so that the next initialization does not need to scan.
+    scheduleIndexWrite();
+    return false;
+  }
+
+  private void addSpanDuringInitialization(CacheSpan span) {
+    ReentrantLock lock = getLock(span.key);
+    lock.lock();
+    try {
+      addSpan(span);
+    } finally {
+      lock.unlock();
+    }
+    removePendingSpans();
   }
 
   /**
-   * Adds a cached span to the in-memory representation.
+   * Deletes cache files that are not in the in-memory representation and were not handed out by
+   * {@link #startFile(String, long, long)}. Such files were written by a previous process that died
+   * before indexing them.
+   */
+  private void removeUnindexedFiles() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (CachedSpanIndex.isIndexFile(file)) {
+        continue;
+      }
+      CacheSpan span = CacheSpan.createCacheEntry(file);
+      if (span == null) {
+        file.delete();
+        continue;
+      }
+      ReentrantLock lock = lockKey(span.key);
+      try {
+        synchronized (startedFiles) {
+          if (startedFiles.contains(file)) {
+            // The file is being written by a current writer.
+            continue;
+          }
+        }
+        TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
+        CacheSpan indexedSpan = spansForKey == null ? null : spansForKey.floor(span);
+        if (indexedSpan == null || indexedSpan.position != span.position
+            || !indexedSpan.file.equals(file)) {
+          file.delete();
+        }
+      } finally {
+        unlock(lock);
+      }
+    }
+  }
+
+  /**
+   * Schedules the index to be rewritten. Writes that are scheduled while a write is pending are
+   * coalesced.
+   */
+  private void scheduleIndexWrite() {
+    if (!loadingIndex && indexWriteScheduled.compareAndSet(false, true)) {
+      indexWriteExecutor.execute(indexWriteRunnable);
+    }
+  }
+
+  private void writeIndex() {
+    // Clear the flag first, so that changes made while the spans are copied schedule another write.
+    indexWriteScheduled.set(false);
+    ArrayList<CacheSpan> spans = new ArrayList<>();
+    for (String key : cachedSpans.keySet()) {
+      ReentrantLock lock = lockKey(key);
+      try {
+        TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
+        if (spansForKey != null) {
+          spans.addAll(spansForKey);
+        }
+      } finally {
+        unlock(lock);
+      }
+    }
+    try {
+      index.write(spans);
+    } catch (IOException e) {
+      // Fall back to scanning the directory on the next initialization, rather than reading an
+      // index that may be out of date.
+      index.delete();
+    }
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation. Must be called with the stripe lock of
+   * the span's key held.
    *
    * @param span The span to be added.
    */
@@ -267,82 +526,195 @@ public final class SimpleCache implements Cache {
       cachedSpans.put(span.key, spansForKey);
     }
     spansForKey.add(span);
-    totalSpace += span.length;
+    totalSpace.addAndGet(span.length);
     notifySpanAdded(span);
+    scheduleIndexWrite();
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
-    totalSpace -= span.length;
-    Assertions.checkState(spansForKey.remove(span));
-    span.file.delete();
-    if (spansForKey.isEmpty()) {
-      cachedSpans.remove(span.key);
+  public void removeSpan(CacheSpan span) {
+    ReentrantLock lock = getLock(span.key);
+    if (evictorLock.isHeldByCurrentThread() && !lock.isHeldByCurrentThread()) {
+      // Called by the evictor on behalf of another key. Locking the span's stripe here could
+      // deadlock with a thread that holds it and is waiting to call the evictor.
+      notifySpanRemoved(span);
+      pendingRemovals.add(span);
+      return;
+    }
+    lock = lockKey(span.key);
+    try {
+      TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
+      if (spansForKey == null || spansForKey.floor(span) != span) {
+        // The span has already been removed.
+        return;
+      }
+      spansForKey.remove(span);
+      span.file.delete();
+      if (spansForKey.isEmpty()) {
+        cachedSpans.remove(span.key);
+      }
+      notifySpanRemoved(span);
+    } finally {
+      unlock(lock);
     }
-    notifySpanRemoved(span);
   }
 
   /**
    * Scans all of the cached spans in the in-memory representation, removing any for which files
-   * no longer exist.
+   * no longer exist. Must be called without holding any stripe lock.
    */
   private void removeStaleSpans() {
-    Iterator<Entry<String, TreeSet<CacheSpan>>> iterator = cachedSpans.entrySet().iterator();
+    for (String key : cachedSpans.keySet()) {
+      ReentrantLock lock = lockKey(key);
+      try {
+        removeStaleSpans(key);
+      } finally {
+        unlock(lock);
+      }
+    }
+  }
+
+  /**
+   * Removes the cached spans of a key for which files no longer exist. Must be called with the
+   * stripe lock of the key held.
+   */
+  private void removeStaleSpans(String key) {
+    TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
+    if (spansForKey == null) {
+      return;
+    }
+    Iterator<CacheSpan> spanIterator = spansForKey.iterator();
+    while (spanIterator.hasNext()) {
+      CacheSpan span = spanIterator.next();
+      if (!span.file.exists()) {
+        spanIterator.remove();
+        notifySpanRemoved(span);
+      }
+    }
+    if (spansForKey.isEmpty()) {
+      cachedSpans.remove(key);
+    }
+  }
+
+  /**
+   * Removes the spans of a key whose removal was deferred. Must be called with the stripe lock of
+   * the key held.
+   */
+  private void applyPendingRemovals(String key) {
+    if (pendingRemovals.isEmpty()) {
+      return;
+    }
+    Iterator<CacheSpan> iterator = pendingRemovals.iterator();
     while (iterator.hasNext()) {
-      Entry<String, TreeSet<CacheSpan>> next = iterator.next();
-      Iterator<CacheSpan> spanIterator = next.getValue().iterator();
-      boolean isEmpty = true;
-      while (spanIterator.hasNext()) {
-        CacheSpan span = spanIterator.next();
-        if (!span.file.exists()) {
-          spanIterator.remove();
-          if (span.isCached) {
-            totalSpace -= span.length;
+      CacheSpan span = iterator.next();
+      if (span.key.equals(key) && pendingRemovals.remove(span)) {
+        TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
+        if (spansForKey != null && spansForKey.floor(span) == span) {
+          spansForKey.remove(span);
+          if (spansForKey.isEmpty()) {
+            cachedSpans.remove(key);
           }
-          notifySpanRemoved(span);
-        } else {
-          isEmpty = false;
         }
+        span.file.delete();
       }
-      if (isEmpty) {
-        iterator.remove();
+    }
+  }
+
+  /**
+   * Applies deferred removals for any stripe that is not contended. Removals for contended stripes
+   * are applied by the next operation on the key.
+   */
+  private void removePendingSpans() {
+    if (pendingRemovals.isEmpty() || evictorLock.isHeldByCurrentThread()) {
+      return;
+    }
+    for (CacheSpan span : pendingRemovals) {
+      ReentrantLock lock = getLock(span.key);
+      if (lock.tryLock()) {
+        try {
+          applyPendingRemovals(span.key);
+        } finally {
+          lock.unlock();
+        }
       }
     }
   }
 
+  /**
+   * Accounts for the removal of a span and notifies the listeners and the evictor, unless this has
+   * already been done because the span's removal was deferred.
+   */
   private void notifySpanRemoved(CacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanRemoved(this, span);
+    evictorLock.lock();
+    try {
+      if (pendingRemovals.remove(span)) {
+        return;
+      }
+      totalSpace.addAndGet(-span.length);
+      scheduleIndexWrite();
+      CopyOnWriteArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanRemoved(this, span);
+        }
       }
+      evictor.onSpanRemoved(this, span);
+    } finally {
+      evictorLock.unlock();
     }
-    evictor.onSpanRemoved(this, span);
   }
 
   private void notifySpanAdded(CacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanAdded(this, span);
+    evictorLock.lock();
+    try {
+      CopyOnWriteArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanAdded(this, span);
+        }
       }
+      evictor.onSpanAdded(this, span);
+    } finally {
+      evictorLock.unlock();
     }
-    evictor.onSpanAdded(this, span);
   }
 
-  private void notifySpanTouched(CacheSpan oldSpan, CacheSpan newSpan) {
-    ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
+  /**
+   * Notifies the listeners and the evictor that a span has been touched, unless the span was
+   * evicted while it was being touched.
+   *
+   * @return Whether the span was still cached.
+   */
+  private boolean notifySpanTouched(CacheSpan oldSpan, CacheSpan newSpan) {
+    evictorLock.lock();
+    try {
+      if (pendingRemovals.remove(oldSpan)) {
+        return false;
+      }
+      CopyOnWriteArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
+        }
       }
+      evictor.onSpanTouched(this, oldSpan, newSpan);
+      return true;
+    } finally {
+      evictorLock.unlock();
     }
-    evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
+    ReentrantLock lock = lockKey(key);
+    try {
+      return isCachedLocked(key, position, length);
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  private boolean isCachedLocked(String key, long position, long length) {
     TreeSet<CacheSpan> entries = cachedSpans.get(key);
     if (entries == null) {
       return false;
@@ -378,4 +750,65 @@ public final class SimpleCache implements Cache {
     return false;
   }
 
+  private NavigableSet<CacheSpan> getCachedSpansLocked(String key) {
+    TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
+    return spansForKey == null ? null : new TreeSet<>(spansForKey);
+  }
+
+  /**
+   * Waits for initialization, acquires the stripe lock of a key and applies any deferred removals
+   * of its spans.
+   */
+  private ReentrantLock lockKey(String key) {
+    blockUntilInitialized();
+    ReentrantLock lock = getLock(key);
+    lock.lock();
+    applyPendingRemovals(key);
+    return lock;
+  }
+
+  /**
+   * Releases a stripe lock acquired by {@link #lockKey(String)}, and then applies any removals
+   * that were deferred while it was held.
+   */
+  private void unlock(ReentrantLock lock) {
+    lock.unlock();
+    if (!lock.isHeldByCurrentThread()) {
+      removePendingSpans();
+    }
+  }
+
+  private ReentrantLock getLock(String key) {
+    return stripeLocks[getStripe(key)];
+  }
+
+  private Condition getCondition(String key) {
+    return stripeConditions[getStripe(key)];
+  }
+
+  private static int getStripe(String key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1);
+  }
+
+  private void blockUntilInitialized() {
+    if (initializationLatch.getCount() == 0 || Thread.currentThread() == initializationThread) {
+      // The initialization thread only calls into the cache from the evictor, while adding spans.
+      // Waiting would deadlock, since the latch is only counted down once they have been added.
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        initializationLatch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
 }
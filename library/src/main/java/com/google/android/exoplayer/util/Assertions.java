@@ -18,7 +18,6 @@ package com.google.android.exoplayer.util;
 import com.google.android.exoplayer.ExoPlayerLibraryInfo;
 
 import android.os.Looper;
-import android.text.TextUtils;
 
 /**
  * Provides methods for asserting the truth of expressions and properties.
@@ -119,7 +118,7 @@ public final class Assertions {
    * @throws IllegalArgumentException If {@code string} is null or 0-length.
    */
   public static String checkNotEmpty(String string) {
-    if (ExoPlayerLibraryInfo.ASSERTIONS_ENABLED && TextUtils.isEmpty(string)) {
+    if (ExoPlayerLibraryInfo.ASSERTIONS_ENABLED && (string == null || string.length() == 0)) {
       throw new IllegalArgumentException();
     }
     return string;
@@ -135,7 +134,7 @@ public final class Assertions {
    * @throws IllegalArgumentException If {@code string} is null or 0-length.
    */
   public static String checkNotEmpty(String string, Object errorMessage) {
-    if (ExoPlayerLibraryInfo.ASSERTIONS_ENABLED && TextUtils.isEmpty(string)) {
+    if (ExoPlayerLibraryInfo.ASSERTIONS_ENABLED && (string == null || string.length() == 0)) {
       throw new IllegalArgumentException(String.valueOf(errorMessage));
     }
     return string;
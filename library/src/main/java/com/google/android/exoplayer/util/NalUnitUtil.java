@@ -16,7 +16,6 @@
 package com.google.android.exoplayer.util;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
  * Utility methods for handling H.264/AVC and H.265/HEVC NAL units.
@@ -51,59 +50,32 @@ public final class NalUnitUtil {
 
   private static final int NAL_UNIT_TYPE_SPS = 7;
 
-  private static final Object scratchEscapePositionsLock = new Object();
-
-  /**
-   * Temporary store for positions of escape codes in {@link #unescapeStream(byte[], int)}. Guarded
-   * by {@link #scratchEscapePositionsLock}.
-   */
-  private static int[] scratchEscapePositions = new int[10];
-
   /**
    * Unescapes {@code data} up to the specified limit, replacing occurrences of [0, 0, 3] with
    * [0, 0]. The unescaped data is returned in-place, with the return value indicating its length.
    * <p>
-   * Executions of this method are mutually exclusive, so it should not be called with very large
-   * buffers.
+   * The data is unescaped in a single pass, by moving each run of bytes between escape codes back
+   * over the escape codes that have already been removed. No shared state is used, so the method
+   * may be called concurrently for different buffers.
    *
    * @param data The data to unescape.
    * @param limit The limit (exclusive) of the data to unescape.
    * @return The length of the unescaped data.
    */
   public static int unescapeStream(byte[] data, int limit) {
-    synchronized (scratchEscapePositionsLock) {
-      int position = 0;
-      int scratchEscapeCount = 0;
-      while (position < limit) {
-        position = findNextUnescapeIndex(data, position, limit);
-        if (position < limit) {
-          if (scratchEscapePositions.length <= scratchEscapeCount) {
-            // Grow scratchEscapePositions to hold a larger number of positions.
-            scratchEscapePositions = Arrays.copyOf(scratchEscapePositions,
-                scratchEscapePositions.length * 2);
-          }
-          scratchEscapePositions[scratchEscapeCount++] = position;
-          position += 3;
-        }
-      }
-
-      int unescapedLength = limit - scratchEscapeCount;
-      int escapedPosition = 0; // The position being read from.
-      int unescapedPosition = 0; // The position being written to.
-      for (int i = 0; i < scratchEscapeCount; i++) {
-        int nextEscapePosition = scratchEscapePositions[i];
-        int copyLength = nextEscapePosition - escapedPosition;
-        System.arraycopy(data, escapedPosition, data, unescapedPosition, copyLength);
-        unescapedPosition += copyLength;
-        data[unescapedPosition++] = 0;
-        data[unescapedPosition++] = 0;
-        escapedPosition += copyLength + 3;
-      }
-
-      int remainingLength = unescapedLength - unescapedPosition;
-      System.arraycopy(data, escapedPosition, data, unescapedPosition, remainingLength);
-      return unescapedLength;
+    int escapedPosition = 0; // The position being read from.
+    int unescapedPosition = 0; // The position being written to.
+    int escapeIndex;
+    while ((escapeIndex = findNextUnescapeIndex(data, escapedPosition, limit)) < limit) {
+      // Copy up to and including the zeros of the escape code, dropping the 3 that follows them.
+      int copyLength = escapeIndex + 2 - escapedPosition;
+      System.arraycopy(data, escapedPosition, data, unescapedPosition, copyLength);
+      unescapedPosition += copyLength;
+      escapedPosition = escapeIndex + 3;
     }
+    int remainingLength = limit - escapedPosition;
+    System.arraycopy(data, escapedPosition, data, unescapedPosition, remainingLength);
+    return unescapedPosition + remainingLength;
   }
 
   /**
@@ -223,20 +195,26 @@ public final class NalUnitUtil {
 
     int limit = endOffset - 1;
     // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
-    for (int i = startOffset + 2; i < limit; i += 3) {
-      if ((data[i] & 0xFE) != 0) {
-        // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
-        // loop advance the index by three.
+    // the third byte. Every byte of a prefix is 0 or 1, so if data[i] is neither then there isn't a
+    // NAL prefix at i or at the next two positions.
+    int i = startOffset + 2;
+    while (i < limit) {
+      if (i + 9 < limit && (((data[i] & 0xFE) - 1) | ((data[i + 3] & 0xFE) - 1)
+          | ((data[i + 6] & 0xFE) - 1) | ((data[i + 9] & 0xFE) - 1)) >= 0) {
+        // None of data[i], data[i + 3], data[i + 6] and data[i + 9] is 0 or 1, since (x & 0xFE) - 1
+        // is only negative for those values. There isn't a NAL prefix at the next twelve positions.
+        i += 12;
+      } else if ((data[i] & 0xFE) != 0) {
+        // There isn't a NAL prefix here, or at the next two positions.
+        i += 3;
       } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
         if (prefixFlags != null) {
           clearPrefixFlags(prefixFlags);
         }
         return i - 2;
       } else {
-        // There isn't a NAL prefix here, but there might be at the next position. We should
-        // only skip forward by one. The loop will skip forward by three, so subtract two here.
-        i -= 2;
+        // There isn't a NAL prefix here, but there might be at the next position.
+        i++;
       }
     }
 
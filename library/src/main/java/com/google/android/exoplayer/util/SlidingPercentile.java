@@ -15,9 +15,7 @@
  */
 package com.google.android.exoplayer.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum total weight is
@@ -27,48 +25,57 @@ import java.util.Comparator;
  * SlidingPercentile can be used for bandwidth estimation based on a sliding window of past
  * download rate observations. This is an alternative to sliding mean and exponential averaging
  * which suffer from susceptibility to outliers and slow adaptation to step functions.
+ * <p>
+ * Samples are held in a treap ordered by value, in which each node also stores the total weight of
+ * its subtree. Adding a sample, evicting or reducing the weight of the oldest sample and computing
+ * a percentile therefore take expected logarithmic time. Nodes are stored in primitive arrays that
+ * double as a ring buffer in insertion order, so that the oldest sample can be found directly.
+ * The arrays only grow if the window holds more samples than they can store, which for samples of
+ * non-zero weight cannot exceed {@code maxWeight + 1}.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Moving_average">Wiki: Moving average</a>
  * @see <a href="http://en.wikipedia.org/wiki/Selection_algorithm">Wiki: Selection algorithm</a>
+ * @see <a href="http://en.wikipedia.org/wiki/Treap">Wiki: Treap</a>
  */
 public final class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.index - b.index;
-    }
-  };
-
-  private static final Comparator<Sample> VALUE_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.value < b.value ? -1 : b.value < a.value ? 1 : 0;
-    }
-  };
-
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
-
-  private static final int MAX_RECYCLED_SAMPLES = 5;
+  private static final int NIL = -1;
+  private static final int INITIAL_CAPACITY = 16;
 
   private final int maxWeight;
-  private final ArrayList<Sample> samples;
 
-  private final Sample[] recycledSamples;
+  // Node storage, indexed by ring buffer slot.
+  private float[] values;
+  private long[] indices;
+  private int[] weights;
+  private int[] subtreeWeights;
+  private int[] priorities;
+  private int[] lefts;
+  private int[] rights;
 
-  private int currentSortOrder;
-  private int nextSampleIndex;
+  private int oldestSlot;
+  private int sampleCount;
+  private int root;
+  private long nextSampleIndex;
   private int totalWeight;
-  private int recycledSampleCount;
+  private int randomState;
+
+  // Outputs of split.
+  private int splitLeft;
+  private int splitRight;
 
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
-    recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    int capacity = Math.max(1, Math.min(INITIAL_CAPACITY, maxWeight + 1));
+    values = new float[capacity];
+    indices = new long[capacity];
+    weights = new int[capacity];
+    subtreeWeights = new int[capacity];
+    priorities = new int[capacity];
+    lefts = new int[capacity];
+    rights = new int[capacity];
+    root = NIL;
+    randomState = 0x2545F491;
   }
 
   /**
@@ -79,27 +86,31 @@ public final class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
-    Sample newSample = recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount]
-        : new Sample();
-    newSample.index = nextSampleIndex++;
-    newSample.weight = weight;
-    newSample.value = value;
-    samples.add(newSample);
+    if (sampleCount == values.length) {
+      grow();
+    }
+    int slot = (oldestSlot + sampleCount) % values.length;
+    values[slot] = value;
+    indices[slot] = nextSampleIndex++;
+    weights[slot] = weight;
+    subtreeWeights[slot] = weight;
+    priorities[slot] = nextPriority();
+    lefts[slot] = NIL;
+    rights[slot] = NIL;
+    root = insert(root, slot);
+    sampleCount++;
     totalWeight += weight;
 
     while (totalWeight > maxWeight) {
       int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
-      if (oldestSample.weight <= excessWeight) {
-        totalWeight -= oldestSample.weight;
-        samples.remove(0);
-        if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
-          recycledSamples[recycledSampleCount++] = oldestSample;
-        }
+      int oldest = oldestSlot;
+      if (weights[oldest] <= excessWeight) {
+        totalWeight -= weights[oldest];
+        root = remove(root, oldest);
+        oldestSlot = (oldestSlot + 1) % values.length;
+        sampleCount--;
       } else {
-        oldestSample.weight -= excessWeight;
+        reduceWeight(oldest, excessWeight);
         totalWeight -= excessWeight;
       }
     }
@@ -112,46 +123,181 @@ public final class SlidingPercentile {
    * @return The requested percentile value or Float.NaN.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
+    if (root == NIL) {
+      return Float.NaN;
+    }
     float desiredWeight = percentile * totalWeight;
     int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
+    int node = root;
+    while (true) {
+      int left = lefts[node];
+      if (left != NIL && accumulatedWeight + subtreeWeights[left] >= desiredWeight) {
+        node = left;
+        continue;
+      }
+      accumulatedWeight += (left == NIL ? 0 : subtreeWeights[left]) + weights[node];
       if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+        return values[node];
+      }
+      if (rights[node] == NIL) {
+        // Clamp to maximum value.
+        return values[node];
       }
+      node = rights[node];
+    }
+  }
+
+  private int insert(int tree, int node) {
+    if (tree == NIL) {
+      return node;
+    }
+    if (priorities[node] > priorities[tree]) {
+      split(tree, node);
+      lefts[node] = splitLeft;
+      rights[node] = splitRight;
+      update(node);
+      return node;
+    }
+    if (isBefore(node, tree)) {
+      lefts[tree] = insert(lefts[tree], node);
+    } else {
+      rights[tree] = insert(rights[tree], node);
+    }
+    update(tree);
+    return tree;
+  }
+
+  private int remove(int tree, int node) {
+    if (tree == node) {
+      return merge(lefts[tree], rights[tree]);
+    }
+    if (isBefore(node, tree)) {
+      lefts[tree] = remove(lefts[tree], node);
+    } else {
+      rights[tree] = remove(rights[tree], node);
+    }
+    update(tree);
+    return tree;
+  }
+
+  /**
+   * Splits {@code tree} into the nodes before {@code node}, stored in {@link #splitLeft}, and the
+   * nodes after it, stored in {@link #splitRight}.
+   */
+  private void split(int tree, int node) {
+    if (tree == NIL) {
+      splitLeft = NIL;
+      splitRight = NIL;
+    } else if (isBefore(tree, node)) {
+      split(rights[tree], node);
+      rights[tree] = splitLeft;
+      update(tree);
+      splitLeft = tree;
+    } else {
+      split(lefts[tree], node);
+      lefts[tree] = splitRight;
+      update(tree);
+      splitRight = tree;
     }
-    // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
   }
 
   /**
-   * Sort the samples by index, if not already.
+   * Merges two trees, where all of the nodes in {@code left} are before those in {@code right}.
    */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  private int merge(int left, int right) {
+    if (left == NIL) {
+      return right;
+    }
+    if (right == NIL) {
+      return left;
+    }
+    if (priorities[left] > priorities[right]) {
+      rights[left] = merge(rights[left], right);
+      update(left);
+      return left;
     }
+    lefts[right] = merge(left, lefts[right]);
+    update(right);
+    return right;
+  }
+
+  private void reduceWeight(int node, int delta) {
+    int tree = root;
+    while (tree != node) {
+      subtreeWeights[tree] -= delta;
+      tree = isBefore(node, tree) ? lefts[tree] : rights[tree];
+    }
+    subtreeWeights[node] -= delta;
+    weights[node] -= delta;
+  }
+
+  private void update(int node) {
+    int left = lefts[node];
+    int right = rights[node];
+    subtreeWeights[node] = weights[node] + (left == NIL ? 0 : subtreeWeights[left])
+        + (right == NIL ? 0 : subtreeWeights[right]);
   }
 
   /**
-   * Sort the samples by value, if not already.
+   * Returns whether node {@code a} is ordered before node {@code b}. Nodes are ordered by value,
+   * and then by the order in which they were added.
    */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private boolean isBefore(int a, int b) {
+    return values[a] < values[b] || (!(values[b] < values[a]) && indices[a] < indices[b]);
+  }
+
+  private int nextPriority() {
+    // Xorshift.
+    int x = randomState;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    randomState = x;
+    return x;
+  }
+
+  /**
+   * Doubles the capacity of the node storage, moving the samples so that the oldest is stored in
+   * the first slot.
+   */
+  private void grow() {
+    int capacity = values.length;
+    int newCapacity = capacity * 2;
+    values = unwrap(values, newCapacity);
+    indices = unwrap(indices, newCapacity);
+    weights = unwrap(weights, newCapacity);
+    subtreeWeights = unwrap(subtreeWeights, newCapacity);
+    priorities = unwrap(priorities, newCapacity);
+    lefts = unwrap(lefts, newCapacity);
+    rights = unwrap(rights, newCapacity);
+    for (int i = 0; i < sampleCount; i++) {
+      lefts[i] = remapSlot(lefts[i], capacity);
+      rights[i] = remapSlot(rights[i], capacity);
     }
+    root = remapSlot(root, capacity);
+    oldestSlot = 0;
   }
 
-  private static class Sample {
+  private int remapSlot(int slot, int capacity) {
+    return slot == NIL ? NIL : (slot - oldestSlot + capacity) % capacity;
+  }
 
-    public int index;
-    public int weight;
-    public float value;
+  private float[] unwrap(float[] array, int newCapacity) {
+    float[] newArray = Arrays.copyOfRange(array, oldestSlot, oldestSlot + newCapacity);
+    System.arraycopy(array, 0, newArray, array.length - oldestSlot, oldestSlot);
+    return newArray;
+  }
+
+  private long[] unwrap(long[] array, int newCapacity) {
+    long[] newArray = Arrays.copyOfRange(array, oldestSlot, oldestSlot + newCapacity);
+    System.arraycopy(array, 0, newArray, array.length - oldestSlot, oldestSlot);
+    return newArray;
+  }
 
+  private int[] unwrap(int[] array, int newCapacity) {
+    int[] newArray = Arrays.copyOfRange(array, oldestSlot, oldestSlot + newCapacity);
+    System.arraycopy(array, 0, newArray, array.length - oldestSlot, oldestSlot);
+    return newArray;
   }
 
 }
@@ -21,6 +21,7 @@ import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -188,6 +189,18 @@ public final class Util {
     return false;
   }
 
+  /**
+   * Returns {@link android.os.SystemClock#elapsedRealtimeNanos()} on API level 17 and above. On
+   * earlier API levels returns {@link android.os.SystemClock#elapsedRealtime()}, converted to
+   * nanoseconds.
+   *
+   * @return Elapsed nanoseconds since boot.
+   */
+  public static long elapsedRealtimeNanos() {
+    return SDK_INT >= 17 ? elapsedRealtimeNanosV17()
+        : android.os.SystemClock.elapsedRealtime() * 1000000;
+  }
+
   /**
    * Instantiates a new single threaded executor whose thread has the specified name.
    *
@@ -786,4 +799,10 @@ public final class Util {
       return TYPE_OTHER;
     }
   }
+
+  @TargetApi(17)
+  private static long elapsedRealtimeNanosV17() {
+    return android.os.SystemClock.elapsedRealtimeNanos();
+  }
+
 }